@@ -32,7 +32,7 @@ public interface IPollCallback {
      * Method call when a new request come
      *
      * @param request {@link Request} from Kafka
-     * @return The result of Kafka Request
+     * @return The result of Kafka Request, in UTF-8
      */
-    String onNewRequest(Request request);
+    byte[] onNewRequest(Request request);
 }
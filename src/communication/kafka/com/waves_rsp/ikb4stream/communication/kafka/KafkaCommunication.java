@@ -18,8 +18,10 @@
 
 package com.waves_rsp.ikb4stream.communication.kafka;
 
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderStreamCallback;
 import com.waves_rsp.ikb4stream.core.communication.ICommunication;
 import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
 import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KafkaStreams;
@@ -29,9 +31,16 @@ import org.apache.kafka.streams.kstream.KStreamBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * KafkaCommunication class retrieves messages from the topic
@@ -53,6 +62,12 @@ public class KafkaCommunication implements ICommunication {
      * Logger used to log all information in this module
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaCommunication.class);
+    /**
+     * Response to a request which failed
+     *
+     * @see KafkaCommunication#readEvents(IDatabaseReader, Request)
+     */
+    private static final byte[] EMPTY_RESULT = "[]".getBytes(StandardCharsets.UTF_8);
     /**
      * Name of Kafka Topic that request come
      *
@@ -65,6 +80,12 @@ public class KafkaCommunication implements ICommunication {
      * @see KafkaCommunication#getRequests(IPollCallback)
      */
     private final String kafkaResponseTopic;
+    /**
+     * Time in milliseconds to wait for the result of a request, communications.kafka.timeout
+     *
+     * @see KafkaCommunication#readEvents(IDatabaseReader, Request)
+     */
+    private final long timeout;
     /**
      * Kafka Streams allows for performing continuous computation on input coming from one or more input topics and
      * sends output to zero or more output topics.
@@ -87,6 +108,13 @@ public class KafkaCommunication implements ICommunication {
             LOGGER.error(e.getMessage());
             throw new IllegalStateException(e);
         }
+        long tmpTimeout = 30000;
+        try {
+            tmpTimeout = Long.parseLong(PROPERTIES_MANAGER.getProperty("communications.kafka.timeout"));
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Use default communications.kafka.timeout");
+        }
+        this.timeout = tmpTimeout;
     }
 
     /**
@@ -121,7 +149,7 @@ public class KafkaCommunication implements ICommunication {
         builder.stream(Serdes.String(), Serdes.String(), kafkaRequestTopic)
                 .map((key, value) -> new KeyValue<>(key, RDFParser.parse(value)))
                 .filter((key, value) -> value != null) // Filter all non valid RDF.
-                .map((key, value) -> new KeyValue<>(key, callback.onNewRequest(value).getBytes()))
+                .map((key, value) -> new KeyValue<>(key, callback.onNewRequest(value)))
                 .to(kafkaResponseTopic);
 
         this.streams = new KafkaStreams(builder, config);
@@ -143,17 +171,71 @@ public class KafkaCommunication implements ICommunication {
         Objects.requireNonNull(databaseReader);
         this.getRequests(request -> {
             LOGGER.info("Request = " + request);
-            final String[] r = {"[]"};
-            databaseReader.getEvent(request, (t, result) -> {
-                if (t != null) {
-                    LOGGER.error("DatabaseReader error: " + t.getMessage());
-                    return;
+            byte[] result = readEvents(databaseReader, request);
+            LOGGER.info("Result = {} bytes", result.length);
+            return result;
+        });
+    }
+
+    /**
+     * Read the events of a request, written in the JSON array sent as response as they are read
+     *
+     * @param databaseReader {@link IDatabaseReader} Connection to database to get Event
+     * @param request        {@link Request} to execute
+     * @return UTF-8 JSON array of events, empty if the request failed or took more than {@link KafkaCommunication#timeout}
+     * @see KafkaCommunication#timeout
+     */
+    private byte[] readEvents(IDatabaseReader databaseReader, Request request) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        output.write('[');
+        databaseReader.streamEvent(request, new DatabaseReaderStreamCallback() {
+            @Override
+            public void onEvents(List<String> events, Runnable next) {
+                synchronized (output) {
+                    for (String event : events) {
+                        if (output.size() > 1) {
+                            output.write(',');
+                        }
+                        byte[] bytes = event.getBytes(StandardCharsets.UTF_8);
+                        output.write(bytes, 0, bytes.length);
+                    }
                 }
-                r[0] = result;
-            });
-            LOGGER.info("Result = " + r[0]);
-            return r[0];
+                next.run();
+            }
+
+            @Override
+            public void onComplete(Throwable t) {
+                error.set(t);
+                done.countDown();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled.get();
+            }
         });
+        try {
+            if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+                cancelled.set(true);
+                LOGGER.error("DatabaseReader timeout after {} ms", timeout);
+                return EMPTY_RESULT;
+            }
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+            return EMPTY_RESULT;
+        }
+        if (error.get() != null) {
+            LOGGER.error("DatabaseReader error: " + error.get().getMessage());
+            return EMPTY_RESULT;
+        }
+        synchronized (output) {
+            output.write(']');
+            return output.toByteArray();
+        }
     }
 
     /**
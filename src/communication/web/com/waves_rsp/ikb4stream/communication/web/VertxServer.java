@@ -18,15 +18,19 @@
 
 package com.waves_rsp.ikb4stream.communication.web;
 
-import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderStreamCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber;
 import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
 import com.waves_rsp.ikb4stream.core.communication.model.BoundingBox;
 import com.waves_rsp.ikb4stream.core.communication.model.Request;
 import com.waves_rsp.ikb4stream.core.util.Geocoder;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
@@ -36,8 +40,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This server relies on Vertx, to handle the REST requests. It is instanciated by the web communication connector.
@@ -52,10 +59,16 @@ public class VertxServer extends AbstractVerticle {
      * Logger used to log all information in this module
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(VertxServer.class);
+    /**
+     * Time in milliseconds between two comments written to a subscriber, so its connection is not closed while idle
+     *
+     * @see EventPusher
+     */
+    private static final long KEEP_ALIVE = TimeUnit.SECONDS.toMillis(30);
     /**
      * {@link IDatabaseReader} object to read data from database
      *
-     * @see VertxServer#getEvent(Request, DatabaseReaderCallback)
+     * @see VertxServer#streamEvent(Request, DatabaseReaderStreamCallback)
      */
     private final IDatabaseReader databaseReader = WebCommunication.databaseReader;
 
@@ -80,6 +93,8 @@ public class VertxServer extends AbstractVerticle {
         router.route("/anomaly*").handler(BodyHandler.create()); // enable reading of request's body
         router.get("/anomaly").handler(this::getAnomalies);
         router.post("/anomaly").handler(this::getAnomalies);
+        router.get("/anomaly/subscribe").handler(this::subscribeAnomalies);
+        router.post("/anomaly/subscribe").handler(this::subscribeAnomalies);
         vertx
                 .createHttpServer()
                 .requestHandler(router::accept)
@@ -104,6 +119,45 @@ public class VertxServer extends AbstractVerticle {
      * @throws NullPointerException if rc is null
      */
     private void getAnomalies(RoutingContext rc) {
+        Request request = readRequest(rc);
+        if (request == null) {
+            return;
+        }
+        LOGGER.info("Request : {}", request);
+        LOGGER.info("rc= {}", rc);
+        rc.response().putHeader("content-type", "application/json");
+
+        streamEvent(request, new ResponseWriter(rc));
+    }
+
+    /**
+     * Reads a request from a routing context, and sends the events matching it written from now on as server-sent events,
+     * one JSON event per message, until the client disconnects. A page of events cannot be requested.
+     *
+     * @param rc {@link RoutingContext}, which contains the request, and the response
+     * @throws NullPointerException if rc is null
+     */
+    private void subscribeAnomalies(RoutingContext rc) {
+        Request request = readRequest(rc);
+        if (request == null) {
+            return;
+        }
+        if (request.getPageSize() > 0) {
+            LOGGER.info("Received a subscription with a page size");
+            rc.fail(400);
+            return;
+        }
+        LOGGER.info("Subscription : {}", request);
+        new EventPusher(rc).subscribe(request);
+    }
+
+    /**
+     * Reads the request of a routing context, or answers with an error if it's invalid
+     *
+     * @param rc {@link RoutingContext}, which contains the request, and the response
+     * @return {@link Request} read, null if an error is answered
+     */
+    private Request readRequest(RoutingContext rc) {
         Request request;
         try {
             LOGGER.info("Received web request: {}", rc.getBodyAsJson());
@@ -113,57 +167,285 @@ public class VertxServer extends AbstractVerticle {
                         .setStatusCode(400)
                         .putHeader("Content-type", "application/json;charset:utf-8")
                         .end("{\"error\": \"Invalid address\"}");
-                return;
+                return null;
             }
-        } catch (DecodeException | NullPointerException e) {
+        } catch (DecodeException | NullPointerException | ClassCastException | IllegalArgumentException e) {
             LOGGER.info("Received an invalid format request : {} ", e.getMessage());
             LOGGER.debug("DecodeException: {}", e);
             rc.fail(400);
-            return;
+            return null;
         }
-        LOGGER.info("Request : {}", request);
-        LOGGER.info("rc= {}", rc);
-        rc.response().putHeader("content-type", "application/json");
-
-        getEvent(request, (t, result) -> {
-            if (t != null) {
-                LOGGER.error("DatabaseReader error: " + t.getMessage());
-                return;
-            }
-            LOGGER.info("Found events: {}", result);
-            JsonObject response = new JsonObject("{\"events\":" + result + "}");
-            rc.response().end(response.encode());
-        });
+        return request;
     }
 
     /**
-     * Convert a request from Json to Java object
+     * Convert a request from Json to Java object. Optional fields (array of the fields of events to return), pageSize
+     * and continuation (token given with the previous page) request a projection or a page of events, minScore and
+     * sources (array) filter events.
      *
      * @param jsonRequest {@link JsonObject} json formatted request
      * @return {@link Request}
-     * @throws NullPointerException if jsonRequest is null
+     * @throws NullPointerException     if jsonRequest is null
+     * @throws ClassCastException       if an optional field has a wrong type
+     * @throws IllegalArgumentException if an optional field is invalid
      */
     private Request parseRequest(JsonObject jsonRequest) {
         Objects.requireNonNull(jsonRequest);
         Date start = new Date(jsonRequest.getLong("start"));
         Date end = new Date(jsonRequest.getLong("end"));
+        List<String> fields = new ArrayList<>();
+        jsonRequest.getJsonArray("fields", new JsonArray()).forEach(field -> fields.add((String) field));
+        int pageSize = jsonRequest.getInteger("pageSize", 0);
+        String continuation = jsonRequest.getString("continuation");
+        int minScore = jsonRequest.getInteger("minScore", -1);
+        List<String> sources = new ArrayList<>();
+        jsonRequest.getJsonArray("sources", new JsonArray()).forEach(source -> sources.add((String) source));
         String address = jsonRequest.getString("address");
         Geocoder geocoder = Geocoder.geocode(address);
         if (geocoder.getLatLong() == null) {
             LOGGER.warn("Can't geocode this address {}", address);
             return null;
         }
-        return new Request(start, end, new BoundingBox(geocoder.getBbox()), Date.from(Instant.now()));
+        return new Request(start, end, new BoundingBox(geocoder.getBbox()), Date.from(Instant.now()), fields, pageSize,
+                continuation, minScore, sources);
     }
 
     /**
-     * Retrieve an event from database
+     * Retrieve events from database
      *
      * @param request {@link Request} the user web request
-     * @param databaseReaderCallback {@link DatabaseReaderCallback} called when request finished
+     * @param databaseReaderStreamCallback {@link DatabaseReaderStreamCallback} receiving events as they are read
      * @see VertxServer#databaseReader
      */
-    private void getEvent(Request request, DatabaseReaderCallback databaseReaderCallback) {
-        databaseReader.getEvent(request, databaseReaderCallback);
+    private void streamEvent(Request request, DatabaseReaderStreamCallback databaseReaderStreamCallback) {
+        databaseReader.streamEvent(request, databaseReaderStreamCallback);
+    }
+
+    /**
+     * Write events in a chunked response as they are read, {"events":[...]}, followed by "next" with the continuation
+     * token of the next page if there is one. The next events are only read once the previous ones are sent, and no
+     * more after the client disconnected.
+     *
+     * @see VertxServer#streamEvent(Request, DatabaseReaderStreamCallback)
+     */
+    private class ResponseWriter implements DatabaseReaderStreamCallback {
+        /**
+         * {@link RoutingContext} of the request
+         */
+        private final RoutingContext rc;
+        /**
+         * {@link Context} of the request, where the response is written
+         */
+        private final Context context = vertx.getOrCreateContext();
+        /**
+         * true once the client disconnected
+         */
+        private volatile boolean cancelled;
+        /**
+         * true once the beginning of the response is written
+         */
+        private boolean started;
+        /**
+         * Read of the next events, waiting for the response to be written, null if nothing is waiting
+         */
+        private Runnable waiting;
+        /**
+         * Continuation token of the next page, null if there is none
+         */
+        private volatile String continuation;
+
+        /**
+         * Create a {@link ResponseWriter}
+         *
+         * @param rc {@link RoutingContext} of the request
+         */
+        private ResponseWriter(RoutingContext rc) {
+            this.rc = rc;
+            rc.response().setChunked(true).closeHandler(v -> {
+                cancelled = true;
+                resume();
+            });
+        }
+
+        /**
+         * Read the next events if it was waiting
+         */
+        private void resume() {
+            Runnable next = waiting;
+            waiting = null;
+            if (next != null) {
+                next.run();
+            }
+        }
+
+        /**
+         * Write events, then read the next ones once the response can be written again
+         *
+         * @param events JSON of each event
+         * @param next   Read the next events
+         */
+        @Override
+        public void onEvents(List<String> events, Runnable next) {
+            context.runOnContext(v -> {
+                HttpServerResponse response = rc.response();
+                if (cancelled) {
+                    next.run();
+                    return;
+                }
+                for (String event : events) {
+                    response.write(started ? ", " : "{\"events\":[");
+                    response.write(event);
+                    started = true;
+                }
+                if (response.writeQueueFull()) {
+                    waiting = next;
+                    response.drainHandler(d -> resume());
+                } else {
+                    next.run();
+                }
+            });
+        }
+
+        /**
+         * Keep the continuation token to write it at the end of the response
+         *
+         * @param continuation Token of the next page
+         */
+        @Override
+        public void onContinuation(String continuation) {
+            this.continuation = continuation;
+        }
+
+        /**
+         * End the response, or fail it if nothing was written yet. Once events are written the status cannot change, so
+         * the connection is closed before the end of the chunked response and the client sees it as truncated.
+         *
+         * @param t Throwable in case of error during reading
+         */
+        @Override
+        public void onComplete(Throwable t) {
+            context.runOnContext(v -> {
+                if (cancelled) {
+                    return;
+                }
+                if (t != null) {
+                    LOGGER.error("DatabaseReader error: " + t.getMessage());
+                    if (!started) {
+                        rc.fail(t instanceof IllegalArgumentException ? 400 : 500);
+                    } else {
+                        cancelled = true;
+                        rc.response().close();
+                    }
+                    return;
+                }
+                String end = continuation == null ? "]}" : "],\"next\":\"" + continuation + "\"}";
+                rc.response().end(started ? end : "{\"events\":[" + end);
+            });
+        }
+
+        /**
+         * @return true once the client disconnected
+         */
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Write the events given to a subscriber as server-sent events, with a comment every {@link VertxServer#KEEP_ALIVE}
+     * milliseconds. A client which doesn't read them fast enough is disconnected, so events are never buffered without
+     * bound, and it has to subscribe again.
+     *
+     * @see VertxServer#subscribeAnomalies(RoutingContext)
+     */
+    private class EventPusher implements DatabaseReaderSubscriber {
+        /**
+         * {@link RoutingContext} of the subscription
+         */
+        private final RoutingContext rc;
+        /**
+         * {@link Context} of the subscription, where the response is written
+         */
+        private final Context context = vertx.getOrCreateContext();
+        /**
+         * true once the client disconnected or was disconnected
+         */
+        private boolean closed;
+        /**
+         * Timer writing comments to keep the connection open
+         */
+        private long timer;
+        /**
+         * Cancel the subscription, null until it's subscribed
+         */
+        private Runnable unsubscribe;
+
+        /**
+         * Create an {@link EventPusher}
+         *
+         * @param rc {@link RoutingContext} of the subscription
+         */
+        private EventPusher(RoutingContext rc) {
+            this.rc = rc;
+        }
+
+        /**
+         * Subscribe to the events written matching a request, and start the response
+         *
+         * @param request {@link Request} Request the events must match
+         */
+        private void subscribe(Request request) {
+            unsubscribe = databaseReader.subscribe(request, this);
+            rc.response()
+                    .setChunked(true)
+                    .putHeader("content-type", "text/event-stream")
+                    .putHeader("cache-control", "no-cache")
+                    .closeHandler(v -> close())
+                    .write(": subscribed\n\n");
+            timer = vertx.setPeriodic(KEEP_ALIVE, id -> {
+                if (!closed) {
+                    rc.response().write(": keep-alive\n\n");
+                }
+            });
+        }
+
+        /**
+         * Write events, or disconnect the client if it doesn't read the previous ones
+         *
+         * @param events JSON of each event
+         */
+        @Override
+        public void onEvents(List<String> events) {
+            context.runOnContext(v -> {
+                if (closed) {
+                    return;
+                }
+                HttpServerResponse response = rc.response();
+                if (response.writeQueueFull()) {
+                    LOGGER.info("Subscriber too slow, disconnected");
+                    close();
+                    response.end();
+                    return;
+                }
+                for (String event : events) {
+                    response.write("data: " + event + "\n\n");
+                }
+            });
+        }
+
+        /**
+         * Cancel the subscription and the timer once
+         */
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            vertx.cancelTimer(timer);
+            if (unsubscribe != null) {
+                unsubscribe.run();
+            }
+        }
     }
-}
\ No newline at end of file
+}
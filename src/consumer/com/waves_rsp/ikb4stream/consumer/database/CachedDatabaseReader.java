@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.consumer.database;
+
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderStreamCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
+import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IDatabaseReader} keeping the results of the most recent requests of another {@link IDatabaseReader}. Requests are
+ * matched on their bounding box rounded to database.cache.cell degrees and their period rounded to database.cache.period
+ * milliseconds, so a request slightly different from a previous one gets its result. A result is used during database.cache.ttl
+ * milliseconds, while {@link IDatabaseReader#getWatermark()} is unchanged. The least recently used results are evicted when
+ * they take more than database.cache.size bytes.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see DatabaseReaderFactory
+ */
+public class CachedDatabaseReader implements IDatabaseReader {
+    /**
+     * Properties of this class
+     *
+     * @see PropertiesManager
+     * @see PropertiesManager#getProperty(String)
+     * @see PropertiesManager#getInstance(Class)
+     */
+    private static final PropertiesManager PROPERTIES_MANAGER = PropertiesManager.getInstance(CachedDatabaseReader.class);
+    /**
+     * Object to add metrics from this class
+     *
+     * @see CachedDatabaseReader#count(boolean)
+     * @see MetricsLogger#getMetricsLogger()
+     * @see MetricsLogger#log(String, long)
+     */
+    private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachedDatabaseReader.class);
+    /**
+     * Number of requests between two logs of hits and misses
+     *
+     * @see CachedDatabaseReader#count(boolean)
+     */
+    private static final int METRICS_INTERVAL = 100;
+    /**
+     * Separator of events in a JSON array
+     */
+    private static final String SEPARATOR = ", ";
+    /**
+     * {@link IDatabaseReader} whose results are kept
+     */
+    private final IDatabaseReader reader;
+    /**
+     * Maximum size in bytes of all results kept
+     */
+    private final long maxBytes;
+    /**
+     * Time in milliseconds a result is used
+     */
+    private final long ttl;
+    /**
+     * Size in degrees to which coordinates of requests are rounded
+     */
+    private final double cell;
+    /**
+     * Duration in milliseconds to which periods of requests are rounded
+     */
+    private final long period;
+    /**
+     * Results from the least recently used, guarded by itself
+     *
+     * @see CachedDatabaseReader#get(Key)
+     * @see CachedDatabaseReader#put(Key, Entry)
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Size in bytes of {@link CachedDatabaseReader#entries}, guarded by entries
+     */
+    private long bytes;
+    /**
+     * Number of requests which got a result kept
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * Number of requests sent to {@link CachedDatabaseReader#reader}
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a {@link CachedDatabaseReader}
+     *
+     * @param reader   {@link IDatabaseReader} whose results are kept
+     * @param maxBytes Maximum size in bytes of all results kept
+     * @param ttl      Time in milliseconds a result is used
+     * @param cell     Size in degrees to which coordinates of requests are rounded
+     * @param period   Duration in milliseconds to which periods of requests are rounded
+     * @throws NullPointerException     if reader is null
+     * @throws IllegalArgumentException if maxBytes, ttl, cell or period is not positive
+     */
+    CachedDatabaseReader(IDatabaseReader reader, long maxBytes, long ttl, double cell, long period) {
+        if (maxBytes <= 0 || ttl <= 0 || cell <= 0 || period <= 0) {
+            throw new IllegalArgumentException("Cache size, ttl, cell and period must be positive.");
+        }
+        this.reader = Objects.requireNonNull(reader);
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        this.cell = cell;
+        this.period = period;
+    }
+
+    /**
+     * Keep the results of an {@link IDatabaseReader} as configured by database.cache.size, database.cache.ttl,
+     * database.cache.cell and database.cache.period
+     *
+     * @param reader {@link IDatabaseReader} whose results are kept
+     * @return {@link CachedDatabaseReader} of reader, or reader if database.cache.size is 0
+     * @throws NullPointerException if reader is null
+     */
+    static IDatabaseReader of(IDatabaseReader reader) {
+        Objects.requireNonNull(reader);
+        long maxBytes = PROPERTIES_MANAGER.getLongOrDefault("database.cache.size", 0, 64L * 1024 * 1024);
+        if (maxBytes <= 0) {
+            LOGGER.info("Cache of requests is disabled");
+            return reader;
+        }
+        double cell = 0.001;
+        try {
+            cell = Double.parseDouble(PROPERTIES_MANAGER.getProperty("database.cache.cell"));
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Use default database.cache.cell");
+        }
+        long ttl = PROPERTIES_MANAGER.getLongOrDefault("database.cache.ttl", 0, 5000);
+        long period = PROPERTIES_MANAGER.getLongOrDefault("database.cache.period", 0, 60000);
+        return new CachedDatabaseReader(reader, maxBytes, ttl > 0 ? ttl : 5000, cell > 0 ? cell : 0.001, period > 0 ? period : 60000);
+    }
+
+    /**
+     * Get events of a request, from a result kept if there is one
+     *
+     * @param request  {@link Request} Request to execute on database
+     * @param callback {@link DatabaseReaderCallback} Callback use after response of request
+     * @throws NullPointerException if request or callback is null
+     */
+    @Override
+    public void getEvent(Request request, DatabaseReaderCallback callback) {
+        Objects.requireNonNull(request);
+        Objects.requireNonNull(callback);
+        Key key = keyOf(request);
+        Entry entry = get(key);
+        if (entry != null) {
+            callback.onResult(null, "[" + String.join(SEPARATOR, entry.events) + "]");
+            return;
+        }
+        final long watermark = reader.getWatermark();
+        final long start = System.currentTimeMillis();
+        final List<String> events = new ArrayList<>();
+        reader.streamEvent(request, new DatabaseReaderStreamCallback() {
+            private String continuation;
+
+            @Override
+            public void onEvents(List<String> batch, Runnable next) {
+                events.addAll(batch);
+                next.run();
+            }
+
+            @Override
+            public void onContinuation(String continuation) {
+                this.continuation = continuation;
+            }
+
+            @Override
+            public void onComplete(Throwable t) {
+                if (t == null) {
+                    put(key, new Entry(events, continuation, watermark, start));
+                }
+                callback.onResult(t, t == null ? "[" + String.join(SEPARATOR, events) + "]" : "[]");
+            }
+        });
+    }
+
+    /**
+     * Stream events of a request, from a result kept if there is one. A result is only kept if it's read until its end
+     * and takes less than an eighth of database.cache.size bytes.
+     *
+     * @param request  {@link Request} Request to execute on database
+     * @param callback {@link DatabaseReaderStreamCallback} Callback receiving events
+     * @throws NullPointerException if request or callback is null
+     */
+    @Override
+    public void streamEvent(Request request, DatabaseReaderStreamCallback callback) {
+        Objects.requireNonNull(request);
+        Objects.requireNonNull(callback);
+        Key key = keyOf(request);
+        Entry entry = get(key);
+        if (entry != null) {
+            Runnable complete = () -> {
+                if (entry.continuation != null) {
+                    callback.onContinuation(entry.continuation);
+                }
+                callback.onComplete(null);
+            };
+            if (entry.events.isEmpty()) {
+                complete.run();
+            } else {
+                callback.onEvents(entry.events, complete);
+            }
+            return;
+        }
+        final long watermark = reader.getWatermark();
+        final long start = System.currentTimeMillis();
+        reader.streamEvent(request, new DatabaseReaderStreamCallback() {
+            private List<String> events = new ArrayList<>();
+            private long size;
+            private String continuation;
+
+            @Override
+            public void onEvents(List<String> batch, Runnable next) {
+                if (events != null) {
+                    size += sizeOf(batch);
+                    if (size <= maxBytes / 8) {
+                        events.addAll(batch);
+                    } else {
+                        events = null;
+                    }
+                }
+                callback.onEvents(batch, next);
+            }
+
+            @Override
+            public void onContinuation(String continuation) {
+                this.continuation = continuation;
+                callback.onContinuation(continuation);
+            }
+
+            @Override
+            public void onComplete(Throwable t) {
+                if (t == null && events != null && !callback.isCancelled()) {
+                    put(key, new Entry(events, continuation, watermark, start));
+                }
+                callback.onComplete(t);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return callback.isCancelled();
+            }
+        });
+    }
+
+    /**
+     * Subscribe to the events written matching a request, which are never kept
+     *
+     * @param request    {@link Request} Request the events must match
+     * @param subscriber {@link DatabaseReaderSubscriber} Subscriber receiving events
+     * @return Cancel the subscription
+     * @throws UnsupportedOperationException if the {@link IDatabaseReader} whose results are kept cannot notify written events
+     */
+    @Override
+    public Runnable subscribe(Request request, DatabaseReaderSubscriber subscriber) {
+        return reader.subscribe(request, subscriber);
+    }
+
+    /**
+     * @return Watermark of the {@link IDatabaseReader} whose results are kept
+     */
+    @Override
+    public long getWatermark() {
+        return reader.getWatermark();
+    }
+
+    /**
+     * Round the bounding box and the period of a request, other parameters of the request are kept as they are
+     *
+     * @param request {@link Request} to round
+     * @return {@link Key} of request
+     */
+    private Key keyOf(Request request) {
+        LatLong[] latLongs = request.getBoundingBox().getLatLongs();
+        long[] values = new long[latLongs.length * 2 + 2];
+        for (int i = 0; i < latLongs.length; i++) {
+            values[2 * i] = Math.round(latLongs[i].getLatitude() / cell);
+            values[2 * i + 1] = Math.round(latLongs[i].getLongitude() / cell);
+        }
+        values[values.length - 2] = Math.floorDiv(request.getStart().getTime(), period);
+        values[values.length - 1] = Math.floorDiv(request.getEnd().getTime(), period);
+        return new Key(values, Arrays.asList(request.getFields(), request.getPageSize(), request.getContinuation(),
+                request.getMinScore(), request.getSources()));
+    }
+
+    /**
+     * Get a result which is still valid
+     *
+     * @param key {@link Key} of the request
+     * @return Result of key, null if there is none or it's outdated
+     */
+    private Entry get(Key key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && (System.currentTimeMillis() - entry.created >= ttl || entry.watermark != reader.getWatermark())) {
+                entries.remove(key);
+                bytes -= entry.bytes;
+                entry = null;
+            }
+        }
+        count(entry != null);
+        return entry;
+    }
+
+    /**
+     * Keep a result, then evict the least recently used results until they take less than {@link CachedDatabaseReader#maxBytes}
+     *
+     * @param key   {@link Key} of the request
+     * @param entry Result of the request
+     */
+    private void put(Key key, Entry entry) {
+        if (entry.bytes > maxBytes / 8) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            bytes += entry.bytes - (previous == null ? 0 : previous.bytes);
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().bytes;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Count a request, and log hits and misses every {@link CachedDatabaseReader#METRICS_INTERVAL} requests
+     *
+     * @param hit true if the request got a result kept
+     */
+    private void count(boolean hit) {
+        (hit ? hits : misses).incrementAndGet();
+        if ((hits.get() + misses.get()) % METRICS_INTERVAL == 0) {
+            METRICS_LOGGER.log("dbreader_cache_hits", hits.get());
+            METRICS_LOGGER.log("dbreader_cache_misses", misses.get());
+        }
+    }
+
+    /**
+     * @return Number of requests which got a result kept
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of requests sent to the {@link IDatabaseReader} whose results are kept
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Estimate the size in memory of events
+     *
+     * @param events JSON of events
+     * @return Size in bytes of events
+     */
+    private static long sizeOf(List<String> events) {
+        long size = 0;
+        for (String event : events) {
+            size += 2L * (event.length() + SEPARATOR.length());
+        }
+        return size;
+    }
+
+    /**
+     * Rounded bounding box and period of a request, with its other parameters
+     */
+    private static class Key {
+        /**
+         * Rounded latitude and longitude of each point, then rounded start and end
+         */
+        private final long[] values;
+        /**
+         * Other parameters of the request
+         */
+        private final List<Object> parameters;
+        /**
+         * Hash code of {@link Key#values} and {@link Key#parameters}
+         */
+        private final int hash;
+
+        /**
+         * Create a {@link Key}
+         *
+         * @param values     Rounded latitude and longitude of each point, then rounded start and end
+         * @param parameters Other parameters of the request
+         */
+        private Key(long[] values, List<Object> parameters) {
+            this.values = values;
+            this.parameters = parameters;
+            this.hash = 31 * Arrays.hashCode(values) + parameters.hashCode();
+        }
+
+        /**
+         * @param o Object to compare
+         * @return true if o is a {@link Key} with the same values and parameters
+         */
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Key && Arrays.equals(values, ((Key) o).values) && parameters.equals(((Key) o).parameters);
+        }
+
+        /**
+         * @return Hash code of values and parameters
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Result of a request
+     */
+    private static class Entry {
+        /**
+         * JSON of the events found
+         */
+        private final List<String> events;
+        /**
+         * Token given after {@link Entry#events}, null if there is none
+         */
+        private final String continuation;
+        /**
+         * {@link IDatabaseReader#getWatermark()} before the request
+         */
+        private final long watermark;
+        /**
+         * Time in milliseconds of the request
+         */
+        private final long created;
+        /**
+         * Size in bytes of {@link Entry#events}
+         */
+        private final long bytes;
+
+        /**
+         * Create an {@link Entry}
+         *
+         * @param events       JSON of the events found
+         * @param continuation Token given after events, null if there is none
+         * @param watermark    {@link IDatabaseReader#getWatermark()} before the request
+         * @param created      Time in milliseconds of the request
+         */
+        private Entry(List<String> events, String continuation, long watermark, long created) {
+            this.events = Collections.unmodifiableList(events);
+            this.continuation = continuation;
+            this.watermark = watermark;
+            this.created = created;
+            this.bytes = sizeOf(events);
+        }
+    }
+}
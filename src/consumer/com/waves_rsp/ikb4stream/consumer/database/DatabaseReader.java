@@ -18,6 +18,8 @@
 
 package com.waves_rsp.ikb4stream.consumer.database;
 
+import com.mongodb.async.AsyncBatchCursor;
+import com.mongodb.async.SingleResultCallback;
 import com.mongodb.async.client.MongoClient;
 import com.mongodb.async.client.MongoClients;
 import com.mongodb.async.client.MongoCollection;
@@ -25,20 +27,37 @@ import com.mongodb.async.client.MongoDatabase;
 import com.mongodb.client.model.geojson.Polygon;
 import com.mongodb.client.model.geojson.Position;
 import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderStreamCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber;
 import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
+import com.waves_rsp.ikb4stream.core.communication.model.ContinuationToken;
 import com.waves_rsp.ikb4stream.core.communication.model.Request;
+import com.waves_rsp.ikb4stream.core.database.Subscriptions;
 import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
 import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import com.waves_rsp.ikb4stream.core.util.EventCodec;
+import com.waves_rsp.ikb4stream.core.util.TimePartitioner;
 import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
 
 /**
  * DatabaseReader class reads data (Events) from mongodb database
@@ -67,6 +86,14 @@ public class DatabaseReader implements IDatabaseReader {
      * Logger used to log all information in this class
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseReader.class);
+    /**
+     * Order of events in a page, by end then _id
+     *
+     * @see DatabaseReader#readPage(List, Request, Bson, SingleResultCallback)
+     */
+    private static final Comparator<Document> PAGE_ORDER = Comparator
+            .<Document>comparingLong(document -> ((Number) document.get("end")).longValue())
+            .thenComparing(document -> document.getObjectId("_id"));
     /**
      * Single instance of {@link DatabaseReader}
      *
@@ -74,18 +101,46 @@ public class DatabaseReader implements IDatabaseReader {
      * @see DatabaseReader#getInstance()
      */
     private static final DatabaseReader DATABASE_READER = new DatabaseReader();
+    /**
+     * Mongo database containing events
+     *
+     * @see DatabaseReader#collectionsOf(long, SingleResultCallback)
+     */
+    private final MongoDatabase mongoDatabase;
     /**
      * Object use to read Document from MongoDb
      *
      * @see DatabaseReader#getEvent(Request, DatabaseReaderCallback)
      */
     private final MongoCollection<Document> mongoCollection;
+    /**
+     * {@link TimePartitioner} of database.collection chosen by database.partition, null if it's not partitioned
+     *
+     * @see DatabaseReader#collectionsOf(long, SingleResultCallback)
+     */
+    private final TimePartitioner partitioner;
     /**
      * Result limit of request
      *
      * @see DatabaseReader#getEvent(Request, DatabaseReaderCallback)
      */
     private final int limit;
+    /**
+     * Number of events read at once by {@link DatabaseReader#streamEvent(Request, DatabaseReaderStreamCallback)}
+     *
+     * @see EventStream
+     */
+    private final int batchSize;
+    /**
+     * Subscriptions given the events written in Mongo
+     *
+     * @see DatabaseReader#subscribe(Request, DatabaseReaderSubscriber)
+     */
+    private final Subscriptions subscriptions = new Subscriptions();
+    /**
+     * {@link MongoFeeder} reading the events written for {@link DatabaseReader#subscriptions}, null while there is none
+     */
+    private MongoFeeder feeder;
 
     /**
      * The constructor of {@link DatabaseReader}
@@ -100,8 +155,11 @@ public class DatabaseReader implements IDatabaseReader {
         try {
             checkConfiguration();
             final MongoClient mongoClient = MongoClients.create(PROPERTIES_MANAGER.getProperty("database.host"));
-            final MongoDatabase mongoDatabase = mongoClient.getDatabase(PROPERTIES_MANAGER.getProperty("database.datasource"));
-            this.mongoCollection = mongoDatabase.getCollection(PROPERTIES_MANAGER.getProperty("database.collection"));
+            this.mongoDatabase = mongoClient.getDatabase(PROPERTIES_MANAGER.getProperty("database.datasource"));
+            final String collection = PROPERTIES_MANAGER.getProperty("database.collection");
+            this.mongoCollection = mongoDatabase.getCollection(collection);
+            final String partition = PROPERTIES_MANAGER.getPropertyOrDefault("database.partition", "none");
+            this.partitioner = "none".equalsIgnoreCase(partition.trim()) ? null : new TimePartitioner(collection, partition);
         } catch (IllegalArgumentException e) {
             LOGGER.error(e.getMessage());
             throw new IllegalStateException(e);
@@ -113,6 +171,13 @@ public class DatabaseReader implements IDatabaseReader {
             LOGGER.warn("Use default database.limit");
         }
         this.limit = tmp;
+        int tmpBatchSize = 1000;
+        try {
+            tmpBatchSize = Integer.parseInt(PROPERTIES_MANAGER.getProperty("database.reader.batch"));
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Use default database.reader.batch");
+        }
+        this.batchSize = tmpBatchSize;
         LOGGER.info("DatabaseReader has been instantiate");
     }
 
@@ -144,28 +209,439 @@ public class DatabaseReader implements IDatabaseReader {
      * @param callback Callback method call after select operation
      * @see DatabaseReader#limit
      * @see DatabaseReader#mongoCollection
+     * @see DatabaseReader#collectionsOf(Request, SingleResultCallback)
+     * @see DatabaseReader#readAll(List, Request, Bson, DatabaseReaderCallback)
+     * @see DatabaseReader#readPage(List, Request, Bson, SingleResultCallback)
      */
     @Override
     public void getEvent(Request request, DatabaseReaderCallback callback) {
+        final Bson filter;
+        try {
+            filter = filterOf(request);
+        } catch (IllegalArgumentException e) {
+            callback.onResult(e, toJson(null));
+            return;
+        }
+        collectionsOf(request, (collections, t) -> {
+            if (t != null) {
+                callback.onResult(t, toJson(null));
+            } else if (request.getPageSize() > 0) {
+                readPage(collections, request, filter, (page, e) -> callback.onResult(e, toJson(page)));
+            } else {
+                readAll(collections, request, filter, callback);
+            }
+        });
+    }
+
+    /**
+     * Request events from all collections at the same time and merge their results up to {@link DatabaseReader#limit}
+     * events, keeping the order of collections
+     *
+     * @param collections Collections to read, the most recent partitions first
+     * @param request     Request to apply to Mongo
+     * @param filter      Filter of request
+     * @param callback    Callback method call after select operation
+     * @see DatabaseReader#limit
+     */
+    private void readAll(List<MongoCollection<Document>> collections, Request request, Bson filter, DatabaseReaderCallback callback) {
+        final long start = System.currentTimeMillis();
+        if (collections.isEmpty()) {
+            callback.onResult(null, toJson(null));
+            return;
+        }
+        List<List<Document>> results = new ArrayList<>(Collections.nCopies(collections.size(), null));
+        AtomicInteger remaining = new AtomicInteger(collections.size());
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        Bson projection = projectionOf(request);
+        for (int i = 0; i < collections.size(); i++) {
+            final int index = i;
+            collections.get(i).find(filter).projection(projection).limit(limit).into(new ArrayList<Document>(), (result, e) -> {
+                if (e != null) {
+                    firstError.compareAndSet(null, e);
+                }
+                synchronized (results) {
+                    results.set(index, result);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    List<Document> merged;
+                    synchronized (results) {
+                        merged = results.stream().filter(Objects::nonNull).flatMap(List::stream)
+                                .limit(limit).collect(Collectors.toList());
+                    }
+                    METRICS_LOGGER.log("time_dbreader", System.currentTimeMillis() - start);
+                    callback.onResult(firstError.get(), toJson(merged));
+                }
+            });
+        }
+    }
+
+    /**
+     * This method requests events from mongodb database like {@link DatabaseReader#getEvent(Request, DatabaseReaderCallback)},
+     * reading them {@link DatabaseReader#batchSize} at a time, and partitions one after the other, the most recent first.
+     * If request has a page size, its page is read at once and followed by a continuation token if it's full.
+     *
+     * @param request  Request to apply to Mongo
+     * @param callback Callback receiving events as they are read
+     * @throws NullPointerException if request or callback is null
+     * @see EventStream
+     * @see DatabaseReader#readPage(List, Request, Bson, SingleResultCallback)
+     */
+    @Override
+    public void streamEvent(Request request, DatabaseReaderStreamCallback callback) {
+        Objects.requireNonNull(request);
+        Objects.requireNonNull(callback);
+        final Bson filter;
+        try {
+            filter = filterOf(request);
+        } catch (IllegalArgumentException e) {
+            callback.onComplete(e);
+            return;
+        }
+        collectionsOf(request, (collections, t) -> {
+            if (t != null) {
+                callback.onComplete(t);
+                return;
+            }
+            if (request.getPageSize() == 0) {
+                new EventStream(filter, projectionOf(request), collections, callback).nextCollection();
+                return;
+            }
+            readPage(collections, request, filter, (page, e) -> {
+                if (e != null) {
+                    callback.onComplete(e);
+                    return;
+                }
+                if (page.isEmpty()) {
+                    callback.onComplete(null);
+                    return;
+                }
+                Document last = page.get(page.size() - 1);
+                String continuation = page.size() < Math.min(request.getPageSize(), limit) ? null : continuationOf(last);
+                callback.onEvents(page.stream().map(DatabaseReader::inflateDescription).map(Document::toJson)
+                        .collect(Collectors.toList()), () -> {
+                    if (continuation != null) {
+                        callback.onContinuation(continuation);
+                    }
+                    callback.onComplete(null);
+                });
+            });
+        });
+    }
+
+    /**
+     * Get the collections which may contain events of a request: {@link DatabaseReader#mongoCollection}, or its partitions
+     * from the start of the request, the most recent first
+     *
+     * @param request  Request to apply to Mongo
+     * @param callback Callback receiving the collections
+     * @see DatabaseReader#collectionsOf(long, SingleResultCallback)
+     */
+    private void collectionsOf(Request request, SingleResultCallback<List<MongoCollection<Document>>> callback) {
+        collectionsOf(request.getStart().getTime(), (collections, t) -> {
+            if (partitioner != null && collections != null) {
+                METRICS_LOGGER.log("dbreader_partitions", collections.size());
+            }
+            callback.onResult(collections, t);
+        });
+    }
+
+    /**
+     * Subscribe to the events written or replaced in Mongo from now on matching a request. The first subscription starts a
+     * {@link MongoFeeder} which polls every database.subscription.interval milliseconds the events written in all
+     * collections, and it's stopped once the last subscription is cancelled.
+     *
+     * @param request    {@link Request} Request the events must match
+     * @param subscriber {@link DatabaseReaderSubscriber} Subscriber receiving events
+     * @return Cancel the subscription
+     * @throws NullPointerException if request or subscriber is null
+     */
+    @Override
+    public synchronized Runnable subscribe(Request request, DatabaseReaderSubscriber subscriber) {
+        Runnable cancel = subscriptions.add(request, subscriber);
+        if (feeder == null) {
+            feeder = new MongoFeeder(this, subscriptions::publish, 0,
+                    PROPERTIES_MANAGER.getLongOrDefault("database.subscription.interval", 1, 1000),
+                    PROPERTIES_MANAGER.getLongOrDefault("database.reader.margin", 0, 60000), () -> { });
+            feeder.start();
+            LOGGER.info("Events written in Mongo are read for subscribers");
+        }
+        return () -> unsubscribe(cancel);
+    }
+
+    /**
+     * Cancel a subscription, and stop {@link DatabaseReader#feeder} if it was the last one
+     *
+     * @param cancel Cancel the subscription
+     */
+    private synchronized void unsubscribe(Runnable cancel) {
+        cancel.run();
+        if (subscriptions.isEmpty() && feeder != null) {
+            feeder.stop();
+            feeder = null;
+            LOGGER.info("No more subscriber, events written in Mongo are not read anymore");
+        }
+    }
+
+    /**
+     * Get the collections which may contain events ending at or after a time: {@link DatabaseReader#mongoCollection}, or
+     * its partitions from this time, the most recent first. An event is written in the partition of its end, so an event
+     * which started long before still is in one of them.
+     *
+     * @param from     Time in milliseconds
+     * @param callback Callback receiving the collections
+     * @see DatabaseReader#partitioner
+     */
+    void collectionsOf(long from, SingleResultCallback<List<MongoCollection<Document>>> callback) {
+        if (partitioner == null) {
+            callback.onResult(Collections.singletonList(mongoCollection), null);
+            return;
+        }
+        mongoDatabase.listCollectionNames().into(new ArrayList<String>(), (names, t) -> {
+            if (t != null) {
+                callback.onResult(null, t);
+                return;
+            }
+            List<MongoCollection<Document>> partitions = names.stream()
+                    .filter(name -> partitioner.overlaps(name, from, Long.MAX_VALUE))
+                    .sorted(Comparator.reverseOrder())
+                    .map(mongoDatabase::getCollection)
+                    .collect(Collectors.toList());
+            callback.onResult(partitions, null);
+        });
+    }
+
+    /**
+     * Read a page of events sorted by end then _id. Each collection gives its first page, which are merged.
+     *
+     * @param collections Collections to read
+     * @param request     Request giving the page size, at most {@link DatabaseReader#limit}
+     * @param filter      Filter of request
+     * @param callback    Callback receiving the page
+     * @see DatabaseReader#PAGE_ORDER
+     */
+    private void readPage(List<MongoCollection<Document>> collections, Request request, Bson filter, SingleResultCallback<List<Document>> callback) {
+        final long start = System.currentTimeMillis();
+        final int pageSize = Math.min(request.getPageSize(), limit);
+        if (collections.isEmpty()) {
+            callback.onResult(Collections.emptyList(), null);
+            return;
+        }
+        List<Document> merged = new ArrayList<>();
+        AtomicInteger remaining = new AtomicInteger(collections.size());
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        Bson projection = projectionOf(request);
+        for (MongoCollection<Document> collection : collections) {
+            collection.find(filter).projection(projection).sort(ascending("end", "_id")).limit(pageSize)
+                    .into(new ArrayList<Document>(), (result, t) -> {
+                        if (t != null) {
+                            firstError.compareAndSet(null, t);
+                        }
+                        synchronized (merged) {
+                            if (result != null) {
+                                merged.addAll(result);
+                            }
+                        }
+                        if (remaining.decrementAndGet() == 0) {
+                            List<Document> page;
+                            synchronized (merged) {
+                                page = merged.stream().sorted(PAGE_ORDER).limit(pageSize).collect(Collectors.toList());
+                            }
+                            METRICS_LOGGER.log("time_dbreader", System.currentTimeMillis() - start);
+                            callback.onResult(firstError.get() == null ? page : null, firstError.get());
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Build the token of the page following a document
+     *
+     * @param document Last document of a page
+     * @return Continuation token following document
+     */
+    private static String continuationOf(Document document) {
+        return new ContinuationToken(((Number) document.get("end")).longValue(), document.getObjectId("_id").toHexString()).encode();
+    }
+
+    /**
+     * Build the projection of the fields of a request, which always contains end and _id so the next page can be requested
+     *
+     * @param request Request to apply to Mongo
+     * @return Projection, null to get all fields
+     */
+    private static Bson projectionOf(Request request) {
+        if (request.getFields().isEmpty()) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>(request.getFields());
+        fields.add("end");
+        fields.add("_id");
+        if (fields.contains("description")) {
+            fields.add(EventCodec.COMPRESSED_DESCRIPTION_FIELD);
+        }
+        return include(fields.stream().distinct().collect(Collectors.toList()));
+    }
+
+    /**
+     * Build the filter of events in the bounding box and the period of a request
+     *
+     * @param request Request to apply to Mongo
+     * @return Filter of events with the minimum score and the sources of request, after its continuation token if there is one
+     * @throws IllegalArgumentException if the continuation token of request was not given by this class
+     */
+    private static Bson filterOf(Request request) {
         List<Position> polygon = Arrays.stream(request.getBoundingBox().getLatLongs())
                 .map(l -> new Position(l.getLongitude(), l.getLatitude()))
                 .collect(Collectors.toList());
-        final long start = System.currentTimeMillis();
-        this.mongoCollection
-                .find(and(
-                        geoIntersects("location", new Polygon(polygon)),
-                        lte("start", request.getEnd().getTime()),
-                        gte("end", request.getStart().getTime())
-                ))
-                .limit(limit)
-                .into(new ArrayList<Document>(),
-                        (result, t) -> {
-                            long time = System.currentTimeMillis() - start;
-                            METRICS_LOGGER.log("time_dbreader", time);
-                            callback.onResult(
-                                    t,
-                                    "[" + result.stream().map(Document::toJson).collect(Collectors.joining(", ")) + "]"
-                            );
-                        });
+        List<Bson> filters = new ArrayList<>();
+        filters.add(geoIntersects("location", new Polygon(polygon)));
+        filters.add(lte("start", request.getEnd().getTime()));
+        filters.add(gte("end", request.getStart().getTime()));
+        if (request.getMinScore() >= 0) {
+            filters.add(gte("score", request.getMinScore()));
+        }
+        if (!request.getSources().isEmpty()) {
+            filters.add(in("source", request.getSources()));
+        }
+        ContinuationToken continuation = request.getContinuation();
+        if (continuation != null) {
+            ObjectId id = new ObjectId(continuation.getId());
+            filters.add(or(
+                    gt("end", continuation.getEnd()),
+                    and(eq("end", continuation.getEnd()), gt("_id", id))
+            ));
+        }
+        return and(filters);
+    }
+
+    /**
+     * Convert documents to a JSON array
+     *
+     * @param documents Documents to convert, null gives an empty array
+     * @return JSON array of documents
+     * @see DatabaseReader#inflateDescription(Document)
+     */
+    static String toJson(List<Document> documents) {
+        if (documents == null) {
+            return "[]";
+        }
+        return "[" + documents.stream().map(DatabaseReader::inflateDescription).map(Document::toJson)
+                .collect(Collectors.joining(", ")) + "]";
+    }
+
+    /**
+     * Replace a description stored deflated by {@link EventCodec} with its text, as it's only needed in a response
+     *
+     * @param document Document read
+     * @return document with its description as text
+     * @throws NullPointerException if document is null
+     */
+    static Document inflateDescription(Document document) {
+        Object compressed = document.remove(EventCodec.COMPRESSED_DESCRIPTION_FIELD);
+        if (compressed instanceof Binary) {
+            document.put("description", EventCodec.inflate(((Binary) compressed).getData()));
+        }
+        return document;
+    }
+
+    /**
+     * Read of the events of a request with a cursor per collection, which gives {@link DatabaseReader#batchSize} events
+     * at a time to a {@link DatabaseReaderStreamCallback} and waits it consumes them before reading the next ones
+     *
+     * @see DatabaseReader#streamEvent(Request, DatabaseReaderStreamCallback)
+     */
+    private class EventStream {
+        /**
+         * Filter of the request
+         */
+        private final Bson filter;
+        /**
+         * Projection of the request, null to get all fields
+         */
+        private final Bson projection;
+        /**
+         * Collections which are not read yet
+         */
+        private final Iterator<MongoCollection<Document>> collections;
+        /**
+         * Callback receiving the events
+         */
+        private final DatabaseReaderStreamCallback callback;
+        /**
+         * Time in milliseconds of the beginning of the read
+         */
+        private final long start = System.currentTimeMillis();
+        /**
+         * Number of events which can still be read before reaching {@link DatabaseReader#limit}
+         */
+        private int remaining = limit;
+
+        /**
+         * Create an {@link EventStream}
+         *
+         * @param filter      Filter of the request
+         * @param projection  Projection of the request, null to get all fields
+         * @param collections Collections to read in this order
+         * @param callback    Callback receiving the events
+         */
+        private EventStream(Bson filter, Bson projection, List<MongoCollection<Document>> collections, DatabaseReaderStreamCallback callback) {
+            this.filter = filter;
+            this.projection = projection;
+            this.collections = collections.iterator();
+            this.callback = callback;
+        }
+
+        /**
+         * Open a cursor on the next collection, or complete the read if there is none or the limit is reached
+         */
+        private void nextCollection() {
+            if (remaining <= 0 || !collections.hasNext() || callback.isCancelled()) {
+                METRICS_LOGGER.log("time_dbreader", System.currentTimeMillis() - start);
+                callback.onComplete(null);
+                return;
+            }
+            collections.next().find(filter).projection(projection).limit(remaining).batchSize(Math.min(batchSize, remaining)).batchCursor((cursor, t) -> {
+                if (t != null) {
+                    callback.onComplete(t);
+                    return;
+                }
+                nextBatch(cursor);
+            });
+        }
+
+        /**
+         * Read the next events of a cursor and give them to {@link EventStream#callback}
+         *
+         * @param cursor Cursor of the collection being read
+         */
+        private void nextBatch(AsyncBatchCursor<Document> cursor) {
+            if (remaining <= 0 || callback.isCancelled()) {
+                cursor.close();
+                nextCollection();
+                return;
+            }
+            cursor.next((documents, t) -> {
+                if (t != null) {
+                    cursor.close();
+                    callback.onComplete(t);
+                    return;
+                }
+                if (documents == null) {
+                    cursor.close();
+                    nextCollection();
+                    return;
+                }
+                if (documents.isEmpty()) {
+                    nextBatch(cursor);
+                    return;
+                }
+                List<String> events = documents.stream().limit(remaining)
+                        .map(DatabaseReader::inflateDescription)
+                        .map(Document::toJson)
+                        .collect(Collectors.toList());
+                remaining -= events.size();
+                callback.onEvents(events, () -> nextBatch(cursor));
+            });
+        }
     }
 }
\ No newline at end of file
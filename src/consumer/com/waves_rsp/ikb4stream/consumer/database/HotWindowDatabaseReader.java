@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.consumer.database;
+
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderStreamCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
+import com.waves_rsp.ikb4stream.core.database.EmbeddedDatabase;
+import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
+import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IDatabaseReader} answering requests about the last database.hot.window milliseconds from an {@link EmbeddedDatabase}
+ * in memory, fed from Mongo by a {@link MongoFeeder}. Older requests, pages of events and requests received before
+ * the {@link EmbeddedDatabase} is warm are sent to Mongo. Events read from memory have no _id. Subscriptions are given
+ * to Mongo, so they do not depend on the window.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see DatabaseReaderFactory
+ */
+public class HotWindowDatabaseReader implements IDatabaseReader {
+    /**
+     * Properties of this class
+     *
+     * @see PropertiesManager
+     * @see PropertiesManager#getProperty(String)
+     * @see PropertiesManager#getInstance(Class)
+     */
+    private static final PropertiesManager PROPERTIES_MANAGER = PropertiesManager.getInstance(HotWindowDatabaseReader.class);
+    /**
+     * Object to add metrics from this class
+     *
+     * @see HotWindowDatabaseReader#readerOf(Request)
+     * @see MetricsLogger#getMetricsLogger()
+     * @see MetricsLogger#log(String, long)
+     */
+    private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotWindowDatabaseReader.class);
+    /**
+     * Number of requests between two logs of requests answered from memory and from Mongo
+     *
+     * @see HotWindowDatabaseReader#readerOf(Request)
+     */
+    private static final int METRICS_INTERVAL = 100;
+    /**
+     * {@link IDatabaseReader} of all events
+     */
+    private final IDatabaseReader cold;
+    /**
+     * {@link EmbeddedDatabase} of the events which ended during the window
+     */
+    private final EmbeddedDatabase hot;
+    /**
+     * Duration of the window in milliseconds
+     */
+    private final long window;
+    /**
+     * true once {@link HotWindowDatabaseReader#hot} contains all events of the window
+     *
+     * @see HotWindowDatabaseReader#setWarm()
+     */
+    private volatile boolean warm;
+    /**
+     * Number of requests answered from memory
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * Number of requests sent to {@link HotWindowDatabaseReader#cold}
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a {@link HotWindowDatabaseReader}
+     *
+     * @param cold   {@link IDatabaseReader} of all events
+     * @param hot    {@link EmbeddedDatabase} of the events which ended during the window, removing the older ones
+     * @param window Duration of the window in milliseconds
+     * @throws NullPointerException     if cold or hot is null
+     * @throws IllegalArgumentException if window is not positive
+     */
+    HotWindowDatabaseReader(IDatabaseReader cold, EmbeddedDatabase hot, long window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be positive.");
+        }
+        this.cold = Objects.requireNonNull(cold);
+        this.hot = Objects.requireNonNull(hot);
+        this.window = window;
+    }
+
+    /**
+     * Answer recent requests from memory as configured by database.hot.window, database.hot.interval, database.reader.margin
+     * and database.hot.cell
+     *
+     * @param reader {@link DatabaseReader} of all events
+     * @return {@link HotWindowDatabaseReader} of reader warming up, or reader if database.hot.window is not set
+     * @throws NullPointerException if reader is null
+     */
+    static IDatabaseReader of(DatabaseReader reader) {
+        Objects.requireNonNull(reader);
+        long window = PROPERTIES_MANAGER.getLongOrDefault("database.hot.window", 0, 0);
+        if (window == 0) {
+            return reader;
+        }
+        double cell = 0.1;
+        try {
+            cell = Double.parseDouble(PROPERTIES_MANAGER.getProperty("database.hot.cell"));
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Use default database.hot.cell");
+        }
+        EmbeddedDatabase hot = EmbeddedDatabase.createInMemory(cell > 0 ? cell : 0.1,
+                (int) PROPERTIES_MANAGER.getLongOrDefault("database.limit", 1, 50000), window);
+        HotWindowDatabaseReader hotWindow = new HotWindowDatabaseReader(reader, hot, window);
+        new MongoFeeder(reader, events -> hot.insertEvents(events, e -> {
+            if (e != null) {
+                LOGGER.warn("Hot window cannot keep events: {}", e.getMessage());
+            }
+        }), window, PROPERTIES_MANAGER.getLongOrDefault("database.hot.interval", 1, 1000),
+                PROPERTIES_MANAGER.getLongOrDefault("database.reader.margin", 0, 60000), hotWindow::setWarm).start();
+        LOGGER.info("Events of the last {} ms are kept in memory", window);
+        return hotWindow;
+    }
+
+    /**
+     * Mark events of the whole window as loaded in memory, so requests of the window are answered from it
+     */
+    void setWarm() {
+        warm = true;
+        LOGGER.info("Hot window is warm");
+    }
+
+    /**
+     * Get events of a request, from memory if it's about the window
+     *
+     * @param request  {@link Request} Request to execute on database
+     * @param callback {@link DatabaseReaderCallback} Callback use after response of request
+     * @throws NullPointerException if request or callback is null
+     */
+    @Override
+    public void getEvent(Request request, DatabaseReaderCallback callback) {
+        readerOf(request).getEvent(request, callback);
+    }
+
+    /**
+     * Stream events of a request, from memory if it's about the window
+     *
+     * @param request  {@link Request} Request to execute on database
+     * @param callback {@link DatabaseReaderStreamCallback} Callback receiving events
+     * @throws NullPointerException if request or callback is null
+     */
+    @Override
+    public void streamEvent(Request request, DatabaseReaderStreamCallback callback) {
+        readerOf(request).streamEvent(request, callback);
+    }
+
+    /**
+     * Subscribe to the events written in Mongo from now on matching a request
+     *
+     * @param request    {@link Request} Request the events must match
+     * @param subscriber {@link DatabaseReaderSubscriber} Subscriber receiving events
+     * @return Cancel the subscription
+     * @throws NullPointerException if request or subscriber is null
+     * @see DatabaseReader#subscribe(Request, DatabaseReaderSubscriber)
+     */
+    @Override
+    public Runnable subscribe(Request request, DatabaseReaderSubscriber subscriber) {
+        return cold.subscribe(request, subscriber);
+    }
+
+    /**
+     * @return Watermark of the events in memory, which changes when events are read from Mongo
+     */
+    @Override
+    public long getWatermark() {
+        return hot.getWatermark();
+    }
+
+    /**
+     * Choose the {@link IDatabaseReader} of a request: {@link HotWindowDatabaseReader#hot} if it's warm, the request starts
+     * during the window and doesn't ask for a page, {@link HotWindowDatabaseReader#cold} otherwise
+     *
+     * @param request {@link Request} to answer
+     * @return {@link IDatabaseReader} answering request
+     * @throws NullPointerException if request is null
+     */
+    private IDatabaseReader readerOf(Request request) {
+        Objects.requireNonNull(request);
+        boolean inWindow = warm && request.getPageSize() == 0
+                && request.getStart().getTime() >= System.currentTimeMillis() - window;
+        (inWindow ? hits : misses).incrementAndGet();
+        if ((hits.get() + misses.get()) % METRICS_INTERVAL == 0) {
+            METRICS_LOGGER.log("dbreader_hot_hits", hits.get());
+            METRICS_LOGGER.log("dbreader_hot_misses", misses.get());
+        }
+        return inWindow ? hot : cold;
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.consumer.database;
+
+import com.mongodb.async.client.MongoCollection;
+import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.util.EventCodec;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Sorts.ascending;
+
+/**
+ * Give the events written in Mongo to a consumer, for the {@link HotWindowDatabaseReader} and the subscriptions of
+ * {@link DatabaseReader}. With a window, it first loads the events which ended during the window in _id order. Then it
+ * polls every interval the events written since, in {@value EventCodec#UPDATED_FIELD} order, so each poll uses the index on
+ * this field and an event replaced in Mongo is read again. As {@value EventCodec#UPDATED_FIELD} is given by the producer
+ * before the write, each poll reads again the last margin milliseconds and skips the documents already read with the same
+ * {@value EventCodec#UPDATED_FIELD}. Documents written without this field are only loaded with the window.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see HotWindowDatabaseReader
+ * @see DatabaseReader#subscribe(com.waves_rsp.ikb4stream.core.communication.model.Request, com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber)
+ */
+class MongoFeeder {
+    /**
+     * Object to add metrics from this class
+     *
+     * @see MongoFeeder#give(String, List)
+     * @see MetricsLogger#getMetricsLogger()
+     * @see MetricsLogger#log(String, long)
+     */
+    private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MongoFeeder.class);
+    /**
+     * {@link EventCodec} decoding documents read
+     */
+    private static final EventCodec EVENT_CODEC = new EventCodec();
+    /**
+     * Maximum number of documents read at once from a collection
+     */
+    private static final int READ_LIMIT = 10000;
+    /**
+     * Lowest _id
+     */
+    private static final ObjectId MIN_ID = new ObjectId(new Date(0), 0, (short) 0, 0);
+    /**
+     * {@link DatabaseReader} giving the collections to read
+     */
+    private final DatabaseReader reader;
+    /**
+     * Consumer of the events read
+     */
+    private final Consumer<List<Event>> consumer;
+    /**
+     * Duration of the window in milliseconds, 0 to read the events written from the start in all collections
+     */
+    private final long window;
+    /**
+     * Time in milliseconds between two polls
+     */
+    private final long interval;
+    /**
+     * Time in milliseconds before the last {@value EventCodec#UPDATED_FIELD} read from which a poll reads again, as it's
+     * given by the clock of the producer before the write
+     */
+    private final long margin;
+    /**
+     * Called once all events of the window are loaded
+     */
+    private final Runnable onWarm;
+    /**
+     * {@value EventCodec#UPDATED_FIELD} from which the next poll reads each collection, only used by one poll at a time.
+     * A collection created after the first poll is read from the beginning.
+     */
+    private final Map<String, Long> from = new HashMap<>();
+    /**
+     * {@value EventCodec#UPDATED_FIELD} of the documents read which the next poll reads again, by _id, of each
+     * collection, only used by one poll at a time
+     */
+    private final Map<String, Map<ObjectId, Long>> recent = new HashMap<>();
+    /**
+     * Thread scheduling polls
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create a {@link MongoFeeder}
+     *
+     * @param reader   {@link DatabaseReader} giving the collections to read
+     * @param consumer Consumer of the events read, called by one thread at a time
+     * @param window   Duration of the window in milliseconds, 0 to read the events written from the start in all collections
+     * @param interval Time in milliseconds between two polls
+     * @param margin   Time in milliseconds before the last write read from which a poll reads again
+     * @param onWarm   Called once all events of the window are loaded
+     * @throws NullPointerException if reader, consumer or onWarm is null
+     */
+    MongoFeeder(DatabaseReader reader, Consumer<List<Event>> consumer, long window, long interval, long margin, Runnable onWarm) {
+        this.reader = Objects.requireNonNull(reader);
+        this.consumer = Objects.requireNonNull(consumer);
+        this.onWarm = Objects.requireNonNull(onWarm);
+        this.window = window;
+        this.interval = interval;
+        this.margin = margin;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mongo-feeder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start loading the events of the window, or the events written from now on
+     */
+    void start() {
+        scheduler.execute(() -> poll(true));
+    }
+
+    /**
+     * Stop polling, a poll running may still give its events
+     */
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Read the collections which may contain events of the window, then schedule the next poll
+     *
+     * @param first true for the first poll, which loads the events of the window
+     */
+    private void poll(boolean first) {
+        final long now = System.currentTimeMillis();
+        reader.collectionsOf(window == 0 ? 0 : now - window, (collections, t) -> {
+            if (t != null) {
+                LOGGER.warn("Mongo feeder cannot list collections: {}", t.getMessage());
+                schedule(first);
+                return;
+            }
+            readAll(collections.iterator(), first, now);
+        });
+    }
+
+    /**
+     * Read collections one after the other
+     *
+     * @param collections Collections not read yet
+     * @param first       true for the first poll, which loads the events of the window
+     * @param now         Time in milliseconds of the beginning of the poll
+     */
+    private void readAll(Iterator<MongoCollection<Document>> collections, boolean first, long now) {
+        if (!collections.hasNext()) {
+            if (first) {
+                onWarm.run();
+            }
+            schedule(false);
+            return;
+        }
+        MongoCollection<RawBsonDocument> collection = collections.next().withDocumentClass(RawBsonDocument.class);
+        String name = collection.getNamespace().getCollectionName();
+        Runnable next = () -> readAll(collections, first, now);
+        if (first && window > 0) {
+            // Documents written before the warm up which ended before the window are not read again
+            from.merge(name, now - margin, Math::max);
+            warm(collection, now, MIN_ID, next);
+            return;
+        }
+        if (first) {
+            from.merge(name, now, Math::max);
+        }
+        read(collection, gte(EventCodec.UPDATED_FIELD, new Date(from.getOrDefault(name, 0L))), next);
+    }
+
+    /**
+     * Load the documents of a collection which ended during the window, {@link MongoFeeder#READ_LIMIT} at a time
+     *
+     * @param collection Collection to read
+     * @param now        Time in milliseconds of the beginning of the poll
+     * @param after      _id of the last document read
+     * @param next       Called once the collection is read, even after an error
+     */
+    private void warm(MongoCollection<RawBsonDocument> collection, long now, ObjectId after, Runnable next) {
+        String name = collection.getNamespace().getCollectionName();
+        collection.find(and(gt("_id", after), gte("end", now - window))).sort(ascending("_id")).limit(READ_LIMIT)
+                .into(new ArrayList<RawBsonDocument>(), (documents, t) -> {
+                    if (t != null) {
+                        LOGGER.warn("Mongo feeder cannot read {}: {}", name, t.getMessage());
+                        next.run();
+                        return;
+                    }
+                    give(name, documents);
+                    if (documents.size() == READ_LIMIT) {
+                        warm(collection, now, documents.get(READ_LIMIT - 1).getObjectId("_id").getValue(), next);
+                    } else {
+                        next.run();
+                    }
+                });
+    }
+
+    /**
+     * Read the documents of a collection written since a time in {@value EventCodec#UPDATED_FIELD} then _id order,
+     * {@link MongoFeeder#READ_LIMIT} at a time
+     *
+     * @param collection Collection to read
+     * @param filter     Filter of the documents following the last one read
+     * @param next       Called once the collection is read, even after an error
+     */
+    private void read(MongoCollection<RawBsonDocument> collection, Bson filter, Runnable next) {
+        String name = collection.getNamespace().getCollectionName();
+        collection.find(filter).sort(ascending(EventCodec.UPDATED_FIELD, "_id")).limit(READ_LIMIT).into(new ArrayList<RawBsonDocument>(), (documents, t) -> {
+            if (t != null) {
+                LOGGER.warn("Mongo feeder cannot read {}: {}", name, t.getMessage());
+                next.run();
+                return;
+            }
+            give(name, documents);
+            if (documents.size() < READ_LIMIT) {
+                forget(name);
+                next.run();
+                return;
+            }
+            RawBsonDocument last = documents.get(READ_LIMIT - 1);
+            Date updated = new Date(last.getDateTime(EventCodec.UPDATED_FIELD).getValue());
+            ObjectId id = last.getObjectId("_id").getValue();
+            read(collection, or(gt(EventCodec.UPDATED_FIELD, updated), and(eq(EventCodec.UPDATED_FIELD, updated), gt("_id", id))), next);
+        });
+    }
+
+    /**
+     * Give to {@link MongoFeeder#consumer} the documents not read yet with the same {@value EventCodec#UPDATED_FIELD}
+     *
+     * @param name      Name of the collection read
+     * @param documents Documents read
+     */
+    private void give(String name, List<RawBsonDocument> documents) {
+        Map<ObjectId, Long> seen = recent.computeIfAbsent(name, n -> new HashMap<>());
+        List<Event> events = new ArrayList<>(documents.size());
+        for (RawBsonDocument document : documents) {
+            BsonValue value = document.get(EventCodec.UPDATED_FIELD);
+            if (value != null && value.isDateTime()) {
+                long updated = value.asDateTime().getValue();
+                if (Long.valueOf(updated).equals(seen.put(document.getObjectId("_id").getValue(), updated))) {
+                    continue;
+                }
+                from.merge(name, updated - margin, Math::max);
+            }
+            try {
+                events.add(document.decode(EVENT_CODEC));
+            } catch (RuntimeException e) {
+                LOGGER.debug("Mongo feeder skips an invalid event of {}: {}", name, e.getMessage());
+            }
+        }
+        if (!events.isEmpty()) {
+            try {
+                consumer.accept(events);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Mongo feeder consumer failed: {}", e.getMessage());
+            }
+            METRICS_LOGGER.log("dbreader_feeder_read", events.size());
+        }
+    }
+
+    /**
+     * Forget the documents read of a collection which will not be read again by the next poll
+     *
+     * @param name Name of the collection read
+     */
+    private void forget(String name) {
+        Long since = from.get(name);
+        Map<ObjectId, Long> seen = recent.get(name);
+        if (since != null && seen != null) {
+            seen.values().removeIf(updated -> updated < since);
+        }
+    }
+
+    /**
+     * Schedule the next poll after {@link MongoFeeder#interval} milliseconds
+     *
+     * @param first true if the first poll failed
+     */
+    private void schedule(boolean first) {
+        try {
+            scheduler.schedule(() -> poll(first), interval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Mongo feeder is stopped");
+        }
+    }
+}
@@ -18,8 +18,9 @@
 
 package com.waves_rsp.ikb4stream.consumer.manager;
 
-import com.waves_rsp.ikb4stream.consumer.database.DatabaseReader;
+import com.waves_rsp.ikb4stream.consumer.database.DatabaseReaderFactory;
 import com.waves_rsp.ikb4stream.core.communication.ICommunication;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
 import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
 import com.waves_rsp.ikb4stream.core.util.ClassManager;
 import com.waves_rsp.ikb4stream.core.util.JarLoader;
@@ -75,15 +76,15 @@ public class CommunicationManager {
      */
     private final ClassLoader parent = CommunicationManager.class.getClassLoader();
     /**
-     * {@link DatabaseReader} to read event from Database
+     * {@link IDatabaseReader} to read event from Database, chosen by {@link DatabaseReaderFactory}
      */
-    private final DatabaseReader databaseReader;
+    private final IDatabaseReader databaseReader;
 
     /**
      * The constructor of {@link CommunicationManager}
      */
     private CommunicationManager() {
-        this.databaseReader = DatabaseReader.getInstance();
+        this.databaseReader = DatabaseReaderFactory.getDatabaseReader();
     }
 
     /**
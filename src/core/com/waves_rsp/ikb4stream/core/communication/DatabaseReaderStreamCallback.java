@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.core.communication;
+
+import java.util.List;
+
+/**
+ * Callback receiving the result of a request as the database reads it, so the result is never held in memory at once.
+ * The next events are only read once the previous ones are consumed, so a slow consumer slows down the read.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see IDatabaseReader#streamEvent(com.waves_rsp.ikb4stream.core.communication.model.Request, DatabaseReaderStreamCallback)
+ */
+public interface DatabaseReaderStreamCallback {
+    /**
+     * Method call with the next events read, never empty
+     *
+     * @param events JSON of each event
+     * @param next   Read the next events, to run once events are consumed. Nothing else is read until it runs
+     */
+    void onEvents(List<String> events, Runnable next);
+
+    /**
+     * Method call before {@link DatabaseReaderStreamCallback#onComplete(Throwable)} when a page of events is full, so
+     * more events may follow
+     *
+     * @param continuation Token to give in the {@link com.waves_rsp.ikb4stream.core.communication.model.Request Request}
+     *                     of the next page
+     */
+    default void onContinuation(String continuation) {
+        // Pages are not used by default
+    }
+
+    /**
+     * Method call once, after the last events or after an error
+     *
+     * @param t Throwable in case of error during reading, null otherwise
+     */
+    void onComplete(Throwable t);
+
+    /**
+     * Check if the events are not needed anymore, such as after the client disconnected. The read stops at the next
+     * call of next given to {@link DatabaseReaderStreamCallback#onEvents(List, Runnable)}
+     *
+     * @return true to stop reading
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
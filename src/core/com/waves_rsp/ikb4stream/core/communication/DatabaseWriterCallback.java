@@ -16,12 +16,12 @@
  *
  */
 
-package com.waves_rsp.ikb4stream.producer.model;
+package com.waves_rsp.ikb4stream.core.communication;
 
 import com.waves_rsp.ikb4stream.core.model.Event;
 
 /**
- * Functional interface called in {@link com.waves_rsp.ikb4stream.producer.DatabaseWriter#insertEvent(Event, DatabaseWriterCallback)}
+ * Functional interface called in {@link IDatabaseWriter#insertEvent(Event, DatabaseWriterCallback)}
  * after insertion in database
  *
  * @author ikb4stream
@@ -30,7 +30,7 @@ import com.waves_rsp.ikb4stream.core.model.Event;
 @FunctionalInterface
 public interface DatabaseWriterCallback {
     /**
-     * Method called after insertion in database {@link com.waves_rsp.ikb4stream.producer.DatabaseWriter#insertEvent(Event, DatabaseWriterCallback)}
+     * Method called after insertion in database {@link IDatabaseWriter#insertEvent(Event, DatabaseWriterCallback)}
      *
      * @param t Throwable in case of error
      */
@@ -18,15 +18,20 @@
 
 package com.waves_rsp.ikb4stream.core.communication;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.waves_rsp.ikb4stream.core.communication.model.Request;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
 /**
  * Interface of {@link com.waves_rsp.ikb4stream.consumer.database.DatabaseReader DatabaseReader} given to {@link ICommunication}
  *
  * @author ikb4stream
  * @version 1.0
  */
-@FunctionalInterface
 public interface IDatabaseReader {
     /**
      * Get Event based on {@link Request}
@@ -35,4 +40,54 @@ public interface IDatabaseReader {
      * @param callback {@link DatabaseReaderCallback} Callback use after response of request
      */
     void getEvent(Request request, DatabaseReaderCallback callback);
+
+    /**
+     * Get Event based on {@link Request}, given to callback as they are read. By default the whole result of
+     * {@link IDatabaseReader#getEvent(Request, DatabaseReaderCallback)} is given at once.
+     *
+     * @param request  {@link Request} Request to execute on database
+     * @param callback {@link DatabaseReaderStreamCallback} Callback receiving events
+     * @throws NullPointerException if callback is null
+     */
+    default void streamEvent(Request request, DatabaseReaderStreamCallback callback) {
+        Objects.requireNonNull(callback);
+        getEvent(request, (t, result) -> {
+            if (t != null) {
+                callback.onComplete(t);
+                return;
+            }
+            List<String> events = new ArrayList<>();
+            try {
+                new ObjectMapper().readTree(result).forEach(event -> events.add(event.toString()));
+            } catch (IOException e) {
+                callback.onComplete(e);
+                return;
+            }
+            if (events.isEmpty()) {
+                callback.onComplete(null);
+            } else {
+                callback.onEvents(events, () -> callback.onComplete(null));
+            }
+        });
+    }
+
+    /**
+     * Subscribe to the events written or replaced from now on which match a {@link Request}, with its projection, minimum
+     * score and sources. Its page size and continuation are not used.
+     *
+     * @param request    {@link Request} Request the events must match
+     * @param subscriber {@link DatabaseReaderSubscriber} Subscriber receiving events
+     * @return Cancel the subscription
+     * @throws NullPointerException if request or subscriber is null
+     */
+    Runnable subscribe(Request request, DatabaseReaderSubscriber subscriber);
+
+    /**
+     * Get a value which changes when events are written, so a result read before can be detected as outdated
+     *
+     * @return Current value, always 0 if writes are not visible by this reader
+     */
+    default long getWatermark() {
+        return 0;
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+package com.waves_rsp.ikb4stream.core.communication;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+
+import java.util.List;
+
+/**
+ * Interface of the storage written by the producer, such as {@link com.waves_rsp.ikb4stream.producer.DatabaseWriter DatabaseWriter}
+ *
+ * @author ikb4stream
+ * @version 1.0
+ */
+public interface IDatabaseWriter {
+    /**
+     * Insert an {@link Event}, an {@link Event} with the same {@link com.waves_rsp.ikb4stream.core.util.EventHash EventHash} is replaced
+     *
+     * @param event    {@link Event} to insert
+     * @param callback {@link DatabaseWriterCallback} called after inserting
+     */
+    void insertEvent(Event event, DatabaseWriterCallback callback);
+
+    /**
+     * Insert a batch of {@link Event}, an invalid {@link Event} does not prevent the others from being inserted
+     *
+     * @param events   List of {@link Event} to insert
+     * @param callback {@link DatabaseWriterCallback} called once after inserting the whole batch, with the first error
+     */
+    void insertEvents(List<Event> events, DatabaseWriterCallback callback);
+
+    /**
+     * Keep expired {@link Event} apart from the others
+     *
+     * @param events   List of expired {@link Event}
+     * @param callback {@link DatabaseWriterCallback} called once after archiving the whole batch, with the first error
+     */
+    void archiveEvents(List<Event> events, DatabaseWriterCallback callback);
+
+    /**
+     * Write now {@link Event} waiting to be inserted
+     */
+    void flush();
+}
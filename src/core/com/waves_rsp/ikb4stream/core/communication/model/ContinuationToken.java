@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.core.communication.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Position after the last event of a page, given to the client as an opaque string to request the next page. Pages are
+ * sorted by end then identifier, so the next page starts after this end and identifier.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see Request#getContinuation()
+ */
+public class ContinuationToken {
+    /**
+     * End in milliseconds of the last event of the page
+     */
+    private final long end;
+    /**
+     * Identifier of the last event of the page, such as its Mongo _id
+     */
+    private final String id;
+
+    /**
+     * Create a {@link ContinuationToken}
+     *
+     * @param end End in milliseconds of the last event of the page
+     * @param id  Identifier of the last event of the page
+     * @throws NullPointerException if id is null
+     */
+    public ContinuationToken(long end, String id) {
+        this.end = end;
+        this.id = Objects.requireNonNull(id);
+    }
+
+    /**
+     * Read a token given by {@link ContinuationToken#encode()}
+     *
+     * @param token Token given to the client
+     * @return {@link ContinuationToken} of token
+     * @throws NullPointerException     if token is null
+     * @throws IllegalArgumentException if token is invalid
+     */
+    public static ContinuationToken decode(String token) {
+        Objects.requireNonNull(token);
+        String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int separator = value.indexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid continuation token " + token + ".");
+        }
+        return new ContinuationToken(Long.parseLong(value.substring(0, separator)), value.substring(separator + 1));
+    }
+
+    /**
+     * @return Token to give to the client
+     */
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((end + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return End in milliseconds of the last event of the page
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return Identifier of the last event of the page
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @param o Object to compare
+     * @return true if o is a {@link ContinuationToken} with the same end and identifier
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ContinuationToken that = (ContinuationToken) o;
+        return end == that.end && id.equals(that.id);
+    }
+
+    /**
+     * @return Hash code of end and identifier
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(end, id);
+    }
+
+    /**
+     * @return Token to give to the client
+     */
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -18,7 +18,10 @@
 
 package com.waves_rsp.ikb4stream.core.communication.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -44,6 +47,26 @@ public class Request {
      * The reception date of the request
      */
     private final Date requestReception;
+    /**
+     * Fields of events to return, all fields if it's empty
+     */
+    private final List<String> fields;
+    /**
+     * Maximum number of events returned, 0 to return all events without paging
+     */
+    private final int pageSize;
+    /**
+     * Position after the last event of the previous page, null for the first page
+     */
+    private final ContinuationToken continuation;
+    /**
+     * Minimum score of events, -1 to get events whatever their score
+     */
+    private final int minScore;
+    /**
+     * Sources of events, events of all sources if it's empty
+     */
+    private final List<String> sources;
 
     /**
      * The Request class constructor
@@ -55,15 +78,72 @@ public class Request {
      * @throws NullPointerException if one of params is null
      */
     public Request(Date start, Date end, BoundingBox boundingBox, Date requestReception) {
+        this(start, end, boundingBox, requestReception, Collections.emptyList(), 0, null);
+    }
+
+    /**
+     * The Request class constructor, for a projection or a page of events
+     *
+     * @param start            is the starting date of an anomaly
+     * @param end              is the end date of an anomaly
+     * @param boundingBox      coordinates
+     * @param requestReception is the reception date of the request
+     * @param fields           fields of events to return, all fields if it's empty
+     * @param pageSize         maximum number of events returned, 0 to return all events without paging
+     * @param continuation     token given with the previous page, null for the first page
+     * @throws NullPointerException     if one of params other than continuation is null
+     * @throws IllegalArgumentException if a field is empty or starts with $, if pageSize is negative, or if continuation is
+     *                                  invalid or given without pageSize
+     */
+    public Request(Date start, Date end, BoundingBox boundingBox, Date requestReception, List<String> fields, int pageSize, String continuation) {
+        this(start, end, boundingBox, requestReception, fields, pageSize, continuation, -1, Collections.emptyList());
+    }
+
+    /**
+     * The Request class constructor, for a projection or a page of events with a minimum score and some sources
+     *
+     * @param start            is the starting date of an anomaly
+     * @param end              is the end date of an anomaly
+     * @param boundingBox      coordinates
+     * @param requestReception is the reception date of the request
+     * @param fields           fields of events to return, all fields if it's empty
+     * @param pageSize         maximum number of events returned, 0 to return all events without paging
+     * @param continuation     token given with the previous page, null for the first page
+     * @param minScore         minimum score of events, -1 to get events whatever their score
+     * @param sources          sources of events, events of all sources if it's empty
+     * @throws NullPointerException     if one of params other than continuation is null
+     * @throws IllegalArgumentException if a field is empty or starts with $, if pageSize is negative, if continuation is
+     *                                  invalid or given without pageSize, or if minScore is not in [-1, 100]
+     */
+    public Request(Date start, Date end, BoundingBox boundingBox, Date requestReception, List<String> fields, int pageSize,
+                   String continuation, int minScore, List<String> sources) {
         Objects.requireNonNull(start);
         Objects.requireNonNull(end);
         Objects.requireNonNull(boundingBox);
         Objects.requireNonNull(requestReception);
+        Objects.requireNonNull(fields);
+        for (String field : fields) {
+            if (field.isEmpty() || field.startsWith("$")) {
+                throw new IllegalArgumentException("Invalid field " + field + ".");
+            }
+        }
+        if (pageSize < 0 || (continuation != null && pageSize == 0)) {
+            throw new IllegalArgumentException("Page size must be positive to get a page.");
+        }
+        if (minScore < -1 || minScore > 100) {
+            throw new IllegalArgumentException("Minimum score must be between -1 and 100.");
+        }
+        sources.forEach(Objects::requireNonNull);
 
         this.start = start;
         this.end = end;
         this.boundingBox = boundingBox;
         this.requestReception = requestReception;
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+        this.pageSize = pageSize;
+        this.continuation = continuation == null ? null : ContinuationToken.decode(continuation);
+        this.minScore = minScore;
+        this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
     }
 
     /**
@@ -96,6 +176,56 @@ public class Request {
         return boundingBox;
     }
 
+    /**
+     * Get fields to return
+     *
+     * @return the fields of events to return, all fields if it's empty
+     * @see Request#fields
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Get page size
+     *
+     * @return the maximum number of events returned, 0 to return all events without paging
+     * @see Request#pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Get the position of the page
+     *
+     * @return the position after the last event of the previous page, null for the first page
+     * @see Request#continuation
+     */
+    public ContinuationToken getContinuation() {
+        return continuation;
+    }
+
+    /**
+     * Get minimum score
+     *
+     * @return the minimum score of events, -1 to get events whatever their score
+     * @see Request#minScore
+     */
+    public int getMinScore() {
+        return minScore;
+    }
+
+    /**
+     * Get sources
+     *
+     * @return the sources of events, events of all sources if it's empty
+     * @see Request#sources
+     */
+    public List<String> getSources() {
+        return sources;
+    }
+
     /**
      * Represent that object in string
      *
@@ -104,6 +234,11 @@ public class Request {
      * @see Request#end
      * @see Request#boundingBox
      * @see Request#requestReception
+     * @see Request#fields
+     * @see Request#pageSize
+     * @see Request#continuation
+     * @see Request#minScore
+     * @see Request#sources
      */
     @Override
     public String toString() {
@@ -112,6 +247,11 @@ public class Request {
                 ", end=" + end +
                 ", boundingBox=" + boundingBox +
                 ", requestReception=" + requestReception +
+                ", fields=" + fields +
+                ", pageSize=" + pageSize +
+                ", continuation=" + continuation +
+                ", minScore=" + minScore +
+                ", sources=" + sources +
                 '}';
     }
 }
@@ -0,0 +1,573 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+package com.waves_rsp.ikb4stream.core.database;
+
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderStreamCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseWriterCallback;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseWriter;
+import com.waves_rsp.ikb4stream.core.communication.model.ContinuationToken;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
+import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import com.waves_rsp.ikb4stream.core.util.EventCodec;
+import com.waves_rsp.ikb4stream.core.util.LatestValue;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.EncoderContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Storage of {@link Event} inside the process, selected by database.type = embedded, for small deployments and benchmarks
+ * without Mongo. {@link Event} are kept in a {@link SpatialIndex}. If database.embedded.path is set, they are appended to an
+ * {@link EventLog} instead and read from it by each request, so a producer and a consumer can share it. Results have the
+ * same fields as the ones read from Mongo. Subscribers are given the {@link Event} written which match their request, as
+ * they are inserted or, with a file, as they are read from it.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see IDatabaseReader
+ * @see IDatabaseWriter
+ */
+public class EmbeddedDatabase implements IDatabaseReader, IDatabaseWriter {
+    /**
+     * Properties of this class
+     *
+     * @see PropertiesManager
+     * @see PropertiesManager#getProperty(String)
+     * @see PropertiesManager#getInstance(Class)
+     */
+    private static final PropertiesManager PROPERTIES_MANAGER = PropertiesManager.getInstance(EmbeddedDatabase.class);
+    /**
+     * Object to add metrics from this class
+     *
+     * @see MetricsLogger#getMetricsLogger()
+     * @see MetricsLogger#log(String, long)
+     */
+    private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedDatabase.class);
+    /**
+     * Interval in milliseconds between two removals of expired {@link Event}
+     *
+     * @see EmbeddedDatabase#purge()
+     */
+    private static final long PURGE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * Number of {@link Event} converted at once by {@link EmbeddedDatabase#streamEvent(Request, DatabaseReaderStreamCallback)},
+     * database.reader.batch
+     *
+     * @see EmbeddedDatabase#stream(List, int, DatabaseReaderStreamCallback, long)
+     */
+    private static final int BATCH_SIZE = (int) PROPERTIES_MANAGER.getLongOrDefault("database.reader.batch", 1, 1000);
+    /**
+     * Time in milliseconds between two reads of {@link EmbeddedDatabase#log} while there are subscribers
+     *
+     * @see EmbeddedDatabase#subscribe(Request, DatabaseReaderSubscriber)
+     */
+    private static final long FOLLOW_INTERVAL = PROPERTIES_MANAGER.getLongOrDefault("database.subscription.interval", 1, 1000);
+    /**
+     * {@link EventCodec} used to convert results to JSON
+     *
+     * @see EmbeddedDatabase#toJson(Event, List)
+     */
+    private static final EventCodec EVENT_CODEC = new EventCodec(LatestValue.getInstance()::keyOf);
+    /**
+     * Identifier of an {@link Event} in a {@link ContinuationToken}
+     *
+     * @see EmbeddedDatabase#find(Request)
+     */
+    private static final Function<Event, String> KEY_OF = LatestValue.getInstance()::keyOf;
+    /**
+     * Single instance of {@link EmbeddedDatabase}
+     *
+     * @see EmbeddedDatabase#getInstance()
+     */
+    private static final EmbeddedDatabase EMBEDDED_DATABASE = create();
+    /**
+     * {@link Event} which can be requested
+     */
+    private final SpatialIndex index;
+    /**
+     * File where {@link Event} are written, null to keep them in memory only
+     */
+    private final EventLog log;
+    /**
+     * Result limit of request
+     */
+    private final int limit;
+    /**
+     * Time in milliseconds after its end an {@link Event} is removed, 0 to keep it
+     */
+    private final long ttl;
+    /**
+     * Position in {@link EmbeddedDatabase#log} of the next record to index
+     */
+    private long logPosition;
+    /**
+     * Time in milliseconds of the last removal of expired {@link Event}
+     */
+    private long lastPurge = System.currentTimeMillis();
+    /**
+     * Number of changes of {@link EmbeddedDatabase#index} which are not appended to {@link EmbeddedDatabase#log}
+     *
+     * @see EmbeddedDatabase#getWatermark()
+     */
+    private final AtomicLong changes = new AtomicLong();
+    /**
+     * Subscribers to the {@link Event} written
+     */
+    private final Subscriptions subscriptions = new Subscriptions();
+    /**
+     * Thread reading {@link EmbeddedDatabase#log} for subscribers, null until the first subscription
+     */
+    private ScheduledExecutorService follower;
+
+    /**
+     * Create an {@link EmbeddedDatabase}
+     *
+     * @param log      File where {@link Event} are written, null to keep them in memory only
+     * @param cellSize Size in degrees of the cells of {@link SpatialIndex}
+     * @param limit    Result limit of request
+     * @param ttl      Time in milliseconds after its end an {@link Event} is removed, 0 to keep it
+     * @throws IllegalArgumentException if cellSize or limit is not positive, or if ttl is negative
+     */
+    EmbeddedDatabase(EventLog log, double cellSize, int limit, long ttl) {
+        if (limit <= 0 || ttl < 0) {
+            throw new IllegalArgumentException("Limit must be positive and ttl cannot be negative.");
+        }
+        this.index = new SpatialIndex(cellSize, LatestValue.getInstance()::keyOf);
+        this.log = log;
+        this.limit = limit;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Create the {@link EmbeddedDatabase} configured by database.embedded.path, database.embedded.size, database.embedded.cell,
+     * database.limit and database.ttl
+     *
+     * @return {@link EmbeddedDatabase} configured
+     * @throws IllegalStateException if the file cannot be opened
+     */
+    private static EmbeddedDatabase create() {
+        EventLog log = null;
+        long ttl = PROPERTIES_MANAGER.getLongOrDefault("database.ttl", 0, 0);
+        String path = PROPERTIES_MANAGER.getPropertyOrDefault("database.embedded.path", null);
+        if (path != null) {
+            try {
+                log = new EventLog(Paths.get(path), PROPERTIES_MANAGER.getLongOrDefault("database.embedded.size", 1, 64L * 1024 * 1024), KEY_OF, ttl);
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Embedded database file {} cannot be opened: {}", path, e.getMessage());
+                throw new IllegalStateException(e);
+            }
+        }
+        double cellSize = 1;
+        try {
+            cellSize = Double.parseDouble(PROPERTIES_MANAGER.getProperty("database.embedded.cell"));
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Use default database.embedded.cell");
+        }
+        EmbeddedDatabase database = new EmbeddedDatabase(log, cellSize > 0 ? cellSize : 1,
+                (int) PROPERTIES_MANAGER.getLongOrDefault("database.limit", 1, 50000), ttl);
+        LOGGER.info("EmbeddedDatabase has been instantiate");
+        return database;
+    }
+
+    /**
+     * Get instance of Singleton EmbeddedDatabase
+     *
+     * @return an instance of {@link EmbeddedDatabase}
+     * @see EmbeddedDatabase#EMBEDDED_DATABASE
+     */
+    public static EmbeddedDatabase getInstance() {
+        return EMBEDDED_DATABASE;
+    }
+
+    /**
+     * Create an {@link EmbeddedDatabase} in memory, independent of the one configured by database.type
+     *
+     * @param cellSize Size in degrees of the cells of its spatial index
+     * @param limit    Result limit of request
+     * @param ttl      Time in milliseconds after its end an {@link Event} is removed, 0 to keep it
+     * @return New {@link EmbeddedDatabase} without file
+     * @throws IllegalArgumentException if cellSize or limit is not positive, or if ttl is negative
+     */
+    public static EmbeddedDatabase createInMemory(double cellSize, int limit, long ttl) {
+        return new EmbeddedDatabase(null, cellSize, limit, ttl);
+    }
+
+    /**
+     * Insert an {@link Event}, an {@link Event} with the same {@link LatestValue#keyOf(Event)} is replaced
+     *
+     * @param event    {@link Event} to insert
+     * @param callback {@link DatabaseWriterCallback} called after inserting, with an {@link IllegalStateException}
+     *                 if the file is full
+     * @throws NullPointerException if event or callback is null
+     */
+    @Override
+    public void insertEvent(Event event, DatabaseWriterCallback callback) {
+        Objects.requireNonNull(event);
+        Objects.requireNonNull(callback);
+        try {
+            store(event);
+        } catch (RuntimeException e) {
+            callback.onResult(e);
+            return;
+        }
+        publish(Collections.singletonList(event));
+        callback.onResult(null);
+    }
+
+    /**
+     * Insert a batch of {@link Event}, an {@link Event} which cannot be inserted does not prevent the others from being inserted
+     *
+     * @param events   List of {@link Event} to insert
+     * @param callback {@link DatabaseWriterCallback} called once after inserting the whole batch, with the first error
+     * @throws NullPointerException if events or callback is null
+     */
+    @Override
+    public void insertEvents(List<Event> events, DatabaseWriterCallback callback) {
+        Objects.requireNonNull(events);
+        Objects.requireNonNull(callback);
+        final long start = System.currentTimeMillis();
+        Throwable firstError = null;
+        List<Event> stored = new ArrayList<>(events.size());
+        for (Event event : events) {
+            try {
+                store(event);
+                stored.add(event);
+            } catch (RuntimeException e) {
+                if (firstError == null) {
+                    firstError = e;
+                }
+            }
+        }
+        METRICS_LOGGER.log("time_embedded_insert", System.currentTimeMillis() - start);
+        publish(stored);
+        callback.onResult(firstError);
+    }
+
+    /**
+     * Expired {@link Event} are not kept by {@link EmbeddedDatabase}
+     *
+     * @param events   List of expired {@link Event}
+     * @param callback {@link DatabaseWriterCallback} called without error
+     * @throws NullPointerException if events or callback is null
+     */
+    @Override
+    public void archiveEvents(List<Event> events, DatabaseWriterCallback callback) {
+        Objects.requireNonNull(events);
+        Objects.requireNonNull(callback);
+        LOGGER.debug("{} expired event(s) are not archived by the embedded database", events.size());
+        callback.onResult(null);
+    }
+
+    /**
+     * {@link Event} are written synchronously, nothing is waiting
+     */
+    @Override
+    public void flush() {
+        // Nothing is buffered
+    }
+
+    /**
+     * Write an {@link Event} in {@link EmbeddedDatabase#log}, or in {@link EmbeddedDatabase#index} if there is no file
+     *
+     * @param event {@link Event} to write
+     * @throws NullPointerException     if event is null
+     * @throws IllegalArgumentException if event is larger than a file
+     * @throws IllegalStateException    if the file cannot be written or is written by another process
+     */
+    private void store(Event event) {
+        Objects.requireNonNull(event);
+        if (log != null) {
+            log.append(event);
+        } else {
+            index.put(event);
+            changes.incrementAndGet();
+            purge();
+        }
+    }
+
+    /**
+     * Give {@link Event} inserted to the subscribers, if they are not written in {@link EmbeddedDatabase#log} which
+     * gives them once read
+     *
+     * @param events {@link Event} inserted
+     */
+    private void publish(List<Event> events) {
+        if (log == null && !subscriptions.isEmpty()) {
+            subscriptions.publish(events);
+        }
+    }
+
+    /**
+     * Subscribe to the {@link Event} written from now on matching a request. With a file, it is read every
+     * database.subscription.interval milliseconds, so {@link Event} written by another process are given too.
+     *
+     * @param request    Request the {@link Event} must match
+     * @param subscriber Subscriber receiving the {@link Event}
+     * @return Cancel the subscription
+     * @throws NullPointerException if request or subscriber is null
+     */
+    @Override
+    public Runnable subscribe(Request request, DatabaseReaderSubscriber subscriber) {
+        Objects.requireNonNull(request);
+        Objects.requireNonNull(subscriber);
+        if (log == null) {
+            return subscriptions.add(request, subscriber);
+        }
+        synchronized (this) {
+            // Events written before are indexed first, so they are not given to the subscriber
+            catchUp();
+            if (follower == null) {
+                follower = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "embedded-database-follower");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                follower.scheduleWithFixedDelay(this::follow, FOLLOW_INTERVAL, FOLLOW_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+            return subscriptions.add(request, subscriber);
+        }
+    }
+
+    /**
+     * Read {@link EmbeddedDatabase#log} if there are subscribers
+     */
+    private void follow() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        try {
+            catchUp();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Embedded database file cannot be read for subscribers: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * This method requests {@link Event} intersecting the bounding box of the request during its period
+     *
+     * @param request  Request to apply
+     * @param callback Callback method call after select operation
+     * @throws NullPointerException if request or callback is null
+     * @see EmbeddedDatabase#limit
+     */
+    @Override
+    public void getEvent(Request request, DatabaseReaderCallback callback) {
+        Objects.requireNonNull(request);
+        Objects.requireNonNull(callback);
+        final long start = System.currentTimeMillis();
+        String result;
+        try {
+            List<Event> events = find(request);
+            result = "[" + events.stream().map(event -> toJson(event, request.getFields())).collect(Collectors.joining(", ")) + "]";
+        } catch (RuntimeException e) {
+            callback.onResult(e, "[]");
+            return;
+        }
+        METRICS_LOGGER.log("time_dbreader", System.currentTimeMillis() - start);
+        callback.onResult(null, result);
+    }
+
+    /**
+     * This method requests {@link Event} like {@link EmbeddedDatabase#getEvent(Request, DatabaseReaderCallback)}, converting
+     * them to JSON only when callback is ready to receive them
+     *
+     * @param request  Request to apply
+     * @param callback Callback receiving events
+     * @throws NullPointerException if request or callback is null
+     */
+    @Override
+    public void streamEvent(Request request, DatabaseReaderStreamCallback callback) {
+        Objects.requireNonNull(request);
+        Objects.requireNonNull(callback);
+        final long start = System.currentTimeMillis();
+        List<Event> events;
+        try {
+            events = find(request);
+        } catch (RuntimeException e) {
+            callback.onComplete(e);
+            return;
+        }
+        String continuation = null;
+        if (request.getPageSize() > 0 && events.size() == Math.min(request.getPageSize(), limit)) {
+            Event last = events.get(events.size() - 1);
+            continuation = new ContinuationToken(last.getEnd().getTime(), KEY_OF.apply(last)).encode();
+        }
+        stream(events, 0, request.getFields(), continuation, callback, start);
+    }
+
+    /**
+     * Find the {@link Event} of a request with its minimum score and its sources, or of its page sorted by end then
+     * {@link LatestValue#keyOf(Event)}
+     *
+     * @param request Request to apply
+     * @return {@link Event} found
+     */
+    private List<Event> find(Request request) {
+        catchUp();
+        purge();
+        LatLong[] area = request.getBoundingBox().getLatLongs();
+        long start = request.getStart().getTime();
+        long end = request.getEnd().getTime();
+        int minScore = request.getMinScore();
+        List<String> sources = request.getSources();
+        Predicate<Event> filter = event -> event.getScore() >= minScore && (sources.isEmpty() || sources.contains(event.getSource()));
+        int pageSize = Math.min(request.getPageSize(), limit);
+        if (pageSize == 0) {
+            return index.find(area, start, end, filter, limit);
+        }
+        ContinuationToken after = request.getContinuation();
+        return index.find(area, start, end, filter, Integer.MAX_VALUE).stream()
+                .map(event -> new AbstractMap.SimpleImmutableEntry<>(KEY_OF.apply(event), event))
+                .filter(entry -> after == null || isAfter(entry.getValue().getEnd().getTime(), entry.getKey(), after))
+                .sorted(Comparator.<Map.Entry<String, Event>>comparingLong(entry -> entry.getValue().getEnd().getTime())
+                        .thenComparing(Map.Entry::getKey))
+                .limit(pageSize)
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Check if an {@link Event} follows the previous page
+     *
+     * @param end   End in milliseconds of the {@link Event}
+     * @param key   {@link LatestValue#keyOf(Event)} of the {@link Event}
+     * @param after Position after the last {@link Event} of the previous page
+     * @return true if the {@link Event} is sorted after the previous page
+     */
+    private static boolean isAfter(long end, String key, ContinuationToken after) {
+        return end > after.getEnd() || (end == after.getEnd() && key.compareTo(after.getId()) > 0);
+    }
+
+    /**
+     * Give the next {@link EmbeddedDatabase#BATCH_SIZE} {@link Event} to a callback
+     *
+     * @param events       {@link Event} found
+     * @param from         Index of the first {@link Event} to give
+     * @param fields       Fields to give, all fields if it's empty
+     * @param continuation Token given after the last {@link Event}, null if there is none
+     * @param callback     Callback receiving events
+     * @param start        Time in milliseconds of the beginning of the request
+     */
+    private static void stream(List<Event> events, int from, List<String> fields, String continuation,
+                               DatabaseReaderStreamCallback callback, long start) {
+        if (from >= events.size() || callback.isCancelled()) {
+            METRICS_LOGGER.log("time_dbreader", System.currentTimeMillis() - start);
+            if (continuation != null && !callback.isCancelled()) {
+                callback.onContinuation(continuation);
+            }
+            callback.onComplete(null);
+            return;
+        }
+        int to = Math.min(events.size(), from + BATCH_SIZE);
+        List<String> batch = events.subList(from, to).stream().map(event -> toJson(event, fields)).collect(Collectors.toList());
+        callback.onEvents(batch, () -> stream(events, to, fields, continuation, callback, start));
+    }
+
+    /**
+     * Get a value which changes when an {@link Event} is written, by this process or another one sharing
+     * {@link EmbeddedDatabase#log}, or removed
+     *
+     * @return Current value
+     */
+    @Override
+    public long getWatermark() {
+        return changes.get() + (log == null ? 0 : log.getEnd());
+    }
+
+    /**
+     * Index {@link Event} appended to {@link EmbeddedDatabase#log} since the last call, and give them to the subscribers
+     */
+    private synchronized void catchUp() {
+        if (log == null) {
+            return;
+        }
+        if (subscriptions.isEmpty()) {
+            logPosition = log.read(logPosition, index::put);
+            return;
+        }
+        List<Event> events = new ArrayList<>();
+        logPosition = log.read(logPosition, event -> {
+            index.put(event);
+            events.add(event);
+        });
+        subscriptions.publish(events);
+    }
+
+    /**
+     * Remove {@link Event} which ended more than {@link EmbeddedDatabase#ttl} milliseconds ago, at most once per minute
+     */
+    private void purge() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (ttl == 0 || now - lastPurge < PURGE_INTERVAL) {
+                return;
+            }
+            lastPurge = now;
+        }
+        int removed = index.removeIf(event -> event.getEnd().getTime() + ttl < now);
+        if (removed > 0) {
+            changes.incrementAndGet();
+        }
+        METRICS_LOGGER.log("embedded_purged", removed);
+    }
+
+    /**
+     * Convert an {@link Event} to JSON, with the fields written by {@link EventCodec} but {@value EventCodec#UPDATED_FIELD},
+     * as the time it was written is not kept
+     *
+     * @param event  {@link Event} to convert
+     * @param fields Fields to keep, with end and hash which identify a page, all fields if it's empty
+     * @return JSON of event
+     */
+    static String toJson(Event event, List<String> fields) {
+        BsonDocument document = new BsonDocument();
+        EVENT_CODEC.encode(new BsonDocumentWriter(document), event, EncoderContext.builder().build());
+        document.remove(EventCodec.UPDATED_FIELD);
+        if (!fields.isEmpty()) {
+            document.keySet().removeIf(field -> !fields.contains(field) && !"end".equals(field) && !EventCodec.HASH_FIELD.equals(field));
+        }
+        return document.toJson();
+    }
+}
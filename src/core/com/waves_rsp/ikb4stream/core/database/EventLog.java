@@ -0,0 +1,574 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+package com.waves_rsp.ikb4stream.core.database;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.util.EventSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of {@link Event} in segment files of fixed size mapped in memory, named &lt;path&gt;.&lt;number&gt;.
+ * A segment starts with the position of its end and a flag set once it's full, followed by records made of a length,
+ * a CRC32 and an {@link Event} serialized by {@link EventSerializer}.
+ * A single process writes, it holds a lock on &lt;path&gt;.lock, and any process can read. The end is written after
+ * each record, and a record whose CRC32 does not match is read again later, so a reader in another process never
+ * gives a partial record.
+ * When a segment is full, a new one is written and full segments are compacted: records superseded by a later record
+ * with the same key, or which ended more than ttl milliseconds ago, are removed. A compacted segment keeps its number
+ * and replaces the previous one atomically, a reader which has mapped the previous one finishes reading it.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see EmbeddedDatabase
+ */
+class EventLog {
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLog.class);
+    /**
+     * Size in bytes of the header of a segment: position of its end (8 bytes) then full flag (4 bytes)
+     */
+    private static final int HEADER = 16;
+    /**
+     * Offset of the full flag in the header of a segment
+     */
+    private static final int FULL = 8;
+    /**
+     * Size in bytes of the length and the CRC32 of a record
+     */
+    private static final int RECORD_HEADER = 8;
+    /**
+     * Directory of segment files
+     */
+    private final Path directory;
+    /**
+     * Name of segment files before their number
+     *
+     * @see EventLog#segmentPath(long)
+     */
+    private final String prefix;
+    /**
+     * Size in bytes of a segment
+     */
+    private final int segmentSize;
+    /**
+     * Key of an {@link Event}, a record is superseded by a later one with the same key
+     *
+     * @see EventLog#compact()
+     */
+    private final Function<Event, String> keyOf;
+    /**
+     * Time in milliseconds after its end an {@link Event} is removed by compaction, 0 to keep it
+     *
+     * @see EventLog#compact()
+     */
+    private final long ttl;
+    /**
+     * Lock of &lt;path&gt;.lock held by the process which writes, null until the first {@link EventLog#append(Event)}
+     */
+    private FileLock lock;
+    /**
+     * Number of the segment being written
+     */
+    private long writeSegment;
+    /**
+     * Mapping of the segment being written, null until the first {@link EventLog#append(Event)}
+     */
+    private MappedByteBuffer writeBuffer;
+    /**
+     * Number of the segment being read
+     */
+    private long readSegment = -1;
+    /**
+     * Mapping of the segment being read, null if there is none
+     */
+    private MappedByteBuffer readBuffer;
+    /**
+     * Number of the last segment seen by {@link EventLog#getEnd()}
+     */
+    private long tailSegment = -1;
+    /**
+     * Mapping of the last segment seen by {@link EventLog#getEnd()}, null if there is none
+     */
+    private MappedByteBuffer tailBuffer;
+
+    /**
+     * Open an {@link EventLog}, files are created by the first {@link EventLog#append(Event)}
+     *
+     * @param path        Path of the log, segment files are named &lt;path&gt;.&lt;number&gt;
+     * @param segmentSize Size in bytes of a segment
+     * @param keyOf       Key of an {@link Event}, a record is superseded by a later one with the same key
+     * @param ttl         Time in milliseconds after its end an {@link Event} is removed by compaction, 0 to keep it
+     * @throws NullPointerException     if path or keyOf is null
+     * @throws IllegalArgumentException if segmentSize is too small or larger than 2GB, or if ttl is negative
+     */
+    EventLog(Path path, long segmentSize, Function<Event, String> keyOf, long ttl) {
+        Objects.requireNonNull(path);
+        Objects.requireNonNull(keyOf);
+        if (segmentSize <= HEADER + RECORD_HEADER || segmentSize > Integer.MAX_VALUE || ttl < 0) {
+            throw new IllegalArgumentException("Invalid size " + segmentSize + " or ttl " + ttl + " of embedded database file.");
+        }
+        Path absolute = path.toAbsolutePath();
+        this.directory = absolute.getParent();
+        this.prefix = absolute.getFileName() + ".";
+        this.segmentSize = (int) segmentSize;
+        this.keyOf = keyOf;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Append an {@link Event}, a new segment is started if it does not fit in the current one
+     *
+     * @param event {@link Event} to append
+     * @throws NullPointerException     if event is null
+     * @throws IllegalArgumentException if event is larger than a segment
+     * @throws IllegalStateException    if another process writes this log or a segment cannot be written
+     */
+    synchronized void append(Event event) {
+        byte[] bytes = EventSerializer.serialize(event);
+        int size = RECORD_HEADER + bytes.length;
+        if ((long) HEADER + size > segmentSize) {
+            throw new IllegalArgumentException("Event of " + bytes.length + " bytes is larger than a segment of embedded database file.");
+        }
+        try {
+            if (writeBuffer == null) {
+                openWriter();
+            }
+            int end = endOf(writeBuffer);
+            if (end + size > segmentSize) {
+                rotate();
+                end = HEADER;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            ByteBuffer record = writeBuffer.duplicate();
+            record.position(end);
+            record.putInt(bytes.length);
+            record.putInt((int) crc.getValue());
+            record.put(bytes);
+            writeBuffer.putLong(0, (long) end + size);
+        } catch (IOException e) {
+            throw new IllegalStateException("Embedded database file cannot be written: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Take the lock of writer and map the last segment, or a new one if it's full
+     *
+     * @throws IOException           if the lock or the segment cannot be opened
+     * @throws IllegalStateException if another process writes this log
+     */
+    private void openWriter() throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(prefix + "lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("Embedded database file " + directory.resolve(prefix) + "* is written by another process.");
+        }
+        List<Long> segments = listSegments();
+        writeSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        writeBuffer = mapForWrite(segmentPath(writeSegment));
+        if (writeBuffer.getInt(FULL) != 0) {
+            rotate();
+        }
+    }
+
+    /**
+     * Mark the segment being written as full, start the next one and compact the full ones
+     *
+     * @throws IOException if the next segment cannot be created
+     * @see EventLog#compact()
+     */
+    private void rotate() throws IOException {
+        MappedByteBuffer next = mapForWrite(segmentPath(writeSegment + 1));
+        next.putLong(0, HEADER);
+        writeBuffer.putInt(FULL, 1);
+        writeBuffer = next;
+        writeSegment++;
+        try {
+            compact();
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Embedded database file cannot be compacted: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrite full segments without records superseded by a later one with the same key or expired, a segment left
+     * empty is deleted
+     *
+     * @throws IOException if a segment cannot be read or written
+     * @see EventLog#keyOf
+     * @see EventLog#ttl
+     */
+    private void compact() throws IOException {
+        List<Long> segments = listSegments();
+        Map<String, Long> latest = new HashMap<>();
+        for (long segment : segments) {
+            MappedByteBuffer buffer = segment == writeSegment ? writeBuffer : mapForRead(segmentPath(segment));
+            if (buffer != null) {
+                forEach(buffer, segment, (position, event) -> latest.put(keyOf.apply(event), position));
+            }
+        }
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (long segment : segments) {
+            if (segment >= writeSegment) {
+                continue;
+            }
+            Path path = segmentPath(segment);
+            MappedByteBuffer buffer = mapForRead(path);
+            if (buffer == null) {
+                continue;
+            }
+            List<ByteBuffer> kept = new ArrayList<>();
+            int[] count = new int[1];
+            forEach(buffer, segment, (position, event) -> {
+                count[0]++;
+                boolean expired = ttl > 0 && event.getEnd().getTime() + ttl < now;
+                if (!expired && position.equals(latest.get(keyOf.apply(event)))) {
+                    int offset = (int) (position & 0xFFFFFFFFL);
+                    ByteBuffer record = buffer.duplicate();
+                    record.position(offset);
+                    record.limit(offset + RECORD_HEADER + buffer.getInt(offset));
+                    kept.add(record);
+                }
+            });
+            if (kept.size() == count[0]) {
+                continue;
+            }
+            removed += count[0] - kept.size();
+            if (kept.isEmpty()) {
+                Files.deleteIfExists(path);
+                continue;
+            }
+            Path compacted = directory.resolve(path.getFileName() + ".compact");
+            MappedByteBuffer target = mapForWrite(compacted);
+            target.position(HEADER);
+            kept.forEach(target::put);
+            target.putLong(0, target.position());
+            target.putInt(FULL, 1);
+            target.force();
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (removed > 0) {
+            LOGGER.info("{} record(s) removed from embedded database file by compaction", removed);
+        }
+    }
+
+    /**
+     * Read {@link Event} appended from a position, segment after segment
+     *
+     * @param position Position returned by the last call, 0 for the beginning of the log
+     * @param consumer Consumer of each {@link Event} read
+     * @return Position following the last record read
+     * @throws NullPointerException  if consumer is null
+     * @throws IllegalStateException if a segment cannot be read
+     */
+    synchronized long read(long position, Consumer<Event> consumer) {
+        Objects.requireNonNull(consumer);
+        try {
+            long segment = position >>> 32;
+            int offset = (int) (position & 0xFFFFFFFFL);
+            if (position == 0) {
+                List<Long> segments = listSegments();
+                if (segments.isEmpty()) {
+                    return 0;
+                }
+                segment = segments.get(0);
+            }
+            while (true) {
+                MappedByteBuffer buffer = readBufferOf(segment);
+                if (buffer != null) {
+                    // The flag is read before the end, so a full segment is read up to its last record
+                    boolean full = buffer.getInt(FULL) != 0;
+                    int end = endOf(buffer);
+                    offset = readRecords(buffer, segment, Math.max(offset, HEADER), end, consumer);
+                    if (!full) {
+                        return positionOf(segment, offset);
+                    }
+                    if (offset < end) {
+                        LOGGER.error("Records after {} in segment {} of embedded database file are skipped", offset, segment);
+                    }
+                }
+                Long next = nextSegment(segment);
+                if (next == null) {
+                    return positionOf(segment, offset);
+                }
+                segment = next;
+                offset = HEADER;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Embedded database file cannot be read: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Give the records of a segment between two offsets to a consumer, until an invalid record
+     *
+     * @param buffer   Mapping of the segment
+     * @param segment  Number of the segment
+     * @param offset   Offset of the first record
+     * @param end      Offset following the last record
+     * @param consumer Consumer of each {@link Event} read
+     * @return Offset following the last valid record read
+     */
+    private static int readRecords(ByteBuffer buffer, long segment, int offset, int end, Consumer<Event> consumer) {
+        int current = offset;
+        while (current + RECORD_HEADER <= end) {
+            Event event = eventAt(buffer, current, end);
+            if (event == null) {
+                LOGGER.debug("Record at {} in segment {} of embedded database file is not readable yet", current, segment);
+                break;
+            }
+            consumer.accept(event);
+            current += RECORD_HEADER + buffer.getInt(current);
+        }
+        return current;
+    }
+
+    /**
+     * Give all records of a segment with their position
+     *
+     * @param buffer   Mapping of the segment
+     * @param segment  Number of the segment
+     * @param consumer Consumer of the position and the {@link Event} of each record
+     */
+    private static void forEach(ByteBuffer buffer, long segment, RecordConsumer consumer) {
+        int end = endOf(buffer);
+        int current = HEADER;
+        while (current + RECORD_HEADER <= end) {
+            Event event = eventAt(buffer, current, end);
+            if (event == null) {
+                break;
+            }
+            consumer.accept(positionOf(segment, current), event);
+            current += RECORD_HEADER + buffer.getInt(current);
+        }
+    }
+
+    /**
+     * Read the {@link Event} of a record
+     *
+     * @param buffer Mapping of a segment
+     * @param offset Offset of the record
+     * @param end    Offset following the last record of the segment
+     * @return {@link Event} or null if the record is partial or invalid
+     */
+    private static Event eventAt(ByteBuffer buffer, int offset, int end) {
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + RECORD_HEADER + length > end) {
+            return null;
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + RECORD_HEADER);
+        record.limit(offset + RECORD_HEADER + length);
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+        try {
+            return EventSerializer.deserialize(record);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid event at {} in embedded database file: {}", offset, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the mapping of a segment to read, the last one is kept
+     *
+     * @param segment Number of the segment
+     * @return Mapping or null if the segment does not exist anymore
+     * @throws IOException if the segment cannot be mapped
+     */
+    private MappedByteBuffer readBufferOf(long segment) throws IOException {
+        if (segment != readSegment || readBuffer == null) {
+            readBuffer = mapForRead(segmentPath(segment));
+            readSegment = segment;
+        }
+        return readBuffer;
+    }
+
+    /**
+     * Get the position following the last record of the last segment, it grows with each {@link EventLog#append(Event)}
+     *
+     * @return Position following the last record, 0 if there is no segment
+     * @throws IllegalStateException if segments cannot be listed
+     */
+    synchronized long getEnd() {
+        try {
+            if (tailBuffer == null || tailBuffer.getInt(FULL) != 0) {
+                List<Long> segments = listSegments();
+                if (segments.isEmpty()) {
+                    return 0;
+                }
+                tailSegment = segments.get(segments.size() - 1);
+                tailBuffer = mapForRead(segmentPath(tailSegment));
+                if (tailBuffer == null) {
+                    return 0;
+                }
+            }
+            return positionOf(tailSegment, endOf(tailBuffer));
+        } catch (IOException e) {
+            throw new IllegalStateException("Embedded database file cannot be read: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the first segment after another one
+     *
+     * @param segment Number of a segment
+     * @return Number of the next segment, null if there is none
+     * @throws IOException if segments cannot be listed
+     */
+    private Long nextSegment(long segment) throws IOException {
+        return listSegments().stream().filter(s -> s > segment).findFirst().orElse(null);
+    }
+
+    /**
+     * List number of segments
+     *
+     * @return Sorted number of segments
+     * @throws IOException if the directory cannot be read
+     */
+    private List<Long> listSegments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix))
+                    .forEach(name -> {
+                        try {
+                            segments.add(Long.parseLong(name.substring(prefix.length())));
+                        } catch (NumberFormatException e) {
+                            LOGGER.trace("{} is not a segment of embedded database file", name);
+                        }
+                    });
+        }
+        segments.sort(Long::compare);
+        return segments;
+    }
+
+    /**
+     * Get path of a segment
+     *
+     * @param segment Number of the segment
+     * @return Path of the segment file
+     */
+    private Path segmentPath(long segment) {
+        return directory.resolve(prefix + segment);
+    }
+
+    /**
+     * Map a segment to write, it's created if it does not exist
+     *
+     * @param path Path of the segment
+     * @return Mapping of the segment
+     * @throws IOException if the segment cannot be mapped
+     */
+    private MappedByteBuffer mapForWrite(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    /**
+     * Map a segment to read, it's never created
+     *
+     * @param path Path of the segment
+     * @return Mapping of the segment, null if it does not exist
+     * @throws IOException if the segment cannot be mapped
+     */
+    private MappedByteBuffer mapForRead(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), segmentSize));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the end of a segment
+     *
+     * @param buffer Mapping of a segment
+     * @return Offset following the last record, in [{@link EventLog#HEADER}, capacity]
+     */
+    private static int endOf(ByteBuffer buffer) {
+        long end = buffer.getLong(0);
+        if (end < HEADER || end > buffer.capacity()) {
+            return HEADER;
+        }
+        return (int) end;
+    }
+
+    /**
+     * Get the position of a record
+     *
+     * @param segment Number of its segment
+     * @param offset  Offset in its segment
+     * @return Position, which grows with the segment and the offset
+     */
+    private static long positionOf(long segment, int offset) {
+        return segment << 32 | offset;
+    }
+
+    /**
+     * Consumer of the records of a segment
+     *
+     * @author ikb4stream
+     * @version 1.0
+     * @see EventLog#forEach(ByteBuffer, long, RecordConsumer)
+     */
+    @FunctionalInterface
+    private interface RecordConsumer {
+        /**
+         * Receive a record
+         *
+         * @param position Position of the record
+         * @param event    {@link Event} of the record
+         */
+        void accept(Long position, Event event);
+    }
+}
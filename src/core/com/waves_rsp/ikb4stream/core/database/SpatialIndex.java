@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+package com.waves_rsp.ikb4stream.core.database;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import com.waves_rsp.ikb4stream.core.util.EventHash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * In-memory index of {@link Event} on a grid of cells of cellSize degrees. An {@link Event} is registered in each cell
+ * overlapped by the rectangle around its location, an {@link Event} overlapping too many cells is kept apart and always checked.
+ * Geometries are compared on a plane of latitude and longitude.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see EmbeddedDatabase
+ */
+class SpatialIndex {
+    /**
+     * Maximum number of cells an {@link Event} or an area is looked up in, beyond it all {@link Event} are checked
+     */
+    private static final int MAX_CELLS = 4096;
+    /**
+     * Size of a cell in degrees
+     */
+    private final double cellSize;
+    /**
+     * {@link Entry} of each cell
+     */
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    /**
+     * {@link Entry} overlapping more than {@link SpatialIndex#MAX_CELLS} cells
+     */
+    private final List<Entry> large = new ArrayList<>();
+    /**
+     * Compute the key of an {@link Event}, an {@link Event} replaces the one with the same key
+     */
+    private final Function<Event, String> keyOf;
+    /**
+     * All {@link Entry} by key
+     */
+    private final Map<String, Entry> entries = new HashMap<>();
+    /**
+     * Lock of this index
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Create an empty {@link SpatialIndex}
+     *
+     * @param cellSize Size of a cell in degrees
+     * @param keyOf    Compute the key of an {@link Event}, such as {@link EventHash#of(Event)}
+     * @throws NullPointerException     if keyOf is null
+     * @throws IllegalArgumentException if cellSize is not positive
+     */
+    SpatialIndex(double cellSize, Function<Event, String> keyOf) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive.");
+        }
+        this.cellSize = cellSize;
+        this.keyOf = Objects.requireNonNull(keyOf);
+    }
+
+    /**
+     * Add an {@link Event}, an {@link Event} with the same key is replaced
+     *
+     * @param event {@link Event} to add
+     * @throws NullPointerException if event is null
+     */
+    void put(Event event) {
+        Entry entry = new Entry(Objects.requireNonNull(event), keyOf.apply(event));
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.put(entry.hash, entry);
+            if (previous != null) {
+                unregister(previous);
+            }
+            List<Long> keys = cellsOf(entry.envelope);
+            if (keys == null) {
+                large.add(entry);
+            } else {
+                keys.forEach(key -> cells.computeIfAbsent(key, k -> new ArrayList<>()).add(entry));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove {@link Event} matching a predicate
+     *
+     * @param predicate Predicate of {@link Event} to remove
+     * @return Number of {@link Event} removed
+     * @throws NullPointerException if predicate is null
+     */
+    int removeIf(Predicate<Event> predicate) {
+        Objects.requireNonNull(predicate);
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (predicate.test(entry.event)) {
+                    iterator.remove();
+                    unregister(entry);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * Find {@link Event} intersecting an area during a period and matching a filter
+     *
+     * @param area   Polygon of the area
+     * @param start  Beginning of the period in milliseconds
+     * @param end    End of the period in milliseconds
+     * @param filter Filter of {@link Event}, checked before their location
+     * @param limit  Maximum number of {@link Event} returned
+     * @return {@link Event} whose location intersects area, starting before end and ending after start, matching filter
+     * @throws NullPointerException if area or filter is null
+     */
+    List<Event> find(LatLong[] area, long start, long end, Predicate<Event> filter, int limit) {
+        Objects.requireNonNull(area);
+        Objects.requireNonNull(filter);
+        double[] envelope = envelopeOf(area);
+        List<Event> events = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            List<Long> keys = cellsOf(envelope);
+            Collection<List<Entry>> candidates;
+            if (keys == null) {
+                candidates = Collections.singletonList(new ArrayList<>(entries.values()));
+            } else {
+                candidates = new ArrayList<>();
+                candidates.add(large);
+                keys.forEach(key -> {
+                    List<Entry> cell = cells.get(key);
+                    if (cell != null) {
+                        candidates.add(cell);
+                    }
+                });
+            }
+            Set<Entry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (List<Entry> cell : candidates) {
+                for (Entry entry : cell) {
+                    if (events.size() >= limit) {
+                        return events;
+                    }
+                    if (entry.start <= end && entry.end >= start && overlaps(entry.envelope, envelope) && filter.test(entry.event)
+                            && seen.add(entry) && intersects(entry.event.getLocation(), area)) {
+                        events.add(entry.event);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return events;
+    }
+
+    /**
+     * @return Number of {@link Event} in this index
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an {@link Entry} from its cells, caller must hold the write lock
+     *
+     * @param entry {@link Entry} to remove
+     */
+    private void unregister(Entry entry) {
+        List<Long> keys = cellsOf(entry.envelope);
+        if (keys == null) {
+            large.remove(entry);
+            return;
+        }
+        for (Long key : keys) {
+            List<Entry> cell = cells.get(key);
+            if (cell != null) {
+                cell.remove(entry);
+                if (cell.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get cells overlapped by a rectangle
+     *
+     * @param envelope Rectangle {minLatitude, minLongitude, maxLatitude, maxLongitude}
+     * @return Key of each cell, null if there are more than {@link SpatialIndex#MAX_CELLS} cells
+     */
+    private List<Long> cellsOf(double[] envelope) {
+        long minLat = (long) Math.floor(envelope[0] / cellSize);
+        long minLon = (long) Math.floor(envelope[1] / cellSize);
+        long maxLat = (long) Math.floor(envelope[2] / cellSize);
+        long maxLon = (long) Math.floor(envelope[3] / cellSize);
+        if ((maxLat - minLat + 1) * (maxLon - minLon + 1) > MAX_CELLS) {
+            return null;
+        }
+        List<Long> keys = new ArrayList<>();
+        for (long lat = minLat; lat <= maxLat; lat++) {
+            for (long lon = minLon; lon <= maxLon; lon++) {
+                keys.add((lat << 32) | (lon & 0xFFFFFFFFL));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Get the rectangle around points
+     *
+     * @param points Points of a location
+     * @return Rectangle {minLatitude, minLongitude, maxLatitude, maxLongitude}
+     */
+    private static double[] envelopeOf(LatLong[] points) {
+        double[] envelope = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (LatLong point : points) {
+            envelope[0] = Math.min(envelope[0], point.getLatitude());
+            envelope[1] = Math.min(envelope[1], point.getLongitude());
+            envelope[2] = Math.max(envelope[2], point.getLatitude());
+            envelope[3] = Math.max(envelope[3], point.getLongitude());
+        }
+        return envelope;
+    }
+
+    /**
+     * Check if two rectangles overlap
+     *
+     * @param a Rectangle {minLatitude, minLongitude, maxLatitude, maxLongitude}
+     * @param b Rectangle {minLatitude, minLongitude, maxLatitude, maxLongitude}
+     * @return true if a and b share at least a point
+     */
+    private static boolean overlaps(double[] a, double[] b) {
+        return a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3];
+    }
+
+    /**
+     * Check if a location intersects an area
+     *
+     * @param location Point or polygon of an {@link Event}
+     * @param area     Polygon of the area
+     * @return true if a point of one is inside the other, or if their edges cross
+     */
+    static boolean intersects(LatLong[] location, LatLong[] area) {
+        for (LatLong point : location) {
+            if (contains(area, point)) {
+                return true;
+            }
+        }
+        if (location.length < 3) {
+            return false;
+        }
+        for (LatLong point : area) {
+            if (contains(location, point)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < location.length; i++) {
+            for (int j = 0; j < area.length; j++) {
+                if (cross(location[i], location[(i + 1) % location.length], area[j], area[(j + 1) % area.length])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a point is inside a polygon, by ray casting
+     *
+     * @param polygon Points of the polygon, closed or not
+     * @param point   Point to check
+     * @return true if point is inside polygon
+     */
+    private static boolean contains(LatLong[] polygon, LatLong point) {
+        boolean inside = false;
+        double x = point.getLongitude();
+        double y = point.getLatitude();
+        for (int i = 0, j = polygon.length - 1; i < polygon.length; j = i++) {
+            double xi = polygon[i].getLongitude();
+            double yi = polygon[i].getLatitude();
+            double xj = polygon[j].getLongitude();
+            double yj = polygon[j].getLatitude();
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Check if two segments cross
+     *
+     * @param a1 First end of the first segment
+     * @param a2 Second end of the first segment
+     * @param b1 First end of the second segment
+     * @param b2 Second end of the second segment
+     * @return true if segments [a1, a2] and [b1, b2] cross
+     */
+    private static boolean cross(LatLong a1, LatLong a2, LatLong b1, LatLong b2) {
+        double d1 = orientation(b1, b2, a1);
+        double d2 = orientation(b1, b2, a2);
+        double d3 = orientation(a1, a2, b1);
+        double d4 = orientation(a1, a2, b2);
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    /**
+     * Compute on which side of a line a point is
+     *
+     * @param a First point of the line
+     * @param b Second point of the line
+     * @param c Point to check
+     * @return Positive if c is on the left of (a, b), negative if it's on the right, 0 if it's on the line
+     */
+    private static double orientation(LatLong a, LatLong b, LatLong c) {
+        return (b.getLongitude() - a.getLongitude()) * (c.getLatitude() - a.getLatitude())
+                - (b.getLatitude() - a.getLatitude()) * (c.getLongitude() - a.getLongitude());
+    }
+
+    /**
+     * {@link Event} of this index with its precomputed keys
+     *
+     * @author ikb4stream
+     * @version 1.0
+     */
+    private static class Entry {
+        /**
+         * {@link Event} indexed
+         */
+        private final Event event;
+        /**
+         * Key of {@link Entry#event}
+         */
+        private final String hash;
+        /**
+         * Rectangle around the location of {@link Entry#event}
+         */
+        private final double[] envelope;
+        /**
+         * Start of {@link Entry#event} in milliseconds
+         */
+        private final long start;
+        /**
+         * End of {@link Entry#event} in milliseconds
+         */
+        private final long end;
+
+        /**
+         * Create an {@link Entry}
+         *
+         * @param event {@link Event} indexed
+         * @param hash  Key of event
+         */
+        private Entry(Event event, String hash) {
+            this.event = event;
+            this.hash = hash;
+            this.envelope = envelopeOf(event.getLocation());
+            this.start = event.getStart().getTime();
+            this.end = event.getEnd().getTime();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+package com.waves_rsp.ikb4stream.core.database;
+
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link DatabaseReaderSubscriber} of an {@link EmbeddedDatabase} or of Mongo, given the {@link Event} written which match
+ * their {@link Request}. Events are matched against each subscription, so writing costs nothing without subscription.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see EmbeddedDatabase#subscribe(Request, DatabaseReaderSubscriber)
+ */
+public class Subscriptions {
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Subscriptions.class);
+    /**
+     * Current subscriptions, mostly read by writers
+     */
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Add a subscription
+     *
+     * @param request    {@link Request} the {@link Event} must match
+     * @param subscriber {@link DatabaseReaderSubscriber} receiving the {@link Event}
+     * @return Cancel the subscription
+     * @throws NullPointerException if request or subscriber is null
+     */
+    public Runnable add(Request request, DatabaseReaderSubscriber subscriber) {
+        Subscription subscription = new Subscription(request, subscriber);
+        subscriptions.add(subscription);
+        LOGGER.debug("{} subscription(s)", subscriptions.size());
+        return () -> subscriptions.remove(subscription);
+    }
+
+    /**
+     * @return true if there is no subscription
+     */
+    public boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    /**
+     * Give written {@link Event} to the subscriptions they match, an error of a subscriber does not prevent the others
+     * from receiving them
+     *
+     * @param events {@link Event} written
+     * @throws NullPointerException if events is null
+     */
+    public void publish(List<Event> events) {
+        Objects.requireNonNull(events);
+        if (events.isEmpty()) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            List<String> matching = new ArrayList<>();
+            for (Event event : events) {
+                if (subscription.matches(event)) {
+                    matching.add(EmbeddedDatabase.toJson(event, subscription.request.getFields()));
+                }
+            }
+            if (!matching.isEmpty()) {
+                try {
+                    subscription.subscriber.onEvents(matching);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Subscriber failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link Request} of a {@link DatabaseReaderSubscriber}
+     */
+    private static class Subscription {
+        /**
+         * {@link Request} the {@link Event} must match
+         */
+        private final Request request;
+        /**
+         * {@link DatabaseReaderSubscriber} receiving the {@link Event}
+         */
+        private final DatabaseReaderSubscriber subscriber;
+
+        /**
+         * Create a {@link Subscription}
+         *
+         * @param request    {@link Request} the {@link Event} must match
+         * @param subscriber {@link DatabaseReaderSubscriber} receiving the {@link Event}
+         * @throws NullPointerException if request or subscriber is null
+         */
+        private Subscription(Request request, DatabaseReaderSubscriber subscriber) {
+            this.request = Objects.requireNonNull(request);
+            this.subscriber = Objects.requireNonNull(subscriber);
+        }
+
+        /**
+         * Check if an {@link Event} matches {@link Subscription#request} like a result of
+         * {@link EmbeddedDatabase#getEvent(Request, com.waves_rsp.ikb4stream.core.communication.DatabaseReaderCallback)}
+         *
+         * @param event {@link Event} written
+         * @return true if event intersects the bounding box of the request during its period, with its minimum score
+         * and one of its sources
+         */
+        private boolean matches(Event event) {
+            List<String> sources = request.getSources();
+            return event.getStart().getTime() <= request.getEnd().getTime()
+                    && event.getEnd().getTime() >= request.getStart().getTime()
+                    && event.getScore() >= request.getMinScore()
+                    && (sources.isEmpty() || sources.contains(event.getSource()))
+                    && SpatialIndex.intersects(event.getLocation(), request.getBoundingBox().getLatLongs());
+        }
+    }
+}
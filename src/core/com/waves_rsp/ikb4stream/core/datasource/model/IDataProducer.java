@@ -29,7 +29,9 @@ import com.waves_rsp.ikb4stream.core.model.Event;
 @FunctionalInterface
 public interface IDataProducer {
     /**
-     * Push an {@link Event} to be analyse by a {@link IScoreProcessor}
+     * Push an {@link Event} to be analyse by a {@link IScoreProcessor}.
+     * Depending on the overflow policy of the producer, this call may block while the queue is full,
+     * so connectors which poll a source slow down instead of losing {@link Event}.
      *
      * @param event {@link Event} to push in process
      */
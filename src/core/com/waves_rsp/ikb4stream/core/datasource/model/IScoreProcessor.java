@@ -43,4 +43,24 @@ public interface IScoreProcessor {
      * @return List of sources
      */
     List<String> getSources();
+
+    /**
+     * Tell if a single instance can score {@link Event} from several threads at the same time.
+     * If it's not, an instance scores a single {@link Event} at a time.
+     *
+     * @return true if {@link IScoreProcessor#processScore(Event)} is thread-safe, false by default
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * Tell if this {@link IScoreProcessor} only needs the {@link Event} as produced by the connector, so it can run in
+     * parallel with other independent {@link IScoreProcessor} of the same source instead of after them
+     *
+     * @return true if {@link IScoreProcessor#processScore(Event)} does not depend on previous processors, false by default
+     */
+    default boolean isIndependent() {
+        return false;
+    }
 }
@@ -143,4 +143,31 @@ public class PropertiesManager {
         }
         return value;
     }
+
+    /**
+     * Get property as a number
+     *
+     * @param property     Property to get from configuration file
+     * @param min          Lowest valid value
+     * @param defaultValue Value returned if property is not set, is not a number or is lower than min
+     * @return Value of property
+     * @throws NullPointerException if property is null
+     */
+    public long getLongOrDefault(String property, long min, long defaultValue) {
+        Objects.requireNonNull(property);
+        String value = config.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value.trim());
+            if (number >= min) {
+                return number;
+            }
+            LOGGER.warn("{} must be at least {}, use default value", property, min);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("{} is not a number, use default value", property);
+        }
+        return defaultValue;
+    }
 }
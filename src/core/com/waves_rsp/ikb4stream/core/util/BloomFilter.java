@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.core.util;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe bloom filter of digests, such as {@link EventHash#digest(com.waves_rsp.ikb4stream.core.model.Event)}.
+ * It may answer that a digest has been seen while it has not, with a probability of about fpp until expectedInsertions
+ * digests have been added, but never the opposite.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ */
+public class BloomFilter {
+    /**
+     * Bits of this filter
+     */
+    private final AtomicLongArray bits;
+    /**
+     * Number of bits
+     */
+    private final long bitCount;
+    /**
+     * Number of bits set for each digest
+     */
+    private final int hashCount;
+    /**
+     * Number of digests added since creation or last {@link BloomFilter#clear()}
+     */
+    private final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * Create a {@link BloomFilter} sized for expectedInsertions digests with a false positive probability of fpp
+     *
+     * @param expectedInsertions Number of digests expected
+     * @param fpp                False positive probability, strictly between 0 and 1
+     * @throws IllegalArgumentException if expectedInsertions is not positive or fpp is not between 0 and 1
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("Invalid expected insertions " + expectedInsertions + " or fpp " + fpp + ".");
+        }
+        long bitsWanted = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bitsWanted + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * Add a digest
+     *
+     * @param digest Digest of at least 16 bytes, its first 16 bytes are used
+     * @return true if digest had not been added before, false if it might have been
+     * @throws NullPointerException     if digest is null
+     * @throws IllegalArgumentException if digest is shorter than 16 bytes
+     */
+    public boolean put(byte[] digest) {
+        ByteBuffer buffer = wrap(digest);
+        long h1 = buffer.getLong();
+        long h2 = buffer.getLong();
+        boolean added = false;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+                added = true;
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+        if (added) {
+            insertions.incrementAndGet();
+        }
+        return added;
+    }
+
+    /**
+     * Check if a digest might have been added
+     *
+     * @param digest Digest of at least 16 bytes, its first 16 bytes are used
+     * @return false if digest has never been added, true if it might have been
+     * @throws NullPointerException     if digest is null
+     * @throws IllegalArgumentException if digest is shorter than 16 bytes
+     */
+    public boolean mightContain(byte[] digest) {
+        ByteBuffer buffer = wrap(digest);
+        long h1 = buffer.getLong();
+        long h2 = buffer.getLong();
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check a digest
+     *
+     * @param digest Digest to check
+     * @return {@link ByteBuffer} on digest
+     * @throws NullPointerException     if digest is null
+     * @throws IllegalArgumentException if digest is shorter than 16 bytes
+     */
+    private static ByteBuffer wrap(byte[] digest) {
+        Objects.requireNonNull(digest);
+        if (digest.length < 16) {
+            throw new IllegalArgumentException("Digest must have at least 16 bytes.");
+        }
+        return ByteBuffer.wrap(digest);
+    }
+
+    /**
+     * @return Number of digests added since creation or last {@link BloomFilter#clear()}
+     */
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    /**
+     * Forget all digests
+     */
+    public void clear() {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, 0);
+        }
+        insertions.set(0);
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.core.util;
+
+import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.bson.BsonBinary;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Mongo {@link Codec} which writes an {@link Event} straight to BSON, in the same layout as the one written from JSON before:
+ * description, source and score, start and end as timestamps in milliseconds, and location as a GeoJSON Point for a single
+ * {@link LatLong} or a Polygon otherwise. Its key, {@link EventHash} by default, is added in {@value HASH_FIELD}, and its end as a date
+ * in {@value END_DATE_FIELD} so a TTL index can purge it. The time it's encoded is written as a date in {@value UPDATED_FIELD}, so
+ * readers can poll the documents inserted or replaced since a time. A description of at least compressThreshold bytes is written
+ * deflated in {@value COMPRESSED_DESCRIPTION_FIELD} instead of {@value DESCRIPTION_FIELD}.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ */
+public class EventCodec implements Codec<Event> {
+    /**
+     * Object to add metrics from this class
+     *
+     * @see EventCodec#writeDescription(BsonWriter, String)
+     * @see MetricsLogger#log(String, long)
+     * @see MetricsLogger#getMetricsLogger()
+     */
+    private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
+    /**
+     * {@link Deflater} of each thread
+     *
+     * @see EventCodec#deflate(byte[])
+     */
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+    /**
+     * Constant value {@value DESCRIPTION_FIELD}
+     */
+    private static final String DESCRIPTION_FIELD = "description";
+    /**
+     * Field containing the description deflated, instead of {@value DESCRIPTION_FIELD}
+     */
+    public static final String COMPRESSED_DESCRIPTION_FIELD = "description_z";
+    /**
+     * Constant value {@value LOCATION_FIELD}
+     */
+    private static final String LOCATION_FIELD = "location";
+    /**
+     * Constant value {@value COORDINATES_FIELD}
+     */
+    private static final String COORDINATES_FIELD = "coordinates";
+    /**
+     * Field containing the key of the {@link Event}
+     *
+     * @see EventCodec#hashOf
+     */
+    public static final String HASH_FIELD = "hash";
+    /**
+     * Field containing the end of the {@link Event} as a date
+     */
+    public static final String END_DATE_FIELD = "endDate";
+    /**
+     * Field containing the time the {@link Event} was encoded as a date, written again when it's replaced
+     */
+    public static final String UPDATED_FIELD = "updated";
+    /**
+     * Compute the key of an {@link Event} written in {@value HASH_FIELD}
+     */
+    private final Function<Event, String> hashOf;
+    /**
+     * Size in bytes from which a description is deflated, 0 to never deflate it
+     */
+    private final int compressThreshold;
+
+    /**
+     * Create an {@link EventCodec} which writes {@link EventHash#of(Event)} in {@value HASH_FIELD}
+     */
+    public EventCodec() {
+        this(EventHash::of);
+    }
+
+    /**
+     * Create an {@link EventCodec} which never deflates descriptions
+     *
+     * @param hashOf Compute the key of an {@link Event} written in {@value HASH_FIELD}, such as {@link LatestValue#keyOf(Event)}
+     * @throws NullPointerException if hashOf is null
+     */
+    public EventCodec(Function<Event, String> hashOf) {
+        this(hashOf, 0);
+    }
+
+    /**
+     * Create an {@link EventCodec}
+     *
+     * @param hashOf            Compute the key of an {@link Event} written in {@value HASH_FIELD}, such as {@link LatestValue#keyOf(Event)}
+     * @param compressThreshold Size in bytes from which a description is deflated, 0 to never deflate it
+     * @throws NullPointerException     if hashOf is null
+     * @throws IllegalArgumentException if compressThreshold is negative
+     */
+    public EventCodec(Function<Event, String> hashOf, int compressThreshold) {
+        if (compressThreshold < 0) {
+            throw new IllegalArgumentException("Compression threshold cannot be negative.");
+        }
+        this.hashOf = Objects.requireNonNull(hashOf);
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * Create a {@link CodecRegistry} which encodes {@link Event} with {@link EventCodec}
+     *
+     * @param registry {@link CodecRegistry} used for other classes
+     * @return {@link CodecRegistry} looking for {@link EventCodec} first
+     * @throws NullPointerException if registry is null
+     */
+    public static CodecRegistry withEventCodec(CodecRegistry registry) {
+        return withEventCodec(registry, new EventCodec());
+    }
+
+    /**
+     * Create a {@link CodecRegistry} which encodes {@link Event} with an {@link EventCodec}
+     *
+     * @param registry {@link CodecRegistry} used for other classes
+     * @param codec    {@link EventCodec} to use
+     * @return {@link CodecRegistry} looking for codec first
+     * @throws NullPointerException if registry or codec is null
+     */
+    public static CodecRegistry withEventCodec(CodecRegistry registry, EventCodec codec) {
+        Objects.requireNonNull(registry);
+        Objects.requireNonNull(codec);
+        return CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(codec), registry);
+    }
+
+    /**
+     * Encode an {@link Event}
+     *
+     * @param writer         {@link BsonWriter} to write
+     * @param event          {@link Event} to encode
+     * @param encoderContext Context of encoding
+     */
+    @Override
+    public void encode(BsonWriter writer, Event event, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        writeDescription(writer, event.getDescription());
+        writer.writeString("source", event.getSource());
+        writer.writeInt32("score", event.getScore());
+        writer.writeInt64("start", event.getStart().getTime());
+        writer.writeInt64("end", event.getEnd().getTime());
+        writer.writeStartDocument(LOCATION_FIELD);
+        LatLong[] location = event.getLocation();
+        if (location.length == 1) {
+            writer.writeString("type", "Point");
+            writer.writeStartArray(COORDINATES_FIELD);
+            writePosition(writer, location[0]);
+            writer.writeEndArray();
+        } else {
+            writer.writeString("type", "Polygon");
+            writer.writeStartArray(COORDINATES_FIELD);
+            writer.writeStartArray();
+            for (LatLong latLong : location) {
+                writer.writeStartArray();
+                writePosition(writer, latLong);
+                writer.writeEndArray();
+            }
+            writer.writeEndArray();
+            writer.writeEndArray();
+        }
+        writer.writeEndDocument();
+        writer.writeString(HASH_FIELD, hashOf.apply(event));
+        writer.writeDateTime(END_DATE_FIELD, event.getEnd().getTime());
+        writer.writeDateTime(UPDATED_FIELD, System.currentTimeMillis());
+        writer.writeEndDocument();
+    }
+
+    /**
+     * Write a description, deflated if it has at least {@link EventCodec#compressThreshold} bytes and deflating makes it smaller
+     *
+     * @param writer      {@link BsonWriter} of the document
+     * @param description Description to write
+     */
+    private void writeDescription(BsonWriter writer, String description) {
+        if (compressThreshold > 0 && description.length() * 3 >= compressThreshold) {
+            byte[] raw = description.getBytes(StandardCharsets.UTF_8);
+            if (raw.length >= compressThreshold) {
+                byte[] compressed = deflate(raw);
+                if (compressed.length < raw.length) {
+                    METRICS_LOGGER.log("description_compression_ratio", compressed.length * 100L / raw.length);
+                    METRICS_LOGGER.log("description_saved_bytes", (long) raw.length - compressed.length);
+                    writer.writeBinaryData(COMPRESSED_DESCRIPTION_FIELD, new BsonBinary(compressed));
+                    return;
+                }
+            }
+        }
+        writer.writeString(DESCRIPTION_FIELD, description);
+    }
+
+    /**
+     * Deflate bytes
+     *
+     * @param raw Bytes to deflate
+     * @return raw deflated
+     */
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(raw.length / 2 + 16);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            output.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Inflate a description written in {@value COMPRESSED_DESCRIPTION_FIELD}
+     *
+     * @param compressed Description deflated
+     * @return Description
+     * @throws NullPointerException        if compressed is null
+     * @throws CodecConfigurationException if compressed is not deflated data
+     */
+    public static String inflate(byte[] compressed) {
+        Objects.requireNonNull(compressed);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new CodecConfigurationException("Truncated compressed description.");
+                }
+                output.write(buffer, 0, length);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new CodecConfigurationException("Invalid compressed description: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Write a GeoJSON position, longitude first
+     *
+     * @param writer  {@link BsonWriter} inside the array of the position
+     * @param latLong {@link LatLong} to write
+     */
+    private static void writePosition(BsonWriter writer, LatLong latLong) {
+        writer.writeDouble(latLong.getLongitude());
+        writer.writeDouble(latLong.getLatitude());
+    }
+
+    /**
+     * Decode an {@link Event}, unknown fields are skipped
+     *
+     * @param reader         {@link BsonReader} to read
+     * @param decoderContext Context of decoding
+     * @return {@link Event} decoded, without score if it's negative
+     * @throws CodecConfigurationException if a field of {@link Event} is missing
+     */
+    @Override
+    public Event decode(BsonReader reader, DecoderContext decoderContext) {
+        String description = null;
+        String source = null;
+        int score = -1;
+        Long start = null;
+        Long end = null;
+        LatLong[] location = null;
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case DESCRIPTION_FIELD:
+                    description = reader.readString();
+                    break;
+                case COMPRESSED_DESCRIPTION_FIELD:
+                    description = inflate(reader.readBinaryData().getData());
+                    break;
+                case "source":
+                    source = reader.readString();
+                    break;
+                case "score":
+                    score = (int) readNumber(reader);
+                    break;
+                case "start":
+                    start = readTime(reader);
+                    break;
+                case "end":
+                    end = readTime(reader);
+                    break;
+                case LOCATION_FIELD:
+                    location = readLocation(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        if (description == null || source == null || start == null || end == null || location == null) {
+            throw new CodecConfigurationException("Document is not an Event.");
+        }
+        if (score < 0) {
+            return new Event(location, new Date(start), new Date(end), description, source);
+        }
+        return new Event(location, new Date(start), new Date(end), description, (byte) score, source);
+    }
+
+    /**
+     * Read a timestamp stored as a number or a date
+     *
+     * @param reader {@link BsonReader} on the value
+     * @return Time in milliseconds
+     */
+    private static long readTime(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.DATE_TIME) {
+            return reader.readDateTime();
+        }
+        return (long) readNumber(reader);
+    }
+
+    /**
+     * Read a number whatever its BSON type
+     *
+     * @param reader {@link BsonReader} on the value
+     * @return Value read
+     * @throws CodecConfigurationException if the value is not a number
+     */
+    private static double readNumber(BsonReader reader) {
+        switch (reader.getCurrentBsonType()) {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case DOUBLE:
+                return reader.readDouble();
+            default:
+                throw new CodecConfigurationException("Number expected instead of " + reader.getCurrentBsonType() + ".");
+        }
+    }
+
+    /**
+     * Read a GeoJSON Point or Polygon, only the exterior ring of a Polygon is kept
+     *
+     * @param reader {@link BsonReader} on the GeoJSON document
+     * @return {@link LatLong} of the location
+     * @throws CodecConfigurationException if coordinates are missing
+     */
+    private static LatLong[] readLocation(BsonReader reader) {
+        List<LatLong> positions = new ArrayList<>();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (COORDINATES_FIELD.equals(reader.readName())) {
+                readCoordinates(reader, positions);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        if (positions.isEmpty()) {
+            throw new CodecConfigurationException("Location has no coordinates.");
+        }
+        return positions.toArray(new LatLong[positions.size()]);
+    }
+
+    /**
+     * Read GeoJSON coordinates of a Point, or of a Polygon whose first ring is kept
+     *
+     * @param reader    {@link BsonReader} on the coordinates array
+     * @param positions List receiving positions read
+     */
+    private static void readCoordinates(BsonReader reader, List<LatLong> positions) {
+        reader.readStartArray();
+        if (reader.readBsonType() == BsonType.ARRAY) {
+            reader.readStartArray();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                reader.readStartArray();
+                reader.readBsonType();
+                positions.add(readPosition(reader));
+                reader.readEndArray();
+            }
+            reader.readEndArray();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                reader.skipValue();
+            }
+        } else {
+            positions.add(readPosition(reader));
+        }
+        reader.readEndArray();
+    }
+
+    /**
+     * Read a GeoJSON position, the type of its first value must have been read
+     *
+     * @param reader {@link BsonReader} inside the array of the position
+     * @return {@link LatLong} read, extra values such as altitude are skipped
+     */
+    private static LatLong readPosition(BsonReader reader) {
+        double longitude = readNumber(reader);
+        reader.readBsonType();
+        double latitude = readNumber(reader);
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            reader.skipValue();
+        }
+        return new LatLong(latitude, longitude);
+    }
+
+    /**
+     * @return {@link Event} class
+     */
+    @Override
+    public Class<Event> getEncoderClass() {
+        return Event.class;
+    }
+}
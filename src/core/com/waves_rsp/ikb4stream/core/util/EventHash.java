@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.core.util;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * This class provides only static methods to compute a stable content hash of an {@link Event}, from its source,
+ * location, start and normalized description. Two fetches of the same item get the same hash, whatever their score or end.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ */
+public class EventHash {
+    /**
+     * Sequence of whitespaces collapsed to a single space
+     *
+     * @see EventHash#normalize(String)
+     */
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+    /**
+     * SHA-256 digest of each thread
+     *
+     * @see EventHash#sha256()
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    /**
+     * Hexadecimal digits
+     *
+     * @see EventHash#hex(byte[])
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Private constructor to block instantiation
+     */
+    private EventHash() {
+
+    }
+
+    /**
+     * Compute the content hash of an {@link Event}
+     *
+     * @param event {@link Event} to hash
+     * @return SHA-256 of source, location, start and normalized description (32 bytes)
+     * @throws NullPointerException if event is null
+     * @see EventHash#normalize(String)
+     */
+    public static byte[] digest(Event event) {
+        Objects.requireNonNull(event);
+        MessageDigest digest = sha256();
+        digest.update(event.getSource().getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + event.getLocation().length * 16 + 8);
+        buffer.put((byte) 0);
+        buffer.putInt(event.getLocation().length);
+        for (LatLong latLong : event.getLocation()) {
+            buffer.putDouble(latLong.getLatitude());
+            buffer.putDouble(latLong.getLongitude());
+        }
+        buffer.putLong(event.getStart().getTime());
+        digest.update(buffer.array());
+        digest.update(normalize(event.getDescription()).getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    /**
+     * Compute the content hash of an {@link Event} as a string
+     *
+     * @param event {@link Event} to hash
+     * @return {@link EventHash#digest(Event)} in hexadecimal
+     * @throws NullPointerException if event is null
+     */
+    public static String of(Event event) {
+        return hex(digest(event));
+    }
+
+    /**
+     * Get the SHA-256 digest of the current thread
+     *
+     * @return {@link MessageDigest} reset
+     * @see EventHash#DIGEST
+     */
+    static MessageDigest sha256() {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Convert a digest to a string
+     *
+     * @param digest Digest to convert
+     * @return digest in hexadecimal
+     */
+    static String hex(byte[] digest) {
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Normalize a description so formatting changes between two fetches do not change the hash
+     *
+     * @param description Description of an {@link Event}
+     * @return description in lower case, trimmed, with whitespaces collapsed to a single space
+     */
+    static String normalize(String description) {
+        return WHITESPACES.matcher(description.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+}
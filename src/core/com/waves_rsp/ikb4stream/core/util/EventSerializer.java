@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.core.util;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * This class provides only static methods to encode an {@link Event} in a compact binary form and decode it.
+ * The layout is: version (1 byte), score (1 byte), start and end (8 bytes each), number of points (4 bytes),
+ * latitude and longitude of each point (8 bytes each), then source and description as UTF-8 prefixed by their length (4 bytes).
+ *
+ * @author ikb4stream
+ * @version 1.0
+ */
+public class EventSerializer {
+    /**
+     * Version of the binary layout, written as first byte
+     *
+     * @see EventSerializer#serialize(Event)
+     * @see EventSerializer#deserialize(ByteBuffer)
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Private constructor to block instantiation
+     */
+    private EventSerializer() {
+
+    }
+
+    /**
+     * Encode an {@link Event}
+     *
+     * @param event {@link Event} to encode
+     * @return Binary form of event
+     * @throws NullPointerException if event is null
+     * @see EventSerializer#VERSION
+     */
+    public static byte[] serialize(Event event) {
+        Objects.requireNonNull(event);
+        byte[] source = event.getSource().getBytes(StandardCharsets.UTF_8);
+        byte[] description = event.getDescription().getBytes(StandardCharsets.UTF_8);
+        LatLong[] location = event.getLocation();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 1 + 8 + 8 + 4 + location.length * 16 + 4 + source.length + 4 + description.length);
+        buffer.put(VERSION);
+        buffer.put(event.getScore());
+        buffer.putLong(event.getStart().getTime());
+        buffer.putLong(event.getEnd().getTime());
+        buffer.putInt(location.length);
+        for (LatLong latLong : location) {
+            buffer.putDouble(latLong.getLatitude());
+            buffer.putDouble(latLong.getLongitude());
+        }
+        buffer.putInt(source.length);
+        buffer.put(source);
+        buffer.putInt(description.length);
+        buffer.put(description);
+        return buffer.array();
+    }
+
+    /**
+     * Decode an {@link Event}
+     *
+     * @param bytes Binary form of an {@link Event}
+     * @return {@link Event} decoded
+     * @throws NullPointerException     if bytes is null
+     * @throws IllegalArgumentException if bytes is not a valid binary form
+     * @see EventSerializer#deserialize(ByteBuffer)
+     */
+    public static Event deserialize(byte[] bytes) {
+        Objects.requireNonNull(bytes);
+        return deserialize(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decode an {@link Event} from the current position of a buffer, which is moved after it
+     *
+     * @param buffer Buffer which contains the binary form of an {@link Event}
+     * @return {@link Event} decoded
+     * @throws NullPointerException     if buffer is null
+     * @throws IllegalArgumentException if buffer does not contain a valid binary form
+     * @see EventSerializer#VERSION
+     */
+    public static Event deserialize(ByteBuffer buffer) {
+        Objects.requireNonNull(buffer);
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown binary version " + version + " of Event.");
+            }
+            byte score = buffer.get();
+            Date start = new Date(buffer.getLong());
+            Date end = new Date(buffer.getLong());
+            int points = buffer.getInt();
+            if (points < 1 || points > buffer.remaining() / 16) {
+                throw new IllegalArgumentException("Invalid number of points " + points + " in Event.");
+            }
+            LatLong[] location = new LatLong[points];
+            for (int i = 0; i < points; i++) {
+                location[i] = new LatLong(buffer.getDouble(), buffer.getDouble());
+            }
+            String source = readString(buffer);
+            String description = readString(buffer);
+            if (score < 0) {
+                return new Event(location, start, end, description, source);
+            }
+            return new Event(location, start, end, description, score, source);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated binary form of Event.", e);
+        }
+    }
+
+    /**
+     * Read an UTF-8 string prefixed by its length
+     *
+     * @param buffer Buffer positioned on the length
+     * @return String read
+     * @throws IllegalArgumentException if length is invalid
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length + " in Event.");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
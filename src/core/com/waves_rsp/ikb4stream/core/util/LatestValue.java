@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+package com.waves_rsp.ikb4stream.core.util;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Key under which an {@link Event} is stored. {@link Event} of sources listed in database.writer.latest, such as periodic
+ * weather snapshots, share a key with the other {@link Event} of the same source, location cell and time bucket, so only the
+ * latest of them is kept. The key of other {@link Event} is their {@link EventHash}.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ */
+public class LatestValue {
+    /**
+     * Properties of this class
+     *
+     * @see PropertiesManager
+     * @see PropertiesManager#getProperty(String)
+     * @see PropertiesManager#getInstance(Class)
+     */
+    private static final PropertiesManager PROPERTIES_MANAGER = PropertiesManager.getInstance(LatestValue.class);
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LatestValue.class);
+    /**
+     * Single instance of {@link LatestValue}
+     *
+     * @see LatestValue#getInstance()
+     */
+    private static final LatestValue LATEST_VALUE = create();
+    /**
+     * Sources whose {@link Event} are coalesced
+     */
+    private final Set<String> sources;
+    /**
+     * Size in degrees of a location cell
+     */
+    private final double cellSize;
+    /**
+     * Duration in milliseconds of a time bucket
+     */
+    private final long bucket;
+
+    /**
+     * Create a {@link LatestValue}
+     *
+     * @param sources  Sources whose {@link Event} are coalesced
+     * @param cellSize Size in degrees of a location cell
+     * @param bucket   Duration in milliseconds of a time bucket
+     * @throws NullPointerException     if sources is null
+     * @throws IllegalArgumentException if cellSize or bucket is not positive
+     */
+    public LatestValue(Set<String> sources, double cellSize, long bucket) {
+        Objects.requireNonNull(sources);
+        if (!(cellSize > 0) || bucket <= 0) {
+            throw new IllegalArgumentException("Cell size and bucket must be positive.");
+        }
+        this.sources = Collections.unmodifiableSet(new HashSet<>(sources));
+        this.cellSize = cellSize;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Create the {@link LatestValue} configured by database.writer.latest, database.writer.latest.cell
+     * and database.writer.latest.bucket
+     *
+     * @return {@link LatestValue} configured
+     */
+    private static LatestValue create() {
+        Set<String> sources = Arrays.stream(PROPERTIES_MANAGER.getPropertyOrDefault("database.writer.latest", "").split(","))
+                .map(String::trim)
+                .filter(source -> !source.isEmpty())
+                .collect(Collectors.toSet());
+        try {
+            return new LatestValue(sources,
+                    Double.parseDouble(PROPERTIES_MANAGER.getPropertyOrDefault("database.writer.latest.cell", "0.01")),
+                    Long.parseLong(PROPERTIES_MANAGER.getPropertyOrDefault("database.writer.latest.bucket", "3600000")));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid database.writer.latest.cell or database.writer.latest.bucket, use default values");
+            return new LatestValue(sources, 0.01, 3600000);
+        }
+    }
+
+    /**
+     * Get instance of Singleton LatestValue
+     *
+     * @return an instance of {@link LatestValue}
+     * @see LatestValue#LATEST_VALUE
+     */
+    public static LatestValue getInstance() {
+        return LATEST_VALUE;
+    }
+
+    /**
+     * Check if an {@link Event} is coalesced with others
+     *
+     * @param event {@link Event} to check
+     * @return true if the source of event is listed in database.writer.latest
+     * @throws NullPointerException if event is null
+     */
+    public boolean isLatest(Event event) {
+        return sources.contains(event.getSource());
+    }
+
+    /**
+     * Get the key under which an {@link Event} is stored
+     *
+     * @param event {@link Event} to store
+     * @return Hash of source, cell of the mean point of location and bucket of start if event is coalesced,
+     * {@link EventHash#of(Event)} otherwise
+     * @throws NullPointerException if event is null
+     */
+    public String keyOf(Event event) {
+        if (!isLatest(event)) {
+            return EventHash.of(event);
+        }
+        double latitude = 0;
+        double longitude = 0;
+        for (LatLong latLong : event.getLocation()) {
+            latitude += latLong.getLatitude();
+            longitude += latLong.getLongitude();
+        }
+        latitude /= event.getLocation().length;
+        longitude /= event.getLocation().length;
+        MessageDigest digest = EventHash.sha256();
+        digest.update(event.getSource().getBytes(StandardCharsets.UTF_8));
+        digest.update(ByteBuffer.allocate(1 + 8 * 3)
+                .put((byte) 1)
+                .putLong((long) Math.floor(latitude / cellSize))
+                .putLong((long) Math.floor(longitude / cellSize))
+                .putLong(Math.floorDiv(event.getStart().getTime(), bucket))
+                .array());
+        return EventHash.hex(digest.digest());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.core.util;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Split a collection in one collection per day or per week (starting on Monday), in UTC. A partition is named after
+ * the collection followed by the first day of its period, such as events_20170102, so an old period is dropped
+ * with its collection.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ */
+public class TimePartitioner {
+    /**
+     * Format of the first day of a partition in its name
+     */
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("uuuuMMdd", Locale.ROOT);
+    /**
+     * Collection split
+     */
+    private final String collection;
+    /**
+     * Number of days of a partition, 1 or 7
+     */
+    private final int days;
+
+    /**
+     * Create a {@link TimePartitioner}
+     *
+     * @param collection  Name of the collection split
+     * @param granularity day or week
+     * @throws NullPointerException     if collection or granularity is null
+     * @throws IllegalArgumentException if granularity is neither day nor week
+     */
+    public TimePartitioner(String collection, String granularity) {
+        Objects.requireNonNull(collection);
+        Objects.requireNonNull(granularity);
+        switch (granularity.trim().toLowerCase(Locale.ROOT)) {
+            case "day":
+                this.days = 1;
+                break;
+            case "week":
+                this.days = 7;
+                break;
+            default:
+                throw new IllegalArgumentException("Partition must be day or week instead of " + granularity + ".");
+        }
+        this.collection = collection;
+    }
+
+    /**
+     * Get the partition containing a time
+     *
+     * @param time Time in milliseconds
+     * @return Name of the partition
+     */
+    public String nameOf(long time) {
+        LocalDate day = Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate();
+        if (days == 7) {
+            day = day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+        return collection + "_" + FORMATTER.format(day);
+    }
+
+    /**
+     * Get the beginning of a partition
+     *
+     * @param name Name of a collection
+     * @return Time in milliseconds of the beginning of this partition, -1 if name is not a partition of this collection
+     * @throws NullPointerException if name is null
+     */
+    public long startOf(String name) {
+        Objects.requireNonNull(name);
+        String prefix = collection + "_";
+        if (!name.startsWith(prefix) || name.length() != prefix.length() + 8) {
+            return -1;
+        }
+        try {
+            return LocalDate.parse(name.substring(prefix.length()), FORMATTER).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Check if a partition may contain times of a period
+     *
+     * @param name  Name of a collection
+     * @param start Beginning of the period in milliseconds
+     * @param end   End of the period in milliseconds
+     * @return true if name is a partition of this collection which overlaps [start, end]
+     * @throws NullPointerException if name is null
+     */
+    public boolean overlaps(String name, long start, long end) {
+        long partitionStart = startOf(name);
+        return partitionStart >= 0 && partitionStart <= end && partitionStart + getLength() > start;
+    }
+
+    /**
+     * @return Duration of a partition in milliseconds
+     */
+    public long getLength() {
+        return TimeUnit.DAYS.toMillis(days);
+    }
+}
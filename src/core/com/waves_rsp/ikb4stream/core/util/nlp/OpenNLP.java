@@ -52,12 +52,6 @@ public class OpenNLP {
      * Logger used to log all information in this class
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenNLP.class);
-    /**
-     * Store unique instance per Thread of {@link OpenNLP}
-     *
-     * @see OpenNLP#getOpenNLP(Thread)
-     */
-    private static final Map<Thread, OpenNLP> INSTANCES = new HashMap<>();
     /**
      * Load lemmatizer model
      *
@@ -102,7 +96,7 @@ public class OpenNLP {
     private final POSTaggerME tagger;
 
     /**
-     * Private constructor to allow only one {@link OpenNLP} for each Thread
+     * Private constructor, use {@link OpenNLP#createOpenNLP()}
      *
      * @throws IllegalStateException if an error occurred from {@link LoaderNLP} or {@link PropertiesManager}
      */
@@ -124,16 +118,14 @@ public class OpenNLP {
     }
 
     /**
-     * Get instance of {@link OpenNLP} for each thread because Apache OpenNLP is not thread safe
+     * Create an instance of {@link OpenNLP}, it must be used by one thread at a time because Apache OpenNLP is not thread
+     * safe. Models are shared by all instances.
      *
-     * @param thread Thread needs {@link OpenNLP}
-     * @return Instance of {@link OpenNLP}
-     * @throws NullPointerException if thread is null
-     * @see OpenNLP#INSTANCES
+     * @return New instance of {@link OpenNLP}
+     * @throws IllegalStateException if an error occurred from {@link LoaderNLP} or {@link PropertiesManager}
      */
-    public static OpenNLP getOpenNLP(Thread thread) {
-        Objects.requireNonNull(thread);
-        return INSTANCES.computeIfAbsent(thread, t -> new OpenNLP());
+    public static OpenNLP createOpenNLP() {
+        return new OpenNLP();
     }
 
     /**
@@ -71,11 +71,11 @@ public class RSSProducerConnector implements IProducerConnector {
      */
     private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
     /**
-     * Single instance of {@link OpenNLP} per each Thread
+     * Instance of {@link OpenNLP} of this connector
      *
      * @see RSSProducerConnector#geocodeRSS(String)
      */
-    private final OpenNLP openNLP = OpenNLP.getOpenNLP(Thread.currentThread());
+    private final OpenNLP openNLP = OpenNLP.createOpenNLP();
     /**
      * Source name of corresponding {@link Event}
      *
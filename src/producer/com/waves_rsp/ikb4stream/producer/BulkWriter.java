@@ -0,0 +1,492 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWriteConcernException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseWriterCallback;
+import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collect documents to insert and write them with a single unordered bulk write per collection once
+ * {@link BulkWriter#maxCount} documents or {@link BulkWriter#maxBytes} bytes are pending, or at most
+ * linger milliseconds after they have been added. Each document keeps its own callback,
+ * called with the error of this document only.
+ * At most maxInFlight documents are added and not written yet: beyond that {@link BulkWriter#add(Object, long, String, DatabaseWriterCallback)}
+ * blocks, so a slow database pushes back on its callers. Documents which failed with a transient error are written again,
+ * up to maxRetries times with an exponential backoff, so writes must be idempotent.
+ * A document whose key is the one of a pending document replaces it, and both callbacks get the result of the latest.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see DatabaseWriter
+ */
+class BulkWriter<T> {
+    /**
+     * Object to add metrics from this class
+     *
+     * @see BulkWriter#flush()
+     * @see MetricsLogger#log(String, long)
+     * @see MetricsLogger#getMetricsLogger()
+     */
+    private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkWriter.class);
+    /**
+     * Choose the collection where a document is written
+     */
+    private final Function<T, MongoCollection<T>> collectionOf;
+    /**
+     * Build the write of a document, such as an insert or an upsert
+     */
+    private final Function<T, WriteModel<T>> toModel;
+    /**
+     * Compute the key of a document merged with the pending document of the same key, null to never merge it
+     */
+    private final Function<T, String> keyOf;
+    /**
+     * Number of pending documents which triggers a flush
+     */
+    private final int maxCount;
+    /**
+     * Estimated size in bytes of pending documents which triggers a flush
+     */
+    private final long maxBytes;
+    /**
+     * Number of documents added and not written yet allowed
+     */
+    private final int maxInFlight;
+    /**
+     * Permits of documents added and not written yet
+     *
+     * @see BulkWriter#maxInFlight
+     */
+    private final Semaphore inFlight;
+    /**
+     * Number of times a document which failed with a transient error is written again
+     */
+    private final int maxRetries;
+    /**
+     * Time in milliseconds before the first retry, doubled at each following retry
+     */
+    private final long backoff;
+    /**
+     * Executor which flushes pending documents every linger milliseconds
+     */
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Documents waiting to be written
+     *
+     * @see BulkWriter#add(Object, long, String, DatabaseWriterCallback)
+     */
+    private List<Pending<T>> pending = new ArrayList<>();
+    /**
+     * Documents of {@link BulkWriter#pending} by key
+     *
+     * @see BulkWriter#keyOf
+     */
+    private Map<String, Pending<T>> pendingByKey = new HashMap<>();
+    /**
+     * Estimated size in bytes of {@link BulkWriter#pending}
+     */
+    private long pendingBytes;
+
+    /**
+     * Create a {@link BulkWriter}
+     *
+     * @param collectionOf Choose the collection where a document is written
+     * @param toModel      Build the write of a document, such as an insert or an upsert
+     * @param keyOf        Compute the key of a document merged with the pending document of the same key, null to never merge it
+     * @param maxCount     Number of pending documents which triggers a flush
+     * @param maxBytes     Estimated size in bytes of pending documents which triggers a flush
+     * @param linger       Maximum time in milliseconds a document waits before being flushed
+     * @param maxInFlight  Number of documents added and not written yet allowed
+     * @param maxRetries   Number of times a document which failed with a transient error is written again
+     * @param backoff      Time in milliseconds before the first retry, doubled at each following retry
+     * @throws NullPointerException     if collectionOf, toModel or keyOf is null
+     * @throws IllegalArgumentException if maxCount, maxBytes, linger or maxInFlight is not positive,
+     *                                  or if maxRetries or backoff is negative
+     */
+    BulkWriter(Function<T, MongoCollection<T>> collectionOf, Function<T, WriteModel<T>> toModel, Function<T, String> keyOf,
+               int maxCount, long maxBytes, long linger, int maxInFlight, int maxRetries, long backoff) {
+        Objects.requireNonNull(collectionOf);
+        Objects.requireNonNull(toModel);
+        Objects.requireNonNull(keyOf);
+        if (maxCount <= 0 || maxBytes <= 0 || linger <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("Batch count, bytes, linger and in-flight documents must be positive.");
+        }
+        if (maxRetries < 0 || backoff < 0) {
+            throw new IllegalArgumentException("Retries and backoff cannot be negative.");
+        }
+        this.collectionOf = collectionOf;
+        this.toModel = toModel;
+        this.keyOf = keyOf;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("DatabaseWriter flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, linger, linger, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a document to the next bulk write, which is sent now if it's full. It waits while
+     * {@link BulkWriter#maxInFlight} documents are not written yet.
+     *
+     * @param document Document to insert
+     * @param size     Estimated size in bytes of document
+     * @param source   Source of the {@link com.waves_rsp.ikb4stream.core.model.Event}, used in metrics
+     * @param callback {@link DatabaseWriterCallback} called with the result of this document, or with an
+     *                 {@link InterruptedException} if the thread is interrupted while waiting
+     * @throws NullPointerException if document, source or callback is null
+     * @see BulkWriter#flush()
+     * @see BulkWriter#inFlight
+     */
+    void add(T document, long size, String source, DatabaseWriterCallback callback) {
+        Pending<T> entry = new Pending<>(document, source, callback);
+        if (!inFlight.tryAcquire()) {
+            long start = System.currentTimeMillis();
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                callback.onResult(e);
+                return;
+            }
+            METRICS_LOGGER.log("dbwriter_inflight_wait", System.currentTimeMillis() - start);
+        }
+        String key = keyOf.apply(document);
+        List<Pending<T>> batch = null;
+        synchronized (this) {
+            Pending<T> previous = key == null ? null : pendingByKey.get(key);
+            if (previous != null) {
+                previous.merge(entry);
+                METRICS_LOGGER.log("dbwriter_coalesced", 1);
+                return;
+            }
+            if (key != null) {
+                pendingByKey.put(key, entry);
+            }
+            pending.add(entry);
+            pendingBytes += size;
+            if (pending.size() >= maxCount || pendingBytes >= maxBytes) {
+                batch = swap();
+            }
+        }
+        if (batch != null) {
+            write(batch, 0);
+        }
+    }
+
+    /**
+     * Send pending documents now
+     *
+     * @see BulkWriter#write(List, int)
+     */
+    void flush() {
+        List<Pending<T>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = swap();
+        }
+        write(batch, 0);
+    }
+
+    /**
+     * Take pending documents, caller must hold the lock of this {@link BulkWriter}
+     *
+     * @return {@link Pending} to write
+     */
+    private List<Pending<T>> swap() {
+        List<Pending<T>> batch = pending;
+        METRICS_LOGGER.log("dbwriter_batch_bytes", pendingBytes);
+        METRICS_LOGGER.log("dbwriter_inflight", getInFlight());
+        pending = new ArrayList<>(Math.min(maxCount, 1024));
+        pendingByKey = new HashMap<>();
+        pendingBytes = 0;
+        return batch;
+    }
+
+    /**
+     * Write a batch with a single unordered bulk write per collection
+     *
+     * @param batch   {@link Pending} to write
+     * @param attempt Number of times this batch has already been retried
+     * @see BulkWriter#write(MongoCollection, List, int)
+     */
+    private void write(List<Pending<T>> batch, int attempt) {
+        Map<MongoCollection<T>, List<Pending<T>>> batchByCollection = new IdentityHashMap<>();
+        for (Pending<T> entry : batch) {
+            MongoCollection<T> collection;
+            try {
+                collection = collectionOf.apply(entry.document);
+            } catch (RuntimeException e) {
+                complete(entry, e);
+                continue;
+            }
+            batchByCollection.computeIfAbsent(collection, c -> new ArrayList<>()).add(entry);
+        }
+        batchByCollection.forEach((collection, entries) -> write(collection, entries, attempt));
+    }
+
+    /**
+     * Write documents of a collection with a single unordered bulk write and dispatch results to callbacks
+     *
+     * @param collection Collection to write
+     * @param batch      {@link Pending} to write
+     * @param attempt    Number of times this batch has already been retried
+     * @see BulkWriter#dispatch(List, Throwable, long, int)
+     */
+    private void write(MongoCollection<T> collection, List<Pending<T>> batch, int attempt) {
+        List<WriteModel<T>> models = new ArrayList<>(batch.size());
+        batch.forEach(entry -> models.add(toModel.apply(entry.document)));
+        METRICS_LOGGER.log("dbwriter_batch_size", batch.size());
+        long start = System.currentTimeMillis();
+        try {
+            collection.bulkWrite(models, new BulkWriteOptions().ordered(false), (result, t) -> dispatch(batch, t, start, attempt));
+        } catch (RuntimeException e) {
+            dispatch(batch, e, start, attempt);
+        }
+    }
+
+    /**
+     * Call the callback of each {@link Pending} with its own error, documents which failed with a transient error
+     * are written again later if they have been retried less than {@link BulkWriter#maxRetries} times
+     *
+     * @param batch   {@link Pending} written
+     * @param t       Error of the bulk write, null if all documents have been inserted
+     * @param start   Time in milliseconds when the bulk write has been sent
+     * @param attempt Number of times this batch has already been retried
+     * @see BulkWriter#errorsOf(int, Throwable)
+     * @see BulkWriter#isTransient(Throwable)
+     */
+    private void dispatch(List<Pending<T>> batch, Throwable t, long start, int attempt) {
+        long now = System.currentTimeMillis();
+        METRICS_LOGGER.log("dbwriter_flush_time", now - start);
+        Throwable[] errors = errorsOf(batch.size(), t);
+        List<Pending<T>> retries = new ArrayList<>();
+        List<Throwable> retryErrors = new ArrayList<>();
+        Map<String, long[]> latencyBySource = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Pending<T> entry = batch.get(i);
+            if (attempt < maxRetries && isTransient(errors[i])) {
+                retries.add(entry);
+                retryErrors.add(errors[i]);
+                continue;
+            }
+            long[] latency = latencyBySource.computeIfAbsent(entry.source, s -> new long[2]);
+            latency[0] += now - entry.addedTime;
+            latency[1]++;
+            complete(entry, errors[i]);
+        }
+        latencyBySource.forEach((source, latency) -> METRICS_LOGGER.log("time_dbwriter_" + source, latency[0] / latency[1]));
+        if (!retries.isEmpty()) {
+            retry(retries, retryErrors, attempt + 1);
+        }
+    }
+
+    /**
+     * Write again documents after {@link BulkWriter#backoff} doubled at each attempt
+     *
+     * @param batch   {@link Pending} to write again
+     * @param errors  Error of each document, given to its callback if it cannot be retried
+     * @param attempt Number of this retry, from 1
+     * @see BulkWriter#scheduler
+     */
+    private void retry(List<Pending<T>> batch, List<Throwable> errors, int attempt) {
+        long delay = backoff << Math.min(attempt - 1, 30);
+        METRICS_LOGGER.log("dbwriter_retry", batch.size());
+        LOGGER.warn("{} documents will be written again in {} ms: {}", batch.size(), delay, errors.get(0).getMessage());
+        try {
+            scheduler.schedule(() -> write(batch, attempt), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            for (int i = 0; i < batch.size(); i++) {
+                complete(batch.get(i), errors.get(i));
+            }
+        }
+    }
+
+    /**
+     * Call the callbacks of a document and release their in-flight permits
+     *
+     * @param entry {@link Pending} whose write is over
+     * @param t     Error of this document, null if it has been inserted
+     * @see BulkWriter#inFlight
+     */
+    private void complete(Pending<T> entry, Throwable t) {
+        inFlight.release(entry.callbacks.size());
+        for (DatabaseWriterCallback callback : entry.callbacks) {
+            try {
+                callback.onResult(t);
+            } catch (RuntimeException e) {
+                LOGGER.error("Callback of a database write has failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Check if an error may not happen again when the write is retried
+     *
+     * @param t Error of a document
+     * @return true if t comes from network, server availability, timeout or write concern, false if t is null
+     * or is an error of the document itself, such as a duplicate key
+     */
+    static boolean isTransient(Throwable t) {
+        return t instanceof MongoSocketException
+                || t instanceof MongoTimeoutException
+                || t instanceof MongoExecutionTimeoutException
+                || t instanceof MongoNotPrimaryException
+                || t instanceof MongoNodeIsRecoveringException
+                || t instanceof MongoWriteConcernException
+                || (t instanceof MongoBulkWriteException && ((MongoBulkWriteException) t).getWriteConcernError() != null);
+    }
+
+    /**
+     * @return Number of documents added and not written yet
+     * @see BulkWriter#inFlight
+     */
+    int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Find the error of each document of a bulk write
+     *
+     * @param count Number of documents written
+     * @param t     Error of the bulk write, null if all documents have been inserted
+     * @return Error of each document, null for inserted ones. A {@link MongoBulkWriteException} gives a
+     * {@link MongoWriteException} to each failed document, other errors are given to all documents.
+     */
+    static Throwable[] errorsOf(int count, Throwable t) {
+        Throwable[] errors = new Throwable[count];
+        if (t == null) {
+            return errors;
+        }
+        if (t instanceof MongoBulkWriteException && ((MongoBulkWriteException) t).getWriteConcernError() == null) {
+            MongoBulkWriteException e = (MongoBulkWriteException) t;
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getIndex() >= 0 && error.getIndex() < count) {
+                    errors[error.getIndex()] = new MongoWriteException(error, e.getServerAddress());
+                }
+            }
+            return errors;
+        }
+        for (int i = 0; i < count; i++) {
+            errors[i] = t;
+        }
+        return errors;
+    }
+
+    /**
+     * Flush pending documents and stop the periodic flush, retries already planned still run
+     *
+     * @see BulkWriter#scheduler
+     */
+    void close() {
+        flush();
+        scheduler.shutdown();
+    }
+
+    /**
+     * Document waiting to be written with its callbacks
+     *
+     * @author ikb4stream
+     * @version 1.0
+     */
+    private static class Pending<T> {
+        /**
+         * Document to insert, replaced by the latest document of the same key
+         *
+         * @see Pending#merge(Pending)
+         */
+        private T document;
+        /**
+         * Source of the {@link com.waves_rsp.ikb4stream.core.model.Event}
+         */
+        private final String source;
+        /**
+         * Callbacks called with the result of {@link Pending#document}, one for each document merged
+         */
+        private final List<DatabaseWriterCallback> callbacks = new ArrayList<>(1);
+        /**
+         * Time in milliseconds when it has been added
+         */
+        private final long addedTime = System.currentTimeMillis();
+
+        /**
+         * Create a {@link Pending}
+         *
+         * @param document Document to insert
+         * @param source   Source of the {@link com.waves_rsp.ikb4stream.core.model.Event}
+         * @param callback Callback called with the result of document
+         * @throws NullPointerException if document, source or callback is null
+         */
+        private Pending(T document, String source, DatabaseWriterCallback callback) {
+            this.document = Objects.requireNonNull(document);
+            this.source = Objects.requireNonNull(source);
+            this.callbacks.add(Objects.requireNonNull(callback));
+        }
+
+        /**
+         * Replace the document by a more recent one of the same key, caller must hold the lock of the {@link BulkWriter}
+         *
+         * @param latest {@link Pending} added after this one
+         */
+        private void merge(Pending<T> latest) {
+            this.document = latest.document;
+            this.callbacks.addAll(latest.callbacks);
+        }
+    }
+}
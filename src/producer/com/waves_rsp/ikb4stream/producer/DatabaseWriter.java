@@ -18,35 +18,51 @@
 
 package com.waves_rsp.ikb4stream.producer;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoServerException;
 import com.mongodb.async.client.MongoClient;
 import com.mongodb.async.client.MongoClients;
 import com.mongodb.async.client.MongoCollection;
 import com.mongodb.async.client.MongoDatabase;
-import com.mongodb.client.model.geojson.Point;
-import com.mongodb.client.model.geojson.Polygon;
-import com.mongodb.client.model.geojson.Position;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseWriterCallback;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseWriter;
 import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
 import com.waves_rsp.ikb4stream.core.model.Event;
 import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
-import com.waves_rsp.ikb4stream.producer.model.DatabaseWriterCallback;
-import org.bson.Document;
+import com.waves_rsp.ikb4stream.core.util.EventCodec;
+import com.waves_rsp.ikb4stream.core.util.EventHash;
+import com.waves_rsp.ikb4stream.core.util.LatestValue;
+import com.waves_rsp.ikb4stream.core.util.TimePartitioner;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class writes data in mongodb database
  *
  * @author ikb4stream
  * @version 1.0
+ * @see com.waves_rsp.ikb4stream.core.communication.IDatabaseWriter
  */
-public class DatabaseWriter {
+public class DatabaseWriter implements IDatabaseWriter {
     /**
      * Properties of this class
      *
@@ -59,6 +75,7 @@ public class DatabaseWriter {
      * Object to add metrics from this class
      *
      * @see DatabaseWriter#insertEvent(Event, DatabaseWriterCallback)
+     * @see DatabaseWriter#insertEvents(List, DatabaseWriterCallback)
      * @see MetricsLogger#getMetricsLogger()
      * @see MetricsLogger#log(String, long)
      */
@@ -67,6 +84,12 @@ public class DatabaseWriter {
      * Logger used to log all information in this class
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseWriter.class);
+    /**
+     * Key of each {@link Event}, shared by {@link Event} of sources written in latest value mode
+     *
+     * @see DatabaseWriter#upsert(Event)
+     */
+    private static final LatestValue LATEST_VALUE = LatestValue.getInstance();
     /**
      * Single instance of {@link DatabaseWriter}
      *
@@ -74,23 +97,47 @@ public class DatabaseWriter {
      */
     private static final DatabaseWriter DATABASE_WRITER = new DatabaseWriter();
     /**
-     * Mongo collection containing {@link Event}
+     * Mongo database containing {@link Event}
+     */
+    private final MongoDatabase mongoDatabase;
+    /**
+     * Mongo collection containing {@link Event}, if it's not partitioned
      *
      * @see DatabaseWriter#insertEvent(Event, DatabaseWriterCallback)
+     * @see DatabaseWriter#insertEvents(List, DatabaseWriterCallback)
      */
-    private final MongoCollection<Document> mongoCollection;
+    private final MongoCollection<Event> mongoCollection;
     /**
-     * Constant value {@value LOCATION_FIELD}
+     * {@link TimePartitioner} of database.collection chosen by database.partition, null if it's not partitioned
      *
-     * @see DatabaseWriter#insertEvent(Event, DatabaseWriterCallback)
+     * @see DatabaseWriter#collectionOf(Event)
+     */
+    private final TimePartitioner partitioner;
+    /**
+     * Partitions already used, by name
+     *
+     * @see DatabaseWriter#collectionOf(Event)
+     */
+    private final Map<String, MongoCollection<Event>> partitions = new ConcurrentHashMap<>();
+    /**
+     * Time in milliseconds after its end a partition is dropped, 0 to keep partitions
+     *
+     * @see DatabaseWriter#dropExpiredPartitions()
      */
-    private static final String LOCATION_FIELD = "location";
+    private final long retention;
     /**
-     * Mapper to read JSON
+     * Mongo collection containing expired {@link Event}, database.archive.collection or database.collection followed by _archive
+     *
+     * @see DatabaseWriter#archiveEvents(List, DatabaseWriterCallback)
+     */
+    private final MongoCollection<Event> archiveCollection;
+    /**
+     * {@link BulkWriter} which groups insertions in {@link DatabaseWriter#mongoCollection} or its partitions
      *
      * @see DatabaseWriter#insertEvent(Event, DatabaseWriterCallback)
+     * @see DatabaseWriter#insertEvents(List, DatabaseWriterCallback)
      */
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final BulkWriter<Event> bulkWriter;
 
     /**
      * DataWriter constructor
@@ -100,15 +147,156 @@ public class DatabaseWriter {
     private DatabaseWriter() {
         try {
             final MongoClient mongoClient = MongoClients.create(PROPERTIES_MANAGER.getProperty("database.host"));
-            final MongoDatabase mongoDatabase = mongoClient.getDatabase(PROPERTIES_MANAGER.getProperty("database.datasource"));
-            this.mongoCollection = mongoDatabase.getCollection(PROPERTIES_MANAGER.getProperty("database.collection"));
+            this.mongoDatabase = mongoClient.getDatabase(PROPERTIES_MANAGER.getProperty("database.datasource"))
+                    .withCodecRegistry(EventCodec.withEventCodec(MongoClients.getDefaultCodecRegistry(), new EventCodec(LATEST_VALUE::keyOf,
+                            (int) PROPERTIES_MANAGER.getLongOrDefault("database.writer.compress", 0, 0))));
+            final String collection = PROPERTIES_MANAGER.getProperty("database.collection");
+            this.mongoCollection = mongoDatabase.getCollection(collection, Event.class);
+            final String partition = PROPERTIES_MANAGER.getPropertyOrDefault("database.partition", "none");
+            this.partitioner = "none".equalsIgnoreCase(partition.trim()) ? null : new TimePartitioner(collection, partition);
+            this.retention = PROPERTIES_MANAGER.getLongOrDefault("database.partition.retention", 0, 0);
+            this.archiveCollection = mongoDatabase.getCollection(
+                    PROPERTIES_MANAGER.getPropertyOrDefault("database.archive.collection", collection + "_archive"), Event.class);
+            this.bulkWriter = new BulkWriter<>(this::collectionOf, DatabaseWriter::upsert,
+                    event -> LATEST_VALUE.isLatest(event) ? LATEST_VALUE.keyOf(event) : null,
+                    (int) PROPERTIES_MANAGER.getLongOrDefault("database.writer.batch.size", 1, 500),
+                    PROPERTIES_MANAGER.getLongOrDefault("database.writer.batch.bytes", 1, 4L * 1024 * 1024),
+                    PROPERTIES_MANAGER.getLongOrDefault("database.writer.batch.linger", 1, 10),
+                    (int) PROPERTIES_MANAGER.getLongOrDefault("database.writer.inflight", 1, 10000),
+                    (int) PROPERTIES_MANAGER.getLongOrDefault("database.writer.retry.max", 1, 3),
+                    PROPERTIES_MANAGER.getLongOrDefault("database.writer.retry.backoff", 1, 100));
         } catch (IllegalArgumentException e) {
             LOGGER.error(e.getMessage());
             throw new IllegalStateException(e.getMessage());
         }
+        if (partitioner == null) {
+            createIndexes(mongoCollection);
+        } else {
+            dropExpiredPartitions();
+        }
         LOGGER.info("DatabaseWriter has been instantiate");
     }
 
+    /**
+     * Choose the collection of an {@link Event}, its partition is chosen from its end so a request only reads partitions
+     * from its start, even for an {@link Event} lasting several partitions. An {@link Event} upserted on its
+     * {@link EventHash} with another end may thus be kept in two partitions. Indexes of a partition are created when
+     * it's used for the first time.
+     *
+     * @param event {@link Event} to write
+     * @return {@link DatabaseWriter#mongoCollection} or the partition of event
+     * @see DatabaseWriter#partitioner
+     */
+    private MongoCollection<Event> collectionOf(Event event) {
+        if (partitioner == null) {
+            return mongoCollection;
+        }
+        return partitions.computeIfAbsent(partitioner.nameOf(event.getEnd().getTime()), name -> {
+            MongoCollection<Event> collection = mongoDatabase.getCollection(name, Event.class);
+            LOGGER.info("Partition {} is used", name);
+            createIndexes(collection);
+            dropExpiredPartitions();
+            return collection;
+        });
+    }
+
+    /**
+     * Drop partitions which ended more than database.partition.retention milliseconds ago
+     *
+     * @see DatabaseWriter#retention
+     */
+    private void dropExpiredPartitions() {
+        if (retention <= 0) {
+            return;
+        }
+        mongoDatabase.listCollectionNames().into(new ArrayList<>(), (names, t) -> {
+            if (t != null) {
+                LOGGER.error("Partitions cannot be listed: {}", t.getMessage());
+                return;
+            }
+            long limit = System.currentTimeMillis() - retention - partitioner.getLength();
+            names.stream()
+                    .filter(name -> partitioner.startOf(name) >= 0 && partitioner.startOf(name) < limit)
+                    .forEach(name -> mongoDatabase.getCollection(name).drop((result, e) -> {
+                        if (e != null) {
+                            LOGGER.error("Partition {} cannot be dropped: {}", name, e.getMessage());
+                        } else {
+                            METRICS_LOGGER.log("dbwriter_partition_dropped", 1);
+                            LOGGER.info("Partition {} has been dropped", name);
+                        }
+                    }));
+        });
+    }
+
+    /**
+     * Ensure indexes used by writers and readers exist: the unique index on {@value EventCodec#HASH_FIELD}, a 2dsphere index
+     * on location followed by end, start, score and source for requests of {@link Event} in an area and a period with a minimum
+     * score and some sources, an index on {@value EventCodec#UPDATED_FIELD} and _id for readers polling the {@link Event}
+     * written since a time, and, if database.ttl is set,
+     * a TTL index on {@value EventCodec#END_DATE_FIELD} so Mongo purges {@link Event} database.ttl milliseconds after their end.
+     * Documents written before these fields existed are neither indexed by hash nor purged.
+     *
+     * @param collection Collection containing {@link Event}
+     */
+    private static void createIndexes(MongoCollection<Event> collection) {
+        createIndex(collection, Indexes.ascending(EventCodec.HASH_FIELD),
+                new IndexOptions().unique(true).partialFilterExpression(Filters.exists(EventCodec.HASH_FIELD)));
+        createIndex(collection, Indexes.compoundIndex(Indexes.geo2dsphere("location"),
+                Indexes.ascending("end", "start", "score", "source")), new IndexOptions());
+        createIndex(collection, Indexes.ascending(EventCodec.UPDATED_FIELD, "_id"), new IndexOptions());
+        long ttl = PROPERTIES_MANAGER.getLongOrDefault("database.ttl", 0, 0);
+        if (ttl > 0) {
+            createIndex(collection, Indexes.ascending(EventCodec.END_DATE_FIELD), new IndexOptions().expireAfter(ttl, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Create an index if it does not exist yet
+     *
+     * @param collection Collection to index
+     * @param keys       Keys of the index
+     * @param options    {@link IndexOptions} of the index
+     */
+    private static void createIndex(MongoCollection<Event> collection, Bson keys, IndexOptions options) {
+        collection.createIndex(keys, options, (name, t) -> {
+            if (t != null) {
+                LOGGER.error("Index {} of {} cannot be created: {}", keys, collection.getNamespace(), t.getMessage());
+            } else {
+                LOGGER.info("Index {} of {} is ready", name, collection.getNamespace());
+            }
+        });
+    }
+
+    /**
+     * Build the upsert of an {@link Event} on its {@link EventHash}, so fetching it again replaces it. An {@link Event}
+     * of a source written in latest value mode replaces the one of the same location cell and time bucket.
+     *
+     * @param event {@link Event} to write
+     * @return Replacement of the document with the same hash, inserted if there is none
+     * @see EventCodec#HASH_FIELD
+     * @see LatestValue#keyOf(Event)
+     */
+    private static WriteModel<Event> upsert(Event event) {
+        return new ReplaceOneModel<>(Filters.eq(EventCodec.HASH_FIELD, LATEST_VALUE.keyOf(event)), event, new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Ignore duplicate key errors, raised when two upserts of the same {@link Event} run concurrently and one wins
+     *
+     * @param callback {@link DatabaseWriterCallback} to call
+     * @return {@link DatabaseWriterCallback} which calls callback without duplicate key errors
+     */
+    private static DatabaseWriterCallback ignoreDuplicate(DatabaseWriterCallback callback) {
+        return t -> {
+            if (t instanceof MongoServerException && ErrorCategory.fromErrorCode(((MongoServerException) t).getCode()) == ErrorCategory.DUPLICATE_KEY) {
+                METRICS_LOGGER.log("event_duplicate_concurrent", 1);
+                callback.onResult(null);
+            } else {
+                callback.onResult(t);
+            }
+        };
+    }
+
     /**
      * Return an instance of {@link DatabaseWriter}
      *
@@ -120,40 +308,114 @@ public class DatabaseWriter {
     }
 
     /**
-     * This method inserts an {@link Event} in the database
+     * This method inserts an {@link Event} in the database, it's written with other {@link Event} in a single bulk write.
+     * An {@link Event} with the same {@link EventHash} is replaced. It blocks while database.writer.inflight {@link Event}
+     * are waiting to be written.
      *
      * @param event    {@link Event} to insert into database
      * @param callback {@link DatabaseWriterCallback} called after inserting
      * @throws NullPointerException    if event or callback is null
-     * @see DatabaseWriter#mongoCollection
-     * @see DatabaseWriter#LOCATION_FIELD
-     * @see DatabaseWriter#METRICS_LOGGER
-     * @see DatabaseWriter#mapper
+     * @see DatabaseWriter#bulkWriter
+     * @see EventCodec
      */
+    @Override
     public void insertEvent(Event event, DatabaseWriterCallback callback) {
         Objects.requireNonNull(event);
         Objects.requireNonNull(callback);
-        try {
-            long start = System.currentTimeMillis();
-            Document document = Document.parse(mapper.writeValueAsString(event));
-            document.remove("start");
-            document.remove("end");
-            document.remove(LOCATION_FIELD);
-            document.append("start", event.getStart().getTime());
-            document.append("end", event.getEnd().getTime());
-            if (event.getLocation().length == 1) {
-                document.append(LOCATION_FIELD, new Point(new Position(
-                        event.getLocation()[0].getLongitude(), event.getLocation()[0].getLatitude())));
-            } else {
-                List<Position> positions = Arrays.stream(event.getLocation())
-                        .map(p -> new Position(p.getLongitude(), p.getLatitude())).collect(Collectors.toList());
-                document.append(LOCATION_FIELD, new Polygon(positions));
+        bulkWriter.add(event, estimateSize(event), event.getSource(), ignoreDuplicate(callback));
+    }
+
+    /**
+     * This method inserts a batch of {@link Event} in the database with unordered bulk writes,
+     * so an invalid {@link Event} does not prevent the others from being inserted. An {@link Event} with the same
+     * {@link EventHash} is replaced.
+     *
+     * @param events   List of {@link Event} to insert into database
+     * @param callback {@link DatabaseWriterCallback} called once after inserting the whole batch, with the first error
+     * @throws NullPointerException if events or callback is null
+     * @see DatabaseWriter#bulkWriter
+     * @see EventCodec
+     */
+    @Override
+    public void insertEvents(List<Event> events, DatabaseWriterCallback callback) {
+        Objects.requireNonNull(events);
+        Objects.requireNonNull(callback);
+        if (events.isEmpty()) {
+            callback.onResult(null);
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(events.size());
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        DatabaseWriterCallback eventCallback = ignoreDuplicate(t -> {
+            if (t != null) {
+                firstError.compareAndSet(null, t);
+            }
+            if (remaining.decrementAndGet() == 0) {
+                callback.onResult(firstError.get());
             }
-            this.mongoCollection.insertOne(document, (result, t) -> callback.onResult(t));
-            long time = System.currentTimeMillis() - start;
-            METRICS_LOGGER.log("time_dbwriter_" + event.getSource(), time);
-        } catch (JsonProcessingException e) {
-            LOGGER.error("Invalid event format: event not inserted in database.");
+        });
+        for (Event event : events) {
+            bulkWriter.add(event, estimateSize(event), event.getSource(), eventCallback);
+        }
+    }
+
+    /**
+     * Estimate the size of an {@link Event} once encoded by {@link EventCodec}
+     *
+     * @param event {@link Event} to measure
+     * @return Approximate size in bytes
+     */
+    private static long estimateSize(Event event) {
+        return 96L + event.getDescription().length() + event.getSource().length() + 24L * event.getLocation().length;
+    }
+
+    /**
+     * Write now {@link Event} waiting to be inserted
+     *
+     * @see DatabaseWriter#bulkWriter
+     */
+    @Override
+    public void flush() {
+        bulkWriter.flush();
+    }
+
+    /**
+     * This method inserts a batch of expired {@link Event} in the archive collection, without score,
+     * with a single unordered request
+     *
+     * @param events   List of expired {@link Event} to archive
+     * @param callback {@link DatabaseWriterCallback} called once after inserting the whole batch
+     * @throws NullPointerException if events or callback is null
+     * @see DatabaseWriter#archiveCollection
+     * @see DatabaseWriter#METRICS_LOGGER
+     */
+    @Override
+    public void archiveEvents(List<Event> events, DatabaseWriterCallback callback) {
+        insertMany(archiveCollection, events, callback, "time_dbarchive_");
+    }
+
+    /**
+     * Insert a batch of {@link Event} in a collection with a single unordered request
+     *
+     * @param collection   Mongo collection to write
+     * @param events       List of {@link Event} to insert
+     * @param callback     {@link DatabaseWriterCallback} called once after inserting the whole batch
+     * @param metricPrefix Prefix of the metric logging insertion time of each source
+     * @throws NullPointerException if events or callback is null
+     * @see DatabaseWriter#METRICS_LOGGER
+     */
+    private static void insertMany(MongoCollection<Event> collection, List<Event> events, DatabaseWriterCallback callback, String metricPrefix) {
+        Objects.requireNonNull(events);
+        Objects.requireNonNull(callback);
+        if (events.isEmpty()) {
+            callback.onResult(null);
+            return;
         }
+        long start = System.currentTimeMillis();
+        Set<String> sources = new HashSet<>();
+        events.forEach(event -> sources.add(event.getSource()));
+        collection.insertMany(events, new InsertManyOptions().ordered(false), (result, t) -> callback.onResult(t));
+        long time = System.currentTimeMillis() - start;
+        sources.forEach(source -> METRICS_LOGGER.log(metricPrefix + source, time));
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+package com.waves_rsp.ikb4stream.producer;
+
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseWriter;
+import com.waves_rsp.ikb4stream.core.database.EmbeddedDatabase;
+import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class provides the {@link IDatabaseWriter} chosen by database.type: mongodb for {@link DatabaseWriter},
+ * embedded for {@link EmbeddedDatabase}. Only the one chosen is created.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ */
+public class DatabaseWriterFactory {
+    /**
+     * Properties of this class
+     *
+     * @see PropertiesManager
+     * @see PropertiesManager#getProperty(String)
+     * @see PropertiesManager#getInstance(Class)
+     */
+    private static final PropertiesManager PROPERTIES_MANAGER = PropertiesManager.getInstance(DatabaseWriterFactory.class);
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseWriterFactory.class);
+    /**
+     * {@link IDatabaseWriter} chosen by database.type
+     *
+     * @see DatabaseWriterFactory#getDatabaseWriter()
+     */
+    private static final IDatabaseWriter DATABASE_WRITER = create();
+
+    /**
+     * Private constructor to block instantiation
+     */
+    private DatabaseWriterFactory() {
+
+    }
+
+    /**
+     * Create the {@link IDatabaseWriter} chosen by database.type
+     *
+     * @return {@link EmbeddedDatabase} if database.type is embedded, {@link DatabaseWriter} otherwise
+     */
+    private static IDatabaseWriter create() {
+        String type = PROPERTIES_MANAGER.getPropertyOrDefault("database.type", "mongodb").trim();
+        if ("embedded".equalsIgnoreCase(type)) {
+            return EmbeddedDatabase.getInstance();
+        }
+        if (!"mongodb".equalsIgnoreCase(type)) {
+            LOGGER.warn("Unknown database.type {}, use mongodb", type);
+        }
+        return DatabaseWriter.getInstance();
+    }
+
+    /**
+     * Get the {@link IDatabaseWriter} chosen by database.type
+     *
+     * @return Single instance of {@link IDatabaseWriter}
+     * @see DatabaseWriterFactory#DATABASE_WRITER
+     */
+    public static IDatabaseWriter getDatabaseWriter() {
+        return DATABASE_WRITER;
+    }
+}
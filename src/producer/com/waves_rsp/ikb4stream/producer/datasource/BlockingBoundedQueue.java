@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IBoundedQueue} backed by an {@link ArrayBlockingQueue}, default implementation of {@link DataQueue}
+ *
+ * @param <E> Type of element stored in this queue
+ * @author ikb4stream
+ * @version 1.0
+ */
+class BlockingBoundedQueue<E> implements IBoundedQueue<E> {
+    /**
+     * Queue which stores elements
+     *
+     * @see BlockingBoundedQueue#offer(Object)
+     * @see BlockingBoundedQueue#take()
+     */
+    private final BlockingQueue<E> queue;
+    /**
+     * Capacity of {@link BlockingBoundedQueue#queue}
+     *
+     * @see BlockingBoundedQueue#capacity()
+     */
+    private final int capacity;
+
+    /**
+     * Create a {@link BlockingBoundedQueue}
+     *
+     * @param capacity Maximum number of elements
+     * @throws IllegalArgumentException if capacity is lower than 1
+     */
+    BlockingBoundedQueue(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Insert an element if {@link BlockingBoundedQueue#queue} is not full
+     *
+     * @param element Element to insert
+     * @return true if element has been inserted
+     * @throws NullPointerException if element is null
+     * @see BlockingBoundedQueue#queue
+     */
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        return queue.offer(element);
+    }
+
+    /**
+     * Insert an element, waiting up to timeout if {@link BlockingBoundedQueue#queue} is full
+     *
+     * @param element Element to insert
+     * @param timeout Maximum time to wait
+     * @param unit    {@link TimeUnit} of timeout
+     * @return true if element has been inserted
+     * @throws NullPointerException if element or unit is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see BlockingBoundedQueue#queue
+     */
+    @Override
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(element);
+        Objects.requireNonNull(unit);
+        return queue.offer(element, timeout, unit);
+    }
+
+    /**
+     * Insert an element, waiting while {@link BlockingBoundedQueue#queue} is full
+     *
+     * @param element Element to insert
+     * @throws NullPointerException if element is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see BlockingBoundedQueue#queue
+     */
+    @Override
+    public void put(E element) throws InterruptedException {
+        Objects.requireNonNull(element);
+        queue.put(element);
+    }
+
+    /**
+     * Retrieve and remove the head of {@link BlockingBoundedQueue#queue}, never blocks
+     *
+     * @return Head of this queue or null if it's empty
+     * @see BlockingBoundedQueue#queue
+     */
+    @Override
+    public E poll() {
+        return queue.poll();
+    }
+
+    /**
+     * Retrieve and remove the head of {@link BlockingBoundedQueue#queue}, waiting if necessary
+     *
+     * @return Head of this queue
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see BlockingBoundedQueue#queue
+     */
+    @Override
+    public E take() throws InterruptedException {
+        return queue.take();
+    }
+
+    /**
+     * Retrieve and remove the head of {@link BlockingBoundedQueue#queue}, waiting up to timeout if necessary
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    {@link TimeUnit} of timeout
+     * @return Head of this queue or null if timeout elapsed
+     * @throws NullPointerException if unit is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see BlockingBoundedQueue#queue
+     */
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(unit);
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Remove available elements of {@link BlockingBoundedQueue#queue} under a single lock acquisition
+     *
+     * @param collection  Collection which receives elements in dequeue order
+     * @param maxElements Maximum number of elements to remove
+     * @return Number of elements removed
+     * @throws NullPointerException if collection is null
+     * @see BlockingBoundedQueue#queue
+     */
+    @Override
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        Objects.requireNonNull(collection);
+        return queue.drainTo(collection, maxElements);
+    }
+
+    /**
+     * Get number of elements in {@link BlockingBoundedQueue#queue}
+     *
+     * @return Number of elements
+     * @see BlockingBoundedQueue#queue
+     */
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Get capacity of this queue
+     *
+     * @return Maximum number of elements
+     * @see BlockingBoundedQueue#capacity
+     */
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -18,15 +18,24 @@
 
 package com.waves_rsp.ikb4stream.producer.datasource;
 
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseWriter;
 import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
 import com.waves_rsp.ikb4stream.core.model.Event;
 import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
-import com.waves_rsp.ikb4stream.producer.DatabaseWriter;
+import com.waves_rsp.ikb4stream.core.util.BloomFilter;
+import com.waves_rsp.ikb4stream.core.util.EventHash;
+import com.waves_rsp.ikb4stream.producer.DatabaseWriterFactory;
+import com.waves_rsp.ikb4stream.producer.score.ScoreProcessorException;
 import com.waves_rsp.ikb4stream.producer.score.ScoreProcessorManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
 
 /**
  * Object to consume {@link Event} in {@link DataQueue}
@@ -40,7 +49,7 @@ public class DataConsumer {
      *
      * @see DataConsumer#consume()
      */
-    private final ScoreProcessorManager scoreProcessorManger = new ScoreProcessorManager();
+    private final ScoreProcessorManager scoreProcessorManger = ScoreProcessorManager.getInstance();
     /**
      * Object to add metrics from this class
      *
@@ -50,15 +59,53 @@ public class DataConsumer {
      */
     private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
     /**
-     * {@link DatabaseWriter} to write {@link Event} in database
+     * {@link IDatabaseWriter} to write {@link Event} in database, chosen by {@link DatabaseWriterFactory}
      *
      * @see DataConsumer#consume()
      */
-    private static final DatabaseWriter DATABASE_WRITER = DatabaseWriter.getInstance();
+    private static final IDatabaseWriter DATABASE_WRITER = DatabaseWriterFactory.getDatabaseWriter();
     /**
      * Logger used to log all information in this class
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(DataConsumer.class);
+    /**
+     * Properties of this class
+     *
+     * @see PropertiesManager
+     * @see PropertiesManager#getLongOrDefault(String, long, long)
+     */
+    private static final PropertiesManager PROPERTIES_MANAGER = PropertiesManager.getInstance(DataConsumer.class, "resources/config.properties");
+    /**
+     * Maximum time in milliseconds to wait for an {@link Event} before checking {@link DataConsumer#running}
+     *
+     * @see DataConsumer#consume()
+     */
+    private static final long IDLE_TIMEOUT = 1000;
+    /**
+     * {@link EventExpiration} which removes events past their deadline before scoring
+     *
+     * @see DataConsumer#consume(List)
+     */
+    private static final EventExpiration EXPIRATION = EventExpiration.getInstance();
+    /**
+     * {@link DeadLetterStore} which keeps {@link Event} failing to be scored
+     *
+     * @see DataConsumer#consume(List)
+     */
+    private static final DeadLetterStore DEAD_LETTER_STORE = DeadLetterStore.getInstance();
+    /**
+     * Number of {@link Event} {@link DataConsumer#SEEN_EVENTS} is sized for, it's cleared once they have been added
+     *
+     * @see DataConsumer#addSeen(List)
+     */
+    private static final long SEEN_EVENTS_EXPECTED = PROPERTIES_MANAGER.getLongOrDefault("producer.dedup.bloom.expected", 1, 1000000);
+    /**
+     * {@link BloomFilter} of {@link EventHash} already inserted, null if producer.dedup.bloom is not true
+     *
+     * @see DataConsumer#isDuplicate(byte[])
+     * @see DataConsumer#addSeen(List)
+     */
+    private static final BloomFilter SEEN_EVENTS = createBloomFilter();
     /**
      * Single instance of {@link DataQueue}
      *
@@ -74,18 +121,50 @@ public class DataConsumer {
      * @see DataConsumer#createDataConsumer(DataQueue)
      */
     private final int targetScore;
+    /**
+     * Maximum number of {@link Event} scored and inserted together
+     *
+     * @see DataConsumer#consume()
+     * @see DataConsumer#createDataConsumer(DataQueue)
+     */
+    private final int batchSize;
+    /**
+     * Maximum time in milliseconds to wait for a batch to be filled
+     *
+     * @see DataConsumer#consume()
+     * @see DataConsumer#createDataConsumer(DataQueue)
+     */
+    private final long batchLinger;
+    /**
+     * False once {@link DataConsumer#stop()} has been called
+     *
+     * @see DataConsumer#consume()
+     */
+    private volatile boolean running = true;
+    /**
+     * Total time in nanoseconds spent scoring and inserting, written only by the consuming thread
+     *
+     * @see DataConsumer#getBusyTime()
+     */
+    private volatile long busyTime;
 
     /**
      * Private constructor, you must use {@link DataConsumer#createDataConsumer(DataQueue)}
      *
      * @param dataQueue   Single instance of {@link DataQueue}
      * @param targetScore Target score to reach
+     * @param batchSize   Maximum number of {@link Event} in a batch
+     * @param batchLinger Maximum time in milliseconds to wait for a batch to be filled
      * @see DataConsumer#dataQueue
      * @see DataConsumer#targetScore
+     * @see DataConsumer#batchSize
+     * @see DataConsumer#batchLinger
      */
-    private DataConsumer(DataQueue dataQueue, int targetScore) {
+    private DataConsumer(DataQueue dataQueue, int targetScore, int batchSize, long batchLinger) {
         this.dataQueue = dataQueue;
         this.targetScore = targetScore;
+        this.batchSize = batchSize;
+        this.batchLinger = batchLinger;
     }
 
     /**
@@ -96,6 +175,8 @@ public class DataConsumer {
      * @throws NullPointerException if dataQueue is null
      * @see DataConsumer#dataQueue
      * @see DataConsumer#targetScore
+     * @see DataConsumer#batchSize
+     * @see DataConsumer#batchLinger
      */
     public static DataConsumer createDataConsumer(DataQueue dataQueue) {
         Objects.requireNonNull(dataQueue);
@@ -107,7 +188,61 @@ public class DataConsumer {
         } catch (IllegalArgumentException e) {
             LOGGER.warn("Use default value for score.target");
         }
-        return new DataConsumer(dataQueue, targetScore);
+        int batchSize = (int) PROPERTIES_MANAGER.getLongOrDefault("producer.consumer.batch.size", 1, 100);
+        long batchLinger = PROPERTIES_MANAGER.getLongOrDefault("producer.consumer.batch.linger", 1, 5);
+        return new DataConsumer(dataQueue, targetScore, batchSize, batchLinger);
+    }
+
+    /**
+     * Create {@link DataConsumer#SEEN_EVENTS} from producer.dedup.bloom and producer.dedup.bloom.fpp (0.01 by default)
+     *
+     * @return {@link BloomFilter} or null if producer.dedup.bloom is not true
+     */
+    private static BloomFilter createBloomFilter() {
+        if (!Boolean.parseBoolean(PROPERTIES_MANAGER.getPropertyOrDefault("producer.dedup.bloom", "false"))) {
+            return null;
+        }
+        double fpp = 0.01;
+        try {
+            fpp = Double.parseDouble(PROPERTIES_MANAGER.getProperty("producer.dedup.bloom.fpp"));
+        } catch (IllegalArgumentException e) {
+            LOGGER.info("Use default value for producer.dedup.bloom.fpp");
+        }
+        try {
+            return new BloomFilter(SEEN_EVENTS_EXPECTED, fpp);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("{}, use default value for producer.dedup.bloom.fpp", e.getMessage());
+            return new BloomFilter(SEEN_EVENTS_EXPECTED, 0.01);
+        }
+    }
+
+    /**
+     * Check if an {@link Event} has already been inserted, using {@link DataConsumer#SEEN_EVENTS}.
+     * A new {@link Event} is wrongly seen as a duplicate with a probability of producer.dedup.bloom.fpp.
+     *
+     * @param digest {@link EventHash#digest(Event)} of the {@link Event} to check, null if deduplication is disabled
+     * @return true if the {@link Event} has probably been inserted already, false if it's new or deduplication is disabled
+     * @see DataConsumer#SEEN_EVENTS
+     */
+    private static boolean isDuplicate(byte[] digest) {
+        return digest != null && SEEN_EVENTS.mightContain(digest);
+    }
+
+    /**
+     * Remember {@link Event} once they have been inserted, so they are not scored again
+     *
+     * @param digests {@link EventHash#digest(Event)} of inserted {@link Event}
+     * @see DataConsumer#SEEN_EVENTS
+     */
+    private static void addSeen(List<byte[]> digests) {
+        for (byte[] digest : digests) {
+            if (SEEN_EVENTS.getInsertions() >= SEEN_EVENTS_EXPECTED) {
+                // Past its expected size, false positives would grow quickly
+                SEEN_EVENTS.clear();
+                LOGGER.info("Bloom filter of consumed events has been cleared");
+            }
+            SEEN_EVENTS.put(digest);
+        }
     }
 
     /**
@@ -123,31 +258,136 @@ public class DataConsumer {
     }
 
     /**
-     * Consume Event in dataQueue and send to scoreProcessor
+     * Consume batches of Event in dataQueue and send them to scoreProcessor, until thread is interrupted or
+     * {@link DataConsumer#stop()} is called
      *
-     * @see DataConsumer#DATABASE_WRITER
-     * @see DataConsumer#METRICS_LOGGER
-     * @see DataConsumer#targetScore
      * @see DataConsumer#dataQueue
+     * @see DataConsumer#batchSize
+     * @see DataConsumer#batchLinger
+     * @see DataConsumer#consume(List)
      */
     public void consume() {
-        while (!Thread.currentThread().isInterrupted()) {
+        while (running && !Thread.currentThread().isInterrupted()) {
             try {
-                Event event = dataQueue.pop();
-                Event eventClone = scoreProcessorManger.processScore(event);
-                LOGGER.info("Event {} has been scored", eventClone);
-
-                if (filter(eventClone, targetScore)) {
-                    DATABASE_WRITER.insertEvent(eventClone, t -> {
-                        METRICS_LOGGER.log("event_scored_" + event.getSource(), eventClone.getScore());
-                        LOGGER.error(t.getMessage());
-                    });
-                } else {
-                    METRICS_LOGGER.log("scored_not_kept_" + event.getSource(), eventClone.getScore());
+                List<Event> events = dataQueue.popBatch(batchSize, batchLinger, IDLE_TIMEOUT);
+                if (!events.isEmpty()) {
+                    long start = System.nanoTime();
+                    consume(events);
+                    busyTime += System.nanoTime() - start;
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }
     }
+
+    /**
+     * Ask this {@link DataConsumer} to return from {@link DataConsumer#consume()} once its current batch is processed,
+     * it notices it within {@link DataConsumer#IDLE_TIMEOUT} milliseconds when {@link DataQueue} is empty
+     *
+     * @see DataConsumer#running
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Get total time spent processing batches
+     *
+     * @return Time in nanoseconds
+     * @see DataConsumer#busyTime
+     */
+    public long getBusyTime() {
+        return busyTime;
+    }
+
+    /**
+     * Score a batch of {@link Event} and insert those which reach {@link DataConsumer#targetScore} with a single request.
+     * Scores are logged as an average by source for the batch. {@link Event} past their deadline or already inserted are not scored.
+     * An {@link Event} failing to be scored, or whose scoring is cancelled, goes to {@link DataConsumer#DEAD_LETTER_STORE}
+     * without affecting the others.
+     *
+     * @param events Batch of {@link Event} to process
+     * @see DataConsumer#DATABASE_WRITER
+     * @see DataConsumer#METRICS_LOGGER
+     * @see DataConsumer#EXPIRATION
+     * @see DataConsumer#DEAD_LETTER_STORE
+     * @see DataConsumer#targetScore
+     */
+    private void consume(List<Event> events) {
+        List<Event> kept = new ArrayList<>(events.size());
+        List<byte[]> keptDigests = new ArrayList<>();
+        List<Event> expired = new ArrayList<>();
+        Map<String, long[]> keptScores = new HashMap<>();
+        Map<String, long[]> notKeptScores = new HashMap<>();
+        Map<String, Long> failedBySource = new HashMap<>();
+        Map<String, Long> failedByProcessor = new HashMap<>();
+        Map<String, Long> duplicates = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (Event event : events) {
+            if (EXPIRATION.isPastDeadline(event, now)) {
+                expired.add(event);
+                continue;
+            }
+            byte[] digest = SEEN_EVENTS == null ? null : EventHash.digest(event);
+            if (isDuplicate(digest)) {
+                duplicates.merge(event.getSource(), 1L, Long::sum);
+                continue;
+            }
+            Event eventClone;
+            try {
+                eventClone = scoreProcessorManger.processScore(event);
+            } catch (CancellationException e) {
+                // The consumer is interrupted, the event is kept aside rather than inserted with a partial score
+                LOGGER.warn("Scoring of event {} has been cancelled: {}", event, e.getMessage());
+                DEAD_LETTER_STORE.add(event, "ScoreProcessorManager", e);
+                continue;
+            } catch (RuntimeException e) {
+                String processor = e instanceof ScoreProcessorException ? ((ScoreProcessorException) e).getProcessor() : "ScoreProcessorManager";
+                LOGGER.error("Event {} cannot be scored: {}", event, e.getMessage());
+                DEAD_LETTER_STORE.add(event, processor, e);
+                failedBySource.merge(event.getSource(), 1L, Long::sum);
+                failedByProcessor.merge(processor, 1L, Long::sum);
+                continue;
+            }
+            LOGGER.info("Event {} has been scored", eventClone);
+            if (filter(eventClone, targetScore)) {
+                kept.add(eventClone);
+                if (digest != null) {
+                    keptDigests.add(digest);
+                }
+                addScore(keptScores, eventClone);
+            } else {
+                addScore(notKeptScores, eventClone);
+            }
+        }
+        EXPIRATION.expire(expired, "deadline");
+        duplicates.forEach((source, count) -> METRICS_LOGGER.log("event_duplicate_" + source, count));
+        failedBySource.forEach((source, count) -> METRICS_LOGGER.log("event_failed_" + source, count));
+        failedByProcessor.forEach((processor, count) -> METRICS_LOGGER.log("scoreprocessor_failed_" + processor, count));
+        notKeptScores.forEach((source, score) -> METRICS_LOGGER.log("scored_not_kept_" + source, score[0] / score[1]));
+        if (kept.isEmpty()) {
+            return;
+        }
+        DATABASE_WRITER.insertEvents(kept, t -> {
+            if (t != null) {
+                LOGGER.error(t.getMessage());
+            } else {
+                addSeen(keptDigests);
+                keptScores.forEach((source, score) -> METRICS_LOGGER.log("event_scored_" + source, score[0] / score[1]));
+            }
+        });
+    }
+
+    /**
+     * Add score of an {@link Event} to the sum and count of its source
+     *
+     * @param scores Association of a source to its sum of scores and number of {@link Event}
+     * @param event  Scored {@link Event}
+     */
+    private static void addScore(Map<String, long[]> scores, Event event) {
+        long[] score = scores.computeIfAbsent(event.getSource(), s -> new long[2]);
+        score[0] += event.getScore();
+        score[1]++;
+    }
 }
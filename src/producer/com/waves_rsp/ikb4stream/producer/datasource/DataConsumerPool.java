@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
+import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import com.waves_rsp.ikb4stream.producer.score.ScoreProcessorManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of {@link DataConsumer} run by an executor, which grows and shrinks between a minimum and a maximum number of
+ * consumers according to {@link DataQueue#getFillRatio()} and the time consumers spend processing events.
+ * Threads come and go with consumers, so {@link ScoreProcessorManager} keeps at most one instance of each scorer per
+ * consumer slot instead of one per thread.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see ProducerManager
+ */
+class DataConsumerPool {
+    /**
+     * Properties of this class
+     *
+     * @see PropertiesManager
+     * @see PropertiesManager#getProperty(String)
+     * @see PropertiesManager#getInstance(Class)
+     */
+    private static final PropertiesManager PROPERTIES_MANAGER = PropertiesManager.getInstance(DataConsumerPool.class);
+    /**
+     * Object to add metrics from this class
+     *
+     * @see DataConsumerPool#scale()
+     * @see MetricsLogger#log(String, long)
+     * @see MetricsLogger#getMetricsLogger()
+     */
+    private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataConsumerPool.class);
+    /**
+     * A consumer is added when {@link DataQueue} is filled above this ratio
+     *
+     * @see DataConsumerPool#targetSize(double, double, int, int, int)
+     */
+    private static final double SCALE_UP_FILL = 0.5;
+    /**
+     * A consumer is added when consumers are busy above this ratio
+     *
+     * @see DataConsumerPool#targetSize(double, double, int, int, int)
+     */
+    private static final double SCALE_UP_BUSY = 0.8;
+    /**
+     * A consumer may be removed when {@link DataQueue} is filled below this ratio
+     *
+     * @see DataConsumerPool#targetSize(double, double, int, int, int)
+     */
+    private static final double SCALE_DOWN_FILL = 0.1;
+    /**
+     * A consumer may be removed when consumers are busy below this ratio
+     *
+     * @see DataConsumerPool#targetSize(double, double, int, int, int)
+     */
+    private static final double SCALE_DOWN_BUSY = 0.3;
+    /**
+     * {@link DataQueue} consumed by this pool
+     */
+    private final DataQueue dataQueue;
+    /**
+     * Minimum number of {@link DataConsumer}
+     */
+    private final int minConsumers;
+    /**
+     * Maximum number of {@link DataConsumer}
+     */
+    private final int maxConsumers;
+    /**
+     * Time in milliseconds between two scaling decisions
+     *
+     * @see DataConsumerPool#scale()
+     */
+    private final long scaleInterval;
+    /**
+     * True to run consumers in virtual threads if the JVM supports them
+     *
+     * @see DataConsumerPool#createExecutor(boolean)
+     */
+    private final boolean virtual;
+    /**
+     * Executor which runs {@link DataConsumer#consume()}, created by {@link DataConsumerPool#start()}
+     *
+     * @see DataConsumerPool#createExecutor(boolean)
+     */
+    private ExecutorService executor;
+    /**
+     * Executor which runs {@link DataConsumerPool#scale()}, created by {@link DataConsumerPool#start()}
+     */
+    private ScheduledExecutorService monitor;
+    /**
+     * Running {@link DataConsumer}, the last one is the first removed
+     *
+     * @see DataConsumerPool#addConsumer()
+     * @see DataConsumerPool#removeConsumer()
+     */
+    private final Deque<DataConsumer> consumers = new ArrayDeque<>();
+    /**
+     * {@link DataConsumer#getBusyTime()} of each consumer at last {@link DataConsumerPool#scale()}
+     *
+     * @see DataConsumerPool#getBusyRatio(long)
+     */
+    private final Map<DataConsumer, Long> lastBusyTimes = new HashMap<>();
+    /**
+     * Time in nanoseconds of last {@link DataConsumerPool#scale()}
+     */
+    private long lastScaleTime;
+
+    /**
+     * Create a {@link DataConsumerPool}
+     *
+     * @param dataQueue     {@link DataQueue} to consume
+     * @param minConsumers  Minimum number of {@link DataConsumer}
+     * @param maxConsumers  Maximum number of {@link DataConsumer}
+     * @param scaleInterval Time in milliseconds between two scaling decisions
+     * @param virtual       True to run consumers in virtual threads if the JVM supports them
+     * @throws NullPointerException     if dataQueue is null
+     * @throws IllegalArgumentException if minConsumers is lower than 1, maxConsumers lower than minConsumers or
+     *                                  scaleInterval is not positive
+     */
+    DataConsumerPool(DataQueue dataQueue, int minConsumers, int maxConsumers, long scaleInterval, boolean virtual) {
+        Objects.requireNonNull(dataQueue);
+        if (minConsumers < 1 || maxConsumers < minConsumers) {
+            throw new IllegalArgumentException("Invalid number of consumers between " + minConsumers + " and " + maxConsumers + ".");
+        }
+        if (scaleInterval <= 0) {
+            throw new IllegalArgumentException("Scale interval must be positive.");
+        }
+        this.dataQueue = dataQueue;
+        this.minConsumers = minConsumers;
+        this.maxConsumers = maxConsumers;
+        this.scaleInterval = scaleInterval;
+        this.virtual = virtual;
+    }
+
+    /**
+     * Create a {@link DataConsumerPool} from configuration: producer.consumer.min (producer.thread by default),
+     * producer.consumer.max (min by default), producer.consumer.scale.interval and producer.consumer.virtual
+     *
+     * @param dataQueue {@link DataQueue} to consume
+     * @return {@link DataConsumerPool} not started
+     * @throws NullPointerException if dataQueue is null
+     * @see DataConsumerPool#PROPERTIES_MANAGER
+     */
+    static DataConsumerPool create(DataQueue dataQueue) {
+        Objects.requireNonNull(dataQueue);
+        int minConsumers = (int) PROPERTIES_MANAGER.getLongOrDefault("producer.consumer.min", 1, PROPERTIES_MANAGER.getLongOrDefault("producer.thread", 1, 10));
+        int maxConsumers = (int) Math.max(minConsumers, PROPERTIES_MANAGER.getLongOrDefault("producer.consumer.max", 1, minConsumers));
+        long scaleInterval = PROPERTIES_MANAGER.getLongOrDefault("producer.consumer.scale.interval", 1, 1000);
+        boolean virtual = Boolean.parseBoolean(PROPERTIES_MANAGER.getPropertyOrDefault("producer.consumer.virtual", "false"));
+        return new DataConsumerPool(dataQueue, minConsumers, maxConsumers, scaleInterval, virtual);
+    }
+
+    /**
+     * Create the executor of consumers. Virtual threads are looked up by reflection, so this class still runs on JVMs
+     * which do not provide them.
+     *
+     * @param virtual True to use virtual threads if they are available
+     * @return Executor which creates a virtual thread per consumer, or a cached pool of named platform threads
+     */
+    private static ExecutorService createExecutor(boolean virtual) {
+        if (virtual) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                LOGGER.info("Consumers run in virtual threads");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                LOGGER.warn("Virtual threads are not available on this JVM, consumers run in platform threads");
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("Consumer " + count.incrementAndGet());
+            return thread;
+        });
+    }
+
+    /**
+     * Launch {@link DataConsumerPool#minConsumers} consumers and start scaling, does nothing if it's already started
+     *
+     * @see DataConsumerPool#addConsumer()
+     * @see DataConsumerPool#scale()
+     * @see ScoreProcessorManager#setMaxInstances(int)
+     */
+    synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        ScoreProcessorManager.getInstance().setMaxInstances(maxConsumers);
+        executor = createExecutor(virtual);
+        monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("Consumer pool monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        while (consumers.size() < minConsumers) {
+            addConsumer();
+        }
+        lastScaleTime = System.nanoTime();
+        monitor.scheduleAtFixedRate(this::scale, scaleInterval, scaleInterval, TimeUnit.MILLISECONDS);
+        LOGGER.info("{} consumer(s) has been launched, up to {}", minConsumers, maxConsumers);
+    }
+
+    /**
+     * Launch a new {@link DataConsumer}
+     *
+     * @see DataConsumerPool#consumers
+     */
+    private void addConsumer() {
+        DataConsumer dataConsumer = DataConsumer.createDataConsumer(dataQueue);
+        consumers.addLast(dataConsumer);
+        lastBusyTimes.put(dataConsumer, 0L);
+        executor.execute(() -> run(dataConsumer));
+    }
+
+    /**
+     * Run a {@link DataConsumer} and replace it if it crashes
+     *
+     * @param dataConsumer {@link DataConsumer} to run
+     * @see DataConsumerPool#replaceConsumer(DataConsumer)
+     */
+    private void run(DataConsumer dataConsumer) {
+        try {
+            dataConsumer.consume();
+        } catch (RuntimeException | Error e) {
+            METRICS_LOGGER.log("consumer_crashed", 1);
+            LOGGER.error("{} has crashed", Thread.currentThread().getName(), e);
+            replaceConsumer(dataConsumer);
+        }
+    }
+
+    /**
+     * Launch a new {@link DataConsumer} in place of a crashed one, unless this pool has been stopped or has removed it
+     *
+     * @param crashed {@link DataConsumer} which has crashed
+     * @see DataConsumerPool#addConsumer()
+     */
+    private synchronized void replaceConsumer(DataConsumer crashed) {
+        if (executor == null || !consumers.remove(crashed)) {
+            return;
+        }
+        lastBusyTimes.remove(crashed);
+        addConsumer();
+        LOGGER.info("Crashed consumer has been replaced, {} consumer(s) running", consumers.size());
+    }
+
+    /**
+     * Stop the last launched {@link DataConsumer}, it finishes its current batch
+     *
+     * @see DataConsumer#stop()
+     */
+    private void removeConsumer() {
+        DataConsumer dataConsumer = consumers.pollLast();
+        if (dataConsumer != null) {
+            lastBusyTimes.remove(dataConsumer);
+            dataConsumer.stop();
+        }
+    }
+
+    /**
+     * Add or remove a consumer according to {@link DataQueue#getFillRatio()} and the busy ratio since last call
+     *
+     * @see DataConsumerPool#targetSize(double, double, int, int, int)
+     * @see DataConsumerPool#METRICS_LOGGER
+     */
+    private synchronized void scale() {
+        if (executor == null) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            double busyRatio = getBusyRatio(now - lastScaleTime);
+            lastScaleTime = now;
+            double fillRatio = dataQueue.getFillRatio();
+            int size = consumers.size();
+            int target = targetSize(fillRatio, busyRatio, size, minConsumers, maxConsumers);
+            if (target > size) {
+                addConsumer();
+                LOGGER.info("Consumer added, {} consumer(s) running", consumers.size());
+            } else if (target < size) {
+                removeConsumer();
+                LOGGER.info("Consumer removed, {} consumer(s) running", consumers.size());
+            }
+            METRICS_LOGGER.log("consumer_count", consumers.size());
+            METRICS_LOGGER.log("consumer_busy_ratio", Math.round(busyRatio * 100));
+            METRICS_LOGGER.log("queue_fill_ratio", Math.round(fillRatio * 100));
+        } catch (RuntimeException e) {
+            // An exception would cancel next executions
+            LOGGER.error("Consumer pool cannot be scaled: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Get ratio of time spent processing events by all consumers since last call
+     *
+     * @param elapsed Time in nanoseconds since last call
+     * @return Ratio between 0 and 1
+     * @see DataConsumerPool#lastBusyTimes
+     */
+    private double getBusyRatio(long elapsed) {
+        long busy = 0;
+        for (Map.Entry<DataConsumer, Long> entry : lastBusyTimes.entrySet()) {
+            long busyTime = entry.getKey().getBusyTime();
+            busy += busyTime - entry.getValue();
+            entry.setValue(busyTime);
+        }
+        if (elapsed <= 0 || lastBusyTimes.isEmpty()) {
+            return 0;
+        }
+        return Math.min(1, busy / ((double) elapsed * lastBusyTimes.size()));
+    }
+
+    /**
+     * Compute number of consumers wanted, changing by one consumer at a time
+     *
+     * @param fillRatio Ratio between 0 and 1 of {@link DataQueue} in use
+     * @param busyRatio Ratio between 0 and 1 of time consumers spent processing events
+     * @param size      Current number of consumers
+     * @param min       Minimum number of consumers
+     * @param max       Maximum number of consumers
+     * @return Number of consumers wanted, between min and max
+     */
+    static int targetSize(double fillRatio, double busyRatio, int size, int min, int max) {
+        if (size < min) {
+            return min;
+        }
+        if (size > max) {
+            return max;
+        }
+        if ((fillRatio >= SCALE_UP_FILL || busyRatio >= SCALE_UP_BUSY) && size < max) {
+            return size + 1;
+        }
+        if (fillRatio <= SCALE_DOWN_FILL && busyRatio <= SCALE_DOWN_BUSY && size > min) {
+            return size - 1;
+        }
+        return size;
+    }
+
+    /**
+     * Stop scaling and all consumers, consumers blocked on {@link DataQueue} are interrupted.
+     * It can be started again afterwards.
+     *
+     * @see DataConsumerPool#executor
+     * @see DataConsumerPool#monitor
+     */
+    synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        monitor.shutdownNow();
+        consumers.forEach(DataConsumer::stop);
+        consumers.clear();
+        lastBusyTimes.clear();
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(scaleInterval, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Some consumers are still processing their batch");
+            }
+        } catch (InterruptedException e) {
+            LOGGER.error(e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        monitor = null;
+    }
+}
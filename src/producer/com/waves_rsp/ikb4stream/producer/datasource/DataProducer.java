@@ -67,7 +67,7 @@ public class DataProducer implements IDataProducer {
     }
 
     /**
-     * Push an {@link Event} into DataQueue
+     * Push an {@link Event} into DataQueue, this call may block according to producer.queue.overflow
      *
      * @param event {@link Event} to push in {@link DataQueue} to be analysed
      * @throws NullPointerException if event is null
@@ -75,13 +75,16 @@ public class DataProducer implements IDataProducer {
      * @see DataProducer#dataQueue
      * @see DataProducer#METRICS_LOGGER
      */
+    @Override
     public void push(Event event) {
         Objects.requireNonNull(event);
         long start = System.currentTimeMillis();
-        dataQueue.push(event);
+        boolean inserted = dataQueue.push(event);
         long end = System.currentTimeMillis();
         long result = end - start;
         METRICS_LOGGER.log("time_process_" + event.getSource(), result);
-        LOGGER.info("The event {} has been pushed into database.", event.getSource());
+        if (inserted) {
+            LOGGER.info("The event {} has been pushed into DataQueue.", event.getSource());
+        }
     }
 }
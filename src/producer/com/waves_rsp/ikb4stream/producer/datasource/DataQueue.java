@@ -21,12 +21,29 @@ package com.waves_rsp.ikb4stream.producer.datasource;
 import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
 import com.waves_rsp.ikb4stream.core.model.Event;
 import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import com.waves_rsp.ikb4stream.core.util.EventSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
 
 /**
  * This class stores and provides {@link Event} for {@link DataConsumer} and {@link DataProducer}
@@ -61,6 +78,12 @@ class DataQueue {
      * @see DataQueue#createDataQueue()
      */
     private static final DataQueue DATA_QUEUE = new DataQueue();
+    /**
+     * Maximum time in milliseconds {@link DataQueue#refill()} waits before retrying sources which are full
+     *
+     * @see DataQueue#refill()
+     */
+    private static final long REFILL_RETRY = 10;
     /**
      * {@link Event} will be push in this {@link DataQueue#queue}
      *
@@ -68,26 +91,373 @@ class DataQueue {
      * @see DataQueue#isEmpty()
      * @see DataQueue#pop()
      */
-    private final BlockingQueue<PackagedEvent> queue;
+    private final IBoundedQueue<PackagedEvent> queue;
     /**
-     * Size of {@link DataQueue#queue}
+     * {@link OverflowPolicy} applied when {@link DataQueue#queue} is full
      *
-     * @see DataQueue#isEmpty()
+     * @see DataQueue#push(Event)
+     */
+    private final OverflowPolicy overflowPolicy;
+    /**
+     * Maximum time in milliseconds to wait with {@link OverflowPolicy#BLOCK_TIMEOUT}
+     *
+     * @see DataQueue#pushWithTimeout(PackagedEvent)
+     */
+    private final long overflowTimeout;
+    /**
+     * Default number of overflowing events per source among which one is kept with {@link OverflowPolicy#SAMPLE}
+     *
+     * @see DataQueue#getSamplingRate(String)
+     */
+    private final int samplingRate;
+    /**
+     * Sampling rate of each source, read from producer.queue.overflow.sample.&lt;source&gt;
+     *
+     * @see DataQueue#getSamplingRate(String)
+     */
+    private final Map<String, Integer> samplingRates = new ConcurrentHashMap<>();
+    /**
+     * Number of overflowing events of each source with {@link OverflowPolicy#SAMPLE}
+     *
+     * @see DataQueue#pushSampled(PackagedEvent)
+     */
+    private final Map<String, AtomicLong> overflowCounters = new ConcurrentHashMap<>();
+    /**
+     * Directory of spill logs, null if producer.queue.spill.path is not set
+     *
+     * @see DataQueue#openSpillLog(String)
+     */
+    private final Path spillPath;
+    /**
+     * Size in bytes of each segment of a {@link SpillLog}
+     *
+     * @see DataQueue#openSpillLog(String)
+     */
+    private final int spillSegmentSize;
+    /**
+     * Maximum number of segments of a {@link SpillLog}
+     *
+     * @see DataQueue#openSpillLog(String)
+     */
+    private final int spillMaxSegments;
+    /**
+     * {@link SpillLog} of each source, which receives its events when it has no space in {@link DataQueue#queue}.
+     * One log per source keeps the order of each source without making the others wait behind it.
+     *
+     * @see DataQueue#spill(PackagedEvent)
+     * @see DataQueue#refill()
+     */
+    private final Map<String, SpillLog> spillLogs = new ConcurrentHashMap<>();
+    /**
+     * Monitor notified when an event is spilled
+     *
+     * @see DataQueue#spill(PackagedEvent)
+     * @see DataQueue#refill()
+     */
+    private final Object refillSignal = new Object();
+    /**
+     * Thread which moves events from {@link DataQueue#spillLogs} to {@link DataQueue#queue}
+     *
+     * @see DataQueue#refill()
+     * @see DataQueue#persist()
+     */
+    private final Thread refillThread;
+    /**
+     * {@link EventExpiration} which removes events waiting for too long in {@link DataQueue#queue}
+     *
+     * @see DataQueue#pop()
+     * @see DataQueue#unpack(List)
      */
-    private final int size;
+    private final EventExpiration expiration = EventExpiration.getInstance();
 
     /**
      * Private constructor to block instantiation, use {@link DataQueue#createDataQueue()} instead
+     *
+     * @see DataQueue#createQueue(int)
+     * @see DataQueue#getOverflowPolicy()
+     * @see DataQueue#getSpillPath()
      */
     private DataQueue() {
-        int defaultSize = 500;
+        this(createQueue(getQueueSize()), getOverflowPolicy(), getSpillPath(),
+                (int) Math.min(Integer.MAX_VALUE, parsePositive("producer.queue.spill.segmentsize", 64L * 1024 * 1024)),
+                (int) Math.min(Integer.MAX_VALUE, parsePositive("producer.queue.spill.maxsegments", 16)));
+    }
+
+    /**
+     * Create a {@link DataQueue} and open the spill logs left in spillPath
+     *
+     * @param queue            {@link IBoundedQueue} which stores events
+     * @param overflowPolicy   {@link OverflowPolicy} applied when an event cannot be stored
+     * @param spillPath        Directory of spill logs, null to never spill events
+     * @param spillSegmentSize Size in bytes of each segment of a {@link SpillLog}
+     * @param spillMaxSegments Maximum number of segments of a {@link SpillLog}
+     * @throws NullPointerException if queue or overflowPolicy is null
+     * @see DataQueue#openSpillLogs(Path)
+     */
+    DataQueue(IBoundedQueue<PackagedEvent> queue, OverflowPolicy overflowPolicy, Path spillPath, int spillSegmentSize, int spillMaxSegments) {
+        Objects.requireNonNull(queue);
+        Objects.requireNonNull(overflowPolicy);
+        this.queue = queue;
+        this.overflowPolicy = overflowPolicy;
+        this.overflowTimeout = parsePositive("producer.queue.overflow.timeout", 1000);
+        this.samplingRate = (int) parsePositive("producer.queue.overflow.sample", 10);
+        this.spillSegmentSize = spillSegmentSize;
+        this.spillMaxSegments = spillMaxSegments;
+        this.spillPath = spillPath != null && openSpillLogs(spillPath) ? spillPath : null;
+        if (this.spillPath != null) {
+            this.refillThread = new Thread(this::refill);
+            refillThread.setName("DataQueue refill");
+            refillThread.setDaemon(true);
+            refillThread.start();
+        } else {
+            this.refillThread = null;
+        }
+    }
+
+    /**
+     * Get the capacity of {@link DataQueue#queue} from producer.sizequeue
+     *
+     * @return producer.sizequeue, 500 by default
+     * @see DataQueue#PROPERTIES_MANAGER
+     */
+    private static int getQueueSize() {
         try {
-            defaultSize = Integer.parseInt(PROPERTIES_MANAGER.getProperty("producer.sizequeue"));
+            return Integer.parseInt(PROPERTIES_MANAGER.getProperty("producer.sizequeue"));
         } catch (IllegalArgumentException e) {
             LOGGER.warn(e.getMessage());
+            return 500;
+        }
+    }
+
+    /**
+     * Get the directory of spill logs from producer.queue.spill.path
+     *
+     * @return Directory of spill logs or null if producer.queue.spill.path is not set
+     * @see DataQueue#PROPERTIES_MANAGER
+     */
+    private static Path getSpillPath() {
+        try {
+            return Paths.get(PROPERTIES_MANAGER.getProperty("producer.queue.spill.path"));
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("DataQueue is not persistent");
+            return null;
+        }
+    }
+
+    /**
+     * Open the {@link SpillLog} of each source found in a directory, so events spilled before last stop are replayed
+     *
+     * @param directory Directory of spill logs
+     * @return false if directory cannot be created or read
+     * @see DataQueue#spillLogs
+     */
+    private boolean openSpillLogs(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> paths = Files.list(directory)) {
+                paths.filter(Files::isDirectory).forEach(path -> {
+                    String source;
+                    try {
+                        source = fromDirectoryName(path.getFileName().toString());
+                    } catch (IllegalArgumentException e) {
+                        LOGGER.warn("{} is not a spill log: {}", path, e.getMessage());
+                        return;
+                    }
+                    SpillLog spillLog = openSpillLog(directory, source);
+                    if (spillLog != null) {
+                        spillLogs.put(source, spillLog);
+                    }
+                });
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Spill logs cannot be opened in {}: {}", directory, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Open or create the {@link SpillLog} of a source in {@link DataQueue#spillPath}
+     *
+     * @param source Source of {@link Event}
+     * @return {@link SpillLog} or null if it cannot be opened
+     * @see DataQueue#spillLogs
+     */
+    private SpillLog openSpillLog(String source) {
+        return openSpillLog(spillPath, source);
+    }
+
+    /**
+     * Open or create the {@link SpillLog} of a source
+     *
+     * @param directory Directory of spill logs
+     * @param source    Source of {@link Event}
+     * @return {@link SpillLog} or null if it cannot be opened
+     * @see DataQueue#toDirectoryName(String)
+     */
+    private SpillLog openSpillLog(Path directory, String source) {
+        Path path = directory.resolve(toDirectoryName(source));
+        try {
+            return new SpillLog(path, spillSegmentSize, spillMaxSegments);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.error("Spill log cannot be opened in {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Encode a source as the name of its spill log directory
+     *
+     * @param source Source of {@link Event}
+     * @return URL encoded source, with '.' and '*' escaped too
+     * @see DataQueue#fromDirectoryName(String)
+     */
+    private static String toDirectoryName(String source) {
+        try {
+            return URLEncoder.encode(source, "UTF-8").replace(".", "%2E").replace("*", "%2A");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode the name of a spill log directory
+     *
+     * @param name Name encoded by {@link DataQueue#toDirectoryName(String)}
+     * @return Source of {@link Event}
+     * @throws IllegalArgumentException if name is not a valid encoding
+     */
+    private static String fromDirectoryName(String name) {
+        try {
+            return URLDecoder.decode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Create the {@link IBoundedQueue} selected by producer.queue.type
+     *
+     * @param size Capacity of the queue
+     * @return {@link BlockingBoundedQueue} by default, {@link RingBufferQueue} if producer.queue.type is ringbuffer,
+     * {@link FairBoundedQueue} if it's fair
+     * @see DataQueue#PROPERTIES_MANAGER
+     * @see DataQueue#getWaitStrategy()
+     * @see DataQueue#createFairQueue(int)
+     */
+    private static IBoundedQueue<PackagedEvent> createQueue(int size) {
+        String type = PROPERTIES_MANAGER.getPropertyOrDefault("producer.queue.type", "blocking");
+        switch (type.trim().toLowerCase()) {
+            case "ringbuffer":
+                WaitStrategy waitStrategy = getWaitStrategy();
+                LOGGER.info("DataQueue uses a ring buffer of {} events with {} wait strategy", size, waitStrategy);
+                return new RingBufferQueue<>(size, waitStrategy);
+            case "fair":
+                return createFairQueue(size);
+            case "blocking":
+                LOGGER.info("DataQueue uses a blocking queue of {} events", size);
+                return new BlockingBoundedQueue<>(size);
+            default:
+                LOGGER.warn("Unknown producer.queue.type {}, use default value", type);
+                return new BlockingBoundedQueue<>(size);
+        }
+    }
+
+    /**
+     * Create a {@link FairBoundedQueue} with one sub-queue per {@link Event#getSource()}.
+     * With producer.queue.fair.scheduler = drr (default), an event costs the length of its description and a source earns
+     * producer.queue.fair.quantum times its weight at each round. With wrr, an event costs 1 and a source earns its weight.
+     *
+     * @param size Capacity of the queue for all sources
+     * @return {@link FairBoundedQueue} configured with producer.queue.fair.* properties
+     * @see DataQueue#PROPERTIES_MANAGER
+     */
+    private static IBoundedQueue<PackagedEvent> createFairQueue(int size) {
+        String scheduler = PROPERTIES_MANAGER.getPropertyOrDefault("producer.queue.fair.scheduler", "drr").trim().toLowerCase();
+        if (!"drr".equals(scheduler) && !"wrr".equals(scheduler)) {
+            LOGGER.warn("Unknown producer.queue.fair.scheduler {}, use default value", scheduler);
+            scheduler = "drr";
+        }
+        boolean drr = "drr".equals(scheduler);
+        int defaultCapacity = (int) parsePositive("producer.queue.fair.capacity", size);
+        int quantum = drr ? (int) parsePositive("producer.queue.fair.quantum", 1000) : 1;
+        LOGGER.info("DataQueue uses a fair queue of {} events with {} scheduler", size, scheduler);
+        return createFairQueue(size, drr,
+                source -> (int) parsePositive("producer.queue.fair.capacity." + source, defaultCapacity),
+                source -> quantum * (int) parsePositive("producer.queue.fair.weight." + source, 1));
+    }
+
+    /**
+     * Create a {@link FairBoundedQueue} with one sub-queue per {@link Event#getSource()}
+     *
+     * @param size       Capacity of the queue for all sources
+     * @param drr        true if an event costs the length of its description, false if it costs 1
+     * @param capacityOf Function to get the maximum number of events of a source
+     * @param quantumOf  Function to get the quantum earned by a source at each round
+     * @return {@link FairBoundedQueue} of {@link PackagedEvent}
+     * @throws NullPointerException     if capacityOf or quantumOf is null
+     * @throws IllegalArgumentException if size is lower than 1
+     * @see FairBoundedQueue
+     */
+    static IBoundedQueue<PackagedEvent> createFairQueue(int size, boolean drr, ToIntFunction<String> capacityOf,
+                                                        ToIntFunction<String> quantumOf) {
+        return new FairBoundedQueue<>(size,
+                packEvent -> packEvent.event.getSource(),
+                drr ? packEvent -> packEvent.event.getDescription().length() : packEvent -> 1,
+                capacityOf, quantumOf);
+    }
+
+    /**
+     * Get {@link WaitStrategy} from producer.queue.waitstrategy
+     *
+     * @return {@link WaitStrategy} to apply, {@link WaitStrategy#PARK} by default
+     * @see DataQueue#PROPERTIES_MANAGER
+     */
+    private static WaitStrategy getWaitStrategy() {
+        String waitStrategy = PROPERTIES_MANAGER.getPropertyOrDefault("producer.queue.waitstrategy", "park");
+        try {
+            return WaitStrategy.valueOf(waitStrategy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown producer.queue.waitstrategy {}, use default value", waitStrategy);
+            return WaitStrategy.PARK;
+        }
+    }
+
+    /**
+     * Get {@link OverflowPolicy} from producer.queue.overflow
+     *
+     * @return {@link OverflowPolicy} to apply, {@link OverflowPolicy#DROP_NEWEST} by default
+     * @see DataQueue#PROPERTIES_MANAGER
+     */
+    private static OverflowPolicy getOverflowPolicy() {
+        String overflowPolicy = PROPERTIES_MANAGER.getPropertyOrDefault("producer.queue.overflow", "drop_newest");
+        try {
+            return OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown producer.queue.overflow {}, use default value", overflowPolicy);
+            return OverflowPolicy.DROP_NEWEST;
+        }
+    }
+
+    /**
+     * Read a positive number from configuration
+     *
+     * @param property     Property to read
+     * @param defaultValue Value used if property is not set or invalid
+     * @return Value of property
+     * @see DataQueue#PROPERTIES_MANAGER
+     */
+    private static long parsePositive(String property, long defaultValue) {
+        try {
+            long value = Long.parseLong(PROPERTIES_MANAGER.getProperty(property));
+            if (value > 0) {
+                return value;
+            }
+            LOGGER.warn("{} must be positive, use default value", property);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Use default value for {}", property);
         }
-        this.queue = new ArrayBlockingQueue<>(defaultSize);
-        this.size = defaultSize;
+        return defaultValue;
     }
 
     /**
@@ -101,48 +471,438 @@ class DataQueue {
     }
 
     /**
-     * Push a new {@link Event}, if {@link DataQueue#queue} is full the event is ignored
+     * Push a new {@link Event}. If {@link DataQueue#queue} has no space for it or the {@link SpillLog} of its source still
+     * contains events, it's appended to this {@link SpillLog}. {@link DataQueue#overflowPolicy} is applied if it cannot be stored.
      *
      * @param event {@link Event} to push in this {@link DataQueue}
+     * @return true if event has been inserted
      * @throws NullPointerException if event is null
      * @see DataQueue#METRICS_LOGGER
      * @see DataQueue#queue
+     * @see DataQueue#spillLogs
+     * @see DataQueue#overflowPolicy
      */
-    public void push(Event event) {
+    public boolean push(Event event) {
         Objects.requireNonNull(event);
         long arrivedTime = System.currentTimeMillis();
-        boolean inserted = queue.offer(new PackagedEvent(event, arrivedTime));
-        if (!inserted) {
-            METRICS_LOGGER.log("event_dropped_fullqueue", event.getSource());
-            LOGGER.warn(event + " cannot be push");
+        PackagedEvent packEvent = new PackagedEvent(event, arrivedTime);
+        // While older events of this source are spilled, newer ones go after them to keep its arrival order
+        SpillLog spillLog = spillLogs.get(event.getSource());
+        boolean spilling = spillLog != null && !spillLog.isEmpty();
+        if (!spilling && queue.offer(packEvent)) {
+            return true;
+        }
+        if (spillPath != null && spill(packEvent)) {
+            return true;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                return pushBlocking(packEvent);
+            case BLOCK_TIMEOUT:
+                return pushWithTimeout(packEvent);
+            case DROP_OLDEST:
+                return pushDropOldest(packEvent);
+            case SAMPLE:
+                return pushSampled(packEvent);
+            case DROP_NEWEST:
+            default:
+                METRICS_LOGGER.log("event_dropped_fullqueue", event.getSource());
+                LOGGER.warn(event + " cannot be push");
+                return false;
+        }
+    }
+
+    /**
+     * Append an event to the {@link SpillLog} of its source
+     *
+     * @param packEvent {@link PackagedEvent} to store
+     * @return true if event has been appended
+     * @see DataQueue#spillLogs
+     * @see DataQueue#toRecord(PackagedEvent)
+     */
+    private boolean spill(PackagedEvent packEvent) {
+        SpillLog spillLog = spillLogs.computeIfAbsent(packEvent.event.getSource(), this::openSpillLog);
+        if (spillLog == null) {
+            return false;
+        }
+        try {
+            if (spillLog.append(toRecord(packEvent))) {
+                METRICS_LOGGER.log("event_spilled", packEvent.event.getSource());
+                synchronized (refillSignal) {
+                    refillSignal.notifyAll();
+                }
+                return true;
+            }
+        } catch (IOException e) {
+            LOGGER.error("{} cannot be spilled: {}", packEvent.event, e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Move events from {@link DataQueue#spillLogs} to {@link DataQueue#queue} until thread is interrupted.
+     * It waits for an event to be spilled when all logs are empty, and retries after {@link DataQueue#REFILL_RETRY}
+     * milliseconds when no source has space in {@link DataQueue#queue}.
+     *
+     * @see DataQueue#refillThread
+     * @see DataQueue#refillRound()
+     */
+    private void refill() {
+        while (!Thread.currentThread().isInterrupted()) {
+            if (refillRound()) {
+                continue;
+            }
+            try {
+                synchronized (refillSignal) {
+                    refillSignal.wait(hasSpilledEvents() ? REFILL_RETRY : 0);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Move the oldest event of each {@link SpillLog} to {@link DataQueue#queue} if there is space for its source,
+     * so a source which is full does not block the others. An event is removed from its {@link SpillLog} only once
+     * it's in {@link DataQueue#queue}.
+     *
+     * @return true if at least one event has been moved or dropped
+     * @see DataQueue#fromRecord(byte[])
+     */
+    private boolean refillRound() {
+        boolean moved = false;
+        for (SpillLog spillLog : spillLogs.values()) {
+            try {
+                byte[] record = spillLog.peek();
+                if (record == null) {
+                    continue;
+                }
+                try {
+                    if (!queue.offer(fromRecord(record))) {
+                        continue;
+                    }
+                } catch (IllegalArgumentException e) {
+                    METRICS_LOGGER.log("event_dropped_corrupted", 1);
+                    LOGGER.error("Spilled event cannot be read: {}", e.getMessage());
+                }
+                spillLog.commit();
+                moved = true;
+            } catch (IOException e) {
+                LOGGER.error("Spill log cannot be read: {}", e.getMessage());
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * @return true if at least one {@link SpillLog} contains events
+     * @see DataQueue#spillLogs
+     */
+    private boolean hasSpilledEvents() {
+        return spillLogs.values().stream().anyMatch(spillLog -> !spillLog.isEmpty());
+    }
+
+    /**
+     * Encode a {@link PackagedEvent} as a record of {@link SpillLog}
+     *
+     * @param packEvent {@link PackagedEvent} to encode
+     * @return Arrival time followed by binary form of {@link Event}
+     * @see EventSerializer#serialize(Event)
+     */
+    private static byte[] toRecord(PackagedEvent packEvent) {
+        byte[] event = EventSerializer.serialize(packEvent.event);
+        return ByteBuffer.allocate(Long.BYTES + event.length).putLong(packEvent.arrivedTime).put(event).array();
+    }
+
+    /**
+     * Decode a record of {@link SpillLog}
+     *
+     * @param record Record encoded by {@link DataQueue#toRecord(PackagedEvent)}
+     * @return {@link PackagedEvent} decoded
+     * @throws IllegalArgumentException if record is invalid
+     * @see EventSerializer#deserialize(ByteBuffer)
+     */
+    private static PackagedEvent fromRecord(byte[] record) {
+        if (record.length < Long.BYTES) {
+            throw new IllegalArgumentException("Record is too short.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        long arrivedTime = buffer.getLong();
+        return new PackagedEvent(EventSerializer.deserialize(buffer), arrivedTime);
+    }
+
+    /**
+     * @return true if events are stored in {@link DataQueue#spillLogs}
+     * @see DataQueue#spillPath
+     */
+    public boolean isPersistent() {
+        return spillPath != null;
+    }
+
+    /**
+     * Stop refilling {@link DataQueue#queue} and move its events to {@link DataQueue#spillLogs}, so they are replayed
+     * at next start. These events are appended after those already spilled by their source.
+     *
+     * @see DataQueue#spillLogs
+     * @see DataQueue#refillThread
+     */
+    public void persist() {
+        if (spillPath == null) {
+            return;
+        }
+        refillThread.interrupt();
+        try {
+            refillThread.join();
+        } catch (InterruptedException e) {
+            LOGGER.error(e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        int count = 0;
+        PackagedEvent packEvent;
+        while ((packEvent = queue.poll()) != null) {
+            if (spill(packEvent)) {
+                count++;
+            } else {
+                METRICS_LOGGER.log("event_dropped_shutdown", packEvent.event.getSource());
+                LOGGER.warn(packEvent.event + " cannot be persisted");
+            }
+        }
+        spillLogs.values().forEach(SpillLog::close);
+        LOGGER.info("{} event(s) of DataQueue have been persisted", count);
+    }
+
+    /**
+     * Wait until there is space in {@link DataQueue#queue}, with {@link OverflowPolicy#BLOCK}
+     *
+     * @param packEvent {@link PackagedEvent} to insert
+     * @return true if event has been inserted, false if thread has been interrupted
+     * @see DataQueue#queue
+     */
+    private boolean pushBlocking(PackagedEvent packEvent) {
+        String source = packEvent.event.getSource();
+        try {
+            queue.put(packEvent);
+            METRICS_LOGGER.log("event_blocked_time_" + source, System.currentTimeMillis() - packEvent.arrivedTime);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            METRICS_LOGGER.log("event_dropped_interrupted", source);
+            LOGGER.warn(packEvent.event + " cannot be push, producer has been interrupted");
+            return false;
+        }
+    }
+
+    /**
+     * Wait {@link DataQueue#overflowTimeout} for space in {@link DataQueue#queue}, with {@link OverflowPolicy#BLOCK_TIMEOUT}
+     *
+     * @param packEvent {@link PackagedEvent} to insert
+     * @return true if event has been inserted, false if timeout elapsed or thread has been interrupted
+     * @see DataQueue#queue
+     * @see DataQueue#overflowTimeout
+     */
+    private boolean pushWithTimeout(PackagedEvent packEvent) {
+        String source = packEvent.event.getSource();
+        try {
+            if (queue.offer(packEvent, overflowTimeout, TimeUnit.MILLISECONDS)) {
+                METRICS_LOGGER.log("event_blocked_time_" + source, System.currentTimeMillis() - packEvent.arrivedTime);
+                return true;
+            }
+            METRICS_LOGGER.log("event_dropped_timeout", source);
+            LOGGER.warn(packEvent.event + " cannot be push after " + overflowTimeout + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            METRICS_LOGGER.log("event_dropped_interrupted", source);
+            LOGGER.warn(packEvent.event + " cannot be push, producer has been interrupted");
         }
+        return false;
     }
 
     /**
-     * Return the first {@link Event} in {@link DataQueue#queue}
+     * Evict oldest events of {@link DataQueue#queue} until packEvent can be inserted, with {@link OverflowPolicy#DROP_OLDEST}
+     *
+     * @param packEvent {@link PackagedEvent} to insert
+     * @return true
+     * @see DataQueue#queue
+     */
+    private boolean pushDropOldest(PackagedEvent packEvent) {
+        do {
+            PackagedEvent dropped = queue.evict(packEvent);
+            if (dropped != null) {
+                METRICS_LOGGER.log("event_dropped_oldest", dropped.event.getSource());
+                LOGGER.warn(dropped.event + " has been dropped to push a newer event");
+            }
+        } while (!queue.offer(packEvent));
+        return true;
+    }
+
+    /**
+     * Keep one out of {@link DataQueue#getSamplingRate(String)} overflowing events of a source, with {@link OverflowPolicy#SAMPLE}
+     *
+     * @param packEvent {@link PackagedEvent} to insert
+     * @return true if event has been kept
+     * @see DataQueue#overflowCounters
+     */
+    private boolean pushSampled(PackagedEvent packEvent) {
+        String source = packEvent.event.getSource();
+        long count = overflowCounters.computeIfAbsent(source, s -> new AtomicLong()).getAndIncrement();
+        if (count % getSamplingRate(source) == 0) {
+            METRICS_LOGGER.log("event_sampled", source);
+            return pushDropOldest(packEvent);
+        }
+        METRICS_LOGGER.log("event_dropped_sampling", source);
+        LOGGER.debug("{} has been dropped by sampling", packEvent.event);
+        return false;
+    }
+
+    /**
+     * Get sampling rate of a source
+     *
+     * @param source Source of {@link Event}
+     * @return producer.queue.overflow.sample.&lt;source&gt; if it's set, {@link DataQueue#samplingRate} otherwise
+     * @see DataQueue#samplingRates
+     */
+    private int getSamplingRate(String source) {
+        return samplingRates.computeIfAbsent(source, s -> (int) parsePositive("producer.queue.overflow.sample." + s, samplingRate));
+    }
+
+    /**
+     * Return the first {@link Event} in {@link DataQueue#queue} which is not stale
      *
      * @return {@link Event} in {@link DataQueue}
      * @throws InterruptedException if thread is interrupted during pop operation
      * @see DataQueue#METRICS_LOGGER
      * @see DataQueue#queue
+     * @see DataQueue#expiration
      * @see PackagedEvent
      * @see Event
      */
     public Event pop() throws InterruptedException {
-        PackagedEvent packEvent = queue.take();
-        Event popEvent = packEvent.event;
-        long time = System.currentTimeMillis() - packEvent.arrivedTime;
-        METRICS_LOGGER.log("life_in_queue_" + popEvent.getSource(), time);
-        return popEvent;
+        while (true) {
+            PackagedEvent packEvent = queue.take();
+            Event popEvent = packEvent.event;
+            long now = System.currentTimeMillis();
+            if (expiration.isStale(packEvent.arrivedTime, now)) {
+                expiration.expire(Collections.singletonList(popEvent), "ttl");
+                continue;
+            }
+            METRICS_LOGGER.log("life_in_queue_" + popEvent.getSource(), now - packEvent.arrivedTime);
+            return popEvent;
+        }
+    }
+
+    /**
+     * Return up to max {@link Event} of {@link DataQueue#queue}. It waits for a first {@link Event}, then takes all available
+     * ones and waits at most timeout milliseconds for the batch to be filled.
+     *
+     * @param max     Maximum number of {@link Event} to return
+     * @param timeout Maximum time in milliseconds to wait for more {@link Event} once the first one has been popped
+     * @return {@link Event} in dequeue order, empty if all popped {@link Event} are stale
+     * @throws IllegalArgumentException if max is lower than 1 or timeout is negative
+     * @throws InterruptedException     if thread is interrupted while waiting for the first {@link Event}
+     * @see DataQueue#popBatch(int, long, long)
+     */
+    public List<Event> popBatch(int max, long timeout) throws InterruptedException {
+        return popBatch(max, timeout, -1);
+    }
+
+    /**
+     * Return up to max {@link Event} of {@link DataQueue#queue}. It waits at most idleTimeout milliseconds for a first
+     * {@link Event}, then takes all available ones and waits at most timeout milliseconds for the batch to be filled.
+     *
+     * @param max         Maximum number of {@link Event} to return
+     * @param timeout     Maximum time in milliseconds to wait for more {@link Event} once the first one has been popped
+     * @param idleTimeout Maximum time in milliseconds to wait for the first {@link Event}, negative to wait as long as necessary
+     * @return {@link Event} in dequeue order, empty if idleTimeout elapsed or all popped {@link Event} are stale
+     * @throws IllegalArgumentException if max is lower than 1 or timeout is negative
+     * @throws InterruptedException     if thread is interrupted while waiting for the first {@link Event}
+     * @see DataQueue#METRICS_LOGGER
+     * @see DataQueue#queue
+     * @see IBoundedQueue#drainTo(java.util.Collection, int)
+     */
+    public List<Event> popBatch(int max, long timeout, long idleTimeout) throws InterruptedException {
+        if (max < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than 0.");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout cannot be negative.");
+        }
+        PackagedEvent first = idleTimeout < 0 ? queue.take() : queue.poll(idleTimeout, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return new ArrayList<>();
+        }
+        List<PackagedEvent> packEvents = new ArrayList<>(Math.min(max, queue.capacity()));
+        packEvents.add(first);
+        queue.drainTo(packEvents, max - 1);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            while (packEvents.size() < max) {
+                long remaining = deadline - System.nanoTime();
+                PackagedEvent packEvent = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (packEvent == null) {
+                    break;
+                }
+                packEvents.add(packEvent);
+                queue.drainTo(packEvents, max - packEvents.size());
+            }
+        } catch (InterruptedException e) {
+            // Events already popped are returned, caller sees the interrupt status
+            Thread.currentThread().interrupt();
+        }
+        return unpack(packEvents);
+    }
+
+    /**
+     * Extract {@link Event} of a batch and log the average time spent in {@link DataQueue#queue} by source.
+     * Stale {@link Event} are handed to {@link DataQueue#expiration} instead of being returned.
+     *
+     * @param packEvents Batch of {@link PackagedEvent}
+     * @return {@link Event} of packEvents which are not stale, in the same order
+     * @see DataQueue#METRICS_LOGGER
+     * @see DataQueue#expiration
+     */
+    private List<Event> unpack(List<PackagedEvent> packEvents) {
+        long now = System.currentTimeMillis();
+        List<Event> events = new ArrayList<>(packEvents.size());
+        List<Event> stale = new ArrayList<>();
+        Map<String, long[]> lifeBySource = new HashMap<>();
+        for (PackagedEvent packEvent : packEvents) {
+            if (expiration.isStale(packEvent.arrivedTime, now)) {
+                stale.add(packEvent.event);
+                continue;
+            }
+            events.add(packEvent.event);
+            long[] life = lifeBySource.computeIfAbsent(packEvent.event.getSource(), s -> new long[2]);
+            life[0] += now - packEvent.arrivedTime;
+            life[1]++;
+        }
+        lifeBySource.forEach((source, life) -> METRICS_LOGGER.log("life_in_queue_" + source, life[0] / life[1]));
+        METRICS_LOGGER.log("batch_size", events.size());
+        expiration.expire(stale, "ttl");
+        return events;
+    }
+
+    /**
+     * Get how full this {@link DataQueue} is
+     *
+     * @return Ratio between 0 and 1 of {@link DataQueue#queue} capacity in use, 1 if events are waiting in {@link DataQueue#spillLogs}
+     * @see DataQueue#queue
+     * @see DataQueue#spillLogs
+     */
+    public double getFillRatio() {
+        if (hasSpilledEvents()) {
+            return 1;
+        }
+        return Math.min(1, queue.size() / (double) queue.capacity());
     }
 
     /**
      * @return Return true if the DataQueue is empty
      * @see DataQueue#queue
-     * @see DataQueue#size
+     * @see DataQueue#spillLogs
      */
     public boolean isEmpty() {
-        return queue.remainingCapacity() == size;
+        return queue.isEmpty() && !hasSpilledEvents();
     }
 
     /**
@@ -151,7 +911,7 @@ class DataQueue {
      * @author ikb4stream
      * @version 1.0
      */
-    private class PackagedEvent {
+    static class PackagedEvent {
         /**
          * Arrival time in {@link DataQueue#queue}
          *
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+
+/**
+ * Keep {@link Event} which cannot be processed with their error, as JSON lines appended to producer.deadletter.path.
+ * This file is rotated once it reaches producer.deadletter.maxfilesize bytes, keeping one previous file with the
+ * suffix .1. Without producer.deadletter.path, the JSON lines are logged instead.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see DataConsumer
+ */
+class DeadLetterStore {
+    /**
+     * Properties of this class
+     *
+     * @see PropertiesManager
+     * @see PropertiesManager#getProperty(String)
+     * @see PropertiesManager#getInstance(Class)
+     */
+    private static final PropertiesManager PROPERTIES_MANAGER = PropertiesManager.getInstance(DeadLetterStore.class);
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterStore.class);
+    /**
+     * Single instance of {@link DeadLetterStore}
+     *
+     * @see DeadLetterStore#getInstance()
+     */
+    private static final DeadLetterStore DEAD_LETTER_STORE = create();
+    /**
+     * Mapper to write JSON lines
+     *
+     * @see DeadLetterStore#add(Event, String, Throwable)
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+    /**
+     * File receiving all dead letters, null if they are logged
+     */
+    private final Path file;
+    /**
+     * Size in bytes of {@link DeadLetterStore#file} before rotation
+     */
+    private final long maxFileSize;
+
+    /**
+     * Create a {@link DeadLetterStore}
+     *
+     * @param file        File receiving all dead letters, null to log them
+     * @param maxFileSize Size in bytes of file before rotation
+     * @throws IllegalArgumentException if maxFileSize is not positive
+     */
+    DeadLetterStore(Path file, long maxFileSize) {
+        if (maxFileSize <= 0) {
+            throw new IllegalArgumentException("File size must be positive.");
+        }
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Create a {@link DeadLetterStore} from producer.deadletter.path and producer.deadletter.maxfilesize (64 MB by default)
+     *
+     * @return {@link DeadLetterStore}
+     * @see DeadLetterStore#PROPERTIES_MANAGER
+     */
+    private static DeadLetterStore create() {
+        long maxFileSize = PROPERTIES_MANAGER.getLongOrDefault("producer.deadletter.maxfilesize", 1, 64L * 1024 * 1024);
+        Path file = null;
+        try {
+            file = Paths.get(PROPERTIES_MANAGER.getProperty("producer.deadletter.path"));
+        } catch (IllegalArgumentException e) {
+            LOGGER.info("Dead letters are logged, set producer.deadletter.path to keep them in a file");
+        }
+        return new DeadLetterStore(file, maxFileSize);
+    }
+
+    /**
+     * Get single instance of {@link DeadLetterStore}
+     *
+     * @return Single instance of {@link DeadLetterStore}
+     * @see DeadLetterStore#DEAD_LETTER_STORE
+     */
+    static DeadLetterStore getInstance() {
+        return DEAD_LETTER_STORE;
+    }
+
+    /**
+     * Store an {@link Event} which cannot be processed, as a JSON line with the time, the failed step and the error
+     *
+     * @param event     {@link Event} which cannot be processed
+     * @param processor Name of the step which has failed
+     * @param error     Error thrown
+     * @throws NullPointerException if event, processor or error is null
+     * @see DeadLetterStore#file
+     */
+    synchronized void add(Event event, String processor, Throwable error) {
+        Objects.requireNonNull(event);
+        Objects.requireNonNull(processor);
+        Objects.requireNonNull(error);
+        ObjectNode node = mapper.createObjectNode();
+        node.put("time", System.currentTimeMillis());
+        node.put("processor", processor);
+        node.put("error", String.valueOf(error.getMessage()));
+        String line;
+        try {
+            node.set("event", mapper.valueToTree(event));
+            line = mapper.writeValueAsString(node);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            LOGGER.error("Dead letter of {} cannot be serialized: {}", processor, e.getMessage());
+            return;
+        }
+        if (file == null) {
+            LOGGER.warn("Dead letter {}", line);
+        } else {
+            write(line);
+        }
+    }
+
+    /**
+     * Append a JSON line to {@link DeadLetterStore#file}, rotating it first if it's too big
+     *
+     * @param line JSON line to write
+     * @see DeadLetterStore#maxFileSize
+     */
+    private void write(String line) {
+        try {
+            if (Files.exists(file) && Files.size(file) >= maxFileSize) {
+                Files.move(file, file.resolveSibling(file.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            // A stream rather than a channel, so a consumer with its interrupt status set can still write
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file.toFile(), true), StandardCharsets.UTF_8)) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            LOGGER.error("Dead letter cannot be written in {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import com.waves_rsp.ikb4stream.core.communication.DatabaseWriterCallback;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseWriter;
+import com.waves_rsp.ikb4stream.core.metrics.MetricsLogger;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
+import com.waves_rsp.ikb4stream.producer.DatabaseWriterFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detect {@link Event} which are not worth scoring anymore and drop or archive them.
+ * An {@link Event} is stale when it has waited more than producer.expiration.ttl milliseconds in {@link DataQueue},
+ * and past its deadline when its end is more than producer.expiration.grace milliseconds ago, which can be set by source
+ * with producer.expiration.grace.&lt;source&gt;. Most connectors set the end of an {@link Event} to the time it has been
+ * observed, so an {@link Event} without duration (end not after start) never has a deadline, only a ttl.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see DataQueue
+ * @see DataConsumer
+ */
+class EventExpiration {
+    /**
+     * Properties of this class
+     *
+     * @see PropertiesManager
+     * @see PropertiesManager#getProperty(String)
+     * @see PropertiesManager#getInstance(Class)
+     */
+    private static final PropertiesManager PROPERTIES_MANAGER = PropertiesManager.getInstance(EventExpiration.class);
+    /**
+     * Object to add metrics from this class
+     *
+     * @see EventExpiration#expire(List, String)
+     * @see MetricsLogger#log(String, long)
+     * @see MetricsLogger#getMetricsLogger()
+     */
+    private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventExpiration.class);
+    /**
+     * Single instance of {@link EventExpiration}
+     *
+     * @see EventExpiration#getInstance()
+     */
+    private static final EventExpiration EVENT_EXPIRATION = new EventExpiration();
+    /**
+     * Default value of producer.expiration.grace in milliseconds, an hour
+     *
+     * @see EventExpiration#grace
+     */
+    private static final long DEFAULT_GRACE = 3600000;
+    /**
+     * What to do with expired {@link Event}, null if expiration is disabled
+     *
+     * @see EventExpiration#expire(List, String)
+     */
+    private final Action action;
+    /**
+     * Maximum time in milliseconds in {@link DataQueue}, 0 if there is no limit
+     *
+     * @see EventExpiration#isStale(long, long)
+     */
+    private final long ttl;
+    /**
+     * Time in milliseconds after {@link Event#getEnd()} before an {@link Event} is past its deadline, for sources
+     * without producer.expiration.grace.&lt;source&gt;
+     *
+     * @see EventExpiration#getGrace(String)
+     */
+    private final long grace;
+    /**
+     * Grace of each source already read from producer.expiration.grace.&lt;source&gt;
+     *
+     * @see EventExpiration#getGrace(String)
+     */
+    private final Map<String, Long> sourceGraces = new ConcurrentHashMap<>();
+
+    /**
+     * Private constructor to block instantiation, use {@link EventExpiration#getInstance()} instead
+     *
+     * @see EventExpiration#PROPERTIES_MANAGER
+     */
+    private EventExpiration() {
+        this(PROPERTIES_MANAGER.getPropertyOrDefault("producer.expiration", "none"),
+                PROPERTIES_MANAGER.getLongOrDefault("producer.expiration.ttl", 0, 0),
+                PROPERTIES_MANAGER.getLongOrDefault("producer.expiration.grace", 0, DEFAULT_GRACE));
+        if (action != null) {
+            LOGGER.info("Expired events are {}, ttl {} ms, grace {} ms", action == Action.DROP ? "dropped" : "archived", ttl, grace);
+        }
+    }
+
+    /**
+     * Create an {@link EventExpiration} with explicit settings
+     *
+     * @param action none, drop or archive, unknown value disables expiration
+     * @param ttl    Maximum time in milliseconds in {@link DataQueue}, 0 if there is no limit
+     * @param grace  Time in milliseconds after {@link Event#getEnd()} before an {@link Event} is past its deadline
+     * @throws NullPointerException     if action is null
+     * @throws IllegalArgumentException if ttl or grace is negative
+     */
+    EventExpiration(String action, long ttl, long grace) {
+        Objects.requireNonNull(action);
+        if (ttl < 0 || grace < 0) {
+            throw new IllegalArgumentException("ttl and grace cannot be negative.");
+        }
+        String value = action.trim().toUpperCase();
+        Action configured = null;
+        if (!"NONE".equals(value)) {
+            try {
+                configured = Action.valueOf(value);
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Unknown producer.expiration {}, expiration disabled", action);
+            }
+        }
+        this.action = configured;
+        this.ttl = ttl;
+        this.grace = grace;
+    }
+
+    /**
+     * Get single instance of {@link EventExpiration}
+     *
+     * @return Single instance of {@link EventExpiration}
+     * @see EventExpiration#EVENT_EXPIRATION
+     */
+    static EventExpiration getInstance() {
+        return EVENT_EXPIRATION;
+    }
+
+    /**
+     * @return true if producer.expiration is drop or archive
+     * @see EventExpiration#action
+     */
+    boolean isEnabled() {
+        return action != null;
+    }
+
+    /**
+     * Check if an {@link Event} has waited too long in {@link DataQueue}
+     *
+     * @param arrivedTime Time in milliseconds when {@link Event} has been pushed in {@link DataQueue}
+     * @param now         Current time in milliseconds
+     * @return true if expiration is enabled and {@link EventExpiration#ttl} has elapsed since arrivedTime
+     * @see EventExpiration#ttl
+     */
+    boolean isStale(long arrivedTime, long now) {
+        return action != null && ttl > 0 && now - arrivedTime > ttl;
+    }
+
+    /**
+     * Check if an {@link Event} has ended too long ago
+     *
+     * @param event {@link Event} to check
+     * @param now   Current time in milliseconds
+     * @return true if expiration is enabled, event ends after it starts and the grace of its source has elapsed since
+     * {@link Event#getEnd()}
+     * @throws NullPointerException if event is null
+     * @see EventExpiration#getGrace(String)
+     */
+    boolean isPastDeadline(Event event, long now) {
+        Objects.requireNonNull(event);
+        long end = event.getEnd().getTime();
+        if (action == null || end <= event.getStart().getTime()) {
+            // An instant is the time it has been observed, not a deadline
+            return false;
+        }
+        return now - end > getGrace(event.getSource());
+    }
+
+    /**
+     * Get grace of a source
+     *
+     * @param source Source of {@link Event}
+     * @return producer.expiration.grace.&lt;source&gt;, or {@link EventExpiration#grace} if it's not set
+     * @see EventExpiration#sourceGraces
+     */
+    private long getGrace(String source) {
+        return sourceGraces.computeIfAbsent(source, s -> PROPERTIES_MANAGER.getLongOrDefault("producer.expiration.grace." + s, 0, grace));
+    }
+
+    /**
+     * Drop or archive expired {@link Event}, and log how many have expired for each source
+     *
+     * @param events Expired {@link Event}
+     * @param reason Why they have expired, used in metric name event_expired_&lt;reason&gt;_&lt;source&gt;
+     * @throws NullPointerException if events or reason is null
+     * @see EventExpiration#action
+     * @see IDatabaseWriter#archiveEvents(List, DatabaseWriterCallback)
+     */
+    void expire(List<Event> events, String reason) {
+        Objects.requireNonNull(events);
+        Objects.requireNonNull(reason);
+        if (events.isEmpty()) {
+            return;
+        }
+        Map<String, Long> counts = new HashMap<>();
+        events.forEach(event -> counts.merge(event.getSource(), 1L, Long::sum));
+        counts.forEach((source, count) -> METRICS_LOGGER.log("event_expired_" + reason + "_" + source, count));
+        if (action == Action.ARCHIVE) {
+            DatabaseWriterFactory.getDatabaseWriter().archiveEvents(events, t -> {
+                if (t != null) {
+                    LOGGER.error("Expired events cannot be archived: {}", t.getMessage());
+                }
+            });
+        } else {
+            LOGGER.debug("{} event(s) dropped, {}", events.size(), reason);
+        }
+    }
+
+    /**
+     * What to do with expired {@link Event}
+     *
+     * @author ikb4stream
+     * @version 1.0
+     */
+    private enum Action {
+        /**
+         * Forget expired {@link Event}
+         */
+        DROP,
+        /**
+         * Insert expired {@link Event} without score in the archive collection
+         */
+        ARCHIVE
+    }
+}
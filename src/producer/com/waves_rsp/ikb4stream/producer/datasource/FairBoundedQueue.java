@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * {@link IBoundedQueue} which keeps one sub-queue per key and dequeues them with deficit round-robin.
+ * Each sub-queue earns its quantum at each round and spends the cost of the elements it releases,
+ * so a key with a high rate cannot starve the others. With a cost of 1 per element, it behaves as weighted round-robin.
+ *
+ * @param <E> Type of element stored in this queue
+ * @author ikb4stream
+ * @version 1.0
+ */
+class FairBoundedQueue<E> implements IBoundedQueue<E> {
+    /**
+     * Lock which protects all sub-queues
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Condition signaled when an element is inserted
+     *
+     * @see FairBoundedQueue#take()
+     */
+    private final Condition notEmpty = lock.newCondition();
+    /**
+     * Condition signaled when an element is removed
+     *
+     * @see FairBoundedQueue#put(Object)
+     * @see FairBoundedQueue#offer(Object, long, TimeUnit)
+     */
+    private final Condition notFull = lock.newCondition();
+    /**
+     * Association of a key to its {@link SubQueue}
+     *
+     * @see FairBoundedQueue#getSubQueue(String)
+     */
+    private final Map<String, SubQueue> subQueues = new HashMap<>();
+    /**
+     * Round of {@link SubQueue} which are not empty
+     *
+     * @see FairBoundedQueue#poll()
+     */
+    private final Deque<SubQueue> activeQueues = new ArrayDeque<>();
+    /**
+     * Function to get the key of an element
+     */
+    private final Function<E, String> keyOf;
+    /**
+     * Function to get the cost of an element
+     */
+    private final ToIntFunction<E> costOf;
+    /**
+     * Function to get the maximum number of elements of a key
+     */
+    private final ToIntFunction<String> capacityOf;
+    /**
+     * Function to get the quantum earned by a key at each round
+     */
+    private final ToIntFunction<String> quantumOf;
+    /**
+     * Maximum number of elements for all keys
+     *
+     * @see FairBoundedQueue#capacity()
+     */
+    private final int capacity;
+    /**
+     * Number of elements for all keys
+     *
+     * @see FairBoundedQueue#size()
+     */
+    private int count;
+
+    /**
+     * Create a {@link FairBoundedQueue}
+     *
+     * @param capacity   Maximum number of elements for all keys
+     * @param keyOf      Function to get the key of an element
+     * @param costOf     Function to get the cost of an element, 1 for weighted round-robin
+     * @param capacityOf Function to get the maximum number of elements of a key
+     * @param quantumOf  Function to get the quantum earned by a key at each round
+     * @throws NullPointerException     if one of params is null
+     * @throws IllegalArgumentException if capacity is lower than 1
+     */
+    FairBoundedQueue(int capacity, Function<E, String> keyOf, ToIntFunction<E> costOf,
+                     ToIntFunction<String> capacityOf, ToIntFunction<String> quantumOf) {
+        Objects.requireNonNull(keyOf);
+        Objects.requireNonNull(costOf);
+        Objects.requireNonNull(capacityOf);
+        Objects.requireNonNull(quantumOf);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 0.");
+        }
+        this.capacity = capacity;
+        this.keyOf = keyOf;
+        this.costOf = costOf;
+        this.capacityOf = capacityOf;
+        this.quantumOf = quantumOf;
+    }
+
+    /**
+     * Get or create the {@link SubQueue} of a key, must be called with {@link FairBoundedQueue#lock} held
+     *
+     * @param key Key of element
+     * @return {@link SubQueue} of this key
+     * @see FairBoundedQueue#subQueues
+     */
+    private SubQueue getSubQueue(String key) {
+        return subQueues.computeIfAbsent(key, k -> new SubQueue(
+                Math.max(1, capacityOf.applyAsInt(k)), Math.max(1, quantumOf.applyAsInt(k))));
+    }
+
+    /**
+     * Insert element in its {@link SubQueue} if there is enough space, must be called with {@link FairBoundedQueue#lock} held
+     *
+     * @param element Element to insert
+     * @return true if element has been inserted
+     * @see FairBoundedQueue#activeQueues
+     */
+    private boolean enqueue(E element) {
+        SubQueue subQueue = getSubQueue(keyOf.apply(element));
+        if (count >= capacity || subQueue.elements.size() >= subQueue.capacity) {
+            return false;
+        }
+        subQueue.elements.addLast(element);
+        count++;
+        if (!subQueue.active) {
+            subQueue.active = true;
+            subQueue.deficit = 0;
+            activeQueues.addLast(subQueue);
+        }
+        notEmpty.signal();
+        return true;
+    }
+
+    /**
+     * Remove the head of a {@link SubQueue}, must be called with {@link FairBoundedQueue#lock} held
+     *
+     * @param subQueue {@link SubQueue} which is not empty
+     * @return Head of subQueue
+     * @see FairBoundedQueue#activeQueues
+     */
+    private E dequeue(SubQueue subQueue) {
+        E element = subQueue.elements.pollFirst();
+        count--;
+        if (subQueue.elements.isEmpty()) {
+            subQueue.active = false;
+            subQueue.deficit = 0;
+            activeQueues.remove(subQueue);
+        }
+        notFull.signalAll();
+        return element;
+    }
+
+    /**
+     * Insert an element if there is space for its key and in this queue
+     *
+     * @param element Element to insert
+     * @return true if element has been inserted
+     * @throws NullPointerException if element is null
+     * @see FairBoundedQueue#enqueue(Object)
+     */
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        lock.lock();
+        try {
+            return enqueue(element);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Insert an element, waiting up to timeout for space for its key and in this queue
+     *
+     * @param element Element to insert
+     * @param timeout Maximum time to wait
+     * @param unit    {@link TimeUnit} of timeout
+     * @return true if element has been inserted
+     * @throws NullPointerException if element or unit is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see FairBoundedQueue#enqueue(Object)
+     */
+    @Override
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(element);
+        Objects.requireNonNull(unit);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!enqueue(element)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Insert an element, waiting as long as necessary for space for its key and in this queue
+     *
+     * @param element Element to insert
+     * @throws NullPointerException if element is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see FairBoundedQueue#enqueue(Object)
+     */
+    @Override
+    public void put(E element) throws InterruptedException {
+        Objects.requireNonNull(element);
+        lock.lockInterruptibly();
+        try {
+            while (!enqueue(element)) {
+                notFull.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieve and remove the next element according to deficit round-robin, never blocks
+     *
+     * @return Next element or null if this queue is empty
+     * @see FairBoundedQueue#activeQueues
+     */
+    @Override
+    public E poll() {
+        lock.lock();
+        try {
+            if (count == 0) {
+                return null;
+            }
+            while (true) {
+                SubQueue subQueue = activeQueues.peekFirst();
+                int cost = Math.max(1, costOf.applyAsInt(subQueue.elements.peekFirst()));
+                if (subQueue.deficit >= cost) {
+                    subQueue.deficit -= cost;
+                    return dequeue(subQueue);
+                }
+                // Not enough credit, this key waits for the next round
+                activeQueues.pollFirst();
+                subQueue.deficit += subQueue.quantum;
+                activeQueues.addLast(subQueue);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieve and remove the next element according to deficit round-robin, waiting while this queue is empty
+     *
+     * @return Next element
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see FairBoundedQueue#poll()
+     */
+    @Override
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieve and remove the next element according to deficit round-robin, waiting up to timeout while this queue is empty
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    {@link TimeUnit} of timeout
+     * @return Next element or null if timeout elapsed
+     * @throws NullPointerException if unit is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see FairBoundedQueue#poll()
+     */
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(unit);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove available elements according to deficit round-robin under a single lock acquisition
+     *
+     * @param collection  Collection which receives elements in dequeue order
+     * @param maxElements Maximum number of elements to remove
+     * @return Number of elements removed
+     * @throws NullPointerException if collection is null
+     * @see FairBoundedQueue#poll()
+     */
+    @Override
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        Objects.requireNonNull(collection);
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && count > 0) {
+                collection.add(poll());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the oldest element of the key of incoming if this key is full, of the biggest key otherwise
+     *
+     * @param incoming Element which cannot be inserted
+     * @return Removed element or null if this queue is empty
+     * @throws NullPointerException if incoming is null
+     */
+    @Override
+    public E evict(E incoming) {
+        Objects.requireNonNull(incoming);
+        lock.lock();
+        try {
+            SubQueue subQueue = getSubQueue(keyOf.apply(incoming));
+            if (subQueue.elements.size() < subQueue.capacity || subQueue.elements.isEmpty()) {
+                subQueue = null;
+                for (SubQueue active : activeQueues) {
+                    if (subQueue == null || active.elements.size() > subQueue.elements.size()) {
+                        subQueue = active;
+                    }
+                }
+            }
+            return subQueue == null ? null : dequeue(subQueue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get number of elements for all keys
+     *
+     * @return Number of elements
+     * @see FairBoundedQueue#count
+     */
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get capacity of this queue
+     *
+     * @return Maximum number of elements for all keys
+     * @see FairBoundedQueue#capacity
+     */
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Elements of a key
+     *
+     * @author ikb4stream
+     * @version 1.0
+     */
+    private class SubQueue {
+        /**
+         * Elements of this key in arrival order
+         */
+        private final Deque<E> elements = new ArrayDeque<>();
+        /**
+         * Maximum number of elements of this key
+         */
+        private final int capacity;
+        /**
+         * Credit earned at each round
+         */
+        private final int quantum;
+        /**
+         * Credit left to release elements
+         */
+        private long deficit;
+        /**
+         * True if this {@link SubQueue} is in {@link FairBoundedQueue#activeQueues}
+         */
+        private boolean active;
+
+        /**
+         * Create a {@link SubQueue}
+         *
+         * @param capacity Maximum number of elements of this key
+         * @param quantum  Credit earned at each round
+         */
+        private SubQueue(int capacity, int quantum) {
+            this.capacity = capacity;
+            this.quantum = quantum;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue used by {@link DataQueue} to store its elements
+ *
+ * @param <E> Type of element stored in this queue
+ * @author ikb4stream
+ * @version 1.0
+ * @see BlockingBoundedQueue
+ * @see RingBufferQueue
+ * @see FairBoundedQueue
+ */
+interface IBoundedQueue<E> {
+    /**
+     * Insert an element if there is enough space in this queue
+     *
+     * @param element Element to insert
+     * @return true if element has been inserted, false if the queue is full
+     * @throws NullPointerException if element is null
+     */
+    boolean offer(E element);
+
+    /**
+     * Insert an element, waiting up to timeout for space to become available
+     *
+     * @param element Element to insert
+     * @param timeout Maximum time to wait
+     * @param unit    {@link TimeUnit} of timeout
+     * @return true if element has been inserted, false if timeout elapsed
+     * @throws NullPointerException if element or unit is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     */
+    boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Insert an element, waiting as long as necessary for space to become available
+     *
+     * @param element Element to insert
+     * @throws NullPointerException if element is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     */
+    void put(E element) throws InterruptedException;
+
+    /**
+     * Retrieve and remove the head of this queue, never blocks
+     *
+     * @return Head of this queue or null if it's empty
+     */
+    E poll();
+
+    /**
+     * Retrieve and remove the head of this queue, waiting until an element is available
+     *
+     * @return Head of this queue
+     * @throws InterruptedException if thread is interrupted while waiting
+     */
+    E take() throws InterruptedException;
+
+    /**
+     * Retrieve and remove the head of this queue, waiting up to timeout for an element to become available
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    {@link TimeUnit} of timeout
+     * @return Head of this queue or null if timeout elapsed
+     * @throws NullPointerException if unit is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     */
+    E poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Remove at most maxElements elements available in this queue and add them to collection, never blocks
+     *
+     * @param collection  Collection which receives elements in dequeue order
+     * @param maxElements Maximum number of elements to remove
+     * @return Number of elements removed
+     * @throws NullPointerException if collection is null
+     */
+    default int drainTo(Collection<? super E> collection, int maxElements) {
+        Objects.requireNonNull(collection);
+        int count = 0;
+        E element;
+        while (count < maxElements && (element = poll()) != null) {
+            collection.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Remove an element to make room for incoming, used when the queue is full
+     *
+     * @param incoming Element which cannot be inserted
+     * @return Removed element, the head of this queue by default, or null if it's empty
+     * @throws NullPointerException if incoming is null
+     */
+    default E evict(E incoming) {
+        Objects.requireNonNull(incoming);
+        return poll();
+    }
+
+    /**
+     * Get number of elements in this queue
+     *
+     * @return Number of elements
+     */
+    int size();
+
+    /**
+     * Get the maximum number of elements this queue can hold
+     *
+     * @return Capacity of this queue
+     */
+    int capacity();
+
+    /**
+     * Check if this queue is empty
+     *
+     * @return true if there is no element in this queue
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+}
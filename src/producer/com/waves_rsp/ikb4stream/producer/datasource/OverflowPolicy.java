@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+/**
+ * Behaviour of {@link DataQueue#push(com.waves_rsp.ikb4stream.core.model.Event)} when {@link DataQueue} is full
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see DataQueue
+ */
+enum OverflowPolicy {
+    /**
+     * Wait until there is space in {@link DataQueue}, so connectors slow down to the consumers rate
+     */
+    BLOCK,
+    /**
+     * Wait until there is space in {@link DataQueue}, drop the event after a timeout
+     */
+    BLOCK_TIMEOUT,
+    /**
+     * Drop the oldest event of {@link DataQueue} to insert the new one
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the new event
+     */
+    DROP_NEWEST,
+    /**
+     * Keep one out of N events of each source by dropping the oldest event, drop the others
+     */
+    SAMPLE
+}
@@ -22,6 +22,7 @@ import com.waves_rsp.ikb4stream.core.datasource.model.IProducerConnector;
 import com.waves_rsp.ikb4stream.core.model.PropertiesManager;
 import com.waves_rsp.ikb4stream.core.util.ClassManager;
 import com.waves_rsp.ikb4stream.core.util.JarLoader;
+import com.waves_rsp.ikb4stream.producer.DatabaseWriterFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -83,12 +84,12 @@ public class ProducerManager {
      */
     private final DataQueue dataQueue = DataQueue.createDataQueue();
     /**
-     * List of Thread for each {@link DataConsumer}
+     * {@link DataConsumerPool} which runs all {@link DataConsumer}
      *
      * @see ProducerManager#launchDataConsumer()
      * @see ProducerManager#stop()
      */
-    private final List<Thread> dataConsumers = new ArrayList<>();
+    private final DataConsumerPool dataConsumerPool = DataConsumerPool.create(dataQueue);
 
     /**
      * Private constructor to block instantiation
@@ -121,29 +122,10 @@ public class ProducerManager {
     /**
      * Launch all consumers
      *
-     * @see ProducerManager#PRODUCER_MANAGER
-     * @see ProducerManager#dataConsumers
+     * @see ProducerManager#dataConsumerPool
      */
     private void launchDataConsumer() {
-        int nbThreadConsumer = 10;
-        try {
-            nbThreadConsumer = Integer.parseInt(PROPERTIES_MANAGER.getProperty("producer.thread"));
-        } catch (IllegalArgumentException e) {
-            LOGGER.warn("Use default value for producer.thread");
-        }
-
-        LOGGER.info(nbThreadConsumer + " consumer will be launch");
-
-        for (int i = 0; i < nbThreadConsumer; i++) {
-            Thread thread = new Thread(() -> {
-                DataConsumer dataConsumer = DataConsumer.createDataConsumer(dataQueue);
-                dataConsumer.consume();
-            });
-            thread.setName("Consumer " + (i + 1));
-            thread.start();
-            dataConsumers.add(thread);
-        }
-        LOGGER.info(nbThreadConsumer + " consumer(s) has been launched");
+        dataConsumerPool.start();
     }
 
     /**
@@ -212,15 +194,19 @@ public class ProducerManager {
     }
 
     /**
-     * Stop producer and consumer when dataQueue is empty
+     * Stop producer and consumer when dataQueue is empty, or once it has been persisted if it's persistent
      *
      * @see ProducerManager#producerConnectors
-     * @see ProducerManager#dataConsumers
+     * @see ProducerManager#dataConsumerPool
      * @see ProducerManager#dataQueue
      */
     public void stop() {
         producerConnectors.forEach(Thread::interrupt);
         LOGGER.info("All producer has been stopped");
+        if (dataQueue.isPersistent()) {
+            // Events left are replayed at next start
+            dataQueue.persist();
+        }
         // Wait the DataQueue is Empty
         LOGGER.info("Wait producers finished to clear the DataQueue");
         while (!dataQueue.isEmpty()) {
@@ -231,7 +217,8 @@ public class ProducerManager {
                 Thread.currentThread().interrupt();
             }
         }
-        dataConsumers.forEach(Thread::interrupt);
+        dataConsumerPool.stop();
+        DatabaseWriterFactory.getDatabaseWriter().flush();
         LOGGER.info("All consumers has been stopped");
     }
 }
\ No newline at end of file
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free multi-producer / multi-consumer bounded {@link IBoundedQueue}.
+ * Each slot holds a sequence number which tells producers and consumers whose turn it is to use it,
+ * so threads only compete with a CAS on {@link RingBufferQueue#enqueuePosition} or {@link RingBufferQueue#dequeuePosition}.
+ *
+ * @param <E> Type of element stored in this queue
+ * @author ikb4stream
+ * @version 1.0
+ * @see WaitStrategy
+ */
+class RingBufferQueue<E> implements IBoundedQueue<E> {
+    /**
+     * Slots which contain elements
+     *
+     * @see RingBufferQueue#offer(Object)
+     * @see RingBufferQueue#poll()
+     */
+    private final AtomicReferenceArray<E> buffer;
+    /**
+     * Sequence of each slot of {@link RingBufferQueue#buffer}
+     *
+     * @see RingBufferQueue#offer(Object)
+     * @see RingBufferQueue#poll()
+     */
+    private final AtomicLongArray sequences;
+    /**
+     * Next position to write
+     *
+     * @see RingBufferQueue#offer(Object)
+     */
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    /**
+     * Next position to read
+     *
+     * @see RingBufferQueue#poll()
+     */
+    private final AtomicLong dequeuePosition = new AtomicLong();
+    /**
+     * Capacity of this queue
+     *
+     * @see RingBufferQueue#capacity()
+     */
+    private final int capacity;
+    /**
+     * {@link WaitStrategy} applied when {@link RingBufferQueue#take()} finds this queue empty
+     *
+     * @see RingBufferQueue#take()
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Create a {@link RingBufferQueue}, it has at least 2 slots as a single slot cannot tell full from empty
+     *
+     * @param capacity     Maximum number of elements
+     * @param waitStrategy {@link WaitStrategy} used by consumers waiting on an empty queue
+     * @throws IllegalArgumentException if capacity is lower than 1
+     * @throws NullPointerException     if waitStrategy is null
+     */
+    RingBufferQueue(int capacity, WaitStrategy waitStrategy) {
+        Objects.requireNonNull(waitStrategy);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 0.");
+        }
+        this.capacity = Math.max(2, capacity);
+        this.waitStrategy = waitStrategy;
+        this.buffer = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Insert an element if this queue is not full, never blocks
+     *
+     * @param element Element to insert
+     * @return true if element has been inserted
+     * @throws NullPointerException if element is null
+     * @see RingBufferQueue#enqueuePosition
+     */
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) (position % capacity);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = enqueuePosition.get();
+            } else if (diff < 0) {
+                // Slot still holds an element of the previous lap
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Insert an element, waiting with {@link RingBufferQueue#waitStrategy} up to timeout while this queue is full
+     *
+     * @param element Element to insert
+     * @param timeout Maximum time to wait
+     * @param unit    {@link TimeUnit} of timeout
+     * @return true if element has been inserted
+     * @throws NullPointerException if element or unit is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see RingBufferQueue#waitStrategy
+     */
+    @Override
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(element);
+        Objects.requireNonNull(unit);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (!offer(element)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            waitStrategy.idle(attempt);
+            if (attempt < Integer.MAX_VALUE) {
+                attempt++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Insert an element, waiting with {@link RingBufferQueue#waitStrategy} while this queue is full
+     *
+     * @param element Element to insert
+     * @throws NullPointerException if element is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see RingBufferQueue#waitStrategy
+     */
+    @Override
+    public void put(E element) throws InterruptedException {
+        Objects.requireNonNull(element);
+        int attempt = 0;
+        while (!offer(element)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(attempt);
+            if (attempt < Integer.MAX_VALUE) {
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Retrieve and remove the head of this queue, never blocks
+     *
+     * @return Head of this queue or null if it's empty
+     * @see RingBufferQueue#dequeuePosition
+     */
+    @Override
+    public E poll() {
+        long position = dequeuePosition.get();
+        while (true) {
+            int index = (int) (position % capacity);
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    E element = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, position + capacity);
+                    return element;
+                }
+                position = dequeuePosition.get();
+            } else if (diff < 0) {
+                // Slot has not been written yet
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Retrieve and remove the head of this queue, waiting with {@link RingBufferQueue#waitStrategy} while it's empty
+     *
+     * @return Head of this queue
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see RingBufferQueue#waitStrategy
+     */
+    @Override
+    public E take() throws InterruptedException {
+        int attempt = 0;
+        while (true) {
+            E element = poll();
+            if (element != null) {
+                return element;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(attempt);
+            if (attempt < Integer.MAX_VALUE) {
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Retrieve and remove the head of this queue, waiting with {@link RingBufferQueue#waitStrategy} up to timeout while it's empty
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    {@link TimeUnit} of timeout
+     * @return Head of this queue or null if timeout elapsed
+     * @throws NullPointerException if unit is null
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see RingBufferQueue#waitStrategy
+     */
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(unit);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (true) {
+            E element = poll();
+            if (element != null) {
+                return element;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            waitStrategy.idle(attempt);
+            if (attempt < Integer.MAX_VALUE) {
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Get an estimation of number of elements in this queue
+     *
+     * @return Number of elements
+     * @see RingBufferQueue#enqueuePosition
+     * @see RingBufferQueue#dequeuePosition
+     */
+    @Override
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        if (size < 0) return 0;
+        return (int) Math.min(size, capacity);
+    }
+
+    /**
+     * Get capacity of this queue
+     *
+     * @return Maximum number of elements
+     * @see RingBufferQueue#capacity
+     */
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of records stored in memory-mapped segment files of fixed size.
+ * A record is its length (4 bytes) followed by its content, a length of -1 closes a segment and 0 marks free space.
+ * The position of the next record to read is kept in a cursor file, so records which have not been committed are
+ * read again when the log is opened. A segment is deleted once all its records have been read.
+ * Writes go to the page cache, so they survive a crash of the JVM but not of the system.
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see DataQueue
+ */
+class SpillLog implements Closeable {
+    /**
+     * Logger used to log all information in this class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillLog.class);
+    /**
+     * Extension of segment files
+     *
+     * @see SpillLog#segmentPath(long)
+     */
+    private static final String SEGMENT_SUFFIX = ".segment";
+    /**
+     * Name of the file which stores the read position
+     *
+     * @see SpillLog#cursor
+     */
+    private static final String CURSOR_FILE = "cursor";
+    /**
+     * Size of the length which prefixes each record
+     */
+    private static final int HEADER_SIZE = 4;
+    /**
+     * Length written after the last record of a segment
+     *
+     * @see SpillLog#append(byte[])
+     * @see SpillLog#peek()
+     */
+    private static final int END_OF_SEGMENT = -1;
+    /**
+     * Directory which contains segments and cursor
+     */
+    private final Path directory;
+    /**
+     * Size in bytes of each segment
+     */
+    private final int segmentSize;
+    /**
+     * Maximum number of segments on disk
+     *
+     * @see SpillLog#append(byte[])
+     */
+    private final int maxSegments;
+    /**
+     * Mapping of the cursor file: index of the read segment (8 bytes) then read offset (4 bytes)
+     *
+     * @see SpillLog#saveCursor()
+     */
+    private final MappedByteBuffer cursor;
+    /**
+     * Index of the segment being written
+     */
+    private long writeSegment;
+    /**
+     * Mapping of the segment being written
+     */
+    private MappedByteBuffer writeBuffer;
+    /**
+     * Offset of the next record to write
+     */
+    private int writeOffset;
+    /**
+     * Index of the segment being read
+     */
+    private long readSegment;
+    /**
+     * Mapping of the segment being read
+     */
+    private MappedByteBuffer readBuffer;
+    /**
+     * Offset of the next record to read
+     */
+    private int readOffset;
+    /**
+     * Length of the record returned by {@link SpillLog#peek()}, -1 if there is none
+     *
+     * @see SpillLog#commit()
+     */
+    private int peekedLength = -1;
+    /**
+     * True once {@link SpillLog#close()} has been called
+     */
+    private boolean closed;
+
+    /**
+     * Open or create a {@link SpillLog}, records which have not been committed are kept
+     *
+     * @param directory   Directory which contains segments
+     * @param segmentSize Size in bytes of each segment
+     * @param maxSegments Maximum number of segments on disk
+     * @throws NullPointerException     if directory is null
+     * @throws IllegalArgumentException if segmentSize is lower than 16 or maxSegments is lower than 1
+     * @throws IOException              if directory cannot be read or written
+     */
+    SpillLog(Path directory, int segmentSize, int maxSegments) throws IOException {
+        Objects.requireNonNull(directory);
+        if (segmentSize < 4 * HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be greater than " + 4 * HEADER_SIZE + ".");
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("Max segments must be greater than 0.");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments();
+        Path cursorPath = directory.resolve(CURSOR_FILE);
+        boolean newCursor = !Files.exists(cursorPath);
+        this.cursor = map(cursorPath, Long.BYTES + Integer.BYTES);
+        this.writeSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        this.writeBuffer = map(segmentPath(writeSegment), segmentSize);
+        this.writeOffset = findWriteOffset();
+        long firstSegment = segments.isEmpty() ? 0 : segments.get(0);
+        this.readSegment = newCursor ? firstSegment : cursor.getLong(0);
+        this.readOffset = newCursor ? 0 : cursor.getInt(Long.BYTES);
+        if (readSegment < firstSegment || readSegment > writeSegment || readOffset < 0 || readOffset > segmentSize - HEADER_SIZE
+                || (readSegment == writeSegment && readOffset > writeOffset)) {
+            LOGGER.warn("Invalid cursor in {}, read from the first segment", directory);
+            readSegment = firstSegment;
+            readOffset = 0;
+        }
+        this.readBuffer = map(segmentPath(readSegment), segmentSize);
+        saveCursor();
+        LOGGER.info("Spill log opened in {} with {} segment(s)", directory, writeSegment - readSegment + 1);
+    }
+
+    /**
+     * List index of segments in {@link SpillLog#directory}
+     *
+     * @return Sorted index of segments
+     * @throws IOException if directory cannot be read
+     */
+    private List<Long> listSegments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> {
+                        try {
+                            segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                        } catch (NumberFormatException e) {
+                            LOGGER.warn("{} is not a segment of spill log", name);
+                        }
+                    });
+        }
+        segments.sort(Long::compare);
+        return segments;
+    }
+
+    /**
+     * Find the first free offset of {@link SpillLog#writeBuffer}, rotate if this segment has been closed
+     *
+     * @return Offset of the next record to write
+     * @throws IOException if a new segment cannot be created
+     */
+    private int findWriteOffset() throws IOException {
+        int offset = 0;
+        while (offset <= segmentSize - HEADER_SIZE) {
+            int length = writeBuffer.getInt(offset);
+            if (length == 0) {
+                return offset;
+            }
+            if (length == END_OF_SEGMENT || length < 0 || offset + HEADER_SIZE + length > segmentSize - HEADER_SIZE) {
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        writeSegment++;
+        writeBuffer = map(segmentPath(writeSegment), segmentSize);
+        return 0;
+    }
+
+    /**
+     * Get path of a segment
+     *
+     * @param index Index of segment
+     * @return Path of segment file
+     * @see SpillLog#SEGMENT_SUFFIX
+     */
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Map a file in memory, it's created or extended to size
+     *
+     * @param path File to map
+     * @param size Size of mapping
+     * @return Mapping of file
+     * @throws IOException if file cannot be mapped
+     */
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+             FileChannel channel = file.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Store read position in {@link SpillLog#cursor}
+     *
+     * @see SpillLog#cursor
+     */
+    private void saveCursor() {
+        cursor.putLong(0, readSegment);
+        cursor.putInt(Long.BYTES, readOffset);
+    }
+
+    /**
+     * Append a record at the end of this log
+     *
+     * @param record Content of record
+     * @return true if record has been appended, false if it's empty, bigger than a segment, this log is full or closed
+     * @throws NullPointerException if record is null
+     * @throws IOException          if a new segment cannot be created
+     * @see SpillLog#maxSegments
+     */
+    synchronized boolean append(byte[] record) throws IOException {
+        Objects.requireNonNull(record);
+        if (closed || record.length == 0 || 2L * HEADER_SIZE + record.length > segmentSize) {
+            return false;
+        }
+        if (writeOffset + 2L * HEADER_SIZE + record.length > segmentSize) {
+            if (writeSegment - readSegment + 1 >= maxSegments) {
+                return false;
+            }
+            MappedByteBuffer next = map(segmentPath(writeSegment + 1), segmentSize);
+            writeBuffer.putInt(writeOffset, END_OF_SEGMENT);
+            writeSegment++;
+            writeBuffer = next;
+            writeOffset = 0;
+        }
+        ByteBuffer content = writeBuffer.duplicate();
+        content.position(writeOffset + HEADER_SIZE);
+        content.put(record);
+        // Length is written last, so a record is never visible before its content
+        writeBuffer.putInt(writeOffset, record.length);
+        writeOffset += HEADER_SIZE + record.length;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Get the next record without removing it, {@link SpillLog#commit()} must be called once it has been processed
+     *
+     * @return Content of next record or null if there is none
+     * @throws IOException if the next segment cannot be mapped
+     * @see SpillLog#commit()
+     */
+    synchronized byte[] peek() throws IOException {
+        while (!isEmpty()) {
+            int length = readBuffer.getInt(readOffset);
+            if (length == END_OF_SEGMENT || length <= 0 || readOffset + HEADER_SIZE + length > segmentSize) {
+                if (length != END_OF_SEGMENT) {
+                    LOGGER.error("Corrupted record in segment {} of spill log at offset {}", readSegment, readOffset);
+                }
+                if (!nextReadSegment()) {
+                    return null;
+                }
+                continue;
+            }
+            byte[] record = new byte[length];
+            ByteBuffer content = readBuffer.duplicate();
+            content.position(readOffset + HEADER_SIZE);
+            content.get(record);
+            peekedLength = length;
+            return record;
+        }
+        return null;
+    }
+
+    /**
+     * Move read position to the next segment and delete the one which has been read
+     *
+     * @return false if the read segment is the one being written
+     * @throws IOException if the next segment cannot be mapped
+     */
+    private boolean nextReadSegment() throws IOException {
+        if (readSegment >= writeSegment) {
+            readOffset = writeOffset;
+            saveCursor();
+            return false;
+        }
+        long previous = readSegment;
+        readBuffer = readSegment + 1 == writeSegment ? writeBuffer : map(segmentPath(readSegment + 1), segmentSize);
+        readSegment++;
+        readOffset = 0;
+        saveCursor();
+        try {
+            Files.deleteIfExists(segmentPath(previous));
+        } catch (IOException e) {
+            LOGGER.warn("Segment {} of spill log cannot be deleted: {}", previous, e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Remove the record returned by the last call of {@link SpillLog#peek()}
+     *
+     * @throws IllegalStateException if {@link SpillLog#peek()} has not returned a record since last commit
+     * @see SpillLog#peek()
+     */
+    synchronized void commit() {
+        if (peekedLength < 0) {
+            throw new IllegalStateException("There is no record to commit.");
+        }
+        readOffset += HEADER_SIZE + peekedLength;
+        peekedLength = -1;
+        saveCursor();
+    }
+
+    /**
+     * Wait until a record can be read
+     *
+     * @throws InterruptedException if thread is interrupted while waiting
+     * @see SpillLog#append(byte[])
+     */
+    synchronized void awaitRecord() throws InterruptedException {
+        while (isEmpty()) {
+            wait();
+        }
+    }
+
+    /**
+     * @return true if all records have been read or this log is closed
+     */
+    synchronized boolean isEmpty() {
+        return closed || (readSegment == writeSegment && readOffset == writeOffset);
+    }
+
+    /**
+     * Flush mappings to disk, {@link SpillLog#append(byte[])} is refused afterwards
+     *
+     * @see SpillLog#closed
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writeBuffer.force();
+        readBuffer.force();
+        cursor.force();
+        notifyAll();
+        LOGGER.info("Spill log in {} has been closed", directory);
+    }
+}
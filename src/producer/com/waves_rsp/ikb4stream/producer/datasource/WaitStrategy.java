@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Behaviour of a thread waiting on a {@link RingBufferQueue}
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see RingBufferQueue#take()
+ */
+enum WaitStrategy {
+    /**
+     * Busy spin, lowest latency but burns one CPU per waiting thread
+     */
+    SPIN {
+        @Override
+        void idle(int attempt) {
+            // Busy spin
+        }
+    },
+    /**
+     * Spin a few times, then give the CPU to other threads
+     */
+    YIELD {
+        @Override
+        void idle(int attempt) {
+            if (attempt >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+    /**
+     * Spin a few times, then park the thread for a short time
+     */
+    PARK {
+        @Override
+        void idle(int attempt) {
+            if (attempt >= SPIN_TRIES) {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    /**
+     * Number of attempts before {@link WaitStrategy#YIELD} and {@link WaitStrategy#PARK} stop spinning
+     */
+    private static final int SPIN_TRIES = 100;
+    /**
+     * Time in nanoseconds during which {@link WaitStrategy#PARK} parks the thread
+     */
+    private static final long PARK_NANOS = 100_000L;
+
+    /**
+     * Called each time a thread finds nothing to do
+     *
+     * @param attempt Number of consecutive unsuccessful attempts
+     */
+    abstract void idle(int attempt);
+}
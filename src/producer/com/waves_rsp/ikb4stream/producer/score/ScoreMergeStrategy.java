@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.score;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+
+import java.util.Objects;
+
+/**
+ * How {@link ScoreProcessorManager} merges scores of independent {@link com.waves_rsp.ikb4stream.core.datasource.model.IScoreProcessor}
+ * run in parallel on the same {@link Event}
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see ScoreProcessorManager
+ */
+enum ScoreMergeStrategy {
+    /**
+     * Keep the highest score
+     */
+    MAX {
+        @Override
+        byte merge(byte[] scores, double[] weights) {
+            byte max = scores[0];
+            for (byte score : scores) {
+                max = (byte) Math.max(max, score);
+            }
+            return max;
+        }
+    },
+    /**
+     * Add scores, capped to {@link Event#getScoreMax()}
+     */
+    SUM {
+        @Override
+        byte merge(byte[] scores, double[] weights) {
+            int sum = 0;
+            for (byte score : scores) {
+                sum += score;
+            }
+            return (byte) Math.min(sum, Event.getScoreMax());
+        }
+    },
+    /**
+     * Average of scores weighted by the weight of each processor
+     */
+    WEIGHTED {
+        @Override
+        byte merge(byte[] scores, double[] weights) {
+            double sum = 0;
+            double totalWeight = 0;
+            for (int i = 0; i < scores.length; i++) {
+                sum += scores[i] * weights[i];
+                totalWeight += weights[i];
+            }
+            if (totalWeight <= 0) {
+                return MAX.merge(scores, weights);
+            }
+            return (byte) Math.round(Math.min(sum / totalWeight, Event.getScoreMax()));
+        }
+    };
+
+    /**
+     * Merge scores
+     *
+     * @param scores  Scores between 0 and 100, at least one
+     * @param weights Weight of each score, same length as scores
+     * @return Merged score between 0 and 100
+     */
+    abstract byte merge(byte[] scores, double[] weights);
+
+    /**
+     * Merge scores after checking params
+     *
+     * @param scores  Scores between 0 and 100, at least one
+     * @param weights Weight of each score, same length as scores
+     * @return Merged score between 0 and 100
+     * @throws NullPointerException     if scores or weights is null
+     * @throws IllegalArgumentException if scores is empty or lengths differ
+     */
+    byte apply(byte[] scores, double[] weights) {
+        Objects.requireNonNull(scores);
+        Objects.requireNonNull(weights);
+        if (scores.length == 0 || scores.length != weights.length) {
+            throw new IllegalArgumentException("Scores and weights must have the same non zero length.");
+        }
+        return merge(scores, weights);
+    }
+}
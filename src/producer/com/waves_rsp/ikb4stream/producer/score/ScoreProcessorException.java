@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2017 ikb4stream team
+ * ikb4stream is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ikb4stream is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ *
+ */
+
+package com.waves_rsp.ikb4stream.producer.score;
+
+import com.waves_rsp.ikb4stream.core.datasource.model.IScoreProcessor;
+
+import java.util.Objects;
+
+/**
+ * Thrown by {@link ScoreProcessorManager} when an {@link IScoreProcessor} fails to score an {@link com.waves_rsp.ikb4stream.core.model.Event}
+ *
+ * @author ikb4stream
+ * @version 1.0
+ * @see ScoreProcessorManager#processScore(com.waves_rsp.ikb4stream.core.model.Event)
+ */
+public class ScoreProcessorException extends RuntimeException {
+    /**
+     * Version of serialized {@link ScoreProcessorException}
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Simple class name of the {@link IScoreProcessor} which has failed
+     *
+     * @see ScoreProcessorException#getProcessor()
+     */
+    private final String processor;
+
+    /**
+     * Create a {@link ScoreProcessorException}
+     *
+     * @param processor Simple class name of the {@link IScoreProcessor} which has failed
+     * @param cause     Exception thrown by the {@link IScoreProcessor}
+     * @throws NullPointerException if processor or cause is null
+     */
+    public ScoreProcessorException(String processor, Throwable cause) {
+        super(processor + " has failed: " + Objects.requireNonNull(cause).getMessage(), cause);
+        Objects.requireNonNull(processor);
+        this.processor = processor;
+    }
+
+    /**
+     * Get the {@link IScoreProcessor} which has failed
+     *
+     * @return Simple class name of the {@link IScoreProcessor}
+     * @see ScoreProcessorException#processor
+     */
+    public String getProcessor() {
+        return processor;
+    }
+}
@@ -35,10 +35,22 @@ import java.nio.file.Paths;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 /**
- * Object which manage all {@link IScoreProcessor}
+ * Object which manage all {@link IScoreProcessor}, a single instance is shared by all consumers.
+ * {@link IScoreProcessor} which are not thread-safe get a pool of at most {@link ScoreProcessorManager#maxInstances}
+ * instances, one is borrowed to score an {@link Event} and given back right after, whatever the thread.
+ * If scoreprocessor.parallel is true, consecutive independent {@link IScoreProcessor} of a source run in parallel on the
+ * same {@link Event} and their scores are merged with {@link ScoreMergeStrategy}.
  *
  * @author ikb4stream
  * @version 1.0
@@ -57,21 +69,47 @@ public class ScoreProcessorManager {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(ScoreProcessorManager.class);
     /**
-     * Association {@link Event#source} to a list of {@link IScoreProcessor}
+     * Single instance of {@link ScoreProcessorManager}
      *
-     * @see ScoreProcessorManager#findIScoreProcessor(String)
+     * @see ScoreProcessorManager#getInstance()
+     */
+    private static final ScoreProcessorManager SCORE_PROCESSOR_MANAGER = new ScoreProcessorManager();
+    /**
+     * Association {@link Event#source} to a list of {@link ScoreProcessorProvider}, only modified during construction
+     *
+     * @see ScoreProcessorManager#findScoreProcessorProviders(String)
      * @see ScoreProcessorManager#launchModule(JarLoader)
      */
-    private final Map<String, List<IScoreProcessor>> scoreProcessors = new HashMap<>();
+    private final Map<String, List<ScoreProcessorProvider>> scoreProcessors = new HashMap<>();
     /**
      * ClassLoader of {@link ScoreProcessorManager}
      *
      * @see ScoreProcessorManager#launchModule(JarLoader)
      */
     private final ClassLoader parent = ScoreProcessorManager.class.getClassLoader();
+    /**
+     * Executor which runs independent {@link IScoreProcessor} in parallel, null if scoreprocessor.parallel is not true
+     *
+     * @see ScoreProcessorManager#createParallelExecutor()
+     * @see ScoreProcessorManager#processParallel(List, Event)
+     */
+    private final ExecutorService parallelExecutor = createParallelExecutor();
+    /**
+     * {@link ScoreMergeStrategy} applied to scores computed in parallel, read from scoreprocessor.merge
+     *
+     * @see ScoreProcessorManager#merge(List, List)
+     */
+    private final ScoreMergeStrategy mergeStrategy = getMergeStrategy();
+    /**
+     * Maximum number of instances of each {@link IScoreProcessor} which is not thread-safe, 1 until
+     * {@link ScoreProcessorManager#setMaxInstances(int)} is called
+     *
+     * @see ScoreProcessorProvider#borrow()
+     */
+    private volatile int maxInstances = 1;
 
     /**
-     * Override default constructor
+     * Override default constructor, use {@link ScoreProcessorManager#getInstance()} to share modules already loaded
      *
      * @see ScoreProcessorManager#instanciate()
      */
@@ -79,50 +117,260 @@ public class ScoreProcessorManager {
         instanciate();
     }
 
+    /**
+     * Get single instance of {@link ScoreProcessorManager}
+     *
+     * @return Single instance of {@link ScoreProcessorManager}
+     * @see ScoreProcessorManager#SCORE_PROCESSOR_MANAGER
+     */
+    public static ScoreProcessorManager getInstance() {
+        return SCORE_PROCESSOR_MANAGER;
+    }
+
     /**
      * Process NLP Algorithm to an event
      *
      * @param event {@link Event} to score
      * @return Copy of {@link Event} with a new score
-     * @throws NullPointerException if event is null
-     * @see ScoreProcessorManager#findIScoreProcessor(String)
+     * @throws NullPointerException    if event is null
+     * @throws ScoreProcessorException if an {@link IScoreProcessor} throws an exception
+     * @throws CancellationException   if the current thread is interrupted while waiting for an {@link IScoreProcessor}
+     * @see ScoreProcessorManager#findScoreProcessorProviders(String)
      * @see ScoreProcessorManager#process(List, Event)
      */
     public Event processScore(Event event) {
         Objects.requireNonNull(event);
-        List<IScoreProcessor> sp = findIScoreProcessor(event.getSource());
-        return process(sp, event);
+        List<ScoreProcessorProvider> providers = findScoreProcessorProviders(event.getSource());
+        if (parallelExecutor != null) {
+            return processStages(providers, event);
+        }
+        return process(providers, event);
+    }
+
+    /**
+     * Set maximum number of instances of each {@link IScoreProcessor} which is not thread-safe, it should be the
+     * maximum number of threads scoring {@link Event} at the same time. Instances above it are dropped once given back.
+     *
+     * @param maxInstances Maximum number of instances
+     * @throws IllegalArgumentException if maxInstances is lower than 1
+     * @see ScoreProcessorManager#maxInstances
+     */
+    public void setMaxInstances(int maxInstances) {
+        if (maxInstances < 1) {
+            throw new IllegalArgumentException("Invalid number of instances " + maxInstances + ".");
+        }
+        this.maxInstances = maxInstances;
+        scoreProcessors.values().forEach(providers -> providers.forEach(ScoreProcessorProvider::trim));
+    }
+
+    /**
+     * Create the executor used to run independent {@link IScoreProcessor} in parallel
+     *
+     * @return Executor of scoreprocessor.parallel.threads threads (number of processors by default),
+     * null if scoreprocessor.parallel is not true
+     * @see ScoreProcessorManager#PROPERTIES_MANAGER
+     */
+    private static ExecutorService createParallelExecutor() {
+        if (!Boolean.parseBoolean(PROPERTIES_MANAGER.getPropertyOrDefault("scoreprocessor.parallel", "false"))) {
+            return null;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            threads = Math.max(1, Integer.parseInt(PROPERTIES_MANAGER.getProperty("scoreprocessor.parallel.threads")));
+        } catch (IllegalArgumentException e) {
+            LOGGER.info("Use default value for scoreprocessor.parallel.threads");
+        }
+        LOGGER.info("Independent ScoreProcessor run in parallel on {} threads", threads);
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r);
+            thread.setName("Scoring " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get {@link ScoreMergeStrategy} from scoreprocessor.merge
+     *
+     * @return {@link ScoreMergeStrategy} to apply, {@link ScoreMergeStrategy#MAX} by default
+     * @see ScoreProcessorManager#PROPERTIES_MANAGER
+     */
+    private static ScoreMergeStrategy getMergeStrategy() {
+        String strategy = PROPERTIES_MANAGER.getPropertyOrDefault("scoreprocessor.merge", "max");
+        try {
+            return ScoreMergeStrategy.valueOf(strategy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown scoreprocessor.merge {}, use default value", strategy);
+            return ScoreMergeStrategy.MAX;
+        }
+    }
+
+    /**
+     * Apply {@link IScoreProcessor} stage by stage: consecutive independent ones form a parallel stage,
+     * the others are chained one after another
+     *
+     * @param providers {@link ScoreProcessorProvider} of all {@link IScoreProcessor} to apply in registration order
+     * @param event     {@link Event} to process
+     * @return Copy of {@link Event} with its {@link Event#score} process
+     * @see ScoreProcessorManager#processParallel(List, Event)
+     * @see IScoreProcessor#isIndependent()
+     */
+    private Event processStages(List<ScoreProcessorProvider> providers, Event event) {
+        Event tmp = event;
+        int start = 0;
+        while (start < providers.size()) {
+            int end = start + 1;
+            if (providers.get(start).independent) {
+                while (end < providers.size() && providers.get(end).independent) {
+                    end++;
+                }
+            }
+            tmp = end - start == 1 ? apply(providers.get(start), tmp) : processParallel(providers.subList(start, end), tmp);
+            start = end;
+        }
+        return tmp;
+    }
+
+    /**
+     * Apply independent {@link IScoreProcessor} in parallel on the same {@link Event}, the current thread runs the first one.
+     * If one of them fails or the current thread is interrupted, the others are cancelled and no score is merged.
+     *
+     * @param stage {@link ScoreProcessorProvider} of independent {@link IScoreProcessor}, at least two
+     * @param event {@link Event} to process
+     * @return Result of the first {@link IScoreProcessor} with the merged score
+     * @throws ScoreProcessorException if an {@link IScoreProcessor} throws an exception
+     * @throws CancellationException   if the current thread is interrupted before all scores are computed
+     * @see ScoreProcessorManager#parallelExecutor
+     * @see ScoreProcessorManager#merge(List, List)
+     */
+    private Event processParallel(List<ScoreProcessorProvider> stage, Event event) {
+        List<Future<Event>> futures = new ArrayList<>(stage.size() - 1);
+        List<Event> results = new ArrayList<>(stage.size());
+        try {
+            for (ScoreProcessorProvider provider : stage.subList(1, stage.size())) {
+                futures.add(parallelExecutor.submit(() -> apply(provider, event)));
+            }
+            results.add(apply(stage.get(0), event));
+            for (Future<Event> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while scoring in parallel");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (results.size() < stage.size()) {
+                futures.forEach(future -> future.cancel(true));
+            }
+        }
+        return merge(stage, results);
+    }
+
+    /**
+     * Merge results of a parallel stage with {@link ScoreProcessorManager#mergeStrategy}, unscored results are ignored
+     *
+     * @param stage   {@link ScoreProcessorProvider} which have computed results
+     * @param results Result of each {@link ScoreProcessorProvider} of stage
+     * @return First result with the merged score, or first result if none has a score
+     * @see ScoreProcessorManager#mergeStrategy
+     */
+    private Event merge(List<ScoreProcessorProvider> stage, List<Event> results) {
+        byte[] scores = new byte[results.size()];
+        double[] weights = new double[results.size()];
+        int scored = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).getScore() >= 0) {
+                scores[scored] = results.get(i).getScore();
+                weights[scored] = stage.get(i).weight;
+                scored++;
+            }
+        }
+        Event first = results.get(0);
+        if (scored == 0) {
+            return first;
+        }
+        byte score = mergeStrategy.apply(Arrays.copyOf(scores, scored), Arrays.copyOf(weights, scored));
+        return new Event(first.getLocation(), first.getStart(), first.getEnd(), first.getDescription(), score, first.getSource());
+    }
+
+    /**
+     * Apply an {@link IScoreProcessor} with an instance borrowed for this {@link Event}
+     *
+     * @param provider {@link ScoreProcessorProvider} of {@link IScoreProcessor}
+     * @param event    {@link Event} to process
+     * @return Processed {@link Event}
+     * @throws ScoreProcessorException if {@link IScoreProcessor} throws an exception
+     * @throws CancellationException   if the current thread is interrupted while waiting for an instance
+     * @see ScoreProcessorProvider#borrow()
+     * @see ScoreProcessorProvider#release(IScoreProcessor)
+     */
+    private static Event apply(ScoreProcessorProvider provider, Event event) {
+        IScoreProcessor iScoreProcessor;
+        try {
+            iScoreProcessor = provider.borrow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for " + provider.clazz.getSimpleName());
+        }
+        try {
+            return apply(iScoreProcessor, event);
+        } finally {
+            provider.release(iScoreProcessor);
+        }
+    }
+
+    /**
+     * Apply an {@link IScoreProcessor} and name it in the exception if it fails
+     *
+     * @param iScoreProcessor {@link IScoreProcessor} to apply
+     * @param event           {@link Event} to process
+     * @return Processed {@link Event}
+     * @throws ScoreProcessorException if iScoreProcessor throws an exception
+     */
+    private static Event apply(IScoreProcessor iScoreProcessor, Event event) {
+        try {
+            return iScoreProcessor.processScore(event);
+        } catch (RuntimeException e) {
+            throw new ScoreProcessorException(iScoreProcessor.getClass().getSimpleName(), e);
+        }
     }
 
     /**
-     * Find {@link IScoreProcessor} to apply to a {@link Event#source}
+     * Find {@link ScoreProcessorProvider} of {@link IScoreProcessor} to apply to a {@link Event#source}
      *
      * @param source Origin of the {@link Event}
-     * @return List of all {@link IScoreProcessor} to apply
+     * @return List of {@link ScoreProcessorProvider} in registration order
      * @throws NullPointerException if source is null
      * @see ScoreProcessorManager#scoreProcessors
      */
-    private List<IScoreProcessor> findIScoreProcessor(String source) {
+    private List<ScoreProcessorProvider> findScoreProcessorProviders(String source) {
         Objects.requireNonNull(source);
-        List<IScoreProcessor> sp = scoreProcessors.get(source);
-        if (sp == null) return new ArrayList<>();
-        return sp;
+        List<ScoreProcessorProvider> providers = scoreProcessors.get(source);
+        if (providers == null) return new ArrayList<>();
+        return providers;
     }
 
     /**
      * Apply all {@link IScoreProcessor} to the {@link Event}
      *
-     * @param scoreProcessor List of all {@link IScoreProcessor} to apply
-     * @param event          {@link Event} to process
+     * @param providers {@link ScoreProcessorProvider} of all {@link IScoreProcessor} to apply
+     * @param event     {@link Event} to process
      * @return Copy of {@link Event} with its {@link Event#score} process
-     * @throws NullPointerException if scoreProcessor or event is null
+     * @throws NullPointerException    if providers or event is null
+     * @throws ScoreProcessorException if an {@link IScoreProcessor} throws an exception
+     * @throws CancellationException   if the current thread is interrupted while waiting for an {@link IScoreProcessor}
      */
-    private static Event process(List<IScoreProcessor> scoreProcessor, Event event) {
-        Objects.requireNonNull(scoreProcessor);
+    private static Event process(List<ScoreProcessorProvider> providers, Event event) {
+        Objects.requireNonNull(providers);
         Objects.requireNonNull(event);
         Event tmp = event;
-        for (IScoreProcessor sp : scoreProcessor) {
-            tmp = sp.processScore(tmp);
+        for (ScoreProcessorProvider provider : providers) {
+            tmp = apply(provider, tmp);
         }
         return tmp;
     }
@@ -177,15 +425,190 @@ public class ScoreProcessorManager {
                     .filter(c -> ClassManager.implementInterface(c, IScoreProcessor.class))
                     .forEach(clazz -> {
                         try {
-                            IScoreProcessor iScoreProcessor = (IScoreProcessor) ClassManager.newInstance(clazz);
-                            iScoreProcessor.getSources().forEach(source -> {
-                                List<IScoreProcessor> iScoreProcessorList = scoreProcessors.computeIfAbsent(source, l -> new ArrayList<>());
-                                iScoreProcessorList.add(iScoreProcessor);
-                            });
+                            register((IScoreProcessor) ClassManager.newInstance(clazz));
                         } catch (Exception e) {
                             LOGGER.error("Error during instantiate {} : {}", clazz.getName(), e.getMessage());
                         }
                     });
         }
     }
+
+    /**
+     * Register an {@link IScoreProcessor} for all its sources, only during construction
+     *
+     * @param prototype First instance of {@link IScoreProcessor}, its class creates the other instances
+     * @throws NullPointerException if prototype is null
+     * @see ScoreProcessorManager#scoreProcessors
+     */
+    void register(IScoreProcessor prototype) {
+        ScoreProcessorProvider provider = new ScoreProcessorProvider(prototype, prototype.getClass());
+        prototype.getSources().forEach(source -> {
+            List<ScoreProcessorProvider> providers = scoreProcessors.computeIfAbsent(source, l -> new ArrayList<>());
+            providers.add(provider);
+        });
+    }
+
+    /**
+     * Lend instances of an {@link IScoreProcessor}: the single instance if it's thread-safe, otherwise an idle one of
+     * at most {@link ScoreProcessorManager#maxInstances} instances
+     *
+     * @author ikb4stream
+     * @version 1.0
+     * @see IScoreProcessor#isThreadSafe()
+     */
+    private class ScoreProcessorProvider {
+        /**
+         * Class of {@link IScoreProcessor} used to create instances
+         */
+        private final Class<?> clazz;
+        /**
+         * Instance used by all threads, null if {@link IScoreProcessor} is not thread-safe
+         */
+        private final IScoreProcessor shared;
+        /**
+         * Instances not borrowed, null if {@link IScoreProcessor} is thread-safe
+         *
+         * @see ScoreProcessorProvider#borrow()
+         * @see ScoreProcessorProvider#release(IScoreProcessor)
+         */
+        private final BlockingQueue<IScoreProcessor> idle;
+        /**
+         * Number of instances borrowed or idle, the prototype included
+         */
+        private final AtomicInteger created = new AtomicInteger(1);
+        /**
+         * True if {@link IScoreProcessor} can run in parallel with others
+         *
+         * @see IScoreProcessor#isIndependent()
+         */
+        private final boolean independent;
+        /**
+         * Weight of scores of this {@link IScoreProcessor}, read from scoreprocessor.weight.&lt;SimpleClassName&gt;
+         *
+         * @see ScoreMergeStrategy#WEIGHTED
+         */
+        private final double weight;
+
+        /**
+         * Create a {@link ScoreProcessorProvider}, prototype is the first idle instance
+         *
+         * @param prototype First instance of {@link IScoreProcessor}
+         * @param clazz     Class of prototype used to create other instances
+         * @throws NullPointerException if prototype or clazz is null
+         */
+        private ScoreProcessorProvider(IScoreProcessor prototype, Class<?> clazz) {
+            Objects.requireNonNull(prototype);
+            Objects.requireNonNull(clazz);
+            this.clazz = clazz;
+            this.independent = prototype.isIndependent();
+            this.weight = getWeight(clazz);
+            if (prototype.isThreadSafe()) {
+                this.shared = prototype;
+                this.idle = null;
+            } else {
+                this.shared = null;
+                this.idle = new LinkedBlockingQueue<>();
+                this.idle.add(prototype);
+            }
+        }
+
+        /**
+         * Get weight of an {@link IScoreProcessor}
+         *
+         * @param clazz Class of {@link IScoreProcessor}
+         * @return scoreprocessor.weight.&lt;SimpleClassName&gt; or 1 if it's not set or invalid
+         * @see ScoreProcessorManager#PROPERTIES_MANAGER
+         */
+        private double getWeight(Class<?> clazz) {
+            String property = "scoreprocessor.weight." + clazz.getSimpleName();
+            try {
+                double weight = Double.parseDouble(PROPERTIES_MANAGER.getProperty(property));
+                if (weight >= 0) {
+                    return weight;
+                }
+                LOGGER.warn("{} cannot be negative, use default value", property);
+            } catch (IllegalArgumentException e) {
+                LOGGER.debug("Use default value for {}", property);
+            }
+            return 1;
+        }
+
+        /**
+         * Create a new instance of an {@link IScoreProcessor}
+         *
+         * @return New instance or null if it cannot be created
+         */
+        private IScoreProcessor newInstance() {
+            try {
+                return (IScoreProcessor) ClassManager.newInstance(clazz);
+            } catch (Exception e) {
+                LOGGER.error("Error during instantiate {} : {}", clazz.getName(), e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Borrow an instance: an idle one, a new one while there are less than {@link ScoreProcessorManager#maxInstances},
+         * or wait for one to be given back
+         *
+         * @return {@link IScoreProcessor} to give back with {@link ScoreProcessorProvider#release(IScoreProcessor)}
+         * @throws InterruptedException if the current thread is interrupted while waiting
+         * @see ScoreProcessorProvider#idle
+         * @see ScoreProcessorProvider#created
+         */
+        private IScoreProcessor borrow() throws InterruptedException {
+            if (shared != null) {
+                return shared;
+            }
+            IScoreProcessor instance = idle.poll();
+            while (instance == null) {
+                int count = created.get();
+                if (count >= maxInstances) {
+                    return idle.take();
+                }
+                if (created.compareAndSet(count, count + 1)) {
+                    instance = newInstance();
+                    if (instance == null) {
+                        // The prototype is never dropped, so an instance is given back sooner or later
+                        created.decrementAndGet();
+                        return idle.take();
+                    }
+                }
+            }
+            return instance;
+        }
+
+        /**
+         * Give back an instance, it's dropped if there are more than {@link ScoreProcessorManager#maxInstances}
+         *
+         * @param instance {@link IScoreProcessor} returned by {@link ScoreProcessorProvider#borrow()}
+         * @see ScoreProcessorProvider#idle
+         */
+        private void release(IScoreProcessor instance) {
+            if (shared != null) {
+                return;
+            }
+            int count = created.get();
+            while (count > maxInstances) {
+                if (created.compareAndSet(count, count - 1)) {
+                    return;
+                }
+                count = created.get();
+            }
+            idle.add(instance);
+        }
+
+        /**
+         * Drop idle instances above {@link ScoreProcessorManager#maxInstances}
+         *
+         * @see ScoreProcessorProvider#idle
+         */
+        private void trim() {
+            if (shared == null) {
+                while (created.get() > maxInstances && idle.poll() != null) {
+                    created.decrementAndGet();
+                }
+            }
+        }
+    }
 }
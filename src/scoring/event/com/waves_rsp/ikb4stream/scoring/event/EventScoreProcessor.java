@@ -57,11 +57,11 @@ public class EventScoreProcessor implements IScoreProcessor {
      */
     private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
     /**
-     * Single instance per thread of {@link OpenNLP}
+     * Instance of {@link OpenNLP} of this processor, which is never used by two threads at the same time
      *
      * @see EventScoreProcessor#processScore(Event)
      */
-    private final OpenNLP openNLP = OpenNLP.getOpenNLP(Thread.currentThread());
+    private final OpenNLP openNLP = OpenNLP.createOpenNLP();
     /**
      * Max score to an {@link Event}
      *
@@ -139,4 +139,15 @@ public class EventScoreProcessor implements IScoreProcessor {
         }
         return sources;
     }
+
+    /**
+     * {@link EventScoreProcessor} only lemmatizes the plain text description of the {@link Event} and never reads a
+     * previous score, so it does not need other processors to run first
+     *
+     * @return true
+     */
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
 }
@@ -103,5 +103,25 @@ public class MockScoreProcessor implements IScoreProcessor {
         }
         return sources;
     }
-}
 
+    /**
+     * {@link MockScoreProcessor} can be shared between threads, it has no state
+     *
+     * @return true
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * {@link MockScoreProcessor} draws a random score without reading the {@link Event}, so nothing computed by other
+     * processors can change its result
+     *
+     * @return true
+     */
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
+}
@@ -59,11 +59,11 @@ public class OpenAgendaScoreProcessor implements IScoreProcessor {
      */
     private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
     /**
-     * Single instance per thread of {@link OpenNLP}
+     * Instance of {@link OpenNLP} of this processor, which is never used by two threads at the same time
      *
      * @see OpenAgendaScoreProcessor#processScore(Event)
      */
-    private final OpenNLP openNLP = OpenNLP.getOpenNLP(Thread.currentThread());
+    private final OpenNLP openNLP = OpenNLP.createOpenNLP();
     /**
      * Max score to an {@link Event}
      *
@@ -161,4 +161,15 @@ public class OpenAgendaScoreProcessor implements IScoreProcessor {
         }
         return score;
     }
+
+    /**
+     * {@link OpenAgendaScoreProcessor} parses the JSON description sent by the OpenAgenda connector and computes its
+     * score from the title and description alone, a processor rewriting the description before it would break it
+     *
+     * @return true
+     */
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
 }
@@ -201,4 +201,25 @@ public class OWMScoreProcessor implements IScoreProcessor {
         }
         return sources;
     }
+
+    /**
+     * {@link OWMScoreProcessor} can be shared between threads, rules are only read after construction
+     *
+     * @return true
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * {@link OWMScoreProcessor} parses the raw OpenWeatherMap JSON of the connector and computes its score from the
+     * temperature and the weather only, a previous score is not used
+     *
+     * @return true
+     */
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
 }
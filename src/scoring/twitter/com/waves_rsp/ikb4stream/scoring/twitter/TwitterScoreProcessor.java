@@ -58,11 +58,11 @@ public class TwitterScoreProcessor implements IScoreProcessor {
      */
     private static final MetricsLogger METRICS_LOGGER = MetricsLogger.getMetricsLogger();
     /**
-     * Single instance per thread of {@link OpenNLP}
+     * Instance of {@link OpenNLP} of this processor, which is never used by two threads at the same time
      *
      * @see TwitterScoreProcessor#processScore(Event)
      */
-    private final OpenNLP openNLP = OpenNLP.getOpenNLP(Thread.currentThread());
+    private final OpenNLP openNLP = OpenNLP.createOpenNLP();
     /**
      * Max score to an {@link Event}
      *
@@ -231,5 +231,15 @@ public class TwitterScoreProcessor implements IScoreProcessor {
         }
         return scoreTmp;
     }
-}
 
+    /**
+     * {@link TwitterScoreProcessor} parses the tweet JSON sent by the Twitter connector, it needs the certified flag of
+     * the account which is lost once a processor replaces the description by the tweet text
+     *
+     * @return true
+     */
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
+}
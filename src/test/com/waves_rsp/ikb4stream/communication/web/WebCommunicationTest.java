@@ -1,5 +1,9 @@
 package com.waves_rsp.ikb4stream.communication.web;
 
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -15,7 +19,17 @@ public class WebCommunicationTest {
 
     @Test
     public void testStart() {
-        webCommunication.start((request, callback) -> callback.onResult(null, "{}"));
+        webCommunication.start(new IDatabaseReader() {
+            @Override
+            public void getEvent(Request request, DatabaseReaderCallback callback) {
+                callback.onResult(null, "{}");
+            }
+
+            @Override
+            public Runnable subscribe(Request request, DatabaseReaderSubscriber subscriber) {
+                return () -> { };
+            }
+        });
     }
 
     @Test(expected = NullPointerException.class)
@@ -0,0 +1,137 @@
+package com.waves_rsp.ikb4stream.consumer.database;
+
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderStreamCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
+import com.waves_rsp.ikb4stream.core.communication.model.BoundingBox;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CachedDatabaseReaderTest {
+    private final FakeReader fake = new FakeReader();
+
+    private static class FakeReader implements IDatabaseReader {
+        private int requests;
+        private long watermark;
+
+        @Override
+        public void getEvent(Request request, DatabaseReaderCallback callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void streamEvent(Request request, DatabaseReaderStreamCallback callback) {
+            requests++;
+            List<String> events = new ArrayList<>();
+            events.add("{\"n\":" + requests + "}");
+            callback.onEvents(events, () -> callback.onComplete(null));
+        }
+
+        @Override
+        public Runnable subscribe(Request request, DatabaseReaderSubscriber subscriber) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getWatermark() {
+            return watermark;
+        }
+    }
+
+    private static Request request(double lat, long start) {
+        LatLong[] box = {new LatLong(lat, 2), new LatLong(lat, 3), new LatLong(lat + 1, 3), new LatLong(lat, 2)};
+        return new Request(new Date(start), new Date(start + 3600000), new BoundingBox(box), new Date());
+    }
+
+    private static String get(IDatabaseReader reader, Request request) {
+        String[] result = new String[1];
+        reader.getEvent(request, (t, r) -> {
+            assertNull(t);
+            result[0] = r;
+        });
+        return result[0];
+    }
+
+    private static String stream(IDatabaseReader reader, Request request) {
+        StringBuilder result = new StringBuilder();
+        reader.streamEvent(request, new DatabaseReaderStreamCallback() {
+            @Override
+            public void onEvents(List<String> events, Runnable next) {
+                events.forEach(result::append);
+                next.run();
+            }
+
+            @Override
+            public void onComplete(Throwable t) {
+                assertNull(t);
+            }
+        });
+        return result.toString();
+    }
+
+    @Test
+    public void nearIdenticalRequests() {
+        CachedDatabaseReader reader = new CachedDatabaseReader(fake, 1 << 20, 60000, 0.001, 60000);
+        assertEquals("[{\"n\":1}]", get(reader, request(48.8500, 60000)));
+        assertEquals("[{\"n\":1}]", get(reader, request(48.8501, 60500)));
+        assertEquals("{\"n\":1}", stream(reader, request(48.8502, 61000)));
+        assertEquals(1, fake.requests);
+        assertEquals(2, reader.getHits());
+        assertEquals("[{\"n\":2}]", get(reader, request(48.86, 60000)));
+        assertEquals("[{\"n\":3}]", get(reader, request(48.85, 180000)));
+        assertEquals(3, reader.getMisses());
+    }
+
+    @Test
+    public void streamIsKept() {
+        CachedDatabaseReader reader = new CachedDatabaseReader(fake, 1 << 20, 60000, 0.001, 60000);
+        assertEquals("{\"n\":1}", stream(reader, request(48.85, 0)));
+        assertEquals("[{\"n\":1}]", get(reader, request(48.85, 0)));
+        assertEquals(1, fake.requests);
+    }
+
+    @Test
+    public void watermarkInvalidates() {
+        CachedDatabaseReader reader = new CachedDatabaseReader(fake, 1 << 20, 60000, 0.001, 60000);
+        get(reader, request(48.85, 0));
+        fake.watermark++;
+        assertEquals("[{\"n\":2}]", get(reader, request(48.85, 0)));
+        assertEquals("[{\"n\":2}]", get(reader, request(48.85, 0)));
+    }
+
+    @Test
+    public void ttlInvalidates() throws InterruptedException {
+        CachedDatabaseReader reader = new CachedDatabaseReader(fake, 1 << 20, 20, 0.001, 60000);
+        get(reader, request(48.85, 0));
+        Thread.sleep(50);
+        assertEquals("[{\"n\":2}]", get(reader, request(48.85, 0)));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        // Each result takes 2 * (7 + 2) = 18 bytes, 8 results fit and a result cannot take more than 160 / 8 bytes
+        CachedDatabaseReader reader = new CachedDatabaseReader(fake, 160, 60000, 0.001, 60000);
+        for (int i = 0; i < 9; i++) {
+            get(reader, request(i, 0));
+        }
+        get(reader, request(8, 0));
+        get(reader, request(1, 0));
+        assertEquals(9, fake.requests);
+        get(reader, request(0, 0));
+        assertEquals(10, fake.requests);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSize() {
+        new CachedDatabaseReader(fake, 0, 60000, 0.001, 60000);
+    }
+}
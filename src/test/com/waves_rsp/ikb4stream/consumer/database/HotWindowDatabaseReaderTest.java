@@ -0,0 +1,102 @@
+package com.waves_rsp.ikb4stream.consumer.database;
+
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderCallback;
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderSubscriber;
+import com.waves_rsp.ikb4stream.core.communication.IDatabaseReader;
+import com.waves_rsp.ikb4stream.core.communication.model.BoundingBox;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
+import com.waves_rsp.ikb4stream.core.database.EmbeddedDatabase;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HotWindowDatabaseReaderTest {
+    private static final long WINDOW = TimeUnit.HOURS.toMillis(6);
+    private static final LatLong[] PARIS = {new LatLong(48, 2), new LatLong(48, 3), new LatLong(49, 3), new LatLong(49, 2), new LatLong(48, 2)};
+    private final List<DatabaseReaderSubscriber> coldSubscribers = new ArrayList<>();
+    private final IDatabaseReader cold = new IDatabaseReader() {
+        @Override
+        public void getEvent(Request request, DatabaseReaderCallback callback) {
+            callback.onResult(null, "cold");
+        }
+
+        @Override
+        public Runnable subscribe(Request request, DatabaseReaderSubscriber subscriber) {
+            coldSubscribers.add(subscriber);
+            return () -> coldSubscribers.remove(subscriber);
+        }
+    };
+    private EmbeddedDatabase hot;
+    private HotWindowDatabaseReader reader;
+
+    @Before
+    public void setUp() {
+        hot = EmbeddedDatabase.createInMemory(0.1, 100, WINDOW);
+        long now = System.currentTimeMillis();
+        hot.insertEvent(new Event(new LatLong(48.85, 2.35), new Date(now - 1000), new Date(now), "Leak", (byte) 50, "Twitter"), t -> { });
+        reader = new HotWindowDatabaseReader(cold, hot, WINDOW);
+    }
+
+    private static String get(IDatabaseReader reader, Request request) {
+        String[] result = new String[1];
+        reader.getEvent(request, (t, r) -> result[0] = r);
+        return result[0];
+    }
+
+    private static Request since(long age) {
+        long now = System.currentTimeMillis();
+        return new Request(new Date(now - age), new Date(now + 1000), new BoundingBox(PARIS), new Date());
+    }
+
+    @Test
+    public void coldUntilWarm() {
+        assertEquals("cold", get(reader, since(TimeUnit.HOURS.toMillis(1))));
+        reader.setWarm();
+        assertTrue(get(reader, since(TimeUnit.HOURS.toMillis(1))).contains("Leak"));
+    }
+
+    @Test
+    public void olderRequestsAreCold() {
+        reader.setWarm();
+        assertEquals("cold", get(reader, since(TimeUnit.HOURS.toMillis(7))));
+    }
+
+    @Test
+    public void pagesAreCold() {
+        reader.setWarm();
+        long now = System.currentTimeMillis();
+        Request page = new Request(new Date(now - 1000), new Date(now), new BoundingBox(PARIS), new Date(), Collections.emptyList(), 10, null);
+        assertEquals("cold", get(reader, page));
+    }
+
+    @Test
+    public void subscribeToMongo() {
+        List<String> received = new ArrayList<>();
+        Runnable unsubscribe = reader.subscribe(since(TimeUnit.HOURS.toMillis(1)), received::addAll);
+        assertEquals(1, coldSubscribers.size());
+        long now = System.currentTimeMillis();
+        hot.insertEvent(new Event(new LatLong(48.85, 2.35), new Date(now - 1000), new Date(now), "Fire", (byte) 50, "Twitter"), t -> { });
+        assertTrue(received.isEmpty());
+        coldSubscribers.get(0).onEvents(Collections.singletonList("Fire"));
+        assertEquals(Collections.singletonList("Fire"), received);
+        unsubscribe.run();
+        assertTrue(coldSubscribers.isEmpty());
+    }
+
+    @Test
+    public void watermarkOfMemory() {
+        long watermark = reader.getWatermark();
+        hot.insertEvent(new Event(new LatLong(48.85, 2.35), new Date(), new Date(), "Other", (byte) 50, "Twitter"), t -> { });
+        assertTrue(reader.getWatermark() != watermark);
+    }
+}
@@ -0,0 +1,72 @@
+package com.waves_rsp.ikb4stream.core.communication;
+
+import com.waves_rsp.ikb4stream.core.communication.model.BoundingBox;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class IDatabaseReaderTest {
+    private static final Request REQUEST = new Request(new Date(0), new Date(1000), new BoundingBox(new LatLong[]{
+            new LatLong(0, 0), new LatLong(0, 1), new LatLong(1, 1), new LatLong(0, 0)}), new Date());
+
+    private static IDatabaseReader reader(String result, Throwable error) {
+        return new IDatabaseReader() {
+            @Override
+            public void getEvent(Request request, DatabaseReaderCallback callback) {
+                callback.onResult(error, result);
+            }
+
+            @Override
+            public Runnable subscribe(Request request, DatabaseReaderSubscriber subscriber) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static List<Object> stream(IDatabaseReader reader) {
+        List<Object> results = new ArrayList<>();
+        reader.streamEvent(REQUEST, new DatabaseReaderStreamCallback() {
+            @Override
+            public void onEvents(List<String> events, Runnable next) {
+                results.add(events);
+                next.run();
+            }
+
+            @Override
+            public void onComplete(Throwable t) {
+                results.add(t);
+            }
+        });
+        return results;
+    }
+
+    @Test
+    public void streamWholeResult() {
+        List<Object> results = stream(reader("[{\"a\":1}, {\"b\":[2,3]}]", null));
+        assertEquals(Arrays.asList(Arrays.asList("{\"a\":1}", "{\"b\":[2,3]}"), null), results);
+    }
+
+    @Test
+    public void streamEmptyResult() {
+        assertEquals(Arrays.asList((Object) null), stream(reader("[]", null)));
+    }
+
+    @Test
+    public void streamError() {
+        IllegalStateException error = new IllegalStateException();
+        assertEquals(Arrays.asList((Object) error), stream(reader("[]", error)));
+        List<Object> results = stream(reader("[{", null));
+        assertEquals(1, results.size());
+        assertNotNull(results.get(0));
+        assertTrue(results.get(0) instanceof Throwable);
+    }
+}
@@ -0,0 +1,27 @@
+package com.waves_rsp.ikb4stream.core.communication.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContinuationTokenTest {
+
+    @Test
+    public void roundTrip() {
+        ContinuationToken token = new ContinuationToken(1490000000000L, "58d2a1f0e4b0c1a2b3c4d5e6");
+        ContinuationToken decoded = ContinuationToken.decode(token.encode());
+        assertEquals(token, decoded);
+        assertEquals(1490000000000L, decoded.getEnd());
+        assertEquals("58d2a1f0e4b0c1a2b3c4d5e6", decoded.getId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBase64() {
+        ContinuationToken.decode("not a token!");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidEnd() {
+        ContinuationToken.decode(new ContinuationToken(0, "id").encode().substring(2));
+    }
+}
@@ -1,11 +1,44 @@
 package com.waves_rsp.ikb4stream.core.communication.model;
 
+import com.waves_rsp.ikb4stream.core.model.LatLong;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
 public class RequestTest {
+    private static final BoundingBox BOX = new BoundingBox(new LatLong[]{
+            new LatLong(0, 0), new LatLong(0, 1), new LatLong(1, 1), new LatLong(0, 0)});
 
     @Test(expected = NullPointerException.class)
     public void nullRequest() {
         new Request(null, null, null, null);
     }
+
+    @Test
+    public void page() {
+        String token = new ContinuationToken(2000, "id").encode();
+        Request request = new Request(new Date(0), new Date(1000), BOX, new Date(), Arrays.asList("description", "score"), 50, token);
+        assertEquals(Arrays.asList("description", "score"), request.getFields());
+        assertEquals(50, request.getPageSize());
+        assertEquals(new ContinuationToken(2000, "id"), request.getContinuation());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void continuationWithoutPageSize() {
+        new Request(new Date(0), new Date(1000), BOX, new Date(), Collections.emptyList(), 0, new ContinuationToken(0, "id").encode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void operatorField() {
+        new Request(new Date(0), new Date(1000), BOX, new Date(), Collections.singletonList("$where"), 0, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMinScore() {
+        new Request(new Date(0), new Date(1000), BOX, new Date(), Collections.emptyList(), 0, null, 101, Collections.emptyList());
+    }
 }
@@ -0,0 +1,316 @@
+package com.waves_rsp.ikb4stream.core.database;
+
+import com.waves_rsp.ikb4stream.core.communication.DatabaseReaderStreamCallback;
+import com.waves_rsp.ikb4stream.core.communication.model.BoundingBox;
+import com.waves_rsp.ikb4stream.core.communication.model.Request;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import com.waves_rsp.ikb4stream.core.util.LatestValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EmbeddedDatabaseTest {
+    private static final LatLong[] PARIS = {new LatLong(48, 2), new LatLong(48, 3), new LatLong(49, 3), new LatLong(49, 2), new LatLong(48, 2)};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static EventLog log(Path file, long size) {
+        return new EventLog(file, size, LatestValue.getInstance()::keyOf, 0);
+    }
+
+    private static Event event(double lat, double lon, long start, long end, String description) {
+        return new Event(new LatLong(lat, lon), new Date(start), new Date(end), description, (byte) 10, "Twitter");
+    }
+
+    private static String get(EmbeddedDatabase database, LatLong[] area, long start, long end) {
+        String[] result = new String[1];
+        database.getEvent(new Request(new Date(start), new Date(end), new BoundingBox(area), new Date()), (t, r) -> {
+            assertNull(t);
+            result[0] = r;
+        });
+        return result[0];
+    }
+
+    @Test
+    public void findInAreaAndPeriod() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 1, 100, 0);
+        List<Throwable> results = new ArrayList<>();
+        database.insertEvents(Arrays.asList(
+                event(48.85, 2.35, 1000, 2000, "Fire in Paris"),
+                event(45.76, 4.83, 1000, 2000, "Fire in Lyon"),
+                event(48.86, 2.34, 5000, 6000, "Later in Paris")), results::add);
+        assertNull(results.get(0));
+        String json = get(database, PARIS, 1500, 3000);
+        assertTrue(json.contains("Fire in Paris"));
+        assertFalse(json.contains("Lyon"));
+        assertFalse(json.contains("Later"));
+        assertTrue(json.contains("\"hash\""));
+        assertEquals("[]", get(database, PARIS, 3000, 4000));
+    }
+
+    @Test
+    public void upsertOnHash() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 1, 100, 0);
+        database.insertEvent(event(48.85, 2.35, 1000, 2000, "Fire in Paris"), t -> { });
+        database.insertEvent(event(48.85, 2.35, 1000, 9000, "fire  in paris"), t -> { });
+        String json = get(database, PARIS, 0, 10000);
+        assertFalse(json.contains("Fire in Paris"));
+        assertTrue(json.contains("fire  in paris"));
+    }
+
+    private static class Collector implements DatabaseReaderStreamCallback {
+        private final List<List<String>> batches = new ArrayList<>();
+        private Runnable next;
+        private boolean completed;
+        private boolean cancelled;
+
+        @Override
+        public void onEvents(List<String> events, Runnable next) {
+            batches.add(events);
+            this.next = next;
+        }
+
+        @Override
+        public void onComplete(Throwable t) {
+            assertNull(t);
+            completed = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    @Test
+    public void streamInBatches() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 1, 5000, 0);
+        for (int i = 0; i < 2500; i++) {
+            database.insertEvent(event(48.5, 2.5, 1000, 2000, "Event " + i), t -> { });
+        }
+        Collector collector = new Collector();
+        database.streamEvent(new Request(new Date(0), new Date(3000), new BoundingBox(PARIS), new Date()), collector);
+        assertEquals(1, collector.batches.size());
+        assertEquals(1000, collector.batches.get(0).size());
+        collector.next.run();
+        collector.next.run();
+        assertFalse(collector.completed);
+        assertEquals(500, collector.batches.get(2).size());
+        assertTrue(collector.batches.get(2).get(0).contains("\"hash\""));
+        collector.next.run();
+        assertTrue(collector.completed);
+        assertEquals(3, collector.batches.size());
+    }
+
+    @Test
+    public void streamCancelled() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 1, 5000, 0);
+        for (int i = 0; i < 2500; i++) {
+            database.insertEvent(event(48.5, 2.5, 1000, 2000, "Event " + i), t -> { });
+        }
+        Collector collector = new Collector();
+        database.streamEvent(new Request(new Date(0), new Date(3000), new BoundingBox(PARIS), new Date()), collector);
+        collector.cancelled = true;
+        collector.next.run();
+        assertTrue(collector.completed);
+        assertEquals(1, collector.batches.size());
+    }
+
+    @Test
+    public void streamNothing() {
+        Collector collector = new Collector();
+        new EmbeddedDatabase(null, 1, 5000, 0).streamEvent(
+                new Request(new Date(0), new Date(3000), new BoundingBox(PARIS), new Date()), collector);
+        assertTrue(collector.completed);
+        assertTrue(collector.batches.isEmpty());
+    }
+
+    @Test
+    public void pages() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 1, 100, 0);
+        for (int i = 0; i < 5; i++) {
+            database.insertEvent(event(48.5, 2.5, 1000, 2000 + 10 * (4 - i), "Event " + i), t -> { });
+        }
+        List<String> seen = new ArrayList<>();
+        String continuation = null;
+        for (int page = 0; page < 3; page++) {
+            Collector collector = new Collector();
+            String[] next = new String[1];
+            database.streamEvent(new Request(new Date(0), new Date(3000), new BoundingBox(PARIS), new Date(),
+                    Arrays.asList("description"), 2, continuation), new Collector() {
+                @Override
+                public void onEvents(List<String> events, Runnable run) {
+                    collector.onEvents(events, run);
+                    run.run();
+                }
+
+                @Override
+                public void onContinuation(String token) {
+                    next[0] = token;
+                }
+            });
+            collector.batches.forEach(seen::addAll);
+            continuation = next[0];
+            assertEquals(page < 2, continuation != null);
+        }
+        assertEquals(5, seen.size());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(seen.get(i).contains("Event " + (4 - i)));
+            assertTrue(seen.get(i).contains("\"hash\""));
+            assertFalse(seen.get(i).contains("\"score\""));
+        }
+    }
+
+    @Test
+    public void minScoreAndSources() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 1, 100, 0);
+        database.insertEvent(new Event(new LatLong(48.5, 2.5), new Date(1000), new Date(2000), "Low", (byte) 10, "Twitter"), t -> { });
+        database.insertEvent(new Event(new LatLong(48.5, 2.5), new Date(1000), new Date(2000), "High", (byte) 90, "Twitter"), t -> { });
+        database.insertEvent(new Event(new LatLong(48.5, 2.5), new Date(1000), new Date(2000), "Weather", (byte) 90, "OpenWeatherMap"), t -> { });
+        String[] result = new String[1];
+        database.getEvent(new Request(new Date(0), new Date(3000), new BoundingBox(PARIS), new Date(), Collections.emptyList(), 0,
+                null, 50, Collections.singletonList("Twitter")), (t, r) -> result[0] = r);
+        assertTrue(result[0].contains("High"));
+        assertFalse(result[0].contains("Low"));
+        assertFalse(result[0].contains("Weather"));
+    }
+
+    @Test
+    public void watermarkChangesOnWrite() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 1, 100, 0);
+        long watermark = database.getWatermark();
+        database.insertEvent(event(48.5, 2.5, 1000, 2000, "Event"), t -> { });
+        assertTrue(database.getWatermark() != watermark);
+    }
+
+    private static Request request(LatLong[] area, long start, long end) {
+        return new Request(new Date(start), new Date(end), new BoundingBox(area), new Date());
+    }
+
+    @Test
+    public void subscribe() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 1, 100, 0);
+        database.insertEvent(event(48.85, 2.35, 1000, 2000, "Before"), t -> { });
+        List<String> received = new ArrayList<>();
+        Runnable unsubscribe = database.subscribe(request(PARIS, 0, 3000), received::addAll);
+        database.insertEvents(Arrays.asList(
+                event(48.85, 2.35, 1000, 2000, "Fire in Paris"),
+                event(45.76, 4.83, 1000, 2000, "Fire in Lyon"),
+                event(48.86, 2.34, 5000, 6000, "Later in Paris")), t -> { });
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("Fire in Paris"));
+        unsubscribe.run();
+        database.insertEvent(event(48.85, 2.35, 1000, 2000, "Storm in Paris"), t -> { });
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void subscribeToFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("events.db");
+        EmbeddedDatabase writer = new EmbeddedDatabase(log(file, 4096), 1, 100, 0);
+        EmbeddedDatabase reader = new EmbeddedDatabase(log(file, 4096), 1, 100, 0);
+        writer.insertEvent(event(48.85, 2.35, 1000, 2000, "Before"), t -> { });
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        reader.subscribe(request(PARIS, 0, 3000), received::addAll);
+        writer.insertEvent(event(48.85, 2.35, 1000, 2000, "Fire in Paris"), t -> { });
+        for (int i = 0; i < 50 && received.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("Fire in Paris"));
+    }
+
+    @Test
+    public void limit() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 1, 2, 0);
+        for (int i = 0; i < 5; i++) {
+            database.insertEvent(event(48.5, 2.5, 1000, 2000, "Event " + i), t -> { });
+        }
+        assertEquals(2, get(database, PARIS, 0, 3000).split("Event ").length - 1);
+    }
+
+    @Test
+    public void polygonIntersection() {
+        LatLong[] square = {new LatLong(0, 0), new LatLong(0, 10), new LatLong(10, 10), new LatLong(10, 0), new LatLong(0, 0)};
+        LatLong[] inside = {new LatLong(4, 4), new LatLong(4, 5), new LatLong(5, 5), new LatLong(4, 4)};
+        LatLong[] crossing = {new LatLong(-1, 5), new LatLong(11, 5), new LatLong(11, 6), new LatLong(-1, 6), new LatLong(-1, 5)};
+        LatLong[] outside = {new LatLong(20, 20), new LatLong(20, 21), new LatLong(21, 21), new LatLong(20, 20)};
+        assertTrue(SpatialIndex.intersects(inside, square));
+        assertTrue(SpatialIndex.intersects(square, inside));
+        assertTrue(SpatialIndex.intersects(crossing, square));
+        assertFalse(SpatialIndex.intersects(outside, square));
+        assertTrue(SpatialIndex.intersects(new LatLong[]{new LatLong(5, 5)}, square));
+        assertFalse(SpatialIndex.intersects(new LatLong[]{new LatLong(15, 5)}, square));
+    }
+
+    @Test
+    public void largeAreaAndLargeEvent() {
+        EmbeddedDatabase database = new EmbeddedDatabase(null, 0.01, 100, 0);
+        LatLong[] world = {new LatLong(-90, -180), new LatLong(-90, 180), new LatLong(90, 180), new LatLong(90, -180), new LatLong(-90, -180)};
+        database.insertEvent(new Event(world, new Date(1000), new Date(2000), "Everywhere", "OpenWeatherMap"), t -> { });
+        database.insertEvent(event(48.85, 2.35, 1000, 2000, "Fire in Paris"), t -> { });
+        assertTrue(get(database, PARIS, 0, 3000).contains("Everywhere"));
+        assertTrue(get(database, world, 0, 3000).contains("Fire in Paris"));
+    }
+
+    @Test
+    public void sharedFile() {
+        Path file = folder.getRoot().toPath().resolve("events.db");
+        EmbeddedDatabase writer = new EmbeddedDatabase(log(file, 4096), 1, 100, 0);
+        EmbeddedDatabase reader = new EmbeddedDatabase(log(file, 4096), 1, 100, 0);
+        writer.insertEvent(event(48.85, 2.35, 1000, 2000, "Fire in Paris"), t -> assertNull(t));
+        assertTrue(get(reader, PARIS, 0, 3000).contains("Fire in Paris"));
+        writer.insertEvent(event(48.5, 2.5, 1000, 2000, "Storm in Paris"), t -> assertNull(t));
+        String json = get(reader, PARIS, 0, 3000);
+        assertTrue(json.contains("Fire in Paris") && json.contains("Storm in Paris"));
+        EmbeddedDatabase restarted = new EmbeddedDatabase(log(file, 4096), 1, 100, 0);
+        assertEquals(json, get(restarted, PARIS, 0, 3000));
+    }
+
+    @Test
+    public void eventLargerThanFile() {
+        EmbeddedDatabase database = new EmbeddedDatabase(log(folder.getRoot().toPath().resolve("events.db"), 100), 1, 100, 0);
+        List<Throwable> results = new ArrayList<>();
+        database.insertEvent(event(48.85, 2.35, 1000, 2000, "Fire"), results::add);
+        database.insertEvent(event(48.85, 2.35, 1000, 2000, String.join("", Collections.nCopies(100, "Fire in Paris"))), results::add);
+        assertNull(results.get(0));
+        assertTrue(results.get(1) instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void rotateAndCompact() {
+        Path file = folder.getRoot().toPath().resolve("events.db");
+        long now = System.currentTimeMillis();
+        EmbeddedDatabase writer = new EmbeddedDatabase(new EventLog(file, 1024, LatestValue.getInstance()::keyOf, 60000), 1, 100, 0);
+        writer.insertEvent(event(10, 10, 1000, 2000, "Expired"), t -> assertNull(t));
+        for (int i = 0; i < 20; i++) {
+            writer.insertEvent(event(48.85, 2.35, now, now + 1000, "Fire in Paris " + i), t -> assertNull(t));
+        }
+        writer.insertEvent(event(20, 20, now, now + 1000, "Kept"), t -> assertNull(t));
+        for (int i = 0; i < 20; i++) {
+            writer.insertEvent(event(48.85, 2.35, now, now + 1000, "Fire in Paris " + i), t -> assertNull(t));
+        }
+        assertTrue(folder.getRoot().list((dir, name) -> name.matches("events\\.db\\.\\d+")).length > 1);
+        List<String> descriptions = new ArrayList<>();
+        log(file, 1024).read(0, event -> descriptions.add(event.getDescription()));
+        assertFalse(descriptions.contains("Expired"));
+        assertTrue(descriptions.contains("Kept"));
+        assertEquals(21, new HashSet<>(descriptions).size());
+        assertTrue(descriptions.size() < 42);
+    }
+}
@@ -0,0 +1,30 @@
+package com.waves_rsp.ikb4stream.core.model;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class PropertiesManagerTest {
+
+    @Test
+    public void longOrDefault() throws Exception {
+        Path file = Files.createTempFile("config", ".properties");
+        try {
+            Files.write(file, Arrays.asList("size = 42", "zero = 0", "negative = -1", "text = abc"), StandardCharsets.UTF_8);
+            PropertiesManager propertiesManager = PropertiesManager.getInstance(PropertiesManagerTest.class, file.toString());
+            assertEquals(42, propertiesManager.getLongOrDefault("size", 1, 7));
+            assertEquals(7, propertiesManager.getLongOrDefault("zero", 1, 7));
+            assertEquals(0, propertiesManager.getLongOrDefault("zero", 0, 7));
+            assertEquals(7, propertiesManager.getLongOrDefault("negative", 0, 7));
+            assertEquals(7, propertiesManager.getLongOrDefault("text", 0, 7));
+            assertEquals(7, propertiesManager.getLongOrDefault("missing", 0, 7));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
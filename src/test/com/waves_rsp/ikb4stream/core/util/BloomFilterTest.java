@@ -0,0 +1,62 @@
+package com.waves_rsp.ikb4stream.core.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+    private static byte[] digest(long i) {
+        // Spread values like a cryptographic digest would
+        long h1 = i * 0x9E3779B97F4A7C15L;
+        long h2 = Long.rotateLeft(h1, 31) * 0xBF58476D1CE4E5B9L;
+        return ByteBuffer.allocate(16).putLong(h1).putLong(h2).array();
+    }
+
+    @Test
+    public void putAndContain() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        assertFalse(filter.mightContain(digest(1)));
+        assertTrue(filter.put(digest(1)));
+        assertFalse(filter.put(digest(1)));
+        assertTrue(filter.mightContain(digest(1)));
+        assertEquals(1, filter.getInsertions());
+    }
+
+    @Test
+    public void falsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (long i = 0; i < 10000; i++) {
+            filter.put(digest(i));
+        }
+        int falsePositives = 0;
+        for (long i = 10000; i < 20000; i++) {
+            if (filter.mightContain(digest(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 300);
+    }
+
+    @Test
+    public void clear() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        filter.put(digest(1));
+        filter.clear();
+        assertFalse(filter.mightContain(digest(1)));
+        assertEquals(0, filter.getInsertions());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidFpp() {
+        new BloomFilter(100, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortDigest() {
+        new BloomFilter(100, 0.01).put(new byte[8]);
+    }
+}
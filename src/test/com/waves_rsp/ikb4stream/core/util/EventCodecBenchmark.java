@@ -0,0 +1,40 @@
+package com.waves_rsp.ikb4stream.core.util;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+
+/**
+ * Compares the time to encode an {@link Event} with {@link EventCodec} and with the former JSON to Document path.
+ * It is not a JUnit test so that the timings never make the build fail: run its main method by hand.
+ */
+public class EventCodecBenchmark {
+    private static final int ITERATIONS = 10000;
+    private static final int ROUNDS = 5;
+
+    private EventCodecBenchmark() {
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        Codec<Document> documentCodec = EventCodecTest.REGISTRY.get(Document.class);
+        Codec<Event> eventCodec = EventCodecTest.REGISTRY.get(Event.class);
+        Event event = EventCodecTest.point();
+        // The first round only warms up both paths
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                EventCodecTest.encode(documentCodec, EventCodecTest.legacyDocument(event));
+            }
+            long legacy = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                EventCodecTest.encode(eventCodec, event);
+            }
+            long direct = System.nanoTime() - start;
+            if (round > 0) {
+                System.out.println("EventCodec " + direct / ITERATIONS + " ns/event, JSON to Document " + legacy / ITERATIONS + " ns/event");
+            }
+        }
+    }
+}
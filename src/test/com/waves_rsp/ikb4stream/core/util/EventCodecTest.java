@@ -0,0 +1,151 @@
+package com.waves_rsp.ikb4stream.core.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.client.model.geojson.Point;
+import com.mongodb.client.model.geojson.Polygon;
+import com.mongodb.client.model.geojson.Position;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.io.BasicOutputBuffer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventCodecTest {
+    static final CodecRegistry REGISTRY = EventCodec.withEventCodec(MongoClients.getDefaultCodecRegistry());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static Event point() {
+        return new Event(new LatLong(48.85, 2.35), new Date(1000), new Date(2000), "Fire in Paris", (byte) 42, "Twitter");
+    }
+
+    private static Event polygon() {
+        LatLong[] ring = {new LatLong(0, 0), new LatLong(0, 1), new LatLong(1, 1), new LatLong(0, 0)};
+        return new Event(ring, new Date(1000), new Date(2000), "Storm", "OpenWeatherMap");
+    }
+
+    static <T> byte[] encode(Codec<T> codec, T value) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), value, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    private static <T> T decode(Codec<T> codec, byte[] bytes) {
+        return codec.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)), DecoderContext.builder().build());
+    }
+
+    /**
+     * Former write path of DatabaseWriter: JSON string parsed into a Document
+     */
+    @SuppressWarnings("unchecked")
+    static Document legacyDocument(Event event) throws Exception {
+        Document document = Document.parse(MAPPER.writeValueAsString(event));
+        document.remove("start");
+        document.remove("end");
+        document.remove("location");
+        document.append("start", event.getStart().getTime());
+        document.append("end", event.getEnd().getTime());
+        if (event.getLocation().length == 1) {
+            document.append("location", new Point(new Position(
+                    event.getLocation()[0].getLongitude(), event.getLocation()[0].getLatitude())));
+        } else {
+            List<Position> positions = Arrays.stream(event.getLocation())
+                    .map(p -> new Position(p.getLongitude(), p.getLatitude())).collect(Collectors.toList());
+            document.append("location", new Polygon(positions));
+        }
+        return document;
+    }
+
+    @Test
+    public void roundTrip() {
+        EventCodec codec = new EventCodec();
+        assertEquals(point(), decode(codec, encode(codec, point())));
+        assertEquals(polygon(), decode(codec, encode(codec, polygon())));
+        assertEquals(-1, decode(codec, encode(codec, polygon())).getScore());
+    }
+
+    @Test
+    public void sameDocumentAsLegacyPath() throws Exception {
+        Codec<Document> documentCodec = REGISTRY.get(Document.class);
+        BsonDocumentCodec bsonCodec = new BsonDocumentCodec();
+        for (Event event : new Event[]{point(), polygon()}) {
+            BsonDocument legacy = decode(bsonCodec, encode(documentCodec, legacyDocument(event)));
+            long before = System.currentTimeMillis();
+            BsonDocument direct = decode(bsonCodec, encode(REGISTRY.get(Event.class), event));
+            long updated = direct.remove(EventCodec.UPDATED_FIELD).asDateTime().getValue();
+            assertTrue(updated >= before && updated <= System.currentTimeMillis());
+            assertEquals(EventHash.of(event), direct.remove(EventCodec.HASH_FIELD).asString().getValue());
+            assertEquals(event.getEnd().getTime(), direct.remove(EventCodec.END_DATE_FIELD).asDateTime().getValue());
+            assertEquals(legacy, direct);
+        }
+    }
+
+    @Test
+    public void decodeSkipsUnknownFields() {
+        Document document = new Document("_id", 1).append("description", "Storm").append("source", "OWM")
+                .append("score", 10).append("start", 1000L).append("end", new Date(2000))
+                .append("location", new Point(new Position(2, 1))).append("extra", Arrays.asList(1, 2));
+        Event event = decode(new EventCodec(), encode(REGISTRY.get(Document.class), document));
+        assertEquals(new Event(new LatLong(1, 2), new Date(1000), new Date(2000), "Storm", (byte) 10, "OWM"), event);
+    }
+
+    @Test(expected = CodecConfigurationException.class)
+    public void decodeMissingField() {
+        decode(new EventCodec(), encode(REGISTRY.get(Document.class), new Document("description", "Storm")));
+    }
+
+    private static Event longDescription() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            description.append("Orage sur Paris, vent fort ").append(i % 10).append(". ");
+        }
+        return new Event(new LatLong(48.85, 2.35), new Date(1000), new Date(2000), description.toString(), (byte) 42, "Twitter");
+    }
+
+    @Test
+    public void compressLongDescription() {
+        EventCodec codec = new EventCodec(EventHash::of, 1024);
+        Event event = longDescription();
+        BsonDocument document = decode(new BsonDocumentCodec(), encode(codec, event));
+        assertFalse(document.containsKey("description"));
+        byte[] compressed = document.getBinary(EventCodec.COMPRESSED_DESCRIPTION_FIELD).getData();
+        assertTrue(compressed.length < event.getDescription().length());
+        assertEquals(event.getDescription(), EventCodec.inflate(compressed));
+        assertEquals(event, decode(codec, encode(codec, event)));
+        assertEquals(event, decode(new EventCodec(), encode(codec, event)));
+    }
+
+    @Test
+    public void keepShortDescription() {
+        EventCodec codec = new EventCodec(EventHash::of, 1024);
+        BsonDocument document = decode(new BsonDocumentCodec(), encode(codec, point()));
+        assertEquals("Fire in Paris", document.getString("description").getValue());
+        assertFalse(document.containsKey(EventCodec.COMPRESSED_DESCRIPTION_FIELD));
+        document = decode(new BsonDocumentCodec(), encode(new EventCodec(), longDescription()));
+        assertFalse(document.containsKey(EventCodec.COMPRESSED_DESCRIPTION_FIELD));
+    }
+
+    @Test(expected = CodecConfigurationException.class)
+    public void inflateInvalidData() {
+        EventCodec.inflate(new byte[]{1, 2, 3});
+    }
+}
@@ -0,0 +1,45 @@
+package com.waves_rsp.ikb4stream.core.util;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class EventHashTest {
+    private static Event event(String description, long start, long end, String source) {
+        return new Event(new LatLong(48.85, 2.35), new Date(start), new Date(end), description, source);
+    }
+
+    @Test
+    public void sameContentSameHash() {
+        String hash = EventHash.of(event("Fire in  Paris ", 1000, 2000, "RSS"));
+        assertEquals(64, hash.length());
+        assertEquals(hash, EventHash.of(event("fire in paris", 1000, 5000, "RSS")));
+        Event scored = new Event(new LatLong(48.85, 2.35), new Date(1000), new Date(2000), "Fire in Paris", (byte) 50, "RSS");
+        assertEquals(hash, EventHash.of(scored));
+    }
+
+    @Test
+    public void differentContentDifferentHash() {
+        String hash = EventHash.of(event("Fire in Paris", 1000, 2000, "RSS"));
+        assertNotEquals(hash, EventHash.of(event("Fire in Lyon", 1000, 2000, "RSS")));
+        assertNotEquals(hash, EventHash.of(event("Fire in Paris", 1001, 2000, "RSS")));
+        assertNotEquals(hash, EventHash.of(event("Fire in Paris", 1000, 2000, "Facebook")));
+        Event moved = new Event(new LatLong(48.86, 2.35), new Date(1000), new Date(2000), "Fire in Paris", "RSS");
+        assertNotEquals(hash, EventHash.of(moved));
+    }
+
+    @Test
+    public void normalize() {
+        assertEquals("a b c", EventHash.normalize("  A\tb\n\nC "));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullEvent() {
+        EventHash.of(null);
+    }
+}
@@ -0,0 +1,45 @@
+package com.waves_rsp.ikb4stream.core.util;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventSerializerTest {
+
+    @Test
+    public void pointWithoutScore() {
+        Event event = new Event(new LatLong(48.8, 2.3), new Date(1000), new Date(2000), "Fête à Paris", "twitter");
+        assertEquals(event, EventSerializer.deserialize(EventSerializer.serialize(event)));
+    }
+
+    @Test
+    public void boundingBoxWithScore() {
+        LatLong[] box = {new LatLong(1, 1), new LatLong(1, 2), new LatLong(2, 2), new LatLong(1, 1)};
+        Event event = new Event(box, new Date(1000), new Date(2000), "", (byte) 42, "rss");
+        Event decoded = EventSerializer.deserialize(EventSerializer.serialize(event));
+        assertEquals(event, decoded);
+        assertEquals(42, decoded.getScore());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncated() {
+        Event event = new Event(new LatLong(1, 1), new Date(1000), new Date(2000), "description", "twitter");
+        byte[] bytes = EventSerializer.serialize(event);
+        EventSerializer.deserialize(Arrays.copyOf(bytes, bytes.length - 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownVersion() {
+        EventSerializer.deserialize(new byte[]{42, 0, 0});
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullEvent() {
+        EventSerializer.serialize(null);
+    }
+}
@@ -0,0 +1,61 @@
+package com.waves_rsp.ikb4stream.core.util;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.EncoderContext;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatestValueTest {
+    private final LatestValue latestValue = new LatestValue(Collections.singleton("OpenWeatherMap"), 0.01, 3600000);
+
+    private static Event event(String source, double lat, double lon, long start, String description) {
+        return new Event(new LatLong(lat, lon), new Date(start), new Date(start + 1000), description, (byte) 10, source);
+    }
+
+    @Test
+    public void sameCellAndBucket() {
+        Event first = event("OpenWeatherMap", 48.851, 2.351, 1000, "Rain");
+        Event second = event("OpenWeatherMap", 48.852, 2.353, 3599000, "Storm");
+        assertTrue(latestValue.isLatest(first));
+        assertEquals(latestValue.keyOf(first), latestValue.keyOf(second));
+    }
+
+    @Test
+    public void otherCellBucketOrSource() {
+        Event event = event("OpenWeatherMap", 48.851, 2.351, 1000, "Rain");
+        assertNotEquals(latestValue.keyOf(event), latestValue.keyOf(event("OpenWeatherMap", 48.861, 2.351, 1000, "Rain")));
+        assertNotEquals(latestValue.keyOf(event), latestValue.keyOf(event("OpenWeatherMap", 48.851, 2.351, 3600000, "Rain")));
+        assertNotEquals(latestValue.keyOf(event), latestValue.keyOf(event("Weather", 48.851, 2.351, 1000, "Rain")));
+    }
+
+    @Test
+    public void otherSourcesKeepContentHash() {
+        Event event = event("Twitter", 48.851, 2.351, 1000, "Fire");
+        assertFalse(latestValue.isLatest(event));
+        assertEquals(EventHash.of(event), latestValue.keyOf(event));
+    }
+
+    @Test
+    public void codecWritesKey() {
+        Event event = event("OpenWeatherMap", 48.851, 2.351, 1000, "Rain");
+        BsonDocument document = new BsonDocument();
+        new EventCodec(latestValue::keyOf).encode(new BsonDocumentWriter(document), event,
+                EncoderContext.builder().build());
+        assertEquals(latestValue.keyOf(event), document.getString(EventCodec.HASH_FIELD).getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBucket() {
+        new LatestValue(Collections.emptySet(), 0.01, 0);
+    }
+}
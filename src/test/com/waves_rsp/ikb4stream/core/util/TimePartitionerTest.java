@@ -0,0 +1,57 @@
+package com.waves_rsp.ikb4stream.core.util;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimePartitionerTest {
+    private static long time(int year, int month, int day, int hour) {
+        return LocalDateTime.of(year, month, day, hour, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @Test
+    public void dayPartition() {
+        TimePartitioner partitioner = new TimePartitioner("events", "day");
+        assertEquals("events_20170104", partitioner.nameOf(time(2017, 1, 4, 23)));
+        assertEquals(time(2017, 1, 4, 0), partitioner.startOf("events_20170104"));
+        assertEquals(TimeUnit.DAYS.toMillis(1), partitioner.getLength());
+    }
+
+    @Test
+    public void weekStartsOnMonday() {
+        TimePartitioner partitioner = new TimePartitioner("events", "Week");
+        assertEquals("events_20170102", partitioner.nameOf(time(2017, 1, 2, 0)));
+        assertEquals("events_20170102", partitioner.nameOf(time(2017, 1, 8, 23)));
+        assertEquals("events_20170109", partitioner.nameOf(time(2017, 1, 9, 0)));
+    }
+
+    @Test
+    public void otherCollections() {
+        TimePartitioner partitioner = new TimePartitioner("events", "day");
+        assertEquals(-1, partitioner.startOf("events"));
+        assertEquals(-1, partitioner.startOf("events_archive"));
+        assertEquals(-1, partitioner.startOf("other_20170104"));
+        assertEquals(-1, partitioner.startOf("events_20171345"));
+    }
+
+    @Test
+    public void overlaps() {
+        TimePartitioner partitioner = new TimePartitioner("events", "day");
+        assertTrue(partitioner.overlaps("events_20170104", time(2017, 1, 4, 12), time(2017, 1, 6, 0)));
+        assertTrue(partitioner.overlaps("events_20170104", time(2017, 1, 1, 0), time(2017, 1, 4, 0)));
+        assertFalse(partitioner.overlaps("events_20170104", time(2017, 1, 5, 0), time(2017, 1, 6, 0)));
+        assertFalse(partitioner.overlaps("events_20170104", time(2017, 1, 1, 0), time(2017, 1, 3, 23)));
+        assertFalse(partitioner.overlaps("events_archive", 0, Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidGranularity() {
+        new TimePartitioner("events", "month");
+    }
+}
@@ -0,0 +1,279 @@
+package com.waves_rsp.ikb4stream.producer;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteError;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.WriteConcernError;
+import com.mongodb.client.model.InsertOneModel;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BulkWriterTest {
+    private final List<Integer> writes = Collections.synchronizedList(new ArrayList<>());
+    private final Deque<Throwable> errors = new ConcurrentLinkedDeque<>();
+    private final List<SingleResultCallback<BulkWriteResult>> heldCallbacks = new ArrayList<>();
+    private Throwable error;
+    private boolean hold;
+    private final MongoCollection<Document> collection = collection();
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<Document> collection() {
+        return (MongoCollection<Document>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MongoCollection.class}, (proxy, method, args) -> {
+                    if (!"bulkWrite".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    writes.add(((List<?>) args[0]).size());
+                    SingleResultCallback<BulkWriteResult> callback = (SingleResultCallback<BulkWriteResult>) args[args.length - 1];
+                    if (hold) {
+                        heldCallbacks.add(callback);
+                    } else {
+                        Throwable next = errors.poll();
+                        callback.onResult(null, next != null ? next : error);
+                    }
+                    return null;
+                });
+    }
+
+    private BulkWriter<Document> writer(int maxCount, long maxBytes, long linger) {
+        return new BulkWriter<>(d -> collection, InsertOneModel::new, d -> null, maxCount, maxBytes, linger, 1000, 3, 1);
+    }
+
+    private static List<Throwable> await(List<Throwable> results, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (results.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        return results;
+    }
+
+    @Test
+    public void flushOnCount() {
+        BulkWriter<Document> writer = writer(3, Long.MAX_VALUE, 60000);
+        List<Throwable> results = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            writer.add(new Document("i", i), 10, "source", results::add);
+        }
+        assertEquals(2, writes.size());
+        assertEquals(6, results.size());
+        writer.close();
+        assertEquals(3, writes.size());
+        assertEquals(1, (int) writes.get(2));
+        assertEquals(7, results.size());
+        results.forEach(t -> assertNull(t));
+    }
+
+    @Test
+    public void flushOnBytes() {
+        BulkWriter<Document> writer = writer(100, 25, 60000);
+        writer.add(new Document(), 10, "source", t -> { });
+        writer.add(new Document(), 10, "source", t -> { });
+        assertTrue(writes.isEmpty());
+        writer.add(new Document(), 10, "source", t -> { });
+        assertEquals(Collections.singletonList(3), writes);
+        writer.close();
+    }
+
+    @Test
+    public void flushOnLinger() throws InterruptedException {
+        BulkWriter<Document> writer = writer(100, Long.MAX_VALUE, 10);
+        List<Throwable> results = Collections.synchronizedList(new ArrayList<>());
+        writer.add(new Document(), 10, "source", results::add);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (results.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, results.size());
+        writer.close();
+    }
+
+    @Test
+    public void errorsOfBulkWrite() {
+        BulkWriteError writeError = new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1);
+        Throwable t = new MongoBulkWriteException(null, Collections.singletonList(writeError), null, new ServerAddress());
+        Throwable[] errors = BulkWriter.errorsOf(3, t);
+        assertNull(errors[0]);
+        assertTrue(errors[1] instanceof MongoWriteException);
+        assertEquals(11000, ((MongoWriteException) errors[1]).getError().getCode());
+        assertNull(errors[2]);
+    }
+
+    @Test
+    public void errorsOfOtherFailure() {
+        Throwable t = new IllegalStateException("timeout");
+        Throwable[] errors = BulkWriter.errorsOf(2, t);
+        assertSame(t, errors[0]);
+        assertSame(t, errors[1]);
+        assertNull(BulkWriter.errorsOf(1, null)[0]);
+    }
+
+    @Test
+    public void callbackPerDocument() {
+        error = new MongoBulkWriteException(null,
+                Collections.singletonList(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 0)), null, new ServerAddress());
+        BulkWriter<Document> writer = writer(2, Long.MAX_VALUE, 60000);
+        List<Throwable> first = new ArrayList<>();
+        List<Throwable> second = new ArrayList<>();
+        writer.add(new Document(), 10, "source", first::add);
+        writer.add(new Document(), 10, "source", second::add);
+        assertTrue(first.get(0) instanceof MongoWriteException);
+        assertNull(second.get(0));
+        writer.close();
+    }
+
+    @Test
+    public void writePerCollection() {
+        MongoCollection<Document> other = collection();
+        BulkWriter<Document> writer = new BulkWriter<>(d -> d.getBoolean("other") ? other : collection, InsertOneModel::new, d -> null,
+                3, Long.MAX_VALUE, 60000, 1000, 3, 1);
+        List<Throwable> results = new ArrayList<>();
+        writer.add(new Document("other", false), 10, "source", results::add);
+        writer.add(new Document("other", true), 10, "source", results::add);
+        writer.add(new Document("other", false), 10, "source", results::add);
+        assertEquals(Arrays.asList(1, 2), writes.stream().sorted().collect(Collectors.toList()));
+        assertEquals(3, results.size());
+        writer.close();
+    }
+
+    @Test
+    public void coalesceSameKey() {
+        List<Document> written = new ArrayList<>();
+        BulkWriter<Document> writer = new BulkWriter<>(d -> collection, d -> {
+            written.add(d);
+            return new InsertOneModel<>(d);
+        }, d -> d.getString("key"), 10, Long.MAX_VALUE, 60000, 1000, 3, 1);
+        List<Throwable> results = new ArrayList<>();
+        writer.add(new Document("key", "a").append("value", 1), 10, "source", results::add);
+        writer.add(new Document("key", "b").append("value", 2), 10, "source", results::add);
+        writer.add(new Document("key", "a").append("value", 3), 10, "source", results::add);
+        writer.add(new Document("value", 4), 10, "source", results::add);
+        writer.add(new Document("value", 4), 10, "source", results::add);
+        assertEquals(5, writer.getInFlight());
+        writer.flush();
+        assertEquals(Collections.singletonList(4), writes);
+        assertEquals(3, (int) written.get(0).getInteger("value"));
+        assertEquals(5, results.size());
+        assertEquals(0, writer.getInFlight());
+        writer.add(new Document("key", "a").append("value", 5), 10, "source", results::add);
+        writer.close();
+        assertEquals(Arrays.asList(4, 1), writes);
+    }
+
+    @Test
+    public void retryTransientError() throws InterruptedException {
+        errors.add(new MongoSocketException("connection reset", new ServerAddress()));
+        errors.add(new MongoTimeoutException("no server"));
+        BulkWriter<Document> writer = writer(2, Long.MAX_VALUE, 60000);
+        List<Throwable> results = Collections.synchronizedList(new ArrayList<>());
+        writer.add(new Document(), 10, "source", results::add);
+        writer.add(new Document(), 10, "source", results::add);
+        assertEquals(2, await(results, 2).size());
+        results.forEach(t -> assertNull(t));
+        assertEquals(Arrays.asList(2, 2, 2), writes);
+        assertEquals(0, writer.getInFlight());
+        writer.close();
+    }
+
+    @Test
+    public void retryGivesUp() throws InterruptedException {
+        error = new MongoSocketException("connection reset", new ServerAddress());
+        BulkWriter<Document> writer = writer(1, Long.MAX_VALUE, 60000);
+        List<Throwable> results = Collections.synchronizedList(new ArrayList<>());
+        writer.add(new Document(), 10, "source", results::add);
+        assertSame(error, await(results, 1).get(0));
+        assertEquals(4, writes.size());
+        assertEquals(0, writer.getInFlight());
+        writer.close();
+    }
+
+    @Test
+    public void noRetryOfDocumentError() {
+        error = new MongoBulkWriteException(null,
+                Collections.singletonList(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 0)), null, new ServerAddress());
+        BulkWriter<Document> writer = writer(1, Long.MAX_VALUE, 60000);
+        List<Throwable> results = new ArrayList<>();
+        writer.add(new Document(), 10, "source", results::add);
+        assertEquals(1, writes.size());
+        assertTrue(results.get(0) instanceof MongoWriteException);
+        writer.close();
+    }
+
+    @Test
+    public void transientErrors() {
+        assertTrue(BulkWriter.isTransient(new MongoSocketException("reset", new ServerAddress())));
+        assertTrue(BulkWriter.isTransient(new MongoTimeoutException("timeout")));
+        assertTrue(BulkWriter.isTransient(new MongoBulkWriteException(null, Collections.emptyList(),
+                new WriteConcernError(64, "timeout", new BsonDocument()), new ServerAddress())));
+        assertFalse(BulkWriter.isTransient(new MongoWriteException(
+                new WriteError(11000, "duplicate key", new BsonDocument()), new ServerAddress())));
+        assertFalse(BulkWriter.isTransient(null));
+    }
+
+    @Test
+    public void inFlightBlocksAdd() throws InterruptedException {
+        hold = true;
+        BulkWriter<Document> writer = new BulkWriter<>(d -> collection, InsertOneModel::new, d -> null, 1, Long.MAX_VALUE, 60000, 2, 3, 1);
+        List<Throwable> results = Collections.synchronizedList(new ArrayList<>());
+        writer.add(new Document(), 10, "source", results::add);
+        writer.add(new Document(), 10, "source", results::add);
+        assertEquals(2, writer.getInFlight());
+        Thread blocked = new Thread(() -> writer.add(new Document(), 10, "source", results::add));
+        blocked.start();
+        blocked.join(100);
+        assertTrue(blocked.isAlive());
+        assertEquals(2, writes.size());
+        hold = false;
+        heldCallbacks.get(0).onResult(null, null);
+        blocked.join(5000);
+        assertFalse(blocked.isAlive());
+        assertEquals(3, writes.size());
+        assertEquals(2, results.size());
+        heldCallbacks.get(1).onResult(null, null);
+        assertEquals(3, results.size());
+        assertEquals(0, writer.getInFlight());
+        writer.close();
+    }
+
+    @Test
+    public void interruptedAdd() {
+        BulkWriter<Document> writer = new BulkWriter<>(d -> collection, InsertOneModel::new, d -> null, 10, Long.MAX_VALUE, 60000, 1, 3, 1);
+        writer.add(new Document(), 10, "source", t -> { });
+        List<Throwable> results = new ArrayList<>();
+        Thread.currentThread().interrupt();
+        try {
+            writer.add(new Document(), 10, "source", results::add);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertTrue(results.get(0) instanceof InterruptedException);
+        writer.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCount() {
+        writer(0, 1, 1);
+    }
+}
@@ -0,0 +1,43 @@
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DataConsumerPoolTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBounds() {
+        new DataConsumerPool(DataQueue.createDataQueue(), 4, 2, 1000, false);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDataQueue() {
+        new DataConsumerPool(null, 1, 2, 1000, false);
+    }
+
+    @Test
+    public void scaleUp() {
+        assertEquals(3, DataConsumerPool.targetSize(0.6, 0.1, 2, 1, 4));
+        assertEquals(3, DataConsumerPool.targetSize(0.0, 0.9, 2, 1, 4));
+        assertEquals(4, DataConsumerPool.targetSize(1.0, 1.0, 4, 1, 4));
+    }
+
+    @Test
+    public void scaleDown() {
+        assertEquals(1, DataConsumerPool.targetSize(0.0, 0.1, 2, 1, 4));
+        assertEquals(1, DataConsumerPool.targetSize(0.0, 0.0, 1, 1, 4));
+    }
+
+    @Test
+    public void steady() {
+        assertEquals(2, DataConsumerPool.targetSize(0.3, 0.5, 2, 1, 4));
+        assertEquals(2, DataConsumerPool.targetSize(0.05, 0.5, 2, 1, 4));
+    }
+
+    @Test
+    public void outOfBounds() {
+        assertEquals(2, DataConsumerPool.targetSize(0.0, 0.0, 0, 2, 4));
+        assertEquals(4, DataConsumerPool.targetSize(1.0, 1.0, 6, 2, 4));
+    }
+}
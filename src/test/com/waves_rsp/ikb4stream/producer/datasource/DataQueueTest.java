@@ -0,0 +1,124 @@
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class DataQueueTest {
+    private static final String FLOOD = "Flood";
+    private static final String QUIET = "Quiet source.";
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private final List<DataQueue> dataQueues = new ArrayList<>();
+
+    private static Event event(String source, int i) {
+        return new Event(new LatLong(48.85, 2.35), new Date(0), new Date(1000), source + " " + i, source);
+    }
+
+    private static int indexOf(Event event) {
+        return Integer.parseInt(event.getDescription().substring(event.getSource().length() + 1));
+    }
+
+    /**
+     * Fair queue of 10 events, with at most capacityPerSource events of each source, spilled in temporary folder
+     */
+    private DataQueue createDataQueue(int capacityPerSource) {
+        DataQueue dataQueue = new DataQueue(DataQueue.createFairQueue(10, false, s -> capacityPerSource, s -> 1),
+                OverflowPolicy.DROP_NEWEST, folder.getRoot().toPath(), 1024 * 1024, 4);
+        dataQueues.add(dataQueue);
+        return dataQueue;
+    }
+
+    private static List<Event> popAll(DataQueue dataQueue, int count) throws InterruptedException {
+        List<Event> events = new ArrayList<>();
+        while (events.size() < count) {
+            List<Event> batch = dataQueue.popBatch(1, 0, 5000);
+            assertFalse("Only " + events.size() + " event(s) popped", batch.isEmpty());
+            events.addAll(batch);
+        }
+        return events;
+    }
+
+    private static void assertArrivalOrder(List<Event> events, String source, int count) {
+        int next = 0;
+        for (Event event : events) {
+            if (source.equals(event.getSource())) {
+                assertEquals(next++, indexOf(event));
+            }
+        }
+        assertEquals(count, next);
+    }
+
+    @After
+    public void tearDown() {
+        dataQueues.forEach(DataQueue::persist);
+    }
+
+    @Test
+    public void quietSourceNotSpilled() throws InterruptedException {
+        DataQueue dataQueue = createDataQueue(4);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(dataQueue.push(event(FLOOD, i)));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(dataQueue.push(event(QUIET, i)));
+        }
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("Quiet+source%2E")));
+        List<Event> events = popAll(dataQueue, 103);
+        for (Event event : events.subList(0, 6)) {
+            assertTrue(event.getSource().equals(QUIET) || indexOf(event) < 4);
+        }
+        assertArrivalOrder(events, FLOOD, 100);
+        assertArrivalOrder(events, QUIET, 3);
+        assertTrue(dataQueue.popBatch(1, 0, 100).isEmpty());
+    }
+
+    @Test
+    public void fullSourceDoesNotBlockRefill() throws InterruptedException {
+        DataQueue dataQueue = createDataQueue(2);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(dataQueue.push(event(FLOOD, i)));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertTrue(dataQueue.push(event(QUIET, i)));
+        }
+        List<Event> events = popAll(dataQueue, 24);
+        // Flood needs a refill round for each of its 18 spilled events, Quiet for each of its 2
+        for (Event event : events.subList(14, 24)) {
+            assertEquals(FLOOD, event.getSource());
+        }
+        assertArrivalOrder(events, FLOOD, 20);
+        assertArrivalOrder(events, QUIET, 4);
+    }
+
+    @Test
+    public void persistedBySource() throws InterruptedException {
+        DataQueue dataQueue = createDataQueue(2);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(dataQueue.push(event(FLOOD, i)));
+            assertTrue(dataQueue.push(event(QUIET, i)));
+        }
+        dataQueue.persist();
+        dataQueue = createDataQueue(2);
+        // Events which were in the queue are appended after those already spilled by their source
+        Set<String> descriptions = popAll(dataQueue, 10).stream().map(Event::getDescription).collect(Collectors.toSet());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(descriptions.contains(FLOOD + " " + i));
+            assertTrue(descriptions.contains(QUIET + " " + i));
+        }
+        assertTrue(dataQueue.popBatch(1, 0, 100).isEmpty());
+    }
+}
@@ -0,0 +1,58 @@
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeadLetterStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Event event(String description) {
+        return new Event(new LatLong(2, 3), new Date(), new Date(), description, "source");
+    }
+
+    @Test
+    public void writeFile() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("deadletter.json");
+        DeadLetterStore store = new DeadLetterStore(file, 1024 * 1024);
+        store.add(event("first"), "Processor", new IllegalArgumentException("bad"));
+        store.add(event("second"), "Processor", new IllegalArgumentException("bad"));
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("\"processor\":\"Processor\""));
+        assertTrue(lines.get(1).contains("second"));
+    }
+
+    @Test
+    public void rotateFile() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("deadletter.json");
+        DeadLetterStore store = new DeadLetterStore(file, 1);
+        store.add(event("first"), "Processor", new IllegalArgumentException("bad"));
+        store.add(event("second"), "Processor", new IllegalArgumentException("bad"));
+        assertTrue(Files.readAllLines(file.resolveSibling("deadletter.json.1"), StandardCharsets.UTF_8).get(0).contains("first"));
+        assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidFileSize() {
+        new DeadLetterStore(null, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullEvent() {
+        new DeadLetterStore(null, 1024).add(null, "Processor", new IllegalArgumentException());
+    }
+}
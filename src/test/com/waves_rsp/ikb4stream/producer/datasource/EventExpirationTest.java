@@ -0,0 +1,67 @@
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventExpirationTest {
+    private static Event endingAt(long end) {
+        return new Event(new LatLong(2, 3), new Date(end - 1000), new Date(end), "description", "source");
+    }
+
+    @Test
+    public void disabledByDefault() {
+        EventExpiration expiration = new EventExpiration("none", 10, 0);
+        assertFalse(expiration.isEnabled());
+        assertFalse(expiration.isStale(0, 1000));
+        assertFalse(expiration.isPastDeadline(endingAt(0), 1000));
+    }
+
+    @Test
+    public void unknownActionDisables() {
+        assertFalse(new EventExpiration("unknown", 10, 0).isEnabled());
+    }
+
+    @Test
+    public void stale() {
+        EventExpiration expiration = new EventExpiration("drop", 100, 0);
+        assertTrue(expiration.isEnabled());
+        assertFalse(expiration.isStale(1000, 1100));
+        assertTrue(expiration.isStale(1000, 1101));
+    }
+
+    @Test
+    public void noTtl() {
+        assertFalse(new EventExpiration("archive", 0, 0).isStale(0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void pastDeadline() {
+        EventExpiration expiration = new EventExpiration("archive", 0, 500);
+        assertFalse(expiration.isPastDeadline(endingAt(10000), 10500));
+        assertTrue(expiration.isPastDeadline(endingAt(10000), 10501));
+        assertFalse(expiration.isPastDeadline(endingAt(20000), 10000));
+    }
+
+    @Test
+    public void instantHasNoDeadline() {
+        long now = System.currentTimeMillis();
+        Event tweet = new Event(new LatLong(2, 3), new Date(now - 1000), new Date(now - 1000), "description", "Twitter");
+        assertFalse(new EventExpiration("drop", 0, 0).isPastDeadline(tweet, now));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeTtl() {
+        new EventExpiration("drop", -1, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullAction() {
+        new EventExpiration(null, 0, 0);
+    }
+}
@@ -0,0 +1,88 @@
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FairBoundedQueueTest {
+
+    private static FairBoundedQueue<String> createQueue(int capacity, int capacityPerKey) {
+        return new FairBoundedQueue<>(capacity,
+                s -> s.substring(0, 1),
+                s -> 1,
+                k -> capacityPerKey,
+                k -> "b".equals(k) ? 2 : 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        createQueue(0, 1);
+    }
+
+    @Test
+    public void capacityPerKey() {
+        FairBoundedQueue<String> queue = createQueue(10, 2);
+        assertTrue(queue.offer("a1"));
+        assertTrue(queue.offer("a2"));
+        assertFalse(queue.offer("a3"));
+        assertTrue(queue.offer("b1"));
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void weightedRoundRobin() {
+        FairBoundedQueue<String> queue = createQueue(100, 100);
+        for (int i = 0; i < 6; i++) {
+            queue.offer("a" + i);
+        }
+        for (int i = 0; i < 6; i++) {
+            queue.offer("b" + i);
+        }
+        queue.offer("c0");
+        List<String> order = new ArrayList<>();
+        String element;
+        while ((element = queue.poll()) != null) {
+            order.add(element);
+        }
+        assertEquals(13, order.size());
+        // The low rate key is served within the first round despite the backlog of the others
+        assertTrue(order.indexOf("c0") < 5);
+        // Key b has twice the weight of key a
+        assertTrue(order.indexOf("b3") < order.indexOf("a3"));
+        assertTrue(order.indexOf("a0") < order.indexOf("a1"));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void pollTimeoutAndDrain() throws InterruptedException {
+        FairBoundedQueue<String> queue = createQueue(10, 10);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        queue.offer("a1");
+        queue.offer("a2");
+        queue.offer("b1");
+        queue.offer("c1");
+        List<String> drained = new ArrayList<>();
+        assertEquals(3, queue.drainTo(drained, 3));
+        assertEquals(Arrays.asList("a1", "b1", "c1"), drained);
+        assertEquals("a2", queue.poll(10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void evict() throws InterruptedException {
+        FairBoundedQueue<String> queue = createQueue(3, 2);
+        queue.offer("a1");
+        queue.offer("a2");
+        queue.offer("b1");
+        assertEquals("a1", queue.evict("a3"));
+        assertTrue(queue.offer("a3"));
+        assertEquals("a2", queue.evict("c1"));
+        assertTrue(queue.offer("c1"));
+        assertEquals(3, queue.size());
+    }
+}
@@ -0,0 +1,131 @@
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RingBufferQueueTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new RingBufferQueue<Integer>(0, WaitStrategy.PARK);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullElement() {
+        new RingBufferQueue<Integer>(2, WaitStrategy.PARK).offer(null);
+    }
+
+    @Test
+    public void fifoAndFull() throws InterruptedException {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(3, WaitStrategy.SPIN);
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+        assertEquals(3, queue.size());
+        assertEquals(Integer.valueOf(1), queue.take());
+        assertTrue(queue.offer(4));
+        assertEquals(Integer.valueOf(2), queue.take());
+        assertEquals(Integer.valueOf(3), queue.take());
+        assertEquals(Integer.valueOf(4), queue.take());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void offerTimeoutAndPut() throws InterruptedException {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(2, WaitStrategy.PARK);
+        assertTrue(queue.offer(0));
+        assertTrue(queue.offer(1, 10, TimeUnit.MILLISECONDS));
+        assertFalse(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        queue.put(2);
+        consumer.join();
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertEquals(Integer.valueOf(2), queue.poll());
+    }
+
+    @Test
+    public void pollTimeoutAndDrain() throws InterruptedException {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4, WaitStrategy.PARK);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 4; i++) {
+            queue.offer(i);
+        }
+        assertEquals(Integer.valueOf(0), queue.poll(10, TimeUnit.MILLISECONDS));
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, queue.drainTo(drained, 2));
+        assertEquals(1, queue.drainTo(drained, 5));
+        assertEquals(0, queue.drainTo(drained, 5));
+        assertEquals(Arrays.asList(1, 2, 3), drained);
+    }
+
+    @Test
+    public void capacityOne() throws InterruptedException {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(1, WaitStrategy.SPIN);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertEquals(Integer.valueOf(1), queue.take());
+        assertEquals(Integer.valueOf(2), queue.take());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void multiProducerMultiConsumer() throws InterruptedException {
+        RingBufferQueue<Long> queue = new RingBufferQueue<>(7, WaitStrategy.YIELD);
+        int producers = 4;
+        int consumers = 3;
+        long perProducer = 20_000;
+        AtomicLong sum = new AtomicLong();
+        AtomicLong count = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                for (long i = 1; i <= perProducer; i++) {
+                    while (!queue.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (true) {
+                        sum.addAndGet(queue.take());
+                        count.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (int p = 0; p < producers; p++) {
+            threads.get(p).join();
+        }
+        while (count.get() < producers * perProducer) {
+            Thread.sleep(10);
+        }
+        threads.forEach(Thread::interrupt);
+        assertEquals(producers * perProducer * (perProducer + 1) / 2, sum.get());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,118 @@
+package com.waves_rsp.ikb4stream.producer.datasource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SpillLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] record(int i) {
+        return String.format("record%02d", i).getBytes();
+    }
+
+    private static long countSegments(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(p -> p.toString().endsWith(".segment")).count();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSegmentSize() throws IOException {
+        new SpillLog(folder.getRoot().toPath(), 8, 1);
+    }
+
+    @Test
+    public void appendPeekCommit() throws IOException {
+        SpillLog spillLog = new SpillLog(folder.getRoot().toPath(), 1024, 4);
+        assertTrue(spillLog.isEmpty());
+        assertNull(spillLog.peek());
+        assertTrue(spillLog.append(record(1)));
+        assertTrue(spillLog.append(record(2)));
+        assertFalse(spillLog.isEmpty());
+        assertArrayEquals(record(1), spillLog.peek());
+        assertArrayEquals(record(1), spillLog.peek());
+        spillLog.commit();
+        assertArrayEquals(record(2), spillLog.peek());
+        spillLog.commit();
+        assertTrue(spillLog.isEmpty());
+        assertFalse(spillLog.append(new byte[0]));
+        assertFalse(spillLog.append(new byte[2048]));
+        spillLog.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitWithoutPeek() throws IOException {
+        new SpillLog(folder.getRoot().toPath(), 1024, 4).commit();
+    }
+
+    @Test
+    public void rotationAndLimit() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        SpillLog spillLog = new SpillLog(directory, 64, 3);
+        int appended = 0;
+        while (spillLog.append(record(appended))) {
+            appended++;
+        }
+        // 5 records of 12 bytes fit in a segment of 64 bytes, which keeps 4 bytes to close it
+        assertEquals(15, appended);
+        assertEquals(3, countSegments(directory));
+        for (int i = 0; i < appended; i++) {
+            assertArrayEquals(record(i), spillLog.peek());
+            spillLog.commit();
+        }
+        assertNull(spillLog.peek());
+        assertEquals(1, countSegments(directory));
+        assertTrue(spillLog.append(record(appended)));
+    }
+
+    @Test
+    public void replayAfterReopen() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        SpillLog spillLog = new SpillLog(directory, 64, 10);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(spillLog.append(record(i)));
+        }
+        for (int i = 0; i < 4; i++) {
+            spillLog.peek();
+            spillLog.commit();
+        }
+        // Read but not committed, so it's replayed
+        spillLog.peek();
+        spillLog.close();
+        assertFalse(spillLog.append(record(10)));
+
+        SpillLog reopened = new SpillLog(directory, 64, 10);
+        assertTrue(reopened.append(record(10)));
+        for (int i = 4; i <= 10; i++) {
+            assertArrayEquals(record(i), reopened.peek());
+            reopened.commit();
+        }
+        assertTrue(reopened.isEmpty());
+    }
+
+    @Test
+    public void awaitRecord() throws Exception {
+        SpillLog spillLog = new SpillLog(folder.getRoot().toPath(), 1024, 4);
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                spillLog.append(record(1));
+            } catch (InterruptedException | IOException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        writer.start();
+        spillLog.awaitRecord();
+        assertArrayEquals(record(1), spillLog.peek());
+        writer.join();
+    }
+}
@@ -0,0 +1,35 @@
+package com.waves_rsp.ikb4stream.producer.score;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScoreMergeStrategyTest {
+
+    @Test
+    public void max() {
+        assertEquals(70, ScoreMergeStrategy.MAX.apply(new byte[]{20, 70, 50}, new double[]{1, 1, 1}));
+    }
+
+    @Test
+    public void sumIsCapped() {
+        assertEquals(60, ScoreMergeStrategy.SUM.apply(new byte[]{20, 40}, new double[]{1, 1}));
+        assertEquals(100, ScoreMergeStrategy.SUM.apply(new byte[]{70, 80}, new double[]{1, 1}));
+    }
+
+    @Test
+    public void weighted() {
+        assertEquals(40, ScoreMergeStrategy.WEIGHTED.apply(new byte[]{20, 80}, new double[]{2, 1}));
+        assertEquals(80, ScoreMergeStrategy.WEIGHTED.apply(new byte[]{20, 80}, new double[]{0, 0}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyScores() {
+        ScoreMergeStrategy.MAX.apply(new byte[0], new double[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lengthMismatch() {
+        ScoreMergeStrategy.SUM.apply(new byte[]{1, 2}, new double[]{1});
+    }
+}
@@ -1,9 +1,25 @@
 package com.waves_rsp.ikb4stream.producer.score;
 
+import com.waves_rsp.ikb4stream.core.datasource.model.IScoreProcessor;
+import com.waves_rsp.ikb4stream.core.model.Event;
+import com.waves_rsp.ikb4stream.core.model.LatLong;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 public class ScoreProcessorManagerTest {
+    private static final Event EVENT = new Event(new LatLong(48.85, 2.35), new Date(0), new Date(1000), "Fire", "Counting");
 
     @Ignore
     @Test
@@ -17,4 +33,82 @@ public class ScoreProcessorManagerTest {
         ScoreProcessorManager scoreProcessorManager = new ScoreProcessorManager();
         scoreProcessorManager.processScore(null);
     }
+
+    @Test
+    public void instancesNotTiedToThreads() throws InterruptedException {
+        CountingScoreProcessor.CREATED.set(0);
+        ScoreProcessorManager scoreProcessorManager = new ScoreProcessorManager();
+        scoreProcessorManager.register(new CountingScoreProcessor());
+        for (int i = 0; i < 5; i++) {
+            AtomicReference<Event> scored = new AtomicReference<>();
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    scored.set(scoreProcessorManager.processScore(EVENT));
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            });
+            thread.start();
+            thread.join();
+            assertNull(error.get());
+            assertEquals(42, scored.get().getScore());
+        }
+        assertEquals(1, CountingScoreProcessor.CREATED.get());
+    }
+
+    @Test
+    public void instancesBoundedWhileScaling() throws InterruptedException {
+        CountingScoreProcessor.CREATED.set(0);
+        ScoreProcessorManager scoreProcessorManager = new ScoreProcessorManager();
+        scoreProcessorManager.register(new CountingScoreProcessor());
+        scoreProcessorManager.setMaxInstances(4);
+        // Like the consumer pool, each scale up or down runs consumers in new threads
+        for (int consumers : new int[]{1, 4, 2, 4, 1, 4}) {
+            CountDownLatch ready = new CountDownLatch(consumers);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < consumers; i++) {
+                Thread thread = new Thread(() -> {
+                    ready.countDown();
+                    try {
+                        ready.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 10; j++) {
+                        scoreProcessorManager.processScore(EVENT);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertTrue(CountingScoreProcessor.CREATED.get() <= 4);
+    }
+
+    public static class CountingScoreProcessor implements IScoreProcessor {
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        public CountingScoreProcessor() {
+            CREATED.incrementAndGet();
+        }
+
+        @Override
+        public Event processScore(Event event) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Event(event.getLocation(), event.getStart(), event.getEnd(), event.getDescription(), (byte) 42, event.getSource());
+        }
+
+        @Override
+        public List<String> getSources() {
+            return Collections.singletonList("Counting");
+        }
+    }
 }